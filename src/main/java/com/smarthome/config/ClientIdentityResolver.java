@@ -0,0 +1,38 @@
+package com.smarthome.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Who a request counts against for per-client rate limits. The authenticated
+ * principal when there is one, else the remote address. {@code X-Client-Id} is
+ * only believed when the request comes straight from one of
+ * {@code smarthome.rate-limit.client.trusted-proxies}; from anyone else it is
+ * ignored, so a caller cannot mint fresh client ids to reset its own limit.
+ */
+@Component
+public class ClientIdentityResolver {
+    public static final String CLIENT_HEADER = "X-Client-Id";
+
+    private final Set<String> trustedProxies;
+
+    public ClientIdentityResolver(@Value("${smarthome.rate-limit.client.trusted-proxies:}") List<String> trustedProxies) {
+        this.trustedProxies = Set.copyOf(trustedProxies.stream().map(String::trim).filter(s -> !s.isEmpty()).toList());
+    }
+
+    public String resolve(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null && principal.getName() != null) return "user:" + principal.getName();
+        String remote = request.getRemoteAddr();
+        String forwarded = request.getHeader(CLIENT_HEADER);
+        if (forwarded != null && !forwarded.isBlank() && trustedProxies.contains(remote)) {
+            return "client:" + forwarded.trim();
+        }
+        return "addr:" + remote;
+    }
+}
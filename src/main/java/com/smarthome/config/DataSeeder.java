@@ -6,13 +6,6 @@ import com.smarthome.domain.DeviceEntity;
 import com.smarthome.domain.DeviceType;
 import com.smarthome.domain.RoomEntity;
 import com.smarthome.domain.SceneEntity;
-import com.smarthome.pattern.creational.abstractfactory.SmartThingsSensor;
-import com.smarthome.pattern.creational.factory.Device;
-import com.smarthome.pattern.creational.factory.SmartCamera;
-import com.smarthome.pattern.creational.factory.SmartLight;
-import com.smarthome.pattern.creational.factory.SmartLock;
-import com.smarthome.pattern.creational.factory.SmartThermostat;
-import com.smarthome.pattern.creational.singleton.HomeController;
 import com.smarthome.repository.AutomationRuleRepository;
 import com.smarthome.repository.DeviceRepository;
 import com.smarthome.repository.RoomRepository;
@@ -22,7 +15,6 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -53,7 +45,6 @@ public class DataSeeder implements CommandLineRunner {
     @Override
     public void run(String... args) {
         ensureDemoDevices();
-        registerAllDevices();
 
         if (roomRepository.count() == 0) {
             seedRoomsFromDeviceLocations();
@@ -97,33 +88,6 @@ public class DataSeeder implements CommandLineRunner {
         }
     }
 
-    private void registerAllDevices() {
-        HomeController controller = HomeController.INSTANCE;
-        for (DeviceEntity entity : deviceRepository.findAll()) {
-            if (entity.getId() == null || entity.getId().isBlank()) {
-                continue;
-            }
-            DeviceType type = Optional.ofNullable(entity.getType()).orElse(DeviceType.LIGHT);
-            Device runtime = switch (type) {
-                case LIGHT -> new SmartLight(entity.getName(), entity.getLocation());
-                case THERMOSTAT -> new SmartThermostat(entity.getName(), entity.getLocation());
-                case CAMERA -> new SmartCamera(entity.getName(), entity.getLocation());
-                case LOCK -> new SmartLock(entity.getName(), entity.getLocation());
-                case SENSOR -> new SmartThingsSensor(entity.getName(), entity.getLocation());
-            };
-            register(controller, entity.getId(), runtime, entity.isOn());
-        }
-    }
-
-    private static void register(HomeController controller, String id, Device device, boolean turnOn) {
-        if (turnOn) {
-            device.turnOn();
-        } else {
-            device.turnOff();
-        }
-        controller.registerDevice(id, device);
-    }
-
     private void seedRoomsFromDeviceLocations() {
         Map<String, List<DeviceEntity>> devicesByRoom = new LinkedHashMap<>();
         List<DeviceEntity> devices = deviceRepository.findAll();
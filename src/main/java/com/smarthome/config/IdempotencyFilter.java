@@ -0,0 +1,262 @@
+package com.smarthome.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Makes mutating {@code /api} requests carrying an {@code Idempotency-Key}
+ * header safe to retry: a duplicate gets the first response replayed, marked
+ * with {@code Idempotent-Replayed: true}, and never reaches the controller.
+ * Requests without the header are untouched.
+ *
+ * Keys are scoped to the caller ({@code X-User-Id}, else {@code X-Client-Id},
+ * else the remote address), so two clients picking the same key never see each
+ * other's responses. The fingerprint a key is bound to covers method, path,
+ * parameters and a SHA-256 digest of the body, which is buffered up front and
+ * replayed to the controller. Keyed bodies larger than
+ * {@code smarthome.idempotency.max-body-size} are rejected with 413 rather
+ * than read into memory; bulk uploads beyond it are sent without a key.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final String USER_HEADER = "X-User-Id";
+    private static final String CLIENT_HEADER = "X-Client-Id";
+    private static final Set<String> MUTATING = Set.of("POST", "PUT", "PATCH", "DELETE");
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyService idempotency;
+    private final ObjectMapper objectMapper;
+    private final int maxBodyBytes;
+
+    public IdempotencyFilter(IdempotencyService idempotency, ObjectMapper objectMapper,
+                             @Value("${smarthome.idempotency.max-body-size:1MB}") DataSize maxBodySize) {
+        if (maxBodySize.toBytes() <= 0 || maxBodySize.toBytes() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("max-body-size must be between 1 byte and 2GB");
+        }
+        this.idempotency = idempotency;
+        this.objectMapper = objectMapper;
+        this.maxBodyBytes = (int) maxBodySize.toBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !MUTATING.contains(request.getMethod())
+                || !request.getRequestURI().startsWith("/api/")
+                || request.getHeader(KEY_HEADER) == null;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            // Async responses are passed through, not stored
+            chain.doFilter(request, response);
+            ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+            if (wrapper != null && !isAsyncStarted(request)) wrapper.copyBodyToResponse();
+            return;
+        }
+        String key = request.getHeader(KEY_HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(response, HttpStatus.BAD_REQUEST, "INVALID_IDEMPOTENCY_KEY",
+                    KEY_HEADER + " must be 1-" + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        if (request.getContentLengthLong() > maxBodyBytes) {
+            writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "IDEMPOTENT_BODY_TOO_LARGE", tooLarge());
+            return;
+        }
+
+        // Parameters first: for form posts they are the body, read before it is buffered
+        String fingerprint = fingerprint(request);
+        BufferedBodyRequest buffered = BufferedBodyRequest.read(request, maxBodyBytes);
+        if (buffered == null) {
+            writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "IDEMPOTENT_BODY_TOO_LARGE", tooLarge());
+            return;
+        }
+        fingerprint += " sha256=" + buffered.digest();
+
+        IdempotencyService.Outcome outcome;
+        try {
+            outcome = idempotency.execute(scope(request) + ' ' + key, fingerprint, () -> execute(buffered, response, chain));
+        } catch (ChainFailure e) {
+            if (e.getCause() instanceof ServletException se) throw se;
+            throw (IOException) e.getCause();
+        } catch (IdempotencyService.KeyReusedException e) {
+            writeError(response, HttpStatus.UNPROCESSABLE_ENTITY, "IDEMPOTENCY_KEY_REUSED", e.getMessage());
+            return;
+        }
+        if (outcome.replayed()) {
+            IdempotencyService.StoredResponse stored = outcome.response();
+            response.setStatus(stored.status());
+            if (stored.contentType() != null) response.setContentType(stored.contentType());
+            response.setHeader(REPLAYED_HEADER, "true");
+            response.setContentLength(stored.body().length);
+            response.getOutputStream().write(stored.body());
+        }
+    }
+
+    private IdempotencyService.StoredResponse execute(HttpServletRequest request, HttpServletResponse response, FilterChain chain) {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            if (isAsyncStarted(request)) {
+                return null; // the body is copied out on the async dispatch
+            }
+            IdempotencyService.StoredResponse stored = new IdempotencyService.StoredResponse(
+                    wrapper.getStatus(), wrapper.getContentType(), wrapper.getContentAsByteArray());
+            wrapper.copyBodyToResponse();
+            return stored;
+        } catch (IOException e) {
+            throw new ChainFailure(e);
+        } catch (ServletException e) {
+            throw new ChainFailure(e);
+        }
+    }
+
+    private String tooLarge() {
+        return "Requests with an " + KEY_HEADER + " may carry at most " + maxBodyBytes + " bytes";
+    }
+
+    private static String scope(HttpServletRequest request) {
+        String user = request.getHeader(USER_HEADER);
+        if (user != null && !user.isBlank()) return "user:" + user.trim();
+        String client = request.getHeader(CLIENT_HEADER);
+        if (client != null && !client.isBlank()) return "client:" + client.trim();
+        return "addr:" + request.getRemoteAddr();
+    }
+
+    private static String fingerprint(HttpServletRequest request) {
+        StringBuilder sb = new StringBuilder(request.getMethod()).append(' ').append(request.getRequestURI());
+        Map<String, String[]> params = new TreeMap<>(request.getParameterMap());
+        char separator = '?';
+        for (Map.Entry<String, String[]> p : params.entrySet()) {
+            sb.append(separator).append(p.getKey()).append('=').append(String.join(",", p.getValue()));
+            separator = '&';
+        }
+        return sb.toString();
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String error, String message) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", status.value());
+        body.put("error", error);
+        body.put("message", message);
+        body.put("timestamp", Instant.now().toString());
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    /**
+     * Request whose body has been read into memory, so it can be digested and still reach the controller
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        /**
+         * The request with its body buffered, or null when the body exceeds {@code maxBytes}
+         */
+        static BufferedBodyRequest read(HttpServletRequest request, int maxBytes) throws IOException {
+            byte[] body = request.getInputStream().readNBytes(maxBytes + 1);
+            return body.length > maxBytes ? null : new BufferedBodyRequest(request, body);
+        }
+
+        String digest() {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("Buffered body is read synchronously");
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+
+    /**
+     * Carries a checked exception from the filter chain through the response store
+     */
+    private static final class ChainFailure extends RuntimeException {
+        ChainFailure(Exception cause) {
+            super(cause);
+        }
+    }
+}
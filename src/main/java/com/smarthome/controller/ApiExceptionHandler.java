@@ -5,8 +5,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import com.smarthome.pattern.structural.decorator.RateLimitExceededException;
+import com.smarthome.pattern.structural.proxy.RemoteDeviceUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -55,6 +59,34 @@ public class ApiExceptionHandler {
         return buildResponse(HttpStatus.CONFLICT, "CONFLICT", ex.getMessage());
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, Object>> handleConcurrentUpdate(OptimisticLockingFailureException ex) {
+        return buildResponse(HttpStatus.CONFLICT, "CONCURRENT_UPDATE",
+                "The resource was modified concurrently; retry the request");
+    }
+
+    @ExceptionHandler(RemoteDeviceUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> handleRemoteUnavailable(RemoteDeviceUnavailableException ex) {
+        ResponseEntity<Map<String, Object>> response =
+                buildResponse(HttpStatus.SERVICE_UNAVAILABLE, "DEVICE_UNAVAILABLE", ex.getMessage());
+        if (ex.getRetryAfterMillis() <= 0) {
+            return response;
+        }
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfterMillis() + 999) / 1000);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(response.getBody());
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleRateLimited(RateLimitExceededException ex) {
+        ResponseEntity<Map<String, Object>> response =
+                buildResponse(HttpStatus.TOO_MANY_REQUESTS, "RATE_LIMITED", ex.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (ex.getRetryAfterMillis() + 999) / 1000)))
+                .body(response.getBody());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, Object>> handleOther(Exception ex) {
         log.error("Unhandled exception", ex);
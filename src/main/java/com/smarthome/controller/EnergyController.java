@@ -0,0 +1,53 @@
+package com.smarthome.controller;
+
+import com.smarthome.domain.DeviceType;
+import com.smarthome.service.EnergyAccountant;
+import com.smarthome.service.SmartHomeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.Map;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/energy")
+@Tag(name = "Energy", description = "Energy used today, this month and in total, integrated from device on/off transitions")
+public class EnergyController {
+    private final SmartHomeService smartHomeService;
+
+    public EnergyController(SmartHomeService smartHomeService) {
+        this.smartHomeService = smartHomeService;
+    }
+
+    @Operation(summary = "Energy of the home", description = "kWh today, this month and in total, for the home and per room and device type")
+    @GetMapping
+    public EnergyAccountant.Summary summary() {
+        return smartHomeService.getEnergySummary();
+    }
+
+    @Operation(summary = "Energy of a device")
+    @GetMapping("/devices/{id}")
+    public EnergyAccountant.Reading device(@PathVariable String id) {
+        return smartHomeService.getDeviceEnergy(id);
+    }
+
+    @Operation(summary = "Energy of the devices in a room")
+    @GetMapping("/rooms/{room}")
+    public EnergyAccountant.Reading room(@PathVariable String room) {
+        return smartHomeService.getRoomEnergy(room);
+    }
+
+    @Operation(summary = "Energy of the devices of a type")
+    @GetMapping("/types/{type}")
+    public EnergyAccountant.Reading type(@PathVariable DeviceType type) {
+        return smartHomeService.getTypeEnergy(type);
+    }
+
+    @Operation(summary = "Energy accounting counters", description = "Metered devices, transitions seen and checkpoints written")
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return smartHomeService.getEnergyStats();
+    }
+}
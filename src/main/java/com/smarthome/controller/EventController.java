@@ -0,0 +1,36 @@
+package com.smarthome.controller;
+
+import com.smarthome.service.DeviceEventJournal;
+import com.smarthome.service.SmartHomeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.List;
+import java.util.Map;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/events")
+@Tag(name = "Events", description = "Device state changes, mode changes, commands and alerts from the append-only event journal")
+public class EventController {
+    private final SmartHomeService smartHomeService;
+
+    public EventController(SmartHomeService smartHomeService) {
+        this.smartHomeService = smartHomeService;
+    }
+
+    @Operation(summary = "Read journaled events", description = "Events in sequence order starting at 'from'")
+    @GetMapping
+    public List<DeviceEventJournal.Event> events(@RequestParam(defaultValue = "1") long from,
+                                                 @RequestParam(defaultValue = "1000") int limit) {
+        return smartHomeService.getEvents(from, limit);
+    }
+
+    @Operation(summary = "Event journal statistics", description = "Segments, sequence range, group-commit syncs and retention")
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return smartHomeService.getEventJournalStats();
+    }
+}
@@ -0,0 +1,76 @@
+package com.smarthome.controller;
+
+import com.smarthome.service.ExportService;
+import com.smarthome.service.SmartHomeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStream;
+
+@RestController
+@RequestMapping("/api/export")
+@Tag(name = "Export", description = "Streaming NDJSON or CSV exports of devices, rooms, scenes, rules and the event history")
+public class ExportController {
+    private final SmartHomeService smartHomeService;
+
+    public ExportController(SmartHomeService smartHomeService) {
+        this.smartHomeService = smartHomeService;
+    }
+
+    @Operation(summary = "Export devices", description = "One row per device; format is ndjson or csv")
+    @GetMapping("/devices")
+    public ResponseEntity<StreamingResponseBody> devices(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format f = ExportService.Format.parse(format);
+        return stream("devices", f, out -> smartHomeService.exportDevices(f, out));
+    }
+
+    @Operation(summary = "Export rooms", description = "One row per room with its device ids; CSV has one row per room device")
+    @GetMapping("/rooms")
+    public ResponseEntity<StreamingResponseBody> rooms(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format f = ExportService.Format.parse(format);
+        return stream("rooms", f, out -> smartHomeService.exportRooms(f, out));
+    }
+
+    @Operation(summary = "Export scenes", description = "One row per scene with its device states; CSV has one row per device state")
+    @GetMapping("/scenes")
+    public ResponseEntity<StreamingResponseBody> scenes(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format f = ExportService.Format.parse(format);
+        return stream("scenes", f, out -> smartHomeService.exportScenes(f, out));
+    }
+
+    @Operation(summary = "Export automation rules", description = "One row per rule; format is ndjson or csv")
+    @GetMapping("/rules")
+    public ResponseEntity<StreamingResponseBody> rules(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format f = ExportService.Format.parse(format);
+        return stream("rules", f, out -> smartHomeService.exportRules(f, out));
+    }
+
+    @Operation(summary = "Export event history", description = "Retained journal events with sequences from 'from' to 'to'")
+    @GetMapping("/events")
+    public ResponseEntity<StreamingResponseBody> events(@RequestParam(defaultValue = "ndjson") String format,
+                                                        @RequestParam(defaultValue = "1") long from,
+                                                        @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to) {
+        ExportService.Format f = ExportService.Format.parse(format);
+        return stream("events", f, out -> smartHomeService.exportEvents(f, from, to, out));
+    }
+
+    private interface Export {
+        void writeTo(OutputStream out);
+    }
+
+    /** The format is parsed before streaming starts, so a bad one is still a plain 400 */
+    private static ResponseEntity<StreamingResponseBody> stream(String name, ExportService.Format format, Export export) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "." + format.extension() + "\"")
+                .body(export::writeTo);
+    }
+}
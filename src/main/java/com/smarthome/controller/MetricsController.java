@@ -0,0 +1,86 @@
+package com.smarthome.controller;
+
+import com.smarthome.service.SmartHomeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.Map;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/metrics")
+@Tag(name = "Metrics", description = "Operational metrics recorded by the device decorators")
+public class MetricsController {
+    private final SmartHomeService smartHomeService;
+
+    public MetricsController(SmartHomeService smartHomeService) {
+        this.smartHomeService = smartHomeService;
+    }
+
+    @Operation(summary = "Device operation latency", description = "p50/p90/p99/p999 latency per device type and operation, in nanoseconds")
+    @GetMapping("/devices")
+    public Map<String, Object> deviceLatency() {
+        return smartHomeService.getLatencyMetrics();
+    }
+
+    @Operation(summary = "Command rate limits", description = "Allowed, queued, rejected and coalesced device commands")
+    @GetMapping("/rate-limits")
+    public Map<String, Object> rateLimits() {
+        return smartHomeService.getRateLimitStats();
+    }
+
+    @Operation(summary = "Idempotent replays", description = "Requests carrying an Idempotency-Key: executed, replayed duplicates and key conflicts")
+    @GetMapping("/idempotency")
+    public Map<String, Object> idempotency() {
+        return smartHomeService.getIdempotencyStats();
+    }
+
+    @Operation(summary = "Device mailboxes", description = "Queued mutations per device mailbox, deepest first, with peak depth and throughput")
+    @GetMapping("/mailboxes")
+    public Map<String, Object> mailboxes() {
+        return smartHomeService.getMailboxStats();
+    }
+
+    @Operation(summary = "Optimistic lock retries", description = "Device writes that hit a concurrent update, retried and given up")
+    @GetMapping("/optimistic-retry")
+    public Map<String, Object> optimisticRetry() {
+        return smartHomeService.getOptimisticRetryStats();
+    }
+
+    @Operation(summary = "Runtime device hydration", description = "Devices loaded into the runtime registry at startup, throughput, and devices built lazily on first access")
+    @GetMapping("/hydration")
+    public Map<String, Object> hydration() {
+        return smartHomeService.getHydrationStats();
+    }
+
+    @Operation(summary = "Runtime state recovery", description = "Last runtime snapshot, and how the last startup restored it and replayed the event journal")
+    @GetMapping("/recovery")
+    public Map<String, Object> recovery() {
+        return smartHomeService.getRecoveryStats();
+    }
+
+    @Operation(summary = "Streaming exports", description = "Exports started, rows written and exports cut short")
+    @GetMapping("/export")
+    public Map<String, Object> export() {
+        return smartHomeService.getExportStats();
+    }
+
+    @Operation(summary = "Bulk device imports", description = "Imports run, devices inserted and rejected, JDBC batches and peak devices per second")
+    @GetMapping("/import")
+    public Map<String, Object> deviceImport() {
+        return smartHomeService.getImportStats();
+    }
+
+    @Operation(summary = "Template provisioning", description = "Requests, devices provisioned, devices still sharing their template's settings and peak devices per second")
+    @GetMapping("/provisioning")
+    public Map<String, Object> provisioning() {
+        return smartHomeService.getProvisioningStats();
+    }
+
+    @PostMapping("/devices/reset")
+    public Map<String, Object> resetDeviceLatency() {
+        return smartHomeService.resetLatencyMetrics();
+    }
+}
@@ -1,37 +1,50 @@
 package com.smarthome.controller;
 
+import com.smarthome.config.ClientIdentityResolver;
 import com.smarthome.domain.DeviceType;
 import com.smarthome.domain.HomeMode;
 import com.smarthome.pattern.creational.builder.AutomationRule;
+import com.smarthome.service.DeviceImportService;
+import com.smarthome.service.ExportService;
+import com.smarthome.service.ProvisioningService;
 import com.smarthome.service.SmartHomeService;
 import com.smarthome.web.viewmodel.AutomationRuleView;
 import com.smarthome.web.viewmodel.DeviceView;
 import com.smarthome.web.viewmodel.RoomView;
 import com.smarthome.web.viewmodel.SceneView;
 import com.smarthome.web.viewmodel.StatusView;
+import java.io.IOException;
 import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 @RestController
 @RequestMapping("/api")
 @Tag(name = "Smart Home", description = "Smart Home automation API demonstrating all 23 GoF Design Patterns")
 public class SmartHomeController {
+    private static final String ANONYMOUS_USER = "anonymous";
+
     private final SmartHomeService smartHomeService;
+    private final ClientIdentityResolver clientIdentity;
 
-    public SmartHomeController(SmartHomeService smartHomeService) {
+    public SmartHomeController(SmartHomeService smartHomeService, ClientIdentityResolver clientIdentity) {
         this.smartHomeService = smartHomeService;
+        this.clientIdentity = clientIdentity;
     }
 
     @Operation(summary = "System status", description = "Returns system mode, active device count")
@@ -51,15 +64,38 @@ public class SmartHomeController {
         return smartHomeService.getDevices();
     }
 
+    @Operation(summary = "Bulk device import",
+            description = "NDJSON objects or CSV rows {type, name, location, on, ratedPowerWatts, ecosystem}; format is ndjson or csv. "
+                    + "Invalid rows are reported and skipped, the rest are inserted in batches")
+    @PostMapping("/devices/import")
+    public DeviceImportService.ImportResult importDevices(@RequestParam(defaultValue = "ndjson") String format,
+                                                          HttpServletRequest request) throws IOException {
+        return smartHomeService.importDevices(ExportService.Format.parse(format), request.getInputStream());
+    }
+
     @GetMapping("/devices/{id}")
     public DeviceView device(@PathVariable String id) {
         return smartHomeService.getDevice(id);
     }
 
+    @Operation(summary = "Provision devices from a template",
+            description = "Clones a prototype template into 'count' devices named and located by patterns with an {n} placeholder; "
+                    + "'overrides' replace the name, location or settings of single devices by their n")
+    @PostMapping("/devices/provision")
+    public ProvisioningService.Result provisionDevices(@RequestBody ProvisioningService.Request request) {
+        return smartHomeService.provisionDevices(request);
+    }
+
+    @Operation(summary = "Provisioned configuration", description = "Template and settings a device was provisioned with")
+    @GetMapping("/devices/{id}/configuration")
+    public ProvisioningService.Configuration deviceConfiguration(@PathVariable String id) {
+        return smartHomeService.getDeviceConfiguration(id);
+    }
+
     @PostMapping("/devices/{id}/control")
-    public DeviceView controlDevice(@PathVariable String id, @RequestParam String action) {
+    public DeviceView controlDevice(@PathVariable String id, @RequestParam String action, HttpServletRequest request) {
         boolean turnOn = "on".equalsIgnoreCase(action) || "true".equalsIgnoreCase(action);
-        return smartHomeService.controlDevice(id, turnOn);
+        return smartHomeService.requestControl(id, turnOn, clientIdentity.resolve(request));
     }
 
     @GetMapping("/patterns")
@@ -134,6 +170,12 @@ public class SmartHomeController {
         return smartHomeService.decoratorWrap(deviceId, decorators);
     }
 
+    @Operation(summary = "Cache statistics", description = "Hit ratio, evictions and load latency of the shared caches")
+    @GetMapping("/patterns/decorator/caches")
+    public Map<String, Object> decoratorCaches() {
+        return smartHomeService.decoratorCaches();
+    }
+
     @PostMapping("/patterns/facade/scene/{name}")
     public Map<String, Object> facadeScene(@PathVariable String name) {
         return smartHomeService.activateScene(name);
@@ -147,6 +189,28 @@ public class SmartHomeController {
         return smartHomeService.proxyRemote(name, address);
     }
 
+    @Operation(summary = "Async remote proxy", description = "Drives one or many remote proxies through the non-blocking API; the request thread is released while devices answer")
+    @PostMapping("/patterns/proxy/remote-async")
+    public CompletableFuture<Map<String, Object>> proxyRemoteAsync(
+            @RequestParam String name,
+            @RequestParam String address,
+            @RequestParam(required = false) Integer count
+    ) {
+        return smartHomeService.proxyRemoteAsync(name, address, count);
+    }
+
+    @Operation(summary = "Remote status cache", description = "Hit, miss, stale and coalesced counts of the shared remote-device status cache")
+    @GetMapping("/patterns/proxy/cache")
+    public Map<String, Object> proxyCacheStats() {
+        return smartHomeService.proxyCacheStats();
+    }
+
+    @Operation(summary = "Remote device circuits", description = "Circuit breaker state, in-flight calls and rejections per remote device")
+    @GetMapping("/patterns/proxy/circuits")
+    public Map<String, Object> proxyCircuits() {
+        return smartHomeService.proxyCircuits();
+    }
+
     @PostMapping("/patterns/chain/alert")
     public Map<String, Object> chainAlert(
             @RequestParam String deviceId,
@@ -159,19 +223,65 @@ public class SmartHomeController {
     @PostMapping("/patterns/command/execute")
     public Map<String, Object> commandExecute(
             @RequestParam String deviceId,
-            @RequestParam String command
+            @RequestParam String command,
+            @RequestHeader(value = "X-User-Id", defaultValue = ANONYMOUS_USER) String userId
     ) {
-        return smartHomeService.commandExecute(deviceId, command);
+        return smartHomeService.commandExecute(userId, deviceId, command);
     }
 
     @PostMapping("/patterns/command/undo")
-    public Map<String, Object> commandUndo() {
-        return smartHomeService.commandUndo();
+    public Map<String, Object> commandUndo(@RequestHeader(value = "X-User-Id", defaultValue = ANONYMOUS_USER) String userId) {
+        return smartHomeService.commandUndo(userId);
     }
 
     @PostMapping("/patterns/command/redo")
-    public Map<String, Object> commandRedo() {
-        return smartHomeService.commandRedo();
+    public Map<String, Object> commandRedo(@RequestHeader(value = "X-User-Id", defaultValue = ANONYMOUS_USER) String userId) {
+        return smartHomeService.commandRedo(userId);
+    }
+
+    @Operation(summary = "Macro command", description = "Runs deviceId:COMMAND steps as one journaled entry that a single undo reverts")
+    @PostMapping("/patterns/command/macro")
+    public Map<String, Object> commandMacro(
+            @RequestParam String name,
+            @RequestParam List<String> steps,
+            @RequestHeader(value = "X-User-Id", defaultValue = ANONYMOUS_USER) String userId
+    ) {
+        return smartHomeService.commandMacro(userId, name, steps);
+    }
+
+    @Operation(summary = "Command history", description = "The user's undoable commands, newest first, optionally for one device")
+    @GetMapping("/patterns/command/history")
+    public Map<String, Object> commandHistory(
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = "X-User-Id", defaultValue = ANONYMOUS_USER) String userId
+    ) {
+        return smartHomeService.commandHistory(userId, deviceId, limit);
+    }
+
+    @Operation(summary = "Device command journal", description = "Every journaled command, undo and redo on one device by any user, newest first")
+    @GetMapping("/patterns/command/devices/{deviceId}/history")
+    public Map<String, Object> commandDeviceHistory(
+            @PathVariable String deviceId,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return smartHomeService.commandDeviceHistory(deviceId, limit);
+    }
+
+    @Operation(summary = "Batch commands", description = "Queues commands for one device on the command pipeline; superseded commands are coalesced and results return once persisted")
+    @PostMapping("/patterns/command/batch")
+    public CompletableFuture<Map<String, Object>> commandBatch(
+            @RequestParam String deviceId,
+            @RequestParam List<String> commands,
+            @RequestHeader(value = "X-User-Id", defaultValue = ANONYMOUS_USER) String userId
+    ) {
+        return smartHomeService.commandBatch(userId, deviceId, commands);
+    }
+
+    @Operation(summary = "Command pipeline stats", description = "Submitted, executed, coalesced and flushed command counts")
+    @GetMapping("/patterns/command/pipeline")
+    public Map<String, Object> commandPipelineStats() {
+        return smartHomeService.commandPipelineStats();
     }
 
     @PostMapping("/patterns/facade/activate")
@@ -346,6 +456,17 @@ public class SmartHomeController {
         return smartHomeService.compositeAction(group, action);
     }
 
+    @Operation(summary = "Composite fan-out", description = "Switches every device of a group concurrently and reports the outcome per device")
+    @PostMapping("/patterns/composite/fanout")
+    public Map<String, Object> compositeFanOut(
+            @RequestParam String target,
+            @RequestParam(required = false) String action,
+            @RequestParam(required = false) Integer maxConcurrency,
+            @RequestParam(required = false) Long deadlineMs
+    ) {
+        return smartHomeService.compositeFanOut(target, action, maxConcurrency, deadlineMs);
+    }
+
     @PostMapping("/patterns/prototype/clone")
     public Map<String, Object> prototypeClone(
             @RequestParam(required = false) String template,
@@ -355,6 +476,11 @@ public class SmartHomeController {
         return smartHomeService.prototypeClone(effectiveTemplate);
     }
 
+    @GetMapping("/patterns/prototype/stats")
+    public Map<String, Object> prototypeStats(@RequestParam(required = false) Integer instances) {
+        return smartHomeService.prototypeStats(instances);
+    }
+
     @GetMapping("/rooms")
     public List<RoomView> rooms() {
         return smartHomeService.getRoomViews();
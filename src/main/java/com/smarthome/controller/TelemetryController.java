@@ -0,0 +1,120 @@
+package com.smarthome.controller;
+
+import com.smarthome.domain.DeviceType;
+import com.smarthome.domain.RollupTier;
+import com.smarthome.service.SmartHomeService;
+import com.smarthome.service.TelemetryRollupService;
+import com.smarthome.service.TelemetryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/telemetry")
+@Tag(name = "Telemetry", description = "Batched device samples kept in per-series ring buffers and downsampled rollups")
+public class TelemetryController {
+    private static final int DEFAULT_LIMIT = 1000;
+
+    private final SmartHomeService smartHomeService;
+
+    public TelemetryController(SmartHomeService smartHomeService) {
+        this.smartHomeService = smartHomeService;
+    }
+
+    @Operation(summary = "Ingest samples",
+            description = "NDJSON objects {deviceId, metric, ts, value} or a JSON array of [deviceId, metric, ts, value] rows; ts is epoch millis, null for now")
+    @PostMapping
+    public TelemetryService.IngestResult ingest(HttpServletRequest request) throws IOException {
+        return smartHomeService.ingestTelemetry(request.getInputStream());
+    }
+
+    @Operation(summary = "Samples of a device",
+            description = "Newest samples within [from, to), per metric; with step (ms) the coarsest rollup tier no wider than step is returned instead")
+    @GetMapping("/devices/{id}")
+    public Map<String, Object> device(@PathVariable String id,
+                                      @RequestParam(required = false) String metric,
+                                      @RequestParam(required = false) Long from,
+                                      @RequestParam(required = false) Long to,
+                                      @RequestParam(required = false) Integer limit,
+                                      @RequestParam(required = false) Long step) {
+        RollupTier tier = tier(step);
+        if (tier == null) {
+            return response("deviceId", id, smartHomeService.getDeviceTelemetry(id, metric, lower(from), upper(to), limit(limit)));
+        }
+        return rollupResponse("deviceId", id, tier, smartHomeService.getDeviceTelemetryRollups(id, metric, tier, lower(from), upper(to), limit(limit)));
+    }
+
+    @Operation(summary = "Samples of the devices in a room")
+    @GetMapping("/rooms/{room}")
+    public Map<String, Object> room(@PathVariable String room,
+                                    @RequestParam(required = false) String metric,
+                                    @RequestParam(required = false) Long from,
+                                    @RequestParam(required = false) Long to,
+                                    @RequestParam(required = false) Integer limit,
+                                    @RequestParam(required = false) Long step) {
+        RollupTier tier = tier(step);
+        if (tier == null) {
+            return response("room", room, smartHomeService.getRoomTelemetry(room, metric, lower(from), upper(to), limit(limit)));
+        }
+        return rollupResponse("room", room, tier, smartHomeService.getRoomTelemetryRollups(room, metric, tier, lower(from), upper(to), limit(limit)));
+    }
+
+    @Operation(summary = "Samples of the devices of a type")
+    @GetMapping("/types/{type}")
+    public Map<String, Object> type(@PathVariable DeviceType type,
+                                    @RequestParam(required = false) String metric,
+                                    @RequestParam(required = false) Long from,
+                                    @RequestParam(required = false) Long to,
+                                    @RequestParam(required = false) Integer limit,
+                                    @RequestParam(required = false) Long step) {
+        RollupTier tier = tier(step);
+        if (tier == null) {
+            return response("type", type, smartHomeService.getTypeTelemetry(type, metric, lower(from), upper(to), limit(limit)));
+        }
+        return rollupResponse("type", type, tier, smartHomeService.getTypeTelemetryRollups(type, metric, tier, lower(from), upper(to), limit(limit)));
+    }
+
+    @Operation(summary = "Telemetry counters", description = "Series held, samples accepted and rejected, peak ingest rate")
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return smartHomeService.getTelemetryStats();
+    }
+
+    private static Map<String, Object> response(String key, Object value, List<TelemetryService.Series> series) {
+        return Map.of(key, value, "resolution", "RAW", "seriesCount", series.size(), "series", series);
+    }
+
+    private static Map<String, Object> rollupResponse(String key, Object value, RollupTier tier,
+                                                      List<TelemetryRollupService.BucketSeries> series) {
+        return Map.of(key, value, "resolution", tier, "seriesCount", series.size(), "series", series);
+    }
+
+    private static RollupTier tier(Long step) {
+        if (step == null) return null;
+        if (step <= 0) throw new IllegalArgumentException("step must be positive");
+        return RollupTier.coarsestFor(step);
+    }
+
+    private static long lower(Long from) {
+        return from == null ? Long.MIN_VALUE : from;
+    }
+
+    private static long upper(Long to) {
+        return to == null ? Long.MAX_VALUE : to;
+    }
+
+    private static int limit(Integer limit) {
+        if (limit == null) return DEFAULT_LIMIT;
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        return limit;
+    }
+}
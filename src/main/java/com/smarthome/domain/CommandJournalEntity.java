@@ -0,0 +1,104 @@
+package com.smarthome.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Command Journal Entity - One appended row of the command log: a record, undo
+ * or redo of one step of a journaled entry. Rows are never updated.
+ */
+@Entity
+@Table(name = "command_log", indexes = {
+        @Index(name = "idx_command_log_user", columnList = "user_id, id"),
+        @Index(name = "idx_command_log_device", columnList = "device_id, id"),
+        @Index(name = "idx_command_log_sequence", columnList = "sequence_no, id")
+})
+public class CommandJournalEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sequence_no", nullable = false)
+    private Long sequence;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(nullable = false, length = 8)
+    private String action; // RECORD, UNDO or REDO
+
+    @Column(nullable = false)
+    private String label;
+
+    @Column(name = "step_no", nullable = false)
+    private Integer stepNo;
+
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+
+    @Column(nullable = false)
+    private String command;
+
+    @Column(nullable = false)
+    private String inverse;
+
+    @Column(name = "logged_at", nullable = false)
+    private Instant loggedAt;
+
+    public CommandJournalEntity() {}
+
+    public CommandJournalEntity(Long sequence, String userId, String action, String label, Integer stepNo,
+                                String deviceId, String command, String inverse, Instant loggedAt) {
+        this.sequence = sequence;
+        this.userId = userId;
+        this.action = action;
+        this.label = label;
+        this.stepNo = stepNo;
+        this.deviceId = deviceId;
+        this.command = command;
+        this.inverse = inverse;
+        this.loggedAt = loggedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Integer getStepNo() {
+        return stepNo;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getInverse() {
+        return inverse;
+    }
+
+    public Instant getLoggedAt() {
+        return loggedAt;
+    }
+}
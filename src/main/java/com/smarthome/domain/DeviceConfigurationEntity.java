@@ -0,0 +1,60 @@
+package com.smarthome.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Device Configuration Entity - The settings a device was provisioned with and the template they came from
+ */
+@Entity
+@Table(name = "device_configurations")
+public class DeviceConfigurationEntity {
+
+    @Id
+    @Column(name = "device_id")
+    private String deviceId;
+
+    @Column(nullable = false)
+    private String template;
+
+    @Column(length = 2000)
+    private String settings; // JSON object
+
+    @Column(length = 2000)
+    private String schedules; // JSON object of event name -> cron expression
+
+    @Column(name = "provisioned_at")
+    private Instant provisionedAt;
+
+    public DeviceConfigurationEntity() {}
+
+    public DeviceConfigurationEntity(String deviceId, String template, String settings, String schedules,
+                                     Instant provisionedAt) {
+        this.deviceId = deviceId;
+        this.template = template;
+        this.settings = settings;
+        this.schedules = schedules;
+        this.provisionedAt = provisionedAt;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public String getSettings() {
+        return settings;
+    }
+
+    public String getSchedules() {
+        return schedules;
+    }
+
+    public Instant getProvisionedAt() {
+        return provisionedAt;
+    }
+}
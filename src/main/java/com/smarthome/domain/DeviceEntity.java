@@ -2,12 +2,18 @@ package com.smarthome.domain;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.EnumType;
+import org.hibernate.annotations.ColumnDefault;
 
 /**
  * Base Device Entity - Represents a smart device in the home
+ *
+ * Location and ecosystem repeat across many devices, so they are taken from
+ * {@link StringPool} whether set in code or loaded from a row.
  */
 @Entity
 @Table(name = "devices")
@@ -28,6 +34,14 @@ public class DeviceEntity {
 
     private String ecosystem;
 
+    /**
+     * Optimistic lock: a write based on a stale read fails instead of overwriting.
+     * Nullable with a default, so adding the column to a populated table backfills 0.
+     */
+    @Version
+    @ColumnDefault("0")
+    private Long version;
+
     public DeviceEntity() {}
 
     public DeviceEntity(String id,
@@ -40,10 +54,16 @@ public class DeviceEntity {
         this.id = id;
         this.name = name;
         this.type = type;
-        this.location = location;
+        this.location = StringPool.intern(location);
         this.isOn = isOn;
         this.ratedPowerWatts = ratedPowerWatts;
-        this.ecosystem = ecosystem;
+        this.ecosystem = StringPool.intern(ecosystem);
+    }
+
+    @PostLoad
+    void internSharedValues() {
+        location = StringPool.intern(location);
+        ecosystem = StringPool.intern(ecosystem);
     }
 
     public String getId() {
@@ -75,7 +95,7 @@ public class DeviceEntity {
     }
 
     public void setLocation(String location) {
-        this.location = location;
+        this.location = StringPool.intern(location);
     }
 
     public boolean isOn() {
@@ -99,7 +119,11 @@ public class DeviceEntity {
     }
 
     public void setEcosystem(String ecosystem) {
-        this.ecosystem = ecosystem;
+        this.ecosystem = StringPool.intern(ecosystem);
+    }
+
+    public long getVersion() {
+        return version == null ? 0 : version;
     }
 
     public String getInfo() {
@@ -0,0 +1,75 @@
+package com.smarthome.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Energy Checkpoint Entity - The energy counters of one scope (home, room, type or device) at a point in time
+ */
+@Entity
+@Table(name = "energy_checkpoint")
+public class EnergyCheckpointEntity {
+
+    @Id
+    private String scope; // "home", "room:<name>", "type:<TYPE>" or "device:<id>"
+
+    @Column(name = "day_start", nullable = false)
+    private long dayStart; // epoch millis
+
+    @Column(name = "day_wh")
+    private double dayWh;
+
+    @Column(name = "month_start", nullable = false)
+    private long monthStart; // epoch millis
+
+    @Column(name = "month_wh")
+    private double monthWh;
+
+    @Column(name = "lifetime_wh")
+    private double lifetimeWh;
+
+    @Column(name = "checkpoint_at")
+    private Instant checkpointAt;
+
+    public EnergyCheckpointEntity() {}
+
+    public EnergyCheckpointEntity(String scope, long dayStart, double dayWh, long monthStart, double monthWh,
+                                  double lifetimeWh, Instant checkpointAt) {
+        this.scope = scope;
+        this.dayStart = dayStart;
+        this.dayWh = dayWh;
+        this.monthStart = monthStart;
+        this.monthWh = monthWh;
+        this.lifetimeWh = lifetimeWh;
+        this.checkpointAt = checkpointAt;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public long getDayStart() {
+        return dayStart;
+    }
+
+    public double getDayWh() {
+        return dayWh;
+    }
+
+    public long getMonthStart() {
+        return monthStart;
+    }
+
+    public double getMonthWh() {
+        return monthWh;
+    }
+
+    public double getLifetimeWh() {
+        return lifetimeWh;
+    }
+
+    public Instant getCheckpointAt() {
+        return checkpointAt;
+    }
+}
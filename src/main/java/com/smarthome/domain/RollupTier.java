@@ -0,0 +1,38 @@
+package com.smarthome.domain;
+
+import java.time.Duration;
+
+/**
+ * Downsampling resolutions of device telemetry, finest first
+ */
+public enum RollupTier {
+    MINUTE(Duration.ofMinutes(1)),
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1));
+
+    private final long widthMillis;
+
+    RollupTier(Duration width) {
+        this.widthMillis = width.toMillis();
+    }
+
+    public long widthMillis() {
+        return widthMillis;
+    }
+
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, widthMillis) * widthMillis;
+    }
+
+    /**
+     * The coarsest tier whose buckets are no wider than {@code stepMillis},
+     * or null when only raw samples are fine enough
+     */
+    public static RollupTier coarsestFor(long stepMillis) {
+        RollupTier chosen = null;
+        for (RollupTier tier : values()) {
+            if (tier.widthMillis <= stepMillis) chosen = tier;
+        }
+        return chosen;
+    }
+}
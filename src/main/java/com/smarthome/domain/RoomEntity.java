@@ -7,6 +7,9 @@ import java.util.List;
 
 /**
  * Room Entity - Represents a room in the smart home
+ *
+ * Name, floor and room type come from {@link StringPool}; a room's name is
+ * usually also the location of each of its devices.
  */
 @Entity
 @Table(name = "rooms")
@@ -33,12 +36,19 @@ public class RoomEntity {
 
     public RoomEntity(Long id, String name, String floor, String roomType, List<DeviceEntity> devices) {
         this.id = id;
-        this.name = name;
-        this.floor = floor;
-        this.roomType = roomType;
+        this.name = StringPool.intern(name);
+        this.floor = StringPool.intern(floor);
+        this.roomType = StringPool.intern(roomType);
         this.devices = devices == null ? new ArrayList<>() : devices;
     }
 
+    @PostLoad
+    void internSharedValues() {
+        name = StringPool.intern(name);
+        floor = StringPool.intern(floor);
+        roomType = StringPool.intern(roomType);
+    }
+
     public Long getId() {
         return id;
     }
@@ -52,7 +62,7 @@ public class RoomEntity {
     }
 
     public void setName(String name) {
-        this.name = name;
+        this.name = StringPool.intern(name);
     }
 
     public String getFloor() {
@@ -60,7 +70,7 @@ public class RoomEntity {
     }
 
     public void setFloor(String floor) {
-        this.floor = floor;
+        this.floor = StringPool.intern(floor);
     }
 
     public String getRoomType() {
@@ -68,7 +78,7 @@ public class RoomEntity {
     }
 
     public void setRoomType(String roomType) {
-        this.roomType = roomType;
+        this.roomType = StringPool.intern(roomType);
     }
 
     public List<DeviceEntity> getDevices() {
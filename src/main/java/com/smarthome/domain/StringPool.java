@@ -0,0 +1,50 @@
+package com.smarthome.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flyweight pool for the low-cardinality strings that every device and room
+ * row repeats: locations, ecosystems, room names, floors and room types.
+ *
+ * A thousand devices in "Kitchen" would otherwise each hold their own copy of
+ * the string the driver handed back; pooled, they share one. Lookups are
+ * lock-free. The pool is capped, so a column that turns out to be unique per
+ * row cannot grow it without bound; past the cap strings are returned as they
+ * are. Names and ids are unique per row and are not pooled.
+ */
+public final class StringPool {
+
+    static final int MAX_ENTRIES = 65_536;
+
+    private static final ConcurrentMap<String, String> pool = new ConcurrentHashMap<>();
+    private static final LongAdder lookups = new LongAdder();
+    private static final LongAdder hits = new LongAdder();
+
+    private StringPool() {}
+
+    /**
+     * The pooled string equal to {@code value}; null stays null
+     */
+    public static String intern(String value) {
+        if (value == null) return null;
+        lookups.increment();
+        String pooled = pool.get(value);
+        if (pooled != null) {
+            hits.increment();
+            return pooled;
+        }
+        if (pool.size() >= MAX_ENTRIES) return value;
+        pooled = pool.putIfAbsent(value, value);
+        if (pooled == null) return value;
+        hits.increment();
+        return pooled;
+    }
+
+    public static Stats stats() {
+        return new Stats(pool.size(), lookups.sum(), hits.sum());
+    }
+
+    public record Stats(int pooled, long lookups, long hits) {}
+}
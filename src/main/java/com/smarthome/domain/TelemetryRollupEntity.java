@@ -0,0 +1,105 @@
+package com.smarthome.domain;
+
+import jakarta.persistence.*;
+
+/**
+ * Telemetry Rollup Entity - One closed min/max/sum/count bucket of a device metric.
+ *
+ * Rows are grouped by (tier, partition_day): retention drops whole days of a
+ * tier with one ranged delete, which maps directly onto range partitions on
+ * databases that support them.
+ */
+@Entity
+@Table(name = "telemetry_rollup", indexes = {
+        @Index(name = "idx_telemetry_rollup_partition", columnList = "tier, partition_day"),
+        @Index(name = "idx_telemetry_rollup_series", columnList = "device_id, metric, tier, bucket_start")
+})
+public class TelemetryRollupEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private RollupTier tier;
+
+    @Column(name = "partition_day", nullable = false)
+    private long partitionDay; // bucket_start in epoch days
+
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+
+    @Column(nullable = false)
+    private String metric;
+
+    @Column(name = "bucket_start", nullable = false)
+    private long bucketStart; // epoch millis
+
+    @Column(name = "min_value")
+    private double min;
+
+    @Column(name = "max_value")
+    private double max;
+
+    @Column(name = "sum_value")
+    private double sum;
+
+    @Column(name = "sample_count")
+    private long count;
+
+    public TelemetryRollupEntity() {}
+
+    public TelemetryRollupEntity(RollupTier tier, String deviceId, String metric, long bucketStart,
+                                 double min, double max, double sum, long count) {
+        this.tier = tier;
+        this.partitionDay = Math.floorDiv(bucketStart, 86_400_000L);
+        this.deviceId = deviceId;
+        this.metric = metric;
+        this.bucketStart = bucketStart;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public RollupTier getTier() {
+        return tier;
+    }
+
+    public long getPartitionDay() {
+        return partitionDay;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -6,9 +6,10 @@ import com.smarthome.pattern.creational.factory.SmartThermostat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * COMMAND PATTERN
@@ -24,6 +25,14 @@ public interface Command {
     void execute();
     void undo();
     String getDescription();
+
+    /**
+     * Commands with the same key on the same device overwrite each other's effect,
+     * so a queued one may be dropped when a newer one arrives; null never coalesces
+     */
+    default String coalesceKey() {
+        return null;
+    }
 }
 
 /**
@@ -57,6 +66,11 @@ class TurnOnCommand implements Command {
     public String getDescription() {
         return "Turn ON " + device.getDeviceInfo();
     }
+
+    @Override
+    public String coalesceKey() {
+        return "power";
+    }
 }
 
 /**
@@ -90,6 +104,11 @@ class TurnOffCommand implements Command {
     public String getDescription() {
         return "Turn OFF " + device.getDeviceInfo();
     }
+
+    @Override
+    public String coalesceKey() {
+        return "power";
+    }
 }
 
 /**
@@ -123,6 +142,11 @@ class SetBrightnessCommand implements Command {
     public String getDescription() {
         return "Set brightness to " + newBrightness + "%";
     }
+
+    @Override
+    public String coalesceKey() {
+        return "brightness";
+    }
 }
 
 /**
@@ -156,6 +180,11 @@ class SetTemperatureCommand implements Command {
     public String getDescription() {
         return "Set temperature to " + newTemperature + "°C";
     }
+
+    @Override
+    public String coalesceKey() {
+        return "temperature";
+    }
 }
 
 /**
@@ -202,13 +231,26 @@ class MacroCommand implements Command {
  */
 class CommandInvoker {
     private static final Logger log = LoggerFactory.getLogger(CommandInvoker.class);
-    private final Stack<Command> history = new Stack<>();
-    private final Stack<Command> redoStack = new Stack<>();
+    private static final int DEFAULT_MAX_HISTORY = 100;
+    private final int maxHistory;
+    private final Deque<Command> history = new ArrayDeque<>();
+    private final Deque<Command> redoStack = new ArrayDeque<>();
     private final List<Command> commandQueue = new ArrayList<>();
 
+    public CommandInvoker() {
+        this(DEFAULT_MAX_HISTORY);
+    }
+
+    /**
+     * @param maxHistory undo depth; the oldest command is forgotten beyond it
+     */
+    public CommandInvoker(int maxHistory) {
+        this.maxHistory = maxHistory;
+    }
+
     public void executeCommand(Command command) {
         command.execute();
-        history.push(command);
+        pushHistory(command);
         redoStack.clear();
         log.debug("Command added to history. History size: {}", history.size());
     }
@@ -231,7 +273,7 @@ class CommandInvoker {
             log.warn("Nothing to undo");
             return;
         }
-        Command command = history.pop();
+        Command command = history.pollLast();
         command.undo();
         redoStack.push(command);
         log.info("Undone: {}", command.getDescription());
@@ -244,10 +286,17 @@ class CommandInvoker {
         }
         Command command = redoStack.pop();
         command.execute();
-        history.push(command);
+        pushHistory(command);
         log.info("Redone: {}", command.getDescription());
     }
 
+    private void pushHistory(Command command) {
+        history.addLast(command);
+        if (history.size() > maxHistory) {
+            history.pollFirst();
+        }
+    }
+
     public int getHistorySize() {
         return history.size();
     }
@@ -36,7 +36,24 @@ public final class CommandDemo {
         );
     }
 
-    private static Command toCommand(Device device, String command) {
+    /**
+     * The command that restores what {@code command} is about to change on {@code device}
+     */
+    public static String inverseOf(Device device, String command) {
+        String normalized = command == null ? "ON" : command.trim().toUpperCase(Locale.ROOT);
+        if (normalized.startsWith("BRIGHTNESS:") && device instanceof SmartLight light) {
+            return "BRIGHTNESS:" + light.getBrightness();
+        }
+        if (normalized.startsWith("TEMPERATURE:") && device instanceof SmartThermostat thermostat) {
+            return "TEMPERATURE:" + thermostat.getTargetTemperature();
+        }
+        return device.isOn() ? "ON" : "OFF";
+    }
+
+    /**
+     * Parse ON, OFF, BRIGHTNESS:n or TEMPERATURE:n into a command for {@code device}
+     */
+    public static Command toCommand(Device device, String command) {
         String normalized = command == null ? "ON" : command.trim().toUpperCase(Locale.ROOT);
         if (normalized.startsWith("BRIGHTNESS:") && device instanceof SmartLight light) {
             int brightness = Integer.parseInt(normalized.substring("BRIGHTNESS:".length()));
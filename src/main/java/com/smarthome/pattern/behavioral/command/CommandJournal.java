@@ -0,0 +1,289 @@
+package com.smarthome.pattern.behavioral.command;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Undo/redo history of executed commands, kept per user.
+ *
+ * Every record, undo and redo is appended to the {@link Store} before memory
+ * changes, so the store is the complete history and rows are never rewritten.
+ * In memory each user has an undo and a redo deque of at most {@code window}
+ * entries, a cache of the newest part of the history: undo and redo move one
+ * entry between them in O(1), entries falling off the undo window are simply
+ * dropped, and once undo has consumed the window the next entry is read back
+ * from the store. Users beyond {@code maxUsers} are evicted least recently used
+ * first, which only drops their cache. Sequence numbers continue from the
+ * highest one in the store, so they stay unique across restarts.
+ *
+ * Entries are stored as command text ("ON", "BRIGHTNESS:40") with the inverse
+ * captured when they ran, so they survive without the runtime device. A macro
+ * is one entry with several steps, undone as a group.
+ */
+public class CommandJournal {
+    private static final Logger log = LoggerFactory.getLogger(CommandJournal.class);
+
+    /** Longest label, device id or command text the store keeps */
+    public static final int MAX_TEXT = 255;
+
+    public record Step(String deviceId, String command, String inverse) {}
+
+    public record Entry(long sequence, String userId, String label, List<Step> steps, Instant executedAt) {
+        public Entry {
+            steps = List.copyOf(steps);
+        }
+
+        public boolean touches(String deviceId) {
+            return steps.stream().anyMatch(s -> s.deviceId().equals(deviceId));
+        }
+    }
+
+    public enum Action { RECORD, UNDO, REDO }
+
+    /**
+     * One appended action on one step of an entry, as the device's journal shows it
+     */
+    public record Logged(long sequence, String userId, Action action, String label, Step step, Instant at) {}
+
+    public record Stats(int users, int inMemoryEntries, long recorded, long undone, long redone, long spilled, long restored) {}
+
+    /**
+     * Append-only log behind the in-memory windows
+     */
+    public interface Store {
+        /** Append one action on an entry; earlier rows are never changed */
+        void append(Entry entry, Action action);
+
+        /** The user's undo stack as the log has it (recorded or redone, not undone since), newest first */
+        List<Entry> stack(String userId, int limit);
+
+        /** Newest first: every action on a step for the device, across users */
+        List<Logged> device(String deviceId, int limit);
+
+        /** Highest sequence ever appended, 0 for an empty log */
+        long lastSequence();
+    }
+
+    private static final class History {
+        final ArrayDeque<Entry> undo = new ArrayDeque<>();
+        final ArrayDeque<Entry> redo = new ArrayDeque<>();
+        boolean evicted;
+    }
+
+    private final int window;
+    private final int maxUsers;
+    private final Store store;
+    private final AtomicLong sequence;
+    private final LinkedHashMap<String, History> users = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong undone = new AtomicLong();
+    private final AtomicLong redone = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong restored = new AtomicLong();
+
+    /**
+     * @param window   undo (and redo) entries kept in memory per user
+     * @param maxUsers users whose windows are kept in memory
+     */
+    public CommandJournal(int window, int maxUsers, Store store) {
+        if (window <= 0 || maxUsers <= 0) throw new IllegalArgumentException("window and maxUsers must be positive");
+        this.window = window;
+        this.maxUsers = maxUsers;
+        this.store = store;
+        this.sequence = new AtomicLong(store.lastSequence());
+    }
+
+    /**
+     * Reject an entry the store could not keep; call before running its commands
+     */
+    public static void requireStorable(String label, List<Step> steps) {
+        if (steps.isEmpty()) throw new IllegalArgumentException("An entry needs at least one step");
+        requireShort(label, "label");
+        for (Step s : steps) {
+            requireShort(s.deviceId(), "deviceId");
+            requireShort(s.command(), "command");
+            requireShort(s.inverse(), "inverse command");
+        }
+    }
+
+    /**
+     * Append an executed command (or a macro's steps) and clear the user's redo history
+     */
+    public Entry record(String userId, String label, List<Step> steps) {
+        requireStorable(label, steps);
+        Entry entry = new Entry(sequence.incrementAndGet(), userId, label, steps, Instant.now());
+        while (true) {
+            History history = historyOf(userId);
+            synchronized (history) {
+                if (history.evicted) continue;
+                store.append(entry, Action.RECORD);
+                history.redo.clear();
+                pushUndo(history);
+                history.undo.addLast(entry);
+                recorded.incrementAndGet();
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Take the user's latest entry off the undo history; the caller applies its
+     * inverses in reverse step order
+     */
+    public Optional<Entry> undo(String userId) {
+        while (true) {
+            History history = historyOf(userId);
+            synchronized (history) {
+                if (history.evicted) continue;
+                Entry entry = history.undo.peekLast();
+                boolean fromStore = entry == null;
+                if (fromStore) {
+                    List<Entry> top = store.stack(userId, 1);
+                    entry = top.isEmpty() ? null : top.get(0);
+                }
+                if (entry == null) return Optional.empty();
+                store.append(entry, Action.UNDO);
+                if (fromStore) {
+                    restored.incrementAndGet();
+                } else {
+                    history.undo.pollLast();
+                }
+                history.redo.addLast(entry);
+                if (history.redo.size() > window) {
+                    history.redo.pollFirst();
+                }
+                undone.incrementAndGet();
+                return Optional.of(entry);
+            }
+        }
+    }
+
+    /**
+     * Take the most recently undone entry back onto the undo history
+     */
+    public Optional<Entry> redo(String userId) {
+        while (true) {
+            History history = historyOf(userId);
+            synchronized (history) {
+                if (history.evicted) continue;
+                Entry entry = history.redo.peekLast();
+                if (entry == null) return Optional.empty();
+                store.append(entry, Action.REDO);
+                history.redo.pollLast();
+                pushUndo(history);
+                history.undo.addLast(entry);
+                redone.incrementAndGet();
+                return Optional.of(entry);
+            }
+        }
+    }
+
+    /**
+     * The user's undoable entries, newest first, optionally only those touching one device
+     */
+    public List<Entry> history(String userId, String deviceId, int limit) {
+        List<Entry> out = new ArrayList<>();
+        Set<Long> cached = new HashSet<>();
+        History history;
+        synchronized (users) {
+            history = users.get(userId);
+        }
+        if (history != null) {
+            synchronized (history) {
+                Iterator<Entry> it = history.undo.descendingIterator();
+                while (it.hasNext() && out.size() < limit) {
+                    Entry e = it.next();
+                    cached.add(e.sequence());
+                    if (deviceId == null || e.touches(deviceId)) out.add(e);
+                }
+            }
+        }
+        if (out.size() < limit) {
+            for (Entry e : store.stack(userId, limit + cached.size())) {
+                if (out.size() >= limit) break;
+                if (cached.contains(e.sequence())) continue;
+                if (deviceId == null || e.touches(deviceId)) out.add(e);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Everything done to one device through the journal, by any user, newest first
+     */
+    public List<Logged> deviceHistory(String deviceId, int limit) {
+        return store.device(deviceId, limit);
+    }
+
+    public Stats stats() {
+        int userCount;
+        List<History> histories;
+        synchronized (users) {
+            userCount = users.size();
+            histories = new ArrayList<>(users.values());
+        }
+        int entries = 0;
+        for (History h : histories) {
+            synchronized (h) {
+                entries += h.undo.size() + h.redo.size();
+            }
+        }
+        return new Stats(userCount, entries, recorded.get(), undone.get(), redone.get(), spilled.get(), restored.get());
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private void pushUndo(History history) {
+        if (history.undo.size() >= window) {
+            history.undo.pollFirst(); // still in the store
+            spilled.incrementAndGet();
+        }
+    }
+
+    private History historyOf(String userId) {
+        History eldest = null;
+        History history;
+        synchronized (users) {
+            history = users.computeIfAbsent(userId, k -> new History());
+            if (users.size() > maxUsers) {
+                Iterator<History> it = users.values().iterator();
+                eldest = it.next();
+                it.remove();
+            }
+        }
+        if (eldest != null) drop(eldest);
+        return history;
+    }
+
+    private void drop(History history) {
+        synchronized (history) {
+            history.evicted = true;
+            int cached = history.undo.size();
+            spilled.addAndGet(cached);
+            if (cached > 0) {
+                log.debug("Evicted undo history of {} ({} entries left to the store)", history.undo.peekFirst().userId(), cached);
+            }
+            history.undo.clear();
+            history.redo.clear();
+        }
+    }
+
+    private static void requireShort(String text, String what) {
+        if (text == null || text.isBlank()) throw new IllegalArgumentException(what + " is required");
+        if (text.length() > MAX_TEXT) {
+            throw new IllegalArgumentException(what + " is longer than " + MAX_TEXT + " characters");
+        }
+    }
+}
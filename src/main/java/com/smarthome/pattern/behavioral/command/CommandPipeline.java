@@ -0,0 +1,293 @@
+package com.smarthome.pattern.behavioral.command;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous invoker: the production counterpart of {@link CommandInvoker}.
+ *
+ * - Per-device ordering: every device has its own FIFO queue, drained by at most
+ *   one worker at a time, so commands for one device never overtake each other
+ *   while different devices run in parallel on the worker pool. A
+ *   {@link DeviceRunner} can additionally serialize execution with other writers
+ *   of the same device.
+ * - Coalescing: a queued command that has not started yet is dropped when a newer
+ *   command with the same {@link Command#coalesceKey()} arrives for the device
+ *   (ON then OFF becomes OFF). The superseded caller's future completes with the
+ *   result of the command that replaced it.
+ * - Group commit: executed commands are handed to a single flusher, which passes
+ *   everything that accumulated meanwhile to the {@link BatchSink} in one call.
+ *   Futures complete only after their batch was flushed.
+ * - Shutdown: {@link #close()} lets started work finish and flushes every executed
+ *   command; commands that never got to run fail with {@link IllegalStateException}.
+ */
+public class CommandPipeline implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CommandPipeline.class);
+
+    public record Result(String deviceId, String command, boolean coalesced, int batchSize, long elapsedMicros) {}
+
+    public record Executed(String deviceId, Command command) {}
+
+    public record Stats(long submitted, long executed, long coalesced, long failed, long flushes,
+                        int largestFlush, int activeDevices, int awaitingFlush) {}
+
+    /**
+     * Persists a batch of executed commands, e.g. in one transaction
+     */
+    @FunctionalInterface
+    public interface BatchSink {
+        void flush(List<Executed> batch);
+    }
+
+    /**
+     * Runs a command with exclusive access to its device, e.g. in the device's
+     * mailbox; failures of the command propagate to the caller
+     */
+    @FunctionalInterface
+    public interface DeviceRunner {
+        DeviceRunner DIRECT = (deviceId, command) -> command.run();
+
+        void run(String deviceId, Runnable command);
+    }
+
+    private static final class Pending {
+        final String deviceId;
+        final Command command;
+        final String coalesceKey;
+        final long submittedAt = System.nanoTime();
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+
+        Pending(String deviceId, Command command) {
+            this.deviceId = deviceId;
+            this.command = command;
+            this.coalesceKey = command.coalesceKey();
+        }
+    }
+
+    private final int maxBatch;
+    private final BatchSink sink;
+    private final DeviceRunner runner;
+    private final ExecutorService workers;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    // A device has an entry exactly while a drain for it is scheduled or running
+    private final Map<String, ArrayDeque<Pending>> queues = new ConcurrentHashMap<>();
+    private final BlockingQueue<Pending> awaitingFlush = new LinkedBlockingQueue<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final AtomicInteger largestFlush = new AtomicInteger();
+
+    /**
+     * @param workerThreads threads executing commands
+     * @param maxBatch      most commands taken from one device queue, or flushed together, at a time
+     * @param sink          persistence for executed commands
+     */
+    public CommandPipeline(int workerThreads, int maxBatch, BatchSink sink) {
+        this(workerThreads, maxBatch, sink, DeviceRunner.DIRECT);
+    }
+
+    /**
+     * @param runner executes each command, e.g. inside the device's mailbox
+     */
+    public CommandPipeline(int workerThreads, int maxBatch, BatchSink sink, DeviceRunner runner) {
+        if (workerThreads <= 0 || maxBatch <= 0) throw new IllegalArgumentException("workerThreads and maxBatch must be positive");
+        this.maxBatch = maxBatch;
+        this.sink = sink;
+        this.runner = runner;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "command-worker-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher = new Thread(this::flushLoop, "command-flush");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue {@code command} behind earlier commands for the same device
+     */
+    public CompletableFuture<Result> submit(String deviceId, Command command) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Command pipeline is shut down"));
+        }
+        Pending pending = new Pending(deviceId, command);
+        submitted.increment();
+        boolean[] schedule = {false};
+        queues.compute(deviceId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                schedule[0] = true;
+            } else if (pending.coalesceKey != null) {
+                supersede(queue, pending);
+            }
+            queue.addLast(pending);
+            return queue;
+        });
+        if (schedule[0]) {
+            schedule(deviceId);
+        }
+        return pending.result;
+    }
+
+    public Stats stats() {
+        return new Stats(submitted.sum(), executed.sum(), coalesced.sum(), failed.sum(), flushes.sum(),
+                largestFlush.get(), queues.size(), awaitingFlush.size());
+    }
+
+    /**
+     * Stop accepting commands, wait for running drains and the final flush, and
+     * fail whatever is still queued
+     */
+    @Override
+    public void close() {
+        running = false;
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queues.keySet().forEach(this::abandon);
+        if (flusher.isAlive()) {
+            flusher.interrupt(); // the flusher still flushes what it holds before it exits
+        }
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private void supersede(ArrayDeque<Pending> queue, Pending newer) {
+        Iterator<Pending> it = queue.iterator();
+        while (it.hasNext()) {
+            Pending older = it.next();
+            if (newer.coalesceKey.equals(older.coalesceKey)) {
+                it.remove();
+                coalesced.increment();
+                newer.result.whenComplete((r, e) -> {
+                    if (e != null) older.result.completeExceptionally(e);
+                    else older.result.complete(new Result(r.deviceId(), r.command(), true, r.batchSize(), r.elapsedMicros()));
+                });
+                log.debug("Coalesced '{}' into '{}'", older.command.getDescription(), newer.command.getDescription());
+            }
+        }
+    }
+
+    private void drain(String deviceId) {
+        List<Pending> batch = new ArrayList<>();
+        queues.computeIfPresent(deviceId, (id, queue) -> {
+            while (batch.size() < maxBatch && !queue.isEmpty()) {
+                batch.add(queue.pollFirst());
+            }
+            return queue;
+        });
+        for (Pending pending : batch) {
+            try {
+                runner.run(deviceId, pending.command::execute);
+                executed.increment();
+                awaitingFlush.add(pending);
+            } catch (RuntimeException e) {
+                failed.increment();
+                log.warn("Command '{}' failed on {}: {}", pending.command.getDescription(), deviceId, e.getMessage());
+                pending.result.completeExceptionally(e);
+            }
+        }
+        boolean[] more = {false};
+        queues.computeIfPresent(deviceId, (id, queue) -> {
+            more[0] = !queue.isEmpty();
+            return more[0] ? queue : null;
+        });
+        if (more[0]) {
+            schedule(deviceId); // requeue rather than loop, so busy devices share the pool
+        }
+    }
+
+    private void schedule(String deviceId) {
+        try {
+            workers.execute(() -> drain(deviceId));
+        } catch (RejectedExecutionException e) {
+            abandon(deviceId);
+        }
+    }
+
+    /**
+     * Fail the commands still queued for a device once no worker will drain them
+     */
+    private void abandon(String deviceId) {
+        ArrayDeque<Pending> queue = queues.remove(deviceId);
+        if (queue == null) return;
+        IllegalStateException shutDown = new IllegalStateException("Command pipeline is shut down");
+        for (Pending pending : queue) {
+            failed.increment();
+            pending.result.completeExceptionally(shutDown);
+        }
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        boolean interrupted = false;
+        while (running || !awaitingFlush.isEmpty()) {
+            Pending first;
+            try {
+                first = awaitingFlush.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+            if (first == null) continue;
+            batch.add(first);
+            awaitingFlush.drainTo(batch, maxBatch - 1);
+            flush(batch);
+            batch.clear();
+        }
+        // Commands already executed are flushed even when interrupted, so no caller is left waiting
+        while (awaitingFlush.drainTo(batch, maxBatch) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        int size = batch.size();
+        try {
+            sink.flush(batch.stream().map(p -> new Executed(p.deviceId, p.command)).toList());
+        } catch (RuntimeException e) {
+            log.warn("Flushing {} executed commands failed: {}", size, e.getMessage());
+            failed.add(size);
+            batch.forEach(p -> p.result.completeExceptionally(e));
+            return;
+        }
+        flushes.increment();
+        largestFlush.accumulateAndGet(size, Math::max);
+        long now = System.nanoTime();
+        for (Pending p : batch) {
+            p.result.complete(new Result(p.deviceId, p.command.getDescription(), false, size,
+                    TimeUnit.NANOSECONDS.toMicros(now - p.submittedAt)));
+        }
+    }
+}
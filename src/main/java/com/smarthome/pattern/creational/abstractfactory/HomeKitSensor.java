@@ -24,13 +24,13 @@ public class HomeKitSensor implements Device {
     @Override
     public void turnOn() {
         isOn = true;
-        log.info("[HomeKit] Sensor '{}' activated", name);
+        log.trace("[HomeKit] Sensor '{}' activated", name);
     }
 
     @Override
     public void turnOff() {
         isOn = false;
-        log.info("[HomeKit] Sensor '{}' deactivated", name);
+        log.trace("[HomeKit] Sensor '{}' deactivated", name);
     }
 
     @Override
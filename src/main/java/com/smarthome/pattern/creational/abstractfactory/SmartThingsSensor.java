@@ -24,13 +24,13 @@ public class SmartThingsSensor implements Device {
     @Override
     public void turnOn() {
         isOn = true;
-        log.info("[SmartThings] Sensor '{}' activated", name);
+        log.trace("[SmartThings] Sensor '{}' activated", name);
     }
 
     @Override
     public void turnOff() {
         isOn = false;
-        log.info("[SmartThings] Sensor '{}' deactivated", name);
+        log.trace("[SmartThings] Sensor '{}' deactivated", name);
     }
 
     @Override
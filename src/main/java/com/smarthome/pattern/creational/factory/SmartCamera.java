@@ -23,7 +23,7 @@ public class SmartCamera implements Device {
     @Override
     public void turnOn() {
         isOn = true;
-        log.info("Camera '{}' in {} turned ON (resolution: {}, motion detection: {})",
+        log.trace("Camera '{}' in {} turned ON (resolution: {}, motion detection: {})",
                 name, location, resolution, motionDetectionEnabled ? "enabled" : "disabled");
     }
 
@@ -31,7 +31,7 @@ public class SmartCamera implements Device {
     public void turnOff() {
         isOn = false;
         isRecording = false;
-        log.info("Camera '{}' in {} turned OFF", name, location);
+        log.trace("Camera '{}' in {} turned OFF", name, location);
     }
 
     @Override
@@ -118,4 +118,8 @@ public class SmartCamera implements Device {
     public boolean isMotionDetectionEnabled() {
         return motionDetectionEnabled;
     }
+
+    public String getResolution() {
+        return resolution;
+    }
 }
@@ -22,14 +22,14 @@ public class SmartLight implements Device {
     @Override
     public void turnOn() {
         isOn = true;
-        log.info("Light '{}' in {} turned ON (brightness: {}%, color: {})",
+        log.trace("Light '{}' in {} turned ON (brightness: {}%, color: {})",
                 name, location, brightness, color);
     }
 
     @Override
     public void turnOff() {
         isOn = false;
-        log.info("Light '{}' in {} turned OFF", name, location);
+        log.trace("Light '{}' in {} turned OFF", name, location);
     }
 
     @Override
@@ -23,14 +23,14 @@ public class SmartLock implements Device {
     @Override
     public void turnOn() {
         isOn = true;
-        log.info("Lock '{}' in {} activated", name, location);
+        log.trace("Lock '{}' in {} activated", name, location);
     }
 
     @Override
     public void turnOff() {
         // Locks don't really turn off, but we can disable auto-lock
         autoLockEnabled = false;
-        log.info("Lock '{}' in {} auto-lock disabled", name, location);
+        log.trace("Lock '{}' in {} auto-lock disabled", name, location);
     }
 
     @Override
@@ -106,4 +106,8 @@ public class SmartLock implements Device {
     public boolean isAutoLockEnabled() {
         return autoLockEnabled;
     }
+
+    public int getAutoLockDelay() {
+        return autoLockDelay;
+    }
 }
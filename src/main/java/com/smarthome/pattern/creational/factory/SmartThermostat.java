@@ -24,7 +24,7 @@ public class SmartThermostat implements Device {
     public void turnOn() {
         isOn = true;
         mode = "AUTO";
-        log.info("Thermostat '{}' in {} turned ON (target: {}°C, current: {}°C)",
+        log.trace("Thermostat '{}' in {} turned ON (target: {}°C, current: {}°C)",
                 name, location, targetTemperature, currentTemperature);
     }
 
@@ -32,7 +32,7 @@ public class SmartThermostat implements Device {
     public void turnOff() {
         isOn = false;
         mode = "OFF";
-        log.info("Thermostat '{}' in {} turned OFF", name, location);
+        log.trace("Thermostat '{}' in {} turned OFF", name, location);
     }
 
     @Override
@@ -88,7 +88,7 @@ public class SmartThermostat implements Device {
 
     public void updateCurrentTemperature(double temperature) {
         this.currentTemperature = temperature;
-        log.debug("Thermostat '{}' current temperature updated to {}°C", name, temperature);
+        log.trace("Thermostat '{}' current temperature updated to {}°C", name, temperature);
     }
 
     public double getTargetTemperature() {
@@ -0,0 +1,51 @@
+package com.smarthome.pattern.creational.prototype;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of canonical settings and schedules maps, so configurations that end
+ * up with equal maps hold one instance between them instead of one each.
+ *
+ * Entries are weak: a pooled map stays only as long as some configuration
+ * still references it, and the pool never keeps a map alive on its own.
+ */
+public final class ConfigurationInterner {
+
+    private static final Map<PersistentMap<?, ?>, WeakReference<PersistentMap<?, ?>>> pool = new WeakHashMap<>();
+    private static final LongAdder lookups = new LongAdder();
+    private static final LongAdder hits = new LongAdder();
+
+    private ConfigurationInterner() {}
+
+    /**
+     * The pooled map equal to {@code map}, pooling {@code map} itself if there is none yet
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> intern(PersistentMap<K, V> map) {
+        if (map.isEmpty()) return PersistentMap.empty();
+        lookups.increment();
+        synchronized (pool) {
+            WeakReference<PersistentMap<?, ?>> ref = pool.get(map);
+            PersistentMap<?, ?> pooled = ref == null ? null : ref.get();
+            if (pooled != null) {
+                hits.increment();
+                return (PersistentMap<K, V>) pooled;
+            }
+            pool.put(map, new WeakReference<>(map));
+            return map;
+        }
+    }
+
+    public static Stats stats() {
+        int pooled;
+        synchronized (pool) {
+            pooled = pool.size();
+        }
+        return new Stats(pooled, lookups.sum(), hits.sum());
+    }
+
+    public record Stats(int pooled, long lookups, long hits) {}
+}
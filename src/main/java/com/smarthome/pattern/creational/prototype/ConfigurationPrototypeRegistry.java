@@ -3,8 +3,8 @@ package com.smarthome.pattern.creational.prototype;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Registry for prototype configurations
@@ -12,7 +12,7 @@ import java.util.Map;
  */
 public class ConfigurationPrototypeRegistry {
     private static final Logger log = LoggerFactory.getLogger(ConfigurationPrototypeRegistry.class);
-    private static final Map<String, DeviceConfiguration> prototypes = new HashMap<>();
+    private static final Map<String, DeviceConfiguration> prototypes = new ConcurrentHashMap<>();
 
     static {
         // Initialize with default presets
@@ -36,7 +36,7 @@ public class ConfigurationPrototypeRegistry {
      * Register a new prototype configuration
      */
     public static void registerPrototype(String key, DeviceConfiguration config) {
-        prototypes.put(key, config);
+        prototypes.put(key, config.intern());
         log.info("Registered prototype configuration: {}", key);
     }
 
@@ -15,18 +15,25 @@ import java.util.Map;
  * Smart Home Application: Device configurations can be complex. Instead of
  * configuring each device from scratch, we can clone existing configurations
  * as templates and modify them as needed.
+ *
+ * Settings and schedules are immutable {@link PersistentMap}s, so a clone
+ * simply shares its prototype's maps and cloning costs the same however many
+ * settings there are. Changing a setting derives a new map that copies only
+ * the trie path to that key and shares the rest. {@link #intern} swaps the
+ * maps for pooled equal ones, so thousands of configurations that end up
+ * with the same settings hold a single map.
  */
 public class DeviceConfiguration implements Cloneable {
     private static final Logger log = LoggerFactory.getLogger(DeviceConfiguration.class);
     private String name;
     private String deviceType;
-    private Map<String, Object> settings;
-    private Map<String, String> schedules;
+    private PersistentMap<String, Object> settings;
+    private PersistentMap<String, String> schedules;
     private boolean isTemplate;
 
     public DeviceConfiguration() {
-        this.settings = new HashMap<>();
-        this.schedules = new HashMap<>();
+        this.settings = PersistentMap.empty();
+        this.schedules = PersistentMap.empty();
         this.isTemplate = false;
     }
 
@@ -56,20 +63,35 @@ public class DeviceConfiguration implements Cloneable {
         this.deviceType = deviceType;
     }
 
-    public Map<String, Object> getSettings() {
+    /**
+     * Immutable; change settings through {@link #addSetting}
+     */
+    public PersistentMap<String, Object> getSettings() {
         return settings;
     }
 
     public void setSettings(Map<String, Object> settings) {
-        this.settings = settings == null ? new HashMap<>() : settings;
+        this.settings = settings == null ? PersistentMap.empty() : PersistentMap.copyOf(settings);
     }
 
-    public Map<String, String> getSchedules() {
+    /**
+     * Immutable; change schedules through {@link #addSchedule}
+     */
+    public PersistentMap<String, String> getSchedules() {
         return schedules;
     }
 
     public void setSchedules(Map<String, String> schedules) {
-        this.schedules = schedules == null ? new HashMap<>() : schedules;
+        this.schedules = schedules == null ? PersistentMap.empty() : PersistentMap.copyOf(schedules);
+    }
+
+    /**
+     * Whether this configuration holds the very same settings map as {@code other}:
+     * neither has modified them since one was cloned from the other, or both
+     * were interned with equal settings
+     */
+    public boolean sharesSettingsWith(DeviceConfiguration other) {
+        return settings == other.settings;
     }
 
     public boolean isTemplate() {
@@ -86,12 +108,10 @@ public class DeviceConfiguration implements Cloneable {
     @Override
     public DeviceConfiguration clone() {
         try {
+            // The maps are immutable, so the clone shares them as they are
             DeviceConfiguration cloned = (DeviceConfiguration) super.clone();
-            // Deep copy the maps
-            cloned.settings = new HashMap<>(this.settings);
-            cloned.schedules = new HashMap<>(this.schedules);
             cloned.isTemplate = false; // Cloned config is not a template
-            log.info("Configuration '{}' cloned", name);
+            log.debug("Configuration '{}' cloned", name);
             return cloned;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException("Clone failed", e);
@@ -99,7 +119,7 @@ public class DeviceConfiguration implements Cloneable {
     }
 
     public void addSetting(String key, Object value) {
-        settings.put(key, value);
+        settings = settings.with(key, value);
     }
 
     public void setProperty(String key, Object value) {
@@ -107,7 +127,18 @@ public class DeviceConfiguration implements Cloneable {
     }
 
     public void addSchedule(String eventName, String cronExpression) {
-        schedules.put(eventName, cronExpression);
+        schedules = schedules.with(eventName, cronExpression);
+    }
+
+    /**
+     * Replace the settings and schedules with the pooled maps equal to them
+     *
+     * @return this configuration
+     */
+    public DeviceConfiguration intern() {
+        settings = ConfigurationInterner.intern(settings);
+        schedules = ConfigurationInterner.intern(schedules);
+        return this;
     }
 
     public Object getSetting(String key) {
@@ -119,7 +150,7 @@ public class DeviceConfiguration implements Cloneable {
     }
 
     public Map<String, Object> getAllProperties() {
-        return settings == null ? Map.of() : new HashMap<>(settings);
+        return new HashMap<>(settings);
     }
 
     /**
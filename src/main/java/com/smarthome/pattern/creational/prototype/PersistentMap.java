@@ -0,0 +1,369 @@
+package com.smarthome.pattern.creational.prototype;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable map with structural sharing: a hash array mapped trie branching
+ * 32 ways on 5 bits of the key hash per level.
+ *
+ * {@link #with} and {@link #without} return a new map that copies only the
+ * nodes on the path to the changed key and shares every other node with this
+ * one, so deriving a map from another costs O(log32 n) time and memory.
+ * Keys with the same full 32-bit hash end up in one collision node. As a
+ * {@link Map} it is read-only; the mutators inherited from {@link AbstractMap}
+ * throw {@link UnsupportedOperationException}. Equality and hash code follow
+ * the {@link Map} contract, the hash code is cached.
+ *
+ * @param <K> key type; keys must not be null
+ * @param <V> value type
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+    private int hashCode;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * {@code map} itself if it is already persistent, otherwise a persistent copy
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap<?, ?> persistent) return (PersistentMap<K, V>) persistent;
+        PersistentMap<K, V> copy = empty();
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) copy = copy.with(e.getKey(), e.getValue());
+        return copy;
+    }
+
+    /**
+     * This map with {@code key} mapped to {@code value}; this map itself if it already holds that mapping
+     */
+    public PersistentMap<K, V> with(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        boolean[] added = {false};
+        Node updated = root.put(new Leaf(key, value, key.hashCode()), 0, added);
+        return updated == root ? this : new PersistentMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * This map without {@code key}; this map itself if it has no such key
+     */
+    public PersistentMap<K, V> without(Object key) {
+        if (key == null) return this;
+        Object updated = root.remove(key, key.hashCode(), 0);
+        if (updated == root) return this;
+        return updated == null ? empty() : new PersistentMap<>(asNode(updated), size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) return null;
+        Leaf leaf = root.find(key, key.hashCode(), 0);
+        return leaf == null ? null : (V) leaf.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root.find(key, key.hashCode(), 0) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new LeafIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (o instanceof PersistentMap<?, ?> other && (other.size != size || other.hashCode() != hashCode())) return false;
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hashCode;
+        if (h == 0 && size > 0) hashCode = h = super.hashCode();
+        return h;
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private static Node asNode(Object slot) {
+        return slot instanceof Node node ? node : new BitmapNode(bit(((Leaf) slot).hash, 0), new Object[]{slot});
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** A mapping; slots of a node hold leaves and child nodes */
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<Object, Object> {
+        final int hash;
+
+        Leaf(Object key, Object value, int hash) {
+            super(key, value);
+            this.hash = hash;
+        }
+    }
+
+    private interface Node {
+        Leaf find(Object key, int hash, int shift);
+
+        /** This node with {@code leaf} put in; this node itself if nothing changed */
+        Node put(Leaf leaf, int shift, boolean[] added);
+
+        /**
+         * This node without {@code key}: this node itself if absent, null if
+         * now empty, or a lone leaf for the parent to inline
+         */
+        Object remove(Object key, int hash, int shift);
+
+        Object[] slots();
+    }
+
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        public Leaf find(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node child) return child.find(key, hash, shift + BITS);
+            Leaf leaf = (Leaf) slot;
+            return leaf.hash == hash && leaf.getKey().equals(key) ? leaf : null;
+        }
+
+        @Override
+        public Node put(Leaf leaf, int shift, boolean[] added) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] grown = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, grown, 0, index);
+                grown[index] = leaf;
+                System.arraycopy(slots, index, grown, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, grown);
+            }
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node child) {
+                Node updated = child.put(leaf, shift + BITS, added);
+                if (updated == child) return this;
+                replacement = updated;
+            } else {
+                Leaf existing = (Leaf) slot;
+                if (existing.hash == leaf.hash && existing.getKey().equals(leaf.getKey())) {
+                    if (Objects.equals(existing.getValue(), leaf.getValue())) return this;
+                    replacement = leaf;
+                } else {
+                    replacement = merge(existing, leaf, shift + BITS);
+                    added[0] = true;
+                }
+            }
+            Object[] copy = slots.clone();
+            copy[index] = replacement;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public Object remove(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int index = index(bit);
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node child) {
+                replacement = child.remove(key, hash, shift + BITS);
+                if (replacement == child) return this;
+            } else {
+                Leaf leaf = (Leaf) slot;
+                if (leaf.hash != hash || !leaf.getKey().equals(key)) return this;
+                replacement = null;
+            }
+            if (replacement != null) {
+                Object[] copy = slots.clone();
+                copy[index] = replacement;
+                return new BitmapNode(bitmap, copy);
+            }
+            if (slots.length == 1) return null;
+            if (slots.length == 2 && shift > 0 && slots[1 - index] instanceof Leaf survivor) return survivor;
+            Object[] shrunk = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, shrunk, 0, index);
+            System.arraycopy(slots, index + 1, shrunk, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, shrunk);
+        }
+
+        @Override
+        public Object[] slots() {
+            return slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /** A node holding two leaves that collided at the level above */
+        private static Node merge(Leaf a, Leaf b, int shift) {
+            if (shift >= Integer.SIZE) return new CollisionNode(a.hash, new Object[]{a, b});
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) return new BitmapNode(bitA, new Object[]{merge(a, b, shift + BITS)});
+            return new BitmapNode(bitA | bitB, Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[]{a, b} : new Object[]{b, a});
+        }
+    }
+
+    /** Leaves whose keys share the full hash, searched linearly */
+    private static final class CollisionNode implements Node {
+        final int hash;
+        final Object[] leaves;
+
+        CollisionNode(int hash, Object[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        @Override
+        public Leaf find(Object key, int hash, int shift) {
+            if (hash != this.hash) return null;
+            for (Object slot : leaves) {
+                Leaf leaf = (Leaf) slot;
+                if (leaf.getKey().equals(key)) return leaf;
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(Leaf leaf, int shift, boolean[] added) {
+            for (int i = 0; i < leaves.length; i++) {
+                Leaf existing = (Leaf) leaves[i];
+                if (existing.getKey().equals(leaf.getKey())) {
+                    if (Objects.equals(existing.getValue(), leaf.getValue())) return this;
+                    Object[] copy = leaves.clone();
+                    copy[i] = leaf;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            Object[] grown = new Object[leaves.length + 1];
+            System.arraycopy(leaves, 0, grown, 0, leaves.length);
+            grown[leaves.length] = leaf;
+            added[0] = true;
+            return new CollisionNode(hash, grown);
+        }
+
+        @Override
+        public Object remove(Object key, int hash, int shift) {
+            if (hash != this.hash) return this;
+            for (int i = 0; i < leaves.length; i++) {
+                if (((Leaf) leaves[i]).getKey().equals(key)) {
+                    if (leaves.length == 2) return leaves[1 - i];
+                    Object[] shrunk = new Object[leaves.length - 1];
+                    System.arraycopy(leaves, 0, shrunk, 0, i);
+                    System.arraycopy(leaves, i + 1, shrunk, i, leaves.length - i - 1);
+                    return new CollisionNode(hash, shrunk);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Object[] slots() {
+            return leaves;
+        }
+    }
+
+    /** Depth-first walk over the leaves */
+    private static final class LeafIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+        private Leaf next;
+
+        LeafIterator(Node root) {
+            slotStack.push(root.slots());
+            indexStack.push(0);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Leaf current = next;
+            advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) current;
+        }
+
+        private void advance() {
+            next = null;
+            while (!slotStack.isEmpty()) {
+                Object[] slots = slotStack.peek();
+                int index = indexStack.pop();
+                if (index == slots.length) {
+                    slotStack.pop();
+                    continue;
+                }
+                indexStack.push(index + 1);
+                Object slot = slots[index];
+                if (slot instanceof Node child) {
+                    slotStack.push(child.slots());
+                    indexStack.push(0);
+                } else {
+                    next = (Leaf) slot;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.smarthome.pattern.creational.prototype;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * What interned clones share, counted rather than estimated: {@code instances}
+ * clones of one template, every tenth with its own brightness out of 100
+ * variants, and the settings maps they hold counted by identity. A deep copy
+ * per clone would hold one map each.
+ */
+public final class PrototypeDemo {
+    private static final int MAX_INSTANCES = 100_000;
+    private static final int DISTINCT_VARIANTS = 100;
+
+    private PrototypeDemo() {}
+
+    public static Map<String, Object> stats(int instances) {
+        int count = Math.min(Math.max(1, instances), MAX_INSTANCES);
+        DeviceConfiguration template = DeviceConfiguration.createLightPreset("Stats Light", 80, "#FFFFFF").intern();
+        Map<Map<String, Object>, Boolean> distinct = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            DeviceConfiguration clone = template.clone();
+            if (i % 10 == 0) clone.addSetting("brightness", (i / 10) % DISTINCT_VARIANTS);
+            distinct.put(clone.intern().getSettings(), Boolean.TRUE);
+        }
+        int memorySaved = (int) Math.round((1.0 - (double) distinct.size() / count) * 100);
+        ConfigurationInterner.Stats interner = ConfigurationInterner.stats();
+        return Map.of(
+                "pattern", "Prototype",
+                "instances", count,
+                "distinctSettings", distinct.size(),
+                "memorySaved", Math.max(0, memorySaved),
+                "pooledMaps", interner.pooled(),
+                "internLookups", interner.lookups(),
+                "internHits", interner.hits()
+        );
+    }
+}
@@ -6,10 +6,11 @@ import com.smarthome.pattern.creational.factory.Device;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * SINGLETON PATTERN
@@ -27,7 +28,7 @@ public enum HomeController {
 
     private static final Logger log = LoggerFactory.getLogger(HomeController.class);
     private final Map<String, Device> deviceRegistry = new ConcurrentHashMap<>();
-    private final List<DeviceObserver> observers = new ArrayList<>();
+    private final List<DeviceObserver> observers = new CopyOnWriteArrayList<>();
     private HomeMode homeMode = HomeMode.NORMAL; // NORMAL, AWAY, NIGHT, VACATION
 
     /**
@@ -35,10 +36,52 @@ public enum HomeController {
      */
     public void registerDevice(String deviceId, Device device) {
         deviceRegistry.put(deviceId, device);
-        log.info("Device registered: {} ({})", deviceId, device.getDeviceInfo());
+        log.trace("Device registered: {} ({})", deviceId, device.getDeviceInfo());
         notifyObservers("DEVICE_REGISTERED", deviceId);
     }
 
+    /**
+     * Register {@code device} unless another thread registered one for the id
+     * first; returns the device that ended up registered
+     */
+    public Device registerIfAbsent(String deviceId, Device device) {
+        Device existing = deviceRegistry.putIfAbsent(deviceId, device);
+        if (existing != null) return existing;
+        log.trace("Device registered: {} ({})", deviceId, device.getDeviceInfo());
+        notifyObservers("DEVICE_REGISTERED", deviceId);
+        return device;
+    }
+
+    /**
+     * Register many devices at once, with one log line and one aggregated
+     * DEVICES_REGISTERED notification carrying the count. Ids that already have
+     * a registered device keep it, with its live state; returns how many were added
+     */
+    public int registerDevices(Map<String, Device> devices) {
+        int added = 0;
+        for (Map.Entry<String, Device> e : devices.entrySet()) {
+            if (deviceRegistry.putIfAbsent(e.getKey(), e.getValue()) == null) added++;
+        }
+        if (added == 0) return 0;
+        log.info("Registered {} devices", added);
+        notifyObservers("DEVICES_REGISTERED", String.valueOf(added));
+        return added;
+    }
+
+    /**
+     * Unregister many devices at once, with one log line and one aggregated
+     * DEVICES_UNREGISTERED notification carrying the count
+     */
+    public void unregisterDevices(Collection<String> deviceIds) {
+        int removed = 0;
+        for (String id : deviceIds) {
+            if (deviceRegistry.remove(id) != null) removed++;
+        }
+        if (removed == 0) return;
+        log.info("Unregistered {} devices", removed);
+        notifyObservers("DEVICES_UNREGISTERED", String.valueOf(removed));
+    }
+
     /**
      * Unregister a device from the controller
      */
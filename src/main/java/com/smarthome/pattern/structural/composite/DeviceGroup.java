@@ -3,8 +3,10 @@ package com.smarthome.pattern.structural.composite;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Composite - Device Group (can represent a room, floor, or zone)
@@ -42,6 +44,45 @@ public class DeviceGroup implements DeviceComponent {
         return new ArrayList<>(components);
     }
 
+    /**
+     * Get every leaf below this group, flattening nested groups
+     */
+    public List<DeviceComponent> getLeaves() {
+        List<DeviceComponent> leaves = new ArrayList<>();
+        for (DeviceComponent component : components) {
+            if (component instanceof DeviceGroup group) {
+                leaves.addAll(group.getLeaves());
+            } else {
+                leaves.add(component);
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Turn on all leaves concurrently and report the outcome per leaf
+     */
+    public GroupOperationReport turnOnAll(int maxConcurrency, Duration deadline) {
+        return fanOut("turnOn", DeviceComponent::turnOn, maxConcurrency, deadline);
+    }
+
+    /**
+     * Turn off all leaves concurrently and report the outcome per leaf
+     */
+    public GroupOperationReport turnOffAll(int maxConcurrency, Duration deadline) {
+        return fanOut("turnOff", DeviceComponent::turnOff, maxConcurrency, deadline);
+    }
+
+    /**
+     * Apply an operation to all leaves on the shared fan-out executor,
+     * with at most {@code maxConcurrency} leaves in flight and an overall deadline
+     */
+    public GroupOperationReport fanOut(String operation, Consumer<DeviceComponent> action,
+                                       int maxConcurrency, Duration deadline) {
+        log.info("Fanning out {} to all devices in '{}'", operation, name);
+        return GroupFanOutExecutor.shared().execute(name, operation, getLeaves(), action, maxConcurrency, deadline);
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,153 @@
+package com.smarthome.pattern.structural.composite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Runs a composite operation over many leaves concurrently.
+ *
+ * The pool is shared and bounded; each call additionally limits itself to
+ * {@code maxConcurrency} workers which pull leaves from a common cursor, so a
+ * large group can never take over the whole pool. The caller waits at most
+ * until the deadline; leaves still running at that point are interrupted and
+ * reported as PENDING, leaves never picked up are reported as NOT_STARTED.
+ * Interrupting only stops the wait: a leaf that already queued its change on
+ * the device (e.g. in the device's mailbox) may still apply it, so a pending
+ * leaf's outcome is unknown rather than failed.
+ */
+public class GroupFanOutExecutor {
+    private static final Logger log = LoggerFactory.getLogger(GroupFanOutExecutor.class);
+    private static final int DEFAULT_POOL_SIZE = 64;
+    private static final GroupFanOutExecutor SHARED = new GroupFanOutExecutor(DEFAULT_POOL_SIZE);
+    private static final GroupOperationReport.LeafOutcome RUNNING =
+            new GroupOperationReport.LeafOutcome("", GroupOperationReport.Status.PENDING, null, 0);
+
+    private final ThreadPoolExecutor pool;
+    private final int poolSize;
+
+    public GroupFanOutExecutor(int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+        this.pool = new ThreadPoolExecutor(this.poolSize, this.poolSize,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreads());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static GroupFanOutExecutor shared() {
+        return SHARED;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Apply {@code action} to every leaf, at most {@code maxConcurrency} at a time,
+     * and wait no longer than {@code deadline} for the whole batch.
+     */
+    public GroupOperationReport execute(String groupName, String operation, List<DeviceComponent> leaves,
+                                        Consumer<DeviceComponent> action, int maxConcurrency, Duration deadline) {
+        int workers = Math.max(1, Math.min(Math.min(maxConcurrency, poolSize), Math.max(1, leaves.size())));
+        long deadlineMillis = deadline.toMillis();
+        long start = System.nanoTime();
+        long deadlineAt = start + deadline.toNanos();
+
+        AtomicReferenceArray<GroupOperationReport.LeafOutcome> outcomes = new AtomicReferenceArray<>(leaves.size());
+        AtomicLongArray startedAt = new AtomicLongArray(leaves.size());
+        AtomicInteger cursor = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(workers);
+
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            futures.add(pool.submit(() -> {
+                try {
+                    int i;
+                    while ((i = cursor.getAndIncrement()) < leaves.size()) {
+                        if (System.nanoTime() - deadlineAt >= 0 || Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        DeviceComponent leaf = leaves.get(i);
+                        long t0 = System.nanoTime();
+                        startedAt.set(i, t0);
+                        if (!outcomes.compareAndSet(i, null, RUNNING)) {
+                            return;
+                        }
+                        GroupOperationReport.LeafOutcome outcome;
+                        try {
+                            action.accept(leaf);
+                            outcome = new GroupOperationReport.LeafOutcome(leaf.getName(),
+                                    GroupOperationReport.Status.SUCCEEDED, null, elapsedMillis(t0));
+                        } catch (RuntimeException e) {
+                            outcome = new GroupOperationReport.LeafOutcome(leaf.getName(),
+                                    GroupOperationReport.Status.FAILED, e.getMessage(), elapsedMillis(t0));
+                        }
+                        outcomes.compareAndSet(i, RUNNING, outcome);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }));
+        }
+
+        boolean finished;
+        try {
+            finished = done.await(Math.max(0, deadlineAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finished = false;
+        }
+        // Seal every unfinished slot before interrupting, so a leaf that returns
+        // early because of the interrupt cannot overwrite its PENDING outcome.
+        for (int i = 0; i < leaves.size(); i++) {
+            String leafName = leaves.get(i).getName();
+            outcomes.compareAndSet(i, null, new GroupOperationReport.LeafOutcome(leafName,
+                    GroupOperationReport.Status.NOT_STARTED, "Not started before deadline", 0));
+            outcomes.compareAndSet(i, RUNNING, new GroupOperationReport.LeafOutcome(leafName,
+                    GroupOperationReport.Status.PENDING,
+                    "Deadline of " + deadlineMillis + "ms exceeded while in progress; the change may still apply",
+                    elapsedMillis(startedAt.get(i))));
+        }
+        if (!finished) {
+            futures.forEach(f -> f.cancel(true));
+        }
+
+        List<GroupOperationReport.LeafOutcome> result = new ArrayList<>(leaves.size());
+        for (int i = 0; i < leaves.size(); i++) {
+            result.add(outcomes.get(i));
+        }
+
+        long elapsed = elapsedMillis(start);
+        if (!finished) {
+            log.warn("Group '{}' {} exceeded deadline of {}ms", groupName, operation, deadlineMillis);
+        }
+        log.info("Group '{}' {} fanned out to {} leaves ({} workers) in {}ms",
+                groupName, operation, leaves.size(), workers, elapsed);
+        return new GroupOperationReport(groupName, operation, workers, deadlineMillis, elapsed, !finished, result);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "group-fanout-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
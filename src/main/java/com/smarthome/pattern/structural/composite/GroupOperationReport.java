@@ -0,0 +1,56 @@
+package com.smarthome.pattern.structural.composite;
+
+import java.util.List;
+
+/**
+ * Result of a fan-out operation over a device group.
+ * Holds one outcome per leaf so callers can see exactly which devices
+ * were switched, which failed, which were never started and which were still
+ * in progress at the deadline. A PENDING leaf was not rolled back: work it had
+ * already handed to its device may still complete after the report.
+ */
+public record GroupOperationReport(
+        String groupName,
+        String operation,
+        int maxConcurrency,
+        long deadlineMillis,
+        long elapsedMillis,
+        boolean deadlineExceeded,
+        List<LeafOutcome> outcomes
+) {
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        PENDING,
+        NOT_STARTED
+    }
+
+    /**
+     * Outcome for a single leaf of the composite
+     */
+    public record LeafOutcome(String name, Status status, String error, long elapsedMillis) {}
+
+    public long count(Status status) {
+        return outcomes.stream().filter(o -> o.status() == status).count();
+    }
+
+    public int succeeded() {
+        return (int) count(Status.SUCCEEDED);
+    }
+
+    /**
+     * Leaves that failed or never started; pending leaves are neither
+     */
+    public int failed() {
+        return (int) (count(Status.FAILED) + count(Status.NOT_STARTED));
+    }
+
+    public int pending() {
+        return (int) count(Status.PENDING);
+    }
+
+    public boolean allSucceeded() {
+        return succeeded() == outcomes.size();
+    }
+}
@@ -0,0 +1,352 @@
+package com.smarthome.pattern.structural.decorator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Concurrent, size-bounded cache with per-entry TTL and asynchronous refresh.
+ *
+ * - Striped LRU: keys are spread over independently locked segments, each an
+ *   access-ordered map evicting its least recently used entry when full, so
+ *   readers of different keys rarely contend.
+ * - Per-entry TTL: every entry carries its own expiry (cache default or per call).
+ * - Refresh-ahead: once an entry is older than {@code refreshAfter} it is still
+ *   served while one background reload replaces it.
+ * - Single-flight: concurrent misses for one key share a single load, which runs
+ *   outside the segment lock.
+ *
+ * Generic on purpose: besides device status it can hold entities or view models.
+ */
+public class BoundedCache<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(BoundedCache.class);
+    private static final AtomicInteger REFRESH_THREADS = new AtomicInteger();
+    private static final ExecutorService REFRESH_POOL = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "cache-refresh-" + REFRESH_THREADS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    public record CacheStats(String name, long hits, long misses, long loads, long loadFailures,
+                             long evictions, long expirations, long refreshes, int size, long maximumSize,
+                             double hitRatio, double averageLoadMillis, double maxLoadMillis) {}
+
+    private record Entry<V>(V value, long writtenAtNanos, long expiresAtNanos) {
+        boolean expired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private final String name;
+    private final long maximumSize;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+    private final Executor refreshExecutor;
+    private final Segment<K, V>[] segments;
+    private final int segmentCapacity;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Map<K, Boolean> refreshing = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    private BoundedCache(Builder builder) {
+        this.name = builder.name;
+        this.maximumSize = builder.maximumSize;
+        this.ttlNanos = builder.expireAfterWrite.toNanos();
+        this.refreshAfterNanos = builder.refreshAfterWrite == null ? Long.MAX_VALUE : builder.refreshAfterWrite.toNanos();
+        this.refreshExecutor = builder.refreshExecutor == null ? REFRESH_POOL : builder.refreshExecutor;
+        int stripes = Integer.highestOneBit(Math.max(1, Math.min(builder.segments, (int) Math.min(Integer.MAX_VALUE, maximumSize))));
+        this.segments = new Segment[stripes];
+        for (int i = 0; i < stripes; i++) {
+            segments[i] = new Segment<>();
+        }
+        this.segmentCapacity = (int) Math.max(1, maximumSize / stripes);
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the cached value, loading it with {@code loader} on a miss
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return get(key, loader, null);
+    }
+
+    /**
+     * @param ttl expiry for a newly loaded entry, null for the cache default
+     */
+    public V get(K key, Function<? super K, ? extends V> loader, Duration ttl) {
+        long now = System.nanoTime();
+        Entry<V> entry = lookup(key, now);
+        if (entry != null) {
+            hits.increment();
+            if (now - entry.writtenAtNanos() >= refreshAfterNanos) {
+                refreshAsync(key, loader, ttl);
+            }
+            return entry.value();
+        }
+        misses.increment();
+        return load(key, loader, ttl);
+    }
+
+    public Optional<V> getIfPresent(K key) {
+        Entry<V> entry = lookup(key, System.nanoTime());
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.value());
+    }
+
+    public void put(K key, V value) {
+        put(key, value, null);
+    }
+
+    public void put(K key, V value, Duration ttl) {
+        store(key, value, ttl);
+    }
+
+    /**
+     * Remove an entry; a load already running for the key will not store its result
+     */
+    public void invalidate(K key) {
+        inFlight.remove(key);
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.map.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        inFlight.clear();
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.map.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public CacheStats stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        long l = loads.sum() + loadFailures.sum();
+        return new CacheStats(name, h, m, loads.sum(), loadFailures.sum(), evictions.sum(), expirations.sum(),
+                refreshes.sum(), size(), maximumSize,
+                h + m == 0 ? 0.0 : (double) h / (h + m),
+                l == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / l,
+                maxLoadNanos.get() / 1_000_000.0);
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private Entry<V> lookup(K key, long now) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null && entry.expired(now)) {
+                segment.map.remove(key);
+                expirations.increment();
+                return null;
+            }
+            return entry;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private V load(K key, Function<? super K, ? extends V> loader, Duration ttl) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            V value = timedLoad(key, loader);
+            if (inFlight.remove(key, mine) && value != null) {
+                store(key, value, ttl);
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void refreshAsync(K key, Function<? super K, ? extends V> loader, Duration ttl) {
+        if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        refreshes.increment();
+        CompletableFuture.runAsync(() -> {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            if (inFlight.putIfAbsent(key, mine) != null) {
+                return;
+            }
+            try {
+                V value = timedLoad(key, loader);
+                if (inFlight.remove(key, mine) && value != null) {
+                    store(key, value, ttl);
+                }
+                mine.complete(value);
+            } catch (RuntimeException e) {
+                inFlight.remove(key, mine);
+                mine.completeExceptionally(e);
+                log.debug("Refresh of {} in cache '{}' failed: {}", key, name, e.getMessage());
+            }
+        }, refreshExecutor).whenComplete((v, e) -> refreshing.remove(key));
+    }
+
+    private V timedLoad(K key, Function<? super K, ? extends V> loader) {
+        long start = System.nanoTime();
+        try {
+            V value = loader.apply(key);
+            loads.increment();
+            return value;
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            loadNanos.add(elapsed);
+            maxLoadNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    private void store(K key, V value, Duration ttl) {
+        long now = System.nanoTime();
+        long expiresAt = now + (ttl == null ? ttlNanos : ttl.toNanos());
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.map.put(key, new Entry<>(value, now, expiresAt));
+            Iterator<Entry<V>> eldest = segment.map.values().iterator();
+            while (segment.map.size() > segmentCapacity && eldest.hasNext()) {
+                Entry<V> victim = eldest.next();
+                eldest.remove();
+                if (victim.expired(now)) expirations.increment(); else evictions.increment();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    public static final class Builder {
+        private final String name;
+        private long maximumSize = 10_000;
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+        private Duration refreshAfterWrite;
+        private int segments = 16;
+        private Executor refreshExecutor;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize <= 0) throw new IllegalArgumentException("maximumSize must be positive");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder expireAfterWrite(Duration ttl) {
+            this.expireAfterWrite = ttl;
+            return this;
+        }
+
+        /**
+         * Serve entries older than this while reloading them in the background
+         */
+        public Builder refreshAfterWrite(Duration refreshAfter) {
+            this.refreshAfterWrite = refreshAfter;
+            return this;
+        }
+
+        public Builder segments(int segments) {
+            this.segments = segments;
+            return this;
+        }
+
+        public Builder refreshExecutor(Executor executor) {
+            this.refreshExecutor = executor;
+            return this;
+        }
+
+        public <K, V> BoundedCache<K, V> build() {
+            return new BoundedCache<>(this);
+        }
+    }
+}
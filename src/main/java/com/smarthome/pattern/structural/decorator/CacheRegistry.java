@@ -0,0 +1,30 @@
+package com.smarthome.pattern.structural.decorator;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named application-wide caches, so their statistics can be reported in one place
+ */
+public final class CacheRegistry {
+    private static final Map<String, BoundedCache<?, ?>> CACHES = new ConcurrentHashMap<>();
+
+    private CacheRegistry() {}
+
+    public static <K, V> BoundedCache<K, V> register(BoundedCache<K, V> cache) {
+        BoundedCache<?, ?> existing = CACHES.putIfAbsent(cache.getName(), cache);
+        if (existing != null && existing != cache) {
+            throw new IllegalStateException("A cache named '" + cache.getName() + "' is already registered");
+        }
+        return cache;
+    }
+
+    public static List<BoundedCache.CacheStats> stats() {
+        return CACHES.values().stream()
+                .map(BoundedCache::stats)
+                .sorted(Comparator.comparing(BoundedCache.CacheStats::name))
+                .toList();
+    }
+}
@@ -4,23 +4,60 @@ import com.smarthome.pattern.creational.factory.Device;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
 import java.time.Duration;
-import java.time.Instant;
 
 /**
- * Concrete Decorator - Adds caching to device status queries
+ * Concrete Decorator - Adds caching to device status queries.
+ *
+ * All instances share one {@link BoundedCache}, keyed by the identity of the
+ * decorated device, so two decorators around the same device share its entry
+ * and the total number of cached statuses stays bounded. Keys hold the device
+ * weakly: a cached status never keeps a short-lived decorator chain or its
+ * device alive, and the entry of a collected device simply ages out.
  */
 public class CachingDecorator extends DeviceDecorator {
     private static final Logger log = LoggerFactory.getLogger(CachingDecorator.class);
-    private String cachedStatus;
-    private Instant cacheTime;
+    private static final BoundedCache<DeviceKey, String> STATUS_CACHE = CacheRegistry.register(
+            BoundedCache.builder("device-status")
+                    .maximumSize(10_000)
+                    .expireAfterWrite(Duration.ofSeconds(30))
+                    .build());
+
+    /**
+     * Weak identity key: devices are cached per instance, whatever their equals()
+     * says; once the device is collected the key equals only itself
+     */
+    private static final class DeviceKey {
+        private final WeakReference<Device> device;
+        private final int hash;
+
+        DeviceKey(Device device) {
+            this.device = new WeakReference<>(device);
+            this.hash = System.identityHashCode(device);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof DeviceKey other) || other.hash != hash) return false;
+            Device referent = device.get();
+            return referent != null && referent == other.device.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     private final Duration cacheDuration;
-    private int cacheHits = 0;
-    private int cacheMisses = 0;
+    private final DeviceKey key;
 
     public CachingDecorator(Device device, Duration cacheDuration) {
         super(device);
         this.cacheDuration = cacheDuration;
+        this.key = new DeviceKey(device);
     }
 
     public CachingDecorator(Device device) {
@@ -29,17 +66,10 @@ public class CachingDecorator extends DeviceDecorator {
 
     @Override
     public String getStatus() {
-        if (isCacheValid()) {
-            cacheHits++;
-            log.debug("[CACHE] Cache hit for device status");
-            return cachedStatus;
-        }
-
-        cacheMisses++;
-        log.debug("[CACHE] Cache miss - fetching fresh status");
-        cachedStatus = super.getStatus();
-        cacheTime = Instant.now();
-        return cachedStatus;
+        return STATUS_CACHE.get(key, k -> {
+            log.debug("[CACHE] Cache miss - fetching fresh status");
+            return super.getStatus();
+        }, cacheDuration);
     }
 
     @Override
@@ -65,23 +95,12 @@ public class CachingDecorator extends DeviceDecorator {
         return "[Cached] " + super.getDeviceInfo();
     }
 
-    private boolean isCacheValid() {
-        if (cachedStatus == null || cacheTime == null) {
-            return false;
-        }
-        return Duration.between(cacheTime, Instant.now()).compareTo(cacheDuration) < 0;
-    }
-
     public void invalidateCache() {
-        cachedStatus = null;
-        cacheTime = null;
+        STATUS_CACHE.invalidate(key);
         log.debug("[CACHE] Cache invalidated for device");
     }
 
-    public String getCacheStats() {
-        return String.format("Cache Stats - Hits: %d, Misses: %d, Hit Rate: %.1f%%",
-                cacheHits, cacheMisses,
-                (cacheHits + cacheMisses) > 0 ?
-                        (cacheHits * 100.0 / (cacheHits + cacheMisses)) : 0);
+    public BoundedCache.CacheStats getCacheStats() {
+        return STATUS_CACHE.stats();
     }
 }
@@ -0,0 +1,40 @@
+package com.smarthome.pattern.structural.decorator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of latency histograms per device type and operation,
+ * fed by {@link MetricsDecorator}
+ */
+public final class DeviceMetrics {
+    private static final DeviceMetrics SHARED = new DeviceMetrics();
+
+    public record OperationLatency(String deviceType, String operation, LatencyHistogram.Snapshot latency) {}
+
+    private record Key(String deviceType, String operation) {}
+
+    private final Map<Key, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public static DeviceMetrics shared() {
+        return SHARED;
+    }
+
+    public LatencyHistogram histogram(String deviceType, String operation) {
+        return histograms.computeIfAbsent(new Key(deviceType, operation), k -> new LatencyHistogram());
+    }
+
+    public List<OperationLatency> snapshot() {
+        List<OperationLatency> out = new ArrayList<>(histograms.size());
+        histograms.forEach((key, h) -> out.add(new OperationLatency(key.deviceType(), key.operation(), h.snapshot())));
+        out.sort(Comparator.comparing(OperationLatency::deviceType).thenComparing(OperationLatency::operation));
+        return out;
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+}
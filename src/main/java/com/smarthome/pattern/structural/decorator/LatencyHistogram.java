@@ -0,0 +1,102 @@
+package com.smarthome.pattern.structural.decorator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed-size latency histogram with log-linear buckets.
+ *
+ * Values below 64ns get a bucket each; above that every power of two is split
+ * into 32 linear sub-buckets, so any recorded value is reported within ~3% of
+ * its true value, HdrHistogram style. Recording is a single atomic increment
+ * and never allocates; count and mean are derived from the buckets when a
+ * snapshot is taken. Values above ~18 minutes are clamped.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int MAX_MAGNITUDE = 40; // 2^40 ns ~ 18 minutes
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    public record Snapshot(long count, long minNanos, long maxNanos, double meanNanos,
+                           long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos) {}
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        counts.getAndIncrement(indexOf(value));
+        // Plain read first: after warm-up the extremes almost never change
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+        if (value < min.get()) min.accumulateAndGet(value, Math::min);
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+        min.set(Long.MAX_VALUE);
+    }
+
+    /**
+     * Quantiles over a copy of the buckets; recording may continue meanwhile
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long n = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            n += copy[i];
+            sum += copy[i] * midpointOf(i);
+        }
+        if (n == 0) {
+            return new Snapshot(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        long maxValue = max.get();
+        return new Snapshot(n, min.get(), maxValue, sum / n,
+                quantile(copy, n, 0.50, maxValue), quantile(copy, n, 0.90, maxValue),
+                quantile(copy, n, 0.99, maxValue), quantile(copy, n, 0.999, maxValue));
+    }
+
+    private static long quantile(long[] buckets, long n, double q, long maxValue) {
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    static int indexOf(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | 1);
+        int shift = Math.max(0, magnitude - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static double midpointOf(int index) {
+        long high = highestValueIn(index);
+        long low = index == 0 ? 0 : highestValueIn(index - 1) + 1;
+        return (low + high) / 2.0;
+    }
+
+    static long highestValueIn(int index) {
+        int shift = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+        long mantissa = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,89 @@
+package com.smarthome.pattern.structural.decorator;
+
+import com.smarthome.pattern.creational.factory.Device;
+
+/**
+ * Concrete Decorator - Records how long each operation takes, per device type.
+ *
+ * The histograms are resolved once when the decorator is built, so the hot path
+ * is two {@code System.nanoTime()} calls and one lock-free histogram update.
+ */
+public class MetricsDecorator extends DeviceDecorator {
+    private final String deviceType;
+    private final LatencyHistogram turnOnLatency;
+    private final LatencyHistogram turnOffLatency;
+    private final LatencyHistogram statusLatency;
+    private final LatencyHistogram operateLatency;
+
+    public MetricsDecorator(Device device) {
+        this(device, deviceTypeOf(device), DeviceMetrics.shared());
+    }
+
+    public MetricsDecorator(Device device, String deviceType) {
+        this(device, deviceType, DeviceMetrics.shared());
+    }
+
+    public MetricsDecorator(Device device, String deviceType, DeviceMetrics metrics) {
+        super(device);
+        this.deviceType = deviceType;
+        this.turnOnLatency = metrics.histogram(deviceType, "turnOn");
+        this.turnOffLatency = metrics.histogram(deviceType, "turnOff");
+        this.statusLatency = metrics.histogram(deviceType, "getStatus");
+        this.operateLatency = metrics.histogram(deviceType, "operate");
+    }
+
+    @Override
+    public void turnOn() {
+        long start = System.nanoTime();
+        try {
+            super.turnOn();
+        } finally {
+            turnOnLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void turnOff() {
+        long start = System.nanoTime();
+        try {
+            super.turnOff();
+        } finally {
+            turnOffLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String getStatus() {
+        long start = System.nanoTime();
+        try {
+            return super.getStatus();
+        } finally {
+            statusLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void operate(String command) {
+        long start = System.nanoTime();
+        try {
+            super.operate(command);
+        } finally {
+            operateLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    /**
+     * Class name of the innermost decorated device
+     */
+    static String deviceTypeOf(Device device) {
+        Device inner = device;
+        while (inner instanceof DeviceDecorator decorator) {
+            inner = decorator.wrappedDevice;
+        }
+        return inner.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,17 @@
+package com.smarthome.pattern.structural.decorator;
+
+/**
+ * Thrown when a device command is refused by a rate limiter
+ */
+public class RateLimitExceededException extends RuntimeException {
+    private final long retryAfterMillis;
+
+    public RateLimitExceededException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,128 @@
+package com.smarthome.pattern.structural.decorator;
+
+import com.smarthome.pattern.creational.factory.Device;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Concrete Decorator - Limits how often state-changing commands reach the device.
+ *
+ * Reads are never limited. When the bucket is empty a command is, per policy:
+ * - REJECT: refused with {@link RateLimitExceededException}
+ * - QUEUE: delayed until its reserved permit is due (at most {@code maxQueueDelay})
+ * - COALESCE: remembered as the latest intent and applied once a permit frees;
+ *   newer commands replace older pending ones, so ON, OFF, ON becomes one ON
+ */
+public class RateLimitingDecorator extends DeviceDecorator {
+    private static final Logger log = LoggerFactory.getLogger(RateLimitingDecorator.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rate-limit-flush-" + THREADS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    public enum Policy {
+        REJECT,
+        QUEUE,
+        COALESCE
+    }
+
+    private final TokenBucket bucket;
+    private final Policy policy;
+    private final long maxQueueDelayNanos;
+    private final AtomicReference<Runnable> pendingIntent = new AtomicReference<>();
+
+    public RateLimitingDecorator(Device device, TokenBucket bucket, Policy policy, Duration maxQueueDelay) {
+        super(device);
+        this.bucket = bucket;
+        this.policy = policy;
+        this.maxQueueDelayNanos = maxQueueDelay.toNanos();
+    }
+
+    public RateLimitingDecorator(Device device, TokenBucket bucket, Policy policy) {
+        this(device, bucket, policy, Duration.ofSeconds(1));
+    }
+
+    @Override
+    public void turnOn() {
+        limited("turnOn", super::turnOn);
+    }
+
+    @Override
+    public void turnOff() {
+        limited("turnOff", super::turnOff);
+    }
+
+    @Override
+    public void operate(String command) {
+        limited("operate(" + command + ")", () -> super.operate(command));
+    }
+
+    public boolean hasPendingIntent() {
+        return pendingIntent.get() != null;
+    }
+
+    private void limited(String operation, Runnable command) {
+        long now = System.nanoTime();
+        switch (policy) {
+            case REJECT -> {
+                if (!bucket.tryAcquire(now)) {
+                    throw rejected(operation, bucket.nanosUntilAvailable(now));
+                }
+                command.run();
+            }
+            case QUEUE -> {
+                long wait = bucket.reserve(maxQueueDelayNanos, now);
+                if (wait < 0) {
+                    throw rejected(operation, bucket.nanosUntilAvailable(now));
+                }
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                command.run();
+            }
+            case COALESCE -> {
+                // A pending intent must run first, so only jump the queue when there is none
+                if (pendingIntent.get() == null && bucket.tryAcquire(now)) {
+                    command.run();
+                } else if (pendingIntent.getAndSet(command) == null) {
+                    scheduleFlush(bucket.nanosUntilAvailable(now));
+                } else {
+                    log.debug("[RATE] {} superseded an earlier pending command", operation);
+                }
+            }
+        }
+    }
+
+    private void scheduleFlush(long delayNanos) {
+        FLUSHER.schedule(() -> {
+            long wait = bucket.nanosUntilAvailable(System.nanoTime());
+            if (wait > 0 || !bucket.tryAcquire()) {
+                scheduleFlush(Math.max(wait, 1_000_000));
+                return;
+            }
+            Runnable latest = pendingIntent.getAndSet(null);
+            if (latest != null) {
+                try {
+                    latest.run();
+                } catch (RuntimeException e) {
+                    log.warn("[RATE] Deferred command failed: {}", e.getMessage());
+                }
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static RateLimitExceededException rejected(String operation, long waitNanos) {
+        return new RateLimitExceededException("Rate limit exceeded for " + operation,
+                Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+    }
+}
@@ -0,0 +1,71 @@
+package com.smarthome.pattern.structural.decorator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as GCRA (generic cell rate algorithm).
+ *
+ * The whole state is one {@link AtomicLong}: the theoretical arrival time of the
+ * next permit. Acquiring pushes it forward by one emission interval; the request
+ * is refused if that would move it more than {@code burst} intervals past now.
+ * No timer refills the bucket, so an idle bucket costs nothing but its 8 bytes.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond must be positive");
+        if (burst <= 0) throw new IllegalArgumentException("burst must be positive");
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime()); // starts full
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long nowNanos) {
+        return reserve(0, nowNanos) == 0;
+    }
+
+    /**
+     * Reserve the next permit even if it is only available in the future.
+     *
+     * @return nanoseconds the caller must wait before using the permit (0 = now),
+     *         or -1 if that wait would exceed {@code maxWaitNanos}; nothing is reserved then
+     */
+    public long reserve(long maxWaitNanos, long nowNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = (current - nowNanos > 0 ? current : nowNanos) + intervalNanos;
+            long wait = next - nowNanos - burstNanos;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Time until {@link #tryAcquire()} would succeed, 0 if it would now
+     */
+    public long nanosUntilAvailable(long nowNanos) {
+        long current = theoreticalArrival.get();
+        long next = (current - nowNanos > 0 ? current : nowNanos) + intervalNanos;
+        return Math.max(0, next - nowNanos - burstNanos);
+    }
+
+    /**
+     * True once the bucket has been full and unused for {@code idleNanos};
+     * such a bucket can be dropped and recreated without changing behaviour
+     */
+    public boolean isIdle(long nowNanos, long idleNanos) {
+        return nowNanos - theoreticalArrival.get() >= idleNanos;
+    }
+}
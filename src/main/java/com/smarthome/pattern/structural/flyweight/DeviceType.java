@@ -3,9 +3,10 @@ package com.smarthome.pattern.structural.flyweight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * FLYWEIGHT PATTERN
@@ -76,10 +77,12 @@ public class DeviceType {
 
 /**
  * Flyweight Factory - Creates and manages flyweight objects
+ * Lookups are lock-free; an unknown type is created once even when several
+ * threads ask for it at the same time
  */
 class DeviceTypeFactory {
     private static final Logger log = LoggerFactory.getLogger(DeviceTypeFactory.class);
-    private static final Map<String, DeviceType> deviceTypes = new HashMap<>();
+    private static final Map<String, DeviceType> deviceTypes = new ConcurrentHashMap<>();
 
     static {
         // Pre-create common device types
@@ -129,17 +132,17 @@ class DeviceTypeFactory {
      * Get or create a device type flyweight
      */
     public static DeviceType getDeviceType(String type) {
-        DeviceType deviceType = deviceTypes.get(type.toUpperCase());
-        if (deviceType == null) {
+        String key = type.toUpperCase(Locale.ROOT);
+        DeviceType deviceType = deviceTypes.get(key);
+        if (deviceType != null) return deviceType;
+        return deviceTypes.computeIfAbsent(key, k -> {
             log.warn("Unknown device type: {}, creating generic", type);
-            deviceType = new DeviceType(
+            return new DeviceType(
                     type, "❓", "Unknown",
                     Set.of("ON_OFF"),
                     5.0
             );
-            deviceTypes.put(type.toUpperCase(), deviceType);
-        }
-        return deviceType;
+        });
     }
 
     /**
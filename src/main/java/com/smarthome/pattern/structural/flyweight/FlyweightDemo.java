@@ -1,5 +1,7 @@
 package com.smarthome.pattern.structural.flyweight;
 
+import com.smarthome.domain.StringPool;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -20,11 +22,14 @@ public final class FlyweightDemo {
         } else if (memorySaved > 100) {
             memorySaved = 100;
         }
+        StringPool.Stats strings = StringPool.stats();
         return Map.of(
                 "pattern", "Flyweight",
                 "instances", count,
                 "sharedTypes", flyweights,
-                "memorySaved", memorySaved
+                "memorySaved", memorySaved,
+                "pooledStrings", strings.pooled(),
+                "stringPoolHits", strings.hits()
         );
     }
 
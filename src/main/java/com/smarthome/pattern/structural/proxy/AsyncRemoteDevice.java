@@ -0,0 +1,28 @@
+package com.smarthome.pattern.structural.proxy;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link RemoteDevice}.
+ *
+ * Every call returns immediately; the network round trip completes the future
+ * on the shared {@link RemoteIo} pool, so callers (e.g. Tomcat request threads)
+ * are never parked while a remote device answers.
+ */
+public interface AsyncRemoteDevice extends RemoteDevice {
+
+    /**
+     * Establish the connection to the device (no-op if already connected)
+     */
+    CompletableFuture<Void> connectAsync();
+
+    CompletableFuture<Void> turnOnAsync();
+
+    CompletableFuture<Void> turnOffAsync();
+
+    CompletableFuture<Boolean> isOnAsync();
+
+    CompletableFuture<String> statusAsync();
+
+    CompletableFuture<Void> operateAsync(String command);
+}
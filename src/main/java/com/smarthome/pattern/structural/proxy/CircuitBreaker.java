@@ -0,0 +1,113 @@
+package com.smarthome.pattern.structural.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-device circuit breaker.
+ *
+ * CLOSED: calls pass; {@code failureThreshold} consecutive failures open the circuit.
+ * OPEN: calls are rejected until {@code openDuration} has passed.
+ * HALF_OPEN: exactly one probe call is let through; its success closes the
+ * circuit, its failure opens it again for another {@code openDuration}.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public record Snapshot(State state, int consecutiveFailures, long successes, long failures,
+                           long rejected, long retryInMillis) {}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        if (failureThreshold <= 0) throw new IllegalArgumentException("failureThreshold must be positive");
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Ask for permission to make a call. Every granted permission must be
+     * followed by exactly one {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN && System.nanoTime() - openedAt >= openNanos
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            log.info("Circuit '{}' half-open, letting one probe call through", name);
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void onSuccess() {
+        successes.increment();
+        consecutiveFailures.set(0);
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            log.info("Circuit '{}' closed after successful probe", name);
+        }
+    }
+
+    public void onFailure() {
+        failures.increment();
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            trip(State.HALF_OPEN, "probe failed");
+        } else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            trip(State.CLOSED, failureThreshold + " consecutive failures");
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Time until the next probe is allowed, zero unless the circuit is open
+     */
+    public long retryInMillis() {
+        if (state.get() != State.OPEN) {
+            return 0;
+        }
+        long remaining = openNanos - (System.nanoTime() - openedAt);
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(state.get(), consecutiveFailures.get(), successes.sum(), failures.sum(),
+                rejected.sum(), retryInMillis());
+    }
+
+    private void trip(State from, String reason) {
+        openedAt = System.nanoTime();
+        if (state.compareAndSet(from, State.OPEN)) {
+            log.warn("Circuit '{}' opened ({}), rejecting calls for {}ms",
+                    name, reason, TimeUnit.NANOSECONDS.toMillis(openNanos));
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.smarthome.pattern.structural.proxy;
 
-import com.smarthome.pattern.creational.factory.Device;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * PROXY PATTERN
  *
@@ -14,41 +20,45 @@ import org.slf4j.LoggerFactory;
  * - Protection Proxy: Access control based on user permissions
  * - Remote Proxy: Represents a device on another network/hub
  * - Caching Proxy: Caches device state to reduce network calls
+ * - Async Proxy: {@link AsyncRemoteDevice} variants that never block the caller
+ * - Resilient Proxy: every remote call goes through a {@link RemoteCallGuard}
+ *   (timeout, circuit breaker, bulkhead, optional hedged reads)
  */
 
-/**
- * Remote Device Interface - represents a device that might be remote/expensive to access
- */
-interface RemoteDevice extends Device {
-    boolean isConnected();
-    void connect();
-    void disconnect();
-    String getRemoteAddress();
-}
-
 /**
  * Real Subject - Actual remote device implementation
  */
-class RealRemoteDevice implements RemoteDevice {
+class RealRemoteDevice implements AsyncRemoteDevice {
     private static final Logger log = LoggerFactory.getLogger(RealRemoteDevice.class);
     private final String deviceId;
     private final String name;
     private final String remoteAddress;
-    private boolean isConnected = false;
-    private boolean isOn = false;
+    private volatile boolean isConnected = false;
+    private volatile boolean isOn = false;
+    private final AtomicReference<CompletableFuture<Void>> pendingConnect = new AtomicReference<>();
 
     public RealRemoteDevice(String deviceId, String name, String remoteAddress) {
+        this(deviceId, name, remoteAddress, true);
+    }
+
+    /**
+     * @param blockingInit simulate the expensive initialization on the calling thread;
+     *                     the async path passes false and pays the cost in {@link #connectAsync()}
+     */
+    RealRemoteDevice(String deviceId, String name, String remoteAddress, boolean blockingInit) {
         this.deviceId = deviceId;
         this.name = name;
         this.remoteAddress = remoteAddress;
-        // Simulate expensive initialization
-        log.info("Initializing connection to remote device at {}", remoteAddress);
-        simulateNetworkDelay();
+        if (blockingInit) {
+            // Simulate expensive initialization
+            log.info("Initializing connection to remote device at {}", remoteAddress);
+            simulateNetworkDelay();
+        }
     }
 
     private void simulateNetworkDelay() {
         try {
-            Thread.sleep(100); // Simulate network latency
+            Thread.sleep(RemoteIo.NETWORK_LATENCY_MS); // Simulate network latency
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -118,24 +128,93 @@ class RealRemoteDevice implements RemoteDevice {
         if (!isConnected) connect();
         log.info("Remote device {} executing command: {}", name, command);
     }
+
+    // ── Async API: each call costs one simulated round trip, no thread is parked ──
+
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        CompletableFuture<Void> connecting = new CompletableFuture<>();
+        while (true) {
+            if (isConnected) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (pendingConnect.compareAndSet(null, connecting)) {
+                break;
+            }
+            CompletableFuture<Void> inFlight = pendingConnect.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            // The connect that won the race finished and cleared itself meanwhile; look again
+        }
+        log.info("Connecting (async) to {} at {}", name, remoteAddress);
+        CompletableFuture.runAsync(() -> {
+            isConnected = true;
+            log.info("Connected to {}", name);
+        }, RemoteIo.afterRoundTrip()).whenComplete((v, e) -> {
+            pendingConnect.set(null);
+            if (e != null) connecting.completeExceptionally(e); else connecting.complete(null);
+        });
+        return connecting;
+    }
+
+    @Override
+    public CompletableFuture<Void> turnOnAsync() {
+        return roundTrip(() -> {
+            isOn = true;
+            log.info("Turning ON remote device: {}", name);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> turnOffAsync() {
+        return roundTrip(() -> {
+            isOn = false;
+            log.info("Turning OFF remote device: {}", name);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isOnAsync() {
+        return roundTrip(() -> isOn);
+    }
+
+    @Override
+    public CompletableFuture<String> statusAsync() {
+        return roundTrip(this::getStatus);
+    }
+
+    @Override
+    public CompletableFuture<Void> operateAsync(String command) {
+        return roundTrip(() -> {
+            log.info("Remote device {} executing command: {}", name, command);
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> roundTrip(Supplier<T> remoteCall) {
+        return connectAsync().thenCompose(v -> CompletableFuture.supplyAsync(remoteCall, RemoteIo.afterRoundTrip()));
+    }
 }
 
 /**
  * Proxy - Controls access to the real remote device
  */
-public class DeviceProxy implements RemoteDevice {
+public class DeviceProxy implements AsyncRemoteDevice {
     private static final Logger log = LoggerFactory.getLogger(DeviceProxy.class);
     private final String deviceId;
     private final String name;
     private final String remoteAddress;
-    private RealRemoteDevice realDevice; // Lazy initialization
-    private String cachedStatus;
-    private long lastStatusTime = 0;
-    private static final long CACHE_DURATION_MS = 5000;
+    private volatile AsyncRemoteDevice realDevice; // Lazy initialization
+    private final Supplier<? extends AsyncRemoteDevice> connector;
+    private final RemoteStatusCache statusCache;
+    private final RemoteCallGuard callGuard;
 
     // Access control
-    private String currentUser;
-    private AccessLevel accessLevel = AccessLevel.GUEST;
+    private volatile String currentUser;
+    private volatile AccessLevel accessLevel = AccessLevel.GUEST;
 
     public enum AccessLevel {
         GUEST(false, true),    // Can view only
@@ -152,12 +231,56 @@ public class DeviceProxy implements RemoteDevice {
     }
 
     public DeviceProxy(String deviceId, String name, String remoteAddress) {
+        this(deviceId, name, remoteAddress, RemoteStatusCache.shared());
+    }
+
+    public DeviceProxy(String deviceId, String name, String remoteAddress, RemoteStatusCache statusCache) {
+        this(deviceId, name, remoteAddress, statusCache, RemoteCallGuard.shared());
+    }
+
+    public DeviceProxy(String deviceId, String name, String remoteAddress,
+                       RemoteStatusCache statusCache, RemoteCallGuard callGuard) {
+        this(deviceId, name, remoteAddress, statusCache, callGuard,
+                () -> new RealRemoteDevice(deviceId, name, remoteAddress, false));
+    }
+
+    /**
+     * @param connector creates the real device on first use, e.g. a {@link NetworkedRemoteDevice}
+     */
+    public DeviceProxy(String deviceId, String name, String remoteAddress, RemoteStatusCache statusCache,
+                       RemoteCallGuard callGuard, Supplier<? extends AsyncRemoteDevice> connector) {
         this.deviceId = deviceId;
         this.name = name;
         this.remoteAddress = remoteAddress;
+        this.statusCache = statusCache;
+        this.callGuard = callGuard;
+        this.connector = connector;
         log.info("Created proxy for device: {} (lazy initialization)", name);
     }
 
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Configure how long this device's status may be cached and for how long
+     * an expired status may still be served while it is being refreshed
+     */
+    public void setStatusTtl(Duration ttl, Duration staleWhileRevalidate) {
+        statusCache.configure(deviceId, ttl, staleWhileRevalidate);
+    }
+
+    /**
+     * Configure timeout, circuit breaker, bulkhead and hedging for this device
+     */
+    public void setResiliencePolicy(RemoteCallGuard.Policy policy) {
+        callGuard.configure(deviceId, policy);
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return callGuard.stateOf(deviceId);
+    }
+
     /**
      * Set the access level for the current session
      */
@@ -168,14 +291,22 @@ public class DeviceProxy implements RemoteDevice {
     }
 
     /**
-     * Lazy initialization - create real device only when needed
+     * Lazy initialization - create the real device handle only when needed;
+     * the connection cost is paid by connectAsync, under the call guard
      */
-    private RealRemoteDevice getRealDevice() {
-        if (realDevice == null) {
-            log.info("Lazy initialization: Creating real device connection");
-            realDevice = new RealRemoteDevice(deviceId, name, remoteAddress);
+    private AsyncRemoteDevice getRealDevice() {
+        AsyncRemoteDevice device = realDevice;
+        if (device == null) {
+            synchronized (this) {
+                device = realDevice;
+                if (device == null) {
+                    log.info("Lazy initialization: Creating real device handle");
+                    device = connector.get();
+                    realDevice = device;
+                }
+            }
         }
-        return realDevice;
+        return device;
     }
 
     private boolean checkControlAccess(String operation) {
@@ -187,19 +318,19 @@ public class DeviceProxy implements RemoteDevice {
         return true;
     }
 
+    // Blocking API: waits on the guarded async call, so it is bounded by the call timeout
+
     @Override
     public void turnOn() {
         if (checkControlAccess("turnOn")) {
-            getRealDevice().turnOn();
-            invalidateCache();
+            await(guarded("turnOn", AsyncRemoteDevice::turnOnAsync).thenRun(this::invalidateCache));
         }
     }
 
     @Override
     public void turnOff() {
         if (checkControlAccess("turnOff")) {
-            getRealDevice().turnOff();
-            invalidateCache();
+            await(guarded("turnOff", AsyncRemoteDevice::turnOffAsync).thenRun(this::invalidateCache));
         }
     }
 
@@ -210,15 +341,8 @@ public class DeviceProxy implements RemoteDevice {
 
     @Override
     public String getStatus() {
-        // Caching proxy - return cached status if still valid
-        if (cachedStatus != null && System.currentTimeMillis() - lastStatusTime < CACHE_DURATION_MS) {
-            log.debug("Returning cached status for {}", name);
-            return "[Cached] " + cachedStatus;
-        }
-
-        cachedStatus = getRealDevice().getStatus();
-        lastStatusTime = System.currentTimeMillis();
-        return cachedStatus;
+        // Caching proxy - concurrent misses share one remote call
+        return await(statusAsync());
     }
 
     @Override
@@ -234,8 +358,7 @@ public class DeviceProxy implements RemoteDevice {
     @Override
     public void operate(String command) {
         if (checkControlAccess("operate:" + command)) {
-            getRealDevice().operate(command);
-            invalidateCache();
+            await(guarded("operate:" + command, device -> device.operateAsync(command)).thenRun(this::invalidateCache));
         }
     }
 
@@ -246,7 +369,7 @@ public class DeviceProxy implements RemoteDevice {
 
     @Override
     public void connect() {
-        getRealDevice().connect();
+        await(connectAsync());
     }
 
     @Override
@@ -261,9 +384,69 @@ public class DeviceProxy implements RemoteDevice {
         return remoteAddress;
     }
 
+    // ── Async API ────────────────────────────────────────────
+
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        return guarded("connect", AsyncRemoteDevice::connectAsync);
+    }
+
+    @Override
+    public CompletableFuture<Void> turnOnAsync() {
+        return controlAsync("turnOn", device -> device.turnOnAsync());
+    }
+
+    @Override
+    public CompletableFuture<Void> turnOffAsync() {
+        return controlAsync("turnOff", device -> device.turnOffAsync());
+    }
+
+    @Override
+    public CompletableFuture<Void> operateAsync(String command) {
+        return controlAsync("operate:" + command, device -> device.operateAsync(command));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isOnAsync() {
+        return callGuard.read(deviceId, "isOn", () -> getRealDevice().isOnAsync());
+    }
+
+    @Override
+    public CompletableFuture<String> statusAsync() {
+        return statusCache.get(deviceId, () -> callGuard.read(deviceId, "status", () -> getRealDevice().statusAsync()))
+                .thenApply(cached -> {
+                    if (cached.fromCache()) {
+                        log.debug("Returning cached status for {}", name);
+                        return "[Cached] " + cached.value();
+                    }
+                    return cached.value();
+                });
+    }
+
+    private CompletableFuture<Void> controlAsync(String operation,
+                                                 Function<AsyncRemoteDevice, CompletableFuture<Void>> call) {
+        if (!checkControlAccess(operation)) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "Access denied for '" + currentUser + "' (" + accessLevel + "): " + operation));
+        }
+        return guarded(operation, call).thenRun(this::invalidateCache);
+    }
+
+    private <T> CompletableFuture<T> guarded(String operation, Function<AsyncRemoteDevice, CompletableFuture<T>> call) {
+        return callGuard.call(deviceId, operation, () -> call.apply(getRealDevice()));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
     private void invalidateCache() {
-        cachedStatus = null;
-        lastStatusTime = 0;
+        statusCache.invalidate(deviceId);
     }
 
     public boolean isInitialized() {
@@ -0,0 +1,138 @@
+package com.smarthome.pattern.structural.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Real Subject that talks to a device over the network through a shared,
+ * pipelined {@link RemoteDeviceClient} (e.g. against {@link RemoteDeviceSimulator}).
+ *
+ * Plug it into a proxy with
+ * {@code new DeviceProxy(id, name, address, cache, guard, () -> new NetworkedRemoteDevice(id, name, client))}.
+ */
+public class NetworkedRemoteDevice implements AsyncRemoteDevice {
+    private static final Logger log = LoggerFactory.getLogger(NetworkedRemoteDevice.class);
+    private final String deviceId;
+    private final String name;
+    private final RemoteDeviceClient client;
+    private volatile boolean connected;
+    private volatile boolean on; // last state reported by the device
+
+    public NetworkedRemoteDevice(String deviceId, String name, RemoteDeviceClient client) {
+        this.deviceId = deviceId;
+        this.name = name;
+        this.client = client;
+    }
+
+    // ── Async API ────────────────────────────────────────────
+
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        if (connected) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return client.send(deviceId, "CONNECT", null).thenRun(() -> {
+            connected = true;
+            log.debug("Connected to {} via {}", name, client.getAddress());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> turnOnAsync() {
+        return request("ON", null).thenRun(() -> on = true);
+    }
+
+    @Override
+    public CompletableFuture<Void> turnOffAsync() {
+        return request("OFF", null).thenRun(() -> on = false);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isOnAsync() {
+        return request("ISON", null).thenApply(reply -> on = Boolean.parseBoolean(reply));
+    }
+
+    @Override
+    public CompletableFuture<String> statusAsync() {
+        return request("STATUS", null);
+    }
+
+    @Override
+    public CompletableFuture<Void> operateAsync(String command) {
+        return request("OPERATE", command).thenRun(() -> log.debug("{} executed {}", name, command));
+    }
+
+    private CompletableFuture<String> request(String operation, String argument) {
+        return connectAsync().thenCompose(v -> client.send(deviceId, operation, argument));
+    }
+
+    // ── Blocking API ─────────────────────────────────────────
+
+    @Override
+    public void connect() {
+        await(connectAsync());
+    }
+
+    @Override
+    public void disconnect() {
+        // The socket is shared with other devices; only this device's session ends
+        connected = false;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return client.getAddress().toString();
+    }
+
+    @Override
+    public void turnOn() {
+        await(turnOnAsync());
+    }
+
+    @Override
+    public void turnOff() {
+        await(turnOffAsync());
+    }
+
+    @Override
+    public boolean isOn() {
+        return on;
+    }
+
+    @Override
+    public String getStatus() {
+        return await(statusAsync());
+    }
+
+    @Override
+    public String getDeviceInfo() {
+        return String.format("Networked Device [%s] @ %s", name, getRemoteAddress());
+    }
+
+    @Override
+    public double getPowerConsumption() {
+        return on ? 10.0 : 0.0;
+    }
+
+    @Override
+    public void operate(String command) {
+        await(operateAsync(command));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+}
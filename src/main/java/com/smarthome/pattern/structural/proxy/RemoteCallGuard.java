@@ -0,0 +1,221 @@
+package com.smarthome.pattern.structural.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Resilience layer for remote device calls.
+ *
+ * Every call made through the guard is bounded by, per device:
+ * - a timeout, after which the caller gets a {@link RemoteDeviceUnavailableException}
+ * - a {@link CircuitBreaker}, so callers fail fast while the device is unhealthy
+ * - a bulkhead limiting concurrent calls, so one slow device cannot absorb every thread
+ *
+ * Reads can optionally be hedged: if the first attempt has not answered after
+ * {@code hedgeDelay}, a second one is sent and whichever succeeds first wins.
+ */
+public class RemoteCallGuard {
+    private static final Logger log = LoggerFactory.getLogger(RemoteCallGuard.class);
+    private static final int MAX_GUARDS = 10_000;
+    private static final RemoteCallGuard SHARED = new RemoteCallGuard(Policy.defaults());
+
+    /**
+     * @param hedgeDelay null disables hedged reads
+     */
+    public record Policy(Duration callTimeout, int failureThreshold, Duration openDuration,
+                         int maxConcurrentCalls, Duration hedgeDelay) {
+        public Policy {
+            if (callTimeout.isNegative() || callTimeout.isZero()) throw new IllegalArgumentException("callTimeout must be positive");
+            if (failureThreshold <= 0) throw new IllegalArgumentException("failureThreshold must be positive");
+            if (maxConcurrentCalls <= 0) throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+
+        public static Policy defaults() {
+            return new Policy(Duration.ofSeconds(2), 5, Duration.ofSeconds(10), 32, null);
+        }
+
+        public Policy withHedgeDelay(Duration delay) {
+            return new Policy(callTimeout, failureThreshold, openDuration, maxConcurrentCalls, delay);
+        }
+    }
+
+    public record CircuitView(String deviceId, CircuitBreaker.State state, int consecutiveFailures,
+                              long successes, long failures, long rejected, long retryInMillis,
+                              int inFlight, int maxConcurrentCalls, long bulkheadRejections, long hedges) {}
+
+    private static final class DeviceGuard {
+        final Policy policy;
+        final CircuitBreaker breaker;
+        final Semaphore bulkhead;
+        final LongAdder bulkheadRejections = new LongAdder();
+        final LongAdder hedges = new LongAdder();
+
+        DeviceGuard(String deviceId, Policy policy) {
+            this.policy = policy;
+            this.breaker = new CircuitBreaker(deviceId, policy.failureThreshold(), policy.openDuration());
+            this.bulkhead = new Semaphore(policy.maxConcurrentCalls());
+        }
+
+        int inFlight() {
+            return policy.maxConcurrentCalls() - bulkhead.availablePermits();
+        }
+    }
+
+    private final Policy defaultPolicy;
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+    private final Map<String, DeviceGuard> guards = new ConcurrentHashMap<>();
+
+    public RemoteCallGuard(Policy defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    public static RemoteCallGuard shared() {
+        return SHARED;
+    }
+
+    public Policy defaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Override the policy for one device; its circuit and bulkhead start afresh
+     */
+    public void configure(String deviceId, Policy policy) {
+        policies.put(deviceId, policy);
+        guards.remove(deviceId);
+    }
+
+    public Policy policyFor(String deviceId) {
+        return policies.getOrDefault(deviceId, defaultPolicy);
+    }
+
+    /**
+     * Run a remote call under the device's timeout, circuit breaker and bulkhead
+     */
+    public <T> CompletableFuture<T> call(String deviceId, String operation, Supplier<CompletableFuture<T>> remoteCall) {
+        DeviceGuard guard = guard(deviceId);
+        if (!guard.bulkhead.tryAcquire()) {
+            guard.bulkheadRejections.increment();
+            return CompletableFuture.failedFuture(new RemoteDeviceUnavailableException(deviceId,
+                    operation + " rejected, " + guard.policy.maxConcurrentCalls() + " calls already in flight", 0, null));
+        }
+        if (!guard.breaker.tryAcquire()) {
+            guard.bulkhead.release();
+            return CompletableFuture.failedFuture(new RemoteDeviceUnavailableException(deviceId,
+                    "circuit open", guard.breaker.retryInMillis(), null));
+        }
+
+        CompletableFuture<T> attempt;
+        try {
+            attempt = remoteCall.get();
+        } catch (RuntimeException e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        long timeoutMillis = guard.policy.callTimeout().toMillis();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            guard.bulkhead.release();
+            if (error == null) {
+                guard.breaker.onSuccess();
+                result.complete(value);
+                return;
+            }
+            guard.breaker.onFailure();
+            Throwable cause = unwrap(error);
+            if (cause instanceof TimeoutException) {
+                log.warn("Remote call {} on {} timed out after {}ms", operation, deviceId, timeoutMillis);
+                cause = new RemoteDeviceUnavailableException(deviceId,
+                        operation + " timed out after " + timeoutMillis + "ms", 0, cause);
+            }
+            result.completeExceptionally(cause);
+        });
+        return result;
+    }
+
+    /**
+     * Like {@link #call}, but hedged when the device policy has a hedge delay
+     */
+    public <T> CompletableFuture<T> read(String deviceId, String operation, Supplier<CompletableFuture<T>> remoteCall) {
+        DeviceGuard guard = guard(deviceId);
+        Duration hedgeDelay = guard.policy.hedgeDelay();
+        if (hedgeDelay == null) {
+            return call(deviceId, operation, remoteCall);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        BiConsumer<T, Throwable> settle = (value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(unwrap(error));
+            }
+        };
+        call(deviceId, operation, remoteCall).whenComplete(settle);
+        CompletableFuture.delayedExecutor(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS, RemoteIo.executor()).execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            guard.hedges.increment();
+            log.debug("Hedging {} on {} after {}ms", operation, deviceId, hedgeDelay.toMillis());
+            call(deviceId, operation + " (hedge)", remoteCall).whenComplete(settle);
+        });
+        return result;
+    }
+
+    public CircuitBreaker.State stateOf(String deviceId) {
+        DeviceGuard guard = guards.get(deviceId);
+        return guard == null ? CircuitBreaker.State.CLOSED : guard.breaker.getState();
+    }
+
+    public List<CircuitView> circuits() {
+        return guards.entrySet().stream()
+                .map(e -> view(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparing(CircuitView::deviceId))
+                .toList();
+    }
+
+    private static CircuitView view(String deviceId, DeviceGuard guard) {
+        CircuitBreaker.Snapshot s = guard.breaker.snapshot();
+        return new CircuitView(deviceId, s.state(), s.consecutiveFailures(), s.successes(), s.failures(),
+                s.rejected(), s.retryInMillis(), guard.inFlight(), guard.policy.maxConcurrentCalls(),
+                guard.bulkheadRejections.sum(), guard.hedges.sum());
+    }
+
+    private DeviceGuard guard(String deviceId) {
+        DeviceGuard guard = guards.get(deviceId);
+        if (guard != null) {
+            return guard;
+        }
+        if (guards.size() >= MAX_GUARDS) {
+            evictIdle();
+        }
+        return guards.computeIfAbsent(deviceId, id -> new DeviceGuard(id, policyFor(id)));
+    }
+
+    private void evictIdle() {
+        // Healthy guards with nothing in flight carry no state worth keeping
+        guards.entrySet().removeIf(e -> e.getValue().breaker.getState() == CircuitBreaker.State.CLOSED
+                && e.getValue().inFlight() == 0);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,13 @@
+package com.smarthome.pattern.structural.proxy;
+
+import com.smarthome.pattern.creational.factory.Device;
+
+/**
+ * Remote Device Interface - represents a device that might be remote/expensive to access
+ */
+public interface RemoteDevice extends Device {
+    boolean isConnected();
+    void connect();
+    void disconnect();
+    String getRemoteAddress();
+}
@@ -0,0 +1,209 @@
+package com.smarthome.pattern.structural.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Client for the {@link RemoteDeviceSimulator} line protocol.
+ *
+ * Holds a small pool of connections shared by every device. Requests are
+ * pipelined: a caller writes its line and returns a future without waiting
+ * for earlier replies, and the connection's reader thread completes futures
+ * by request id in whatever order the replies arrive. A broken connection
+ * fails its outstanding requests and is replaced on next use.
+ */
+public class RemoteDeviceClient implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RemoteDeviceClient.class);
+
+    private final InetSocketAddress address;
+    private final long requestTimeoutMillis;
+    private final AtomicReferenceArray<Connection> pool;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong requestIds = new AtomicLong();
+    private volatile boolean closed;
+
+    private record Pending(String deviceId, CompletableFuture<String> reply) {}
+
+    public RemoteDeviceClient(InetSocketAddress address, int poolSize) {
+        this(address, poolSize, Duration.ofSeconds(10));
+    }
+
+    /**
+     * @param requestTimeout how long an unanswered request is tracked before it is failed and forgotten
+     */
+    public RemoteDeviceClient(InetSocketAddress address, int poolSize, Duration requestTimeout) {
+        if (poolSize <= 0) throw new IllegalArgumentException("poolSize must be positive");
+        this.address = address;
+        this.pool = new AtomicReferenceArray<>(poolSize);
+        this.requestTimeoutMillis = requestTimeout.toMillis();
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Send one request; the future completes with the reply payload, or fails with
+     * {@link RemoteDeviceUnavailableException} on an ERR reply or a lost connection
+     */
+    public CompletableFuture<String> send(String deviceId, String operation, String argument) {
+        if (deviceId.indexOf(' ') >= 0 || deviceId.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Invalid device id: " + deviceId);
+        }
+        if (argument != null && argument.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Argument must be a single line");
+        }
+        if (closed) {
+            return CompletableFuture.failedFuture(new RemoteDeviceUnavailableException(deviceId, "client closed", 0, null));
+        }
+        long id = requestIds.incrementAndGet();
+        String line = id + " " + deviceId + " " + operation
+                + (argument == null || argument.isEmpty() ? "" : " " + argument) + "\n";
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        try {
+            Connection c = connection();
+            c.send(id, new Pending(deviceId, reply), line.getBytes(StandardCharsets.US_ASCII));
+            reply.orTimeout(requestTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((v, e) -> { if (e != null) c.pending.remove(id); });
+        } catch (IOException e) {
+            reply.completeExceptionally(new RemoteDeviceUnavailableException(deviceId,
+                    "cannot reach " + address + ": " + e.getMessage(), 0, e));
+        }
+        return reply;
+    }
+
+    public int pendingRequests() {
+        int total = 0;
+        for (int i = 0; i < pool.length(); i++) {
+            Connection c = pool.get(i);
+            if (c != null) total += c.pending.size();
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (int i = 0; i < pool.length(); i++) {
+            Connection c = pool.getAndSet(i, null);
+            if (c != null) c.close("client closed");
+        }
+    }
+
+    private Connection connection() throws IOException {
+        int slot = Math.floorMod(next.getAndIncrement(), pool.length());
+        Connection c = pool.get(slot);
+        if (c != null && c.isOpen()) {
+            return c;
+        }
+        synchronized (pool) {
+            c = pool.get(slot);
+            if (c == null || !c.isOpen()) {
+                c = new Connection(address, slot);
+                pool.set(slot, c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * One socket with a dedicated reader thread; writers share it under a lock
+     */
+    private static final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+        private volatile boolean open = true;
+
+        Connection(InetSocketAddress address, int slot) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address, 2_000);
+            out = socket.getOutputStream();
+            Thread reader = new Thread(this::readLoop, "remote-client-" + address.getPort() + "-" + slot);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        void send(long id, Pending request, byte[] line) throws IOException {
+            pending.put(id, request);
+            try {
+                synchronized (out) {
+                    out.write(line);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                pending.remove(id);
+                close(e.getMessage());
+                throw e;
+            }
+        }
+
+        private void readLoop() {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    onReply(line);
+                }
+                close("connection closed by server");
+            } catch (IOException e) {
+                close(e.getMessage());
+            }
+        }
+
+        private void onReply(String line) {
+            String[] parts = line.split(" ", 3);
+            Pending request;
+            try {
+                request = pending.remove(Long.parseLong(parts[0]));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed reply: {}", line);
+                return;
+            }
+            if (request == null) {
+                return; // caller already gave up
+            }
+            String payload = parts.length > 2 ? parts[2] : "";
+            if (parts.length > 1 && parts[1].equals("OK")) {
+                request.reply().complete(payload);
+            } else {
+                request.reply().completeExceptionally(
+                        new RemoteDeviceUnavailableException(request.deviceId(), payload, 0, null));
+            }
+        }
+
+        void close(String reason) {
+            if (!open) return;
+            open = false;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+            pending.values().forEach(p -> p.reply().completeExceptionally(
+                    new RemoteDeviceUnavailableException(p.deviceId(), "connection lost: " + reason, 0, null)));
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.smarthome.pattern.structural.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local simulator for a hub of remote devices, used to load-test the proxy
+ * over a real socket.
+ *
+ * A single selector thread serves every connection on a loopback port.
+ * Devices are addressed as {@code sim-00000 .. sim-NNNNN}. The protocol is one
+ * ASCII line per message, and requests may be pipelined:
+ * <pre>
+ *   request:  &lt;requestId&gt; &lt;deviceId&gt; &lt;CONNECT|ON|OFF|ISON|STATUS|OPERATE&gt; [argument]
+ *   response: &lt;requestId&gt; OK [payload]   |   &lt;requestId&gt; ERR &lt;message&gt;
+ * </pre>
+ * Responses are scheduled after the configured latency plus random jitter
+ * rather than slept, so they can arrive out of order. Failure injection can
+ * answer with ERR at a given rate, or make a device drop requests entirely.
+ */
+public class RemoteDeviceSimulator implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RemoteDeviceSimulator.class);
+    private static final int MAX_LINE_BYTES = 4096;
+    private static final String ID_PREFIX = "sim-";
+
+    /**
+     * @param failureRate fraction of requests answered with ERR, 0.0 - 1.0
+     */
+    public record Faults(long latencyMillis, long jitterMillis, double failureRate) {
+        public Faults {
+            if (latencyMillis < 0 || jitterMillis < 0) throw new IllegalArgumentException("latency and jitter must not be negative");
+            if (failureRate < 0 || failureRate > 1) throw new IllegalArgumentException("failureRate must be between 0 and 1");
+        }
+
+        public static Faults none() {
+            return new Faults(0, 0, 0);
+        }
+    }
+
+    public record Stats(int connections, long requests, long injectedFailures, long dropped, long protocolErrors) {}
+
+    private final int deviceCount;
+    private final AtomicIntegerArray power;
+    private final Set<String> unresponsive = ConcurrentHashMap.newKeySet();
+    private volatile Faults faults;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedFailures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder protocolErrors = new LongAdder();
+
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel server;
+    private ScheduledExecutorService timer;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE_BYTES);
+        final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public RemoteDeviceSimulator(int deviceCount, Faults faults) {
+        if (deviceCount <= 0) throw new IllegalArgumentException("deviceCount must be positive");
+        this.deviceCount = deviceCount;
+        this.power = new AtomicIntegerArray(deviceCount);
+        this.faults = faults;
+    }
+
+    public static String deviceId(int index) {
+        return String.format("%s%05d", ID_PREFIX, index);
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    /**
+     * Bind to the loopback interface; port 0 picks a free port
+     */
+    public synchronized InetSocketAddress start(int port) throws IOException {
+        if (running) throw new IllegalStateException("Simulator already running on " + address());
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "remote-sim-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "remote-sim-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("Remote device simulator serving {} devices on {}", deviceCount, address());
+        return address();
+    }
+
+    public InetSocketAddress address() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException("Simulator is not bound", e);
+        }
+    }
+
+    public void setFaults(Faults faults) {
+        this.faults = faults;
+    }
+
+    public Faults getFaults() {
+        return faults;
+    }
+
+    /**
+     * An unresponsive device silently drops every request, as a hung device would
+     */
+    public void setUnresponsive(String deviceId, boolean value) {
+        if (value) unresponsive.add(deviceId); else unresponsive.remove(deviceId);
+    }
+
+    public Stats stats() {
+        return new Stats(connections.get(), requests.sum(), injectedFailures.sum(), dropped.sum(), protocolErrors.sum());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timer.shutdownNow();
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Error closing selector: {}", e.getMessage());
+        }
+        log.info("Remote device simulator stopped");
+    }
+
+    // ── Selector thread ──────────────────────────────────────
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select();
+                Connection ready;
+                while ((ready = pendingWrites.poll()) != null) {
+                    if (ready.key.isValid()) {
+                        ready.key.interestOps(ready.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException e) {
+                log.warn("Simulator selector error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) return;
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            if (key.isReadable()) read(key);
+            if (key.isValid() && key.isWritable()) write(key);
+        } catch (IOException e) {
+            closeQuietly(key);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.incrementAndGet();
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        if (c.channel.read(c.in) < 0) {
+            closeQuietly(key);
+            return;
+        }
+        c.in.flip();
+        int lineStart = c.in.position();
+        for (int i = lineStart; i < c.in.limit(); i++) {
+            if (c.in.get(i) == '\n') {
+                byte[] line = new byte[i - lineStart];
+                c.in.get(lineStart, line);
+                onRequest(c, new String(line, StandardCharsets.US_ASCII).trim());
+                lineStart = i + 1;
+            }
+        }
+        c.in.position(lineStart);
+        c.in.compact();
+        if (!c.in.hasRemaining()) {
+            protocolErrors.increment();
+            log.warn("Closing simulator connection: line longer than {} bytes", MAX_LINE_BYTES);
+            closeQuietly(key);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        ByteBuffer buffer;
+        while ((buffer = c.out.peek()) != null) {
+            c.channel.write(buffer);
+            if (buffer.hasRemaining()) return;
+            c.out.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        boolean wasOpen = key.channel().isOpen();
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+        if (wasOpen && key.attachment() instanceof Connection) {
+            connections.decrementAndGet();
+        }
+    }
+
+    // ── Device behaviour ─────────────────────────────────────
+
+    private void onRequest(Connection c, String line) {
+        if (line.isEmpty()) return;
+        requests.increment();
+        String[] parts = line.split(" ", 4);
+        if (parts.length < 3) {
+            protocolErrors.increment();
+            respond(c, parts[0] + " ERR malformed request");
+            return;
+        }
+        String requestId = parts[0];
+        String deviceId = parts[1];
+        if (unresponsive.contains(deviceId)) {
+            dropped.increment();
+            return;
+        }
+        Faults f = faults;
+        long delay = f.latencyMillis() + (f.jitterMillis() > 0 ? ThreadLocalRandom.current().nextLong(f.jitterMillis() + 1) : 0);
+        boolean fail = f.failureRate() > 0 && ThreadLocalRandom.current().nextDouble() < f.failureRate();
+        Runnable reply = () -> respond(c, requestId + " " + (fail ? "ERR injected failure" : execute(deviceId, parts[2], parts.length > 3 ? parts[3] : "")));
+        if (fail) injectedFailures.increment();
+        if (delay == 0) {
+            reply.run();
+        } else {
+            timer.schedule(reply, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private String execute(String deviceId, String op, String argument) {
+        int index = indexOf(deviceId);
+        if (index < 0) return "ERR unknown device " + deviceId;
+        return switch (op) {
+            case "CONNECT", "OPERATE" -> "OK";
+            case "ON" -> { power.set(index, 1); yield "OK"; }
+            case "OFF" -> { power.set(index, 0); yield "OK"; }
+            case "ISON" -> "OK " + (power.get(index) == 1);
+            case "STATUS" -> "OK Remote Device " + deviceId + ": " + (power.get(index) == 1 ? "ON" : "OFF") + ", Connected: true";
+            default -> "ERR unknown operation " + op;
+        };
+    }
+
+    private int indexOf(String deviceId) {
+        if (!deviceId.startsWith(ID_PREFIX)) return -1;
+        try {
+            int index = Integer.parseInt(deviceId.substring(ID_PREFIX.length()));
+            return index >= 0 && index < deviceCount ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void respond(Connection c, String line) {
+        c.out.add(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII)));
+        pendingWrites.add(c);
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,27 @@
+package com.smarthome.pattern.structural.proxy;
+
+/**
+ * Thrown when a remote device call is refused or abandoned by the resilience
+ * layer: circuit open, bulkhead full or call timed out.
+ */
+public class RemoteDeviceUnavailableException extends RuntimeException {
+    private final String deviceId;
+    private final long retryAfterMillis;
+
+    public RemoteDeviceUnavailableException(String deviceId, String message, long retryAfterMillis, Throwable cause) {
+        super("Remote device " + deviceId + " unavailable: " + message, cause);
+        this.deviceId = deviceId;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Hint for the caller, zero when unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,47 @@
+package com.smarthome.pattern.structural.proxy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared I/O resources for remote device calls.
+ *
+ * Simulated network latency is modelled with {@link CompletableFuture#delayedExecutor}
+ * instead of {@code Thread.sleep}: the delay is tracked by a timer and only the
+ * (tiny) completion work runs on this small pool, so thousands of remote calls can
+ * be in flight without a thread per call.
+ */
+public final class RemoteIo {
+    public static final long NETWORK_LATENCY_MS = 100;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final int POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(POOL_SIZE, r -> {
+        Thread t = new Thread(r, "remote-io-" + THREAD_COUNTER.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private RemoteIo() {}
+
+    /**
+     * Executor that runs tasks on the remote I/O pool
+     */
+    public static Executor executor() {
+        return POOL;
+    }
+
+    /**
+     * Executor that runs tasks on the remote I/O pool after one simulated round trip
+     */
+    public static Executor afterRoundTrip() {
+        return CompletableFuture.delayedExecutor(NETWORK_LATENCY_MS, TimeUnit.MILLISECONDS, POOL);
+    }
+
+    public static int poolSize() {
+        return POOL_SIZE;
+    }
+}
@@ -0,0 +1,183 @@
+package com.smarthome.pattern.structural.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shared status cache for remote devices (Caching Proxy).
+ *
+ * - Single-flight: concurrent misses for one device share a single remote call.
+ * - Stale-while-revalidate: within the stale window an expired value is served
+ *   immediately while one background refresh fetches a fresh one.
+ * - Per-device TTLs, falling back to the cache-wide defaults.
+ *
+ * A load that completes after {@link #invalidate(String)} is handed to its
+ * waiters but not stored, so a status read racing a turnOn never caches the
+ * pre-change value.
+ */
+public class RemoteStatusCache {
+    private static final Logger log = LoggerFactory.getLogger(RemoteStatusCache.class);
+    private static final int MAX_ENTRIES = 10_000;
+    private static final RemoteStatusCache SHARED =
+            new RemoteStatusCache(Duration.ofSeconds(5), Duration.ofSeconds(30));
+
+    public enum Source {
+        HIT,        // fresh cached value
+        STALE,      // expired value served while a refresh runs
+        LOADED,     // this caller performed the remote call
+        COALESCED   // joined a remote call already in flight
+    }
+
+    public record CachedStatus(String value, Source source) {
+        public boolean fromCache() {
+            return source == Source.HIT || source == Source.STALE;
+        }
+    }
+
+    public record Policy(Duration ttl, Duration staleWhileRevalidate) {}
+
+    public record Stats(long hits, long staleHits, long misses, long coalesced,
+                        long refreshes, long loadFailures, int size, double hitRatio) {}
+
+    private record Entry(String value, long loadedAtNanos) {}
+
+    private final Policy defaultPolicy;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+
+    public RemoteStatusCache(Duration ttl, Duration staleWhileRevalidate) {
+        this.defaultPolicy = new Policy(ttl, staleWhileRevalidate);
+    }
+
+    public static RemoteStatusCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Override the TTL and stale window for one device
+     */
+    public void configure(String deviceId, Duration ttl, Duration staleWhileRevalidate) {
+        policies.put(deviceId, new Policy(ttl, staleWhileRevalidate));
+    }
+
+    public Policy policyFor(String deviceId) {
+        return policies.getOrDefault(deviceId, defaultPolicy);
+    }
+
+    /**
+     * Look up the status of a device, loading it through {@code loader} at most once
+     * per device no matter how many callers miss concurrently
+     */
+    public CompletableFuture<CachedStatus> get(String deviceId, Supplier<CompletableFuture<String>> loader) {
+        Entry entry = entries.get(deviceId);
+        if (entry != null) {
+            Policy policy = policyFor(deviceId);
+            long age = System.nanoTime() - entry.loadedAtNanos();
+            if (age < policy.ttl().toNanos()) {
+                hits.increment();
+                return CompletableFuture.completedFuture(new CachedStatus(entry.value(), Source.HIT));
+            }
+            if (age < policy.ttl().plus(policy.staleWhileRevalidate()).toNanos()) {
+                staleHits.increment();
+                if (!inFlight.containsKey(deviceId)) {
+                    refreshes.increment();
+                    load(deviceId, loader);
+                }
+                return CompletableFuture.completedFuture(new CachedStatus(entry.value(), Source.STALE));
+            }
+        }
+
+        CompletableFuture<String> running = inFlight.get(deviceId);
+        if (running != null) {
+            coalesced.increment();
+            return running.thenApply(v -> new CachedStatus(v, Source.COALESCED));
+        }
+        LoadResult result = load(deviceId, loader);
+        if (result.owner()) {
+            misses.increment();
+        } else {
+            coalesced.increment();
+        }
+        return result.future().thenApply(v -> new CachedStatus(v, result.owner() ? Source.LOADED : Source.COALESCED));
+    }
+
+    /**
+     * Drop the cached value for a device, e.g. after a state-changing command
+     */
+    public void invalidate(String deviceId) {
+        entries.remove(deviceId);
+        inFlight.remove(deviceId);
+    }
+
+    public Stats stats() {
+        long h = hits.sum() + staleHits.sum();
+        long total = h + misses.sum();
+        return new Stats(hits.sum(), staleHits.sum(), misses.sum(), coalesced.sum(),
+                refreshes.sum(), loadFailures.sum(), entries.size(),
+                total == 0 ? 0.0 : (double) h / total);
+    }
+
+    private record LoadResult(CompletableFuture<String> future, boolean owner) {}
+
+    private LoadResult load(String deviceId, Supplier<CompletableFuture<String>> loader) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(deviceId, mine);
+        if (existing != null) {
+            return new LoadResult(existing, false);
+        }
+        CompletableFuture<String> remote;
+        try {
+            remote = loader.get();
+        } catch (RuntimeException e) {
+            remote = CompletableFuture.failedFuture(e);
+        }
+        remote.whenComplete((value, error) -> {
+            boolean current = inFlight.remove(deviceId, mine);
+            if (error != null) {
+                loadFailures.increment();
+                log.debug("Status load failed for {}: {}", deviceId, error.getMessage());
+                mine.completeExceptionally(error);
+                return;
+            }
+            if (current) {
+                store(deviceId, value);
+            }
+            mine.complete(value);
+        });
+        return new LoadResult(mine, true);
+    }
+
+    private void store(String deviceId, String value) {
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(deviceId)) {
+            evictExpired();
+        }
+        entries.put(deviceId, new Entry(value, System.nanoTime()));
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        entries.entrySet().removeIf(e -> {
+            Policy p = policyFor(e.getKey());
+            return now - e.getValue().loadedAtNanos() >= p.ttl().plus(p.staleWhileRevalidate()).toNanos();
+        });
+        if (entries.size() >= MAX_ENTRIES) {
+            // Still full of live entries: drop an arbitrary one rather than grow without bound
+            entries.keySet().stream().findAny().ifPresent(entries::remove);
+        }
+    }
+}
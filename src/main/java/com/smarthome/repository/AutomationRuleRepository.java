@@ -1,13 +1,25 @@
 package com.smarthome.repository;
 
 import com.smarthome.domain.AutomationRuleEntity;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface AutomationRuleRepository extends JpaRepository<AutomationRuleEntity, Long> {
     List<AutomationRuleEntity> findByIsEnabledOrderByPriorityDesc(Boolean isEnabled);
     List<AutomationRuleEntity> findByNameContaining(String name);
+
+    /**
+     * All rules as a forward-only scroll; needs a surrounding transaction and must be closed
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<AutomationRuleEntity> streamAllByOrderById();
 }
@@ -0,0 +1,37 @@
+package com.smarthome.repository;
+
+import com.smarthome.domain.CommandJournalEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface CommandJournalRepository extends JpaRepository<CommandJournalEntity, Long> {
+
+    /**
+     * First-step rows that are the latest action on their entry and put it on
+     * the user's undo stack, newest first
+     */
+    @Query("select r from CommandJournalEntity r where r.userId = :userId and r.stepNo = 0 and r.action <> 'UNDO' " +
+            "and not exists (select l.id from CommandJournalEntity l " +
+            "where l.sequence = r.sequence and l.stepNo = 0 and l.id > r.id) order by r.id desc")
+    List<CommandJournalEntity> findUndoStack(@Param("userId") String userId, Pageable page);
+
+    List<CommandJournalEntity> findBySequenceAndActionOrderByStepNo(Long sequence, String action);
+
+    List<CommandJournalEntity> findByDeviceIdOrderByIdDesc(String deviceId, Pageable page);
+
+    @Query("select coalesce(max(r.sequence), 0) from CommandJournalEntity r")
+    long findLastSequence();
+
+    @Transactional
+    @Modifying
+    @Query("delete from CommandJournalEntity r where r.sequence <= :sequence")
+    int deleteThroughSequence(@Param("sequence") long sequence);
+}
@@ -0,0 +1,9 @@
+package com.smarthome.repository;
+
+import com.smarthome.domain.DeviceConfigurationEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DeviceConfigurationRepository extends JpaRepository<DeviceConfigurationEntity, String> {
+}
@@ -2,10 +2,18 @@ package com.smarthome.repository;
 
 import com.smarthome.domain.DeviceEntity;
 import com.smarthome.domain.DeviceType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface DeviceRepository extends JpaRepository<DeviceEntity, String> {
@@ -13,4 +21,23 @@ public interface DeviceRepository extends JpaRepository<DeviceEntity, String> {
     List<DeviceEntity> findByType(DeviceType type);
     List<DeviceEntity> findByIsOn(Boolean isOn);
     List<DeviceEntity> findByLocationIgnoreCase(String location);
+
+    /**
+     * All devices as a forward-only scroll; needs a surrounding transaction and must be closed
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<DeviceEntity> streamAllBy();
+
+    /**
+     * Switch the given devices to {@code target}, skipping rows already there.
+     * Bumps the version so concurrent entity writers notice; returns the rows changed.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update DeviceEntity d set d.isOn = :target, d.version = d.version + 1 "
+            + "where d.id in :ids and d.isOn <> :target")
+    int switchWhereDifferent(@Param("ids") Collection<String> ids, @Param("target") boolean target);
 }
@@ -1,15 +1,31 @@
 package com.smarthome.repository;
 
 import com.smarthome.domain.RoomEntity;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface RoomRepository extends JpaRepository<RoomEntity, Long> {
     Optional<RoomEntity> findByName(String name);
     List<RoomEntity> findByFloor(String floor);
     List<RoomEntity> findByRoomType(String roomType);
+
+    /**
+     * One row per room and device ({@code id, name, floor, roomType, deviceId}) with a room's
+     * rows adjacent; a room without devices has one row with a null device id. Needs a
+     * surrounding transaction and must be closed
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select r.id, r.name, r.floor, r.roomType, d.id from RoomEntity r left join r.devices d order by r.id, d.id")
+    Stream<Object[]> streamRoomDevices();
 }
@@ -1,14 +1,26 @@
 package com.smarthome.repository;
 
 import com.smarthome.domain.SceneEntity;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface SceneRepository extends JpaRepository<SceneEntity, Long> {
     Optional<SceneEntity> findByName(String name);
     List<SceneEntity> findByIsFavorite(Boolean isFavorite);
+
+    /**
+     * All scenes as a forward-only scroll; needs a surrounding transaction and must be closed
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<SceneEntity> streamAllByOrderById();
 }
@@ -0,0 +1,27 @@
+package com.smarthome.repository;
+
+import com.smarthome.domain.RollupTier;
+import com.smarthome.domain.TelemetryRollupEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface TelemetryRollupRepository extends JpaRepository<TelemetryRollupEntity, Long> {
+
+    List<TelemetryRollupEntity> findByDeviceIdAndMetricAndTierAndBucketStartBetweenOrderByBucketStart(
+            String deviceId, String metric, RollupTier tier, long fromInclusive, long toInclusive);
+
+    /**
+     * Drop every partition of {@code tier} older than {@code partitionDay}; returns the rows removed
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from TelemetryRollupEntity r where r.tier = :tier and r.partitionDay < :partitionDay")
+    int dropPartitionsBefore(@Param("tier") RollupTier tier, @Param("partitionDay") long partitionDay);
+}
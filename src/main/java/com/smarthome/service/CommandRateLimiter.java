@@ -0,0 +1,195 @@
+package com.smarthome.service;
+
+import com.smarthome.pattern.structural.decorator.RateLimitExceededException;
+import com.smarthome.pattern.structural.decorator.RateLimitingDecorator.Policy;
+import com.smarthome.pattern.structural.decorator.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Service-level limiter for device commands, with one token bucket per device
+ * and one per client.
+ *
+ * Buckets exist only for active keys: a bucket that has refilled and stayed
+ * unused for {@code idle-eviction} is dropped by an amortized sweep, which is
+ * indistinguishable from keeping it. Excess commands follow the configured
+ * {@link Policy}: REJECT, QUEUE (short bounded wait) or COALESCE (keep only
+ * the latest intent per device and apply it when the device bucket allows).
+ */
+@Component
+public class CommandRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandRateLimiter.class);
+    private static final int SWEEP_EVERY = 1024;
+
+    public record Stats(String policy, long allowed, long queued, long rejected, long deferred, long superseded,
+                        int activeDevices, int activeClients, int pendingIntents, long evicted) {}
+
+    private final Policy policy;
+    private final double devicePermitsPerSecond;
+    private final int deviceBurst;
+    private final double clientPermitsPerSecond;
+    private final int clientBurst;
+    private final long maxQueueDelayNanos;
+    private final long idleNanos;
+
+    private final Map<String, TokenBucket> deviceBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Runnable> pendingIntents = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "command-rate-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public CommandRateLimiter(
+            @Value("${smarthome.rate-limit.policy:REJECT}") Policy policy,
+            @Value("${smarthome.rate-limit.device.permits-per-second:20}") double devicePermitsPerSecond,
+            @Value("${smarthome.rate-limit.device.burst:50}") int deviceBurst,
+            @Value("${smarthome.rate-limit.client.permits-per-second:100}") double clientPermitsPerSecond,
+            @Value("${smarthome.rate-limit.client.burst:200}") int clientBurst,
+            @Value("${smarthome.rate-limit.max-queue-delay:PT0.5S}") Duration maxQueueDelay,
+            @Value("${smarthome.rate-limit.idle-eviction:PT1M}") Duration idleEviction) {
+        this.policy = policy;
+        this.devicePermitsPerSecond = devicePermitsPerSecond;
+        this.deviceBurst = deviceBurst;
+        this.clientPermitsPerSecond = clientPermitsPerSecond;
+        this.clientBurst = clientBurst;
+        this.maxQueueDelayNanos = maxQueueDelay.toNanos();
+        this.idleNanos = idleEviction.toNanos();
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Admit a command for {@code deviceId} from {@code clientId}.
+     *
+     * @param command runs the command; under COALESCE it may run later on the limiter's thread
+     * @return true if the command ran, false if it was deferred as the device's latest intent
+     * @throws RateLimitExceededException if the command is refused
+     */
+    public boolean submit(String deviceId, String clientId, Runnable command) {
+        long now = System.nanoTime();
+        maybeSweep();
+
+        TokenBucket client = clientBuckets.computeIfAbsent(clientId, k -> new TokenBucket(clientPermitsPerSecond, clientBurst));
+        if (!client.tryAcquire(now)) {
+            rejected.increment();
+            throw exceeded("client " + clientId, client.nanosUntilAvailable(now));
+        }
+
+        TokenBucket device = deviceBucket(deviceId);
+        switch (policy) {
+            case REJECT -> {
+                if (!device.tryAcquire(now)) {
+                    rejected.increment();
+                    throw exceeded("device " + deviceId, device.nanosUntilAvailable(now));
+                }
+            }
+            case QUEUE -> {
+                long wait = device.reserve(maxQueueDelayNanos, now);
+                if (wait < 0) {
+                    rejected.increment();
+                    throw exceeded("device " + deviceId, device.nanosUntilAvailable(now));
+                }
+                if (wait > 0) {
+                    queued.increment();
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            case COALESCE -> {
+                if (pendingIntents.containsKey(deviceId) || !device.tryAcquire(now)) {
+                    defer(deviceId, command, device.nanosUntilAvailable(now));
+                    return false;
+                }
+            }
+        }
+        allowed.increment();
+        command.run();
+        return true;
+    }
+
+    public Stats stats() {
+        return new Stats(policy.name(), allowed.sum(), queued.sum(), rejected.sum(), deferred.sum(), superseded.sum(),
+                deviceBuckets.size(), clientBuckets.size(), pendingIntents.size(), evicted.sum());
+    }
+
+    /**
+     * Drop buckets that are full and unused; returns how many were removed
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int before = deviceBuckets.size() + clientBuckets.size();
+        deviceBuckets.entrySet().removeIf(e -> e.getValue().isIdle(now, idleNanos) && !pendingIntents.containsKey(e.getKey()));
+        clientBuckets.values().removeIf(b -> b.isIdle(now, idleNanos));
+        int removed = before - deviceBuckets.size() - clientBuckets.size();
+        evicted.add(Math.max(0, removed));
+        return Math.max(0, removed);
+    }
+
+    private TokenBucket deviceBucket(String deviceId) {
+        return deviceBuckets.computeIfAbsent(deviceId, k -> new TokenBucket(devicePermitsPerSecond, deviceBurst));
+    }
+
+    private void defer(String deviceId, Runnable command, long delayNanos) {
+        deferred.increment();
+        if (pendingIntents.put(deviceId, command) != null) {
+            superseded.increment();
+            log.debug("Coalesced command for {} replaced an earlier pending one", deviceId);
+            return;
+        }
+        scheduleFlush(deviceId, delayNanos);
+    }
+
+    private void scheduleFlush(String deviceId, long delayNanos) {
+        flusher.schedule(() -> {
+            TokenBucket device = deviceBucket(deviceId);
+            if (!device.tryAcquire()) {
+                scheduleFlush(deviceId, Math.max(device.nanosUntilAvailable(System.nanoTime()), 1_000_000));
+                return;
+            }
+            Runnable latest = pendingIntents.remove(deviceId);
+            if (latest == null) return;
+            allowed.increment();
+            try {
+                latest.run();
+            } catch (RuntimeException e) {
+                log.warn("Deferred command for {} failed: {}", deviceId, e.getMessage());
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void maybeSweep() {
+        if (acquisitions.incrementAndGet() % SWEEP_EVERY == 0) {
+            int removed = evictIdle();
+            if (removed > 0) log.debug("Evicted {} idle rate-limit buckets", removed);
+        }
+    }
+
+    private static RateLimitExceededException exceeded(String key, long waitNanos) {
+        return new RateLimitExceededException("Too many commands for " + key,
+                Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+    }
+}
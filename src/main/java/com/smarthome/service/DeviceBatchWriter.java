@@ -0,0 +1,84 @@
+package com.smarthome.service;
+
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Writes new devices in bulk: ids reserved in one call, rows inserted as one
+ * JDBC batch, and runtime devices registered and metered once per batch
+ * rather than once per device. Used by imports and template provisioning.
+ */
+@Component
+public class DeviceBatchWriter {
+
+    private static final String INSERT = "insert into devices (id, name, type, location, is_on, rated_power_watts, ecosystem, version) "
+            + "values (?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private final JdbcTemplate jdbc;
+    private final DeviceIdGenerator idGenerator;
+    private final EnergyAccountant energy;
+    private final HomeController homeController = HomeController.INSTANCE;
+
+    public DeviceBatchWriter(JdbcTemplate jdbc, DeviceIdGenerator idGenerator, EnergyAccountant energy) {
+        this.jdbc = jdbc;
+        this.idGenerator = idGenerator;
+        this.energy = energy;
+    }
+
+    /**
+     * Copies of {@code devices} with generated ids, in the same order
+     */
+    public List<DeviceEntity> withIds(List<DeviceEntity> devices) {
+        Iterator<String> suffixes = idGenerator.reserve(devices.size()).iterator();
+        List<DeviceEntity> identified = new ArrayList<>(devices.size());
+        for (DeviceEntity d : devices) {
+            identified.add(new DeviceEntity(idPrefix(d.getType()) + "-" + suffixes.next(), d.getName(), d.getType(),
+                    d.getLocation(), d.isOn(), d.getRatedPowerWatts(), d.getEcosystem()));
+        }
+        return identified;
+    }
+
+    /**
+     * Insert the rows as one JDBC batch, in the caller's transaction if there is one
+     */
+    public void insert(List<DeviceEntity> devices) {
+        jdbc.batchUpdate(INSERT, devices, devices.size(), (PreparedStatement ps, DeviceEntity e) -> {
+            ps.setString(1, e.getId());
+            ps.setString(2, e.getName());
+            ps.setString(3, e.getType().name());
+            ps.setString(4, e.getLocation());
+            ps.setBoolean(5, e.isOn());
+            ps.setInt(6, e.getRatedPowerWatts());
+            ps.setString(7, e.getEcosystem());
+        });
+    }
+
+    /**
+     * Register the runtime devices built by {@code runtime} and start metering
+     * them; call once the rows have committed
+     */
+    public Map<String, Device> register(List<DeviceEntity> devices, Function<DeviceEntity, Device> runtime) {
+        Map<String, Device> built = new LinkedHashMap<>(devices.size() * 2);
+        for (DeviceEntity entity : devices) built.put(entity.getId(), runtime.apply(entity));
+        homeController.registerDevices(built);
+        energy.trackAll(devices);
+        return built;
+    }
+
+    private static String idPrefix(DeviceType type) {
+        return type.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,330 @@
+package com.smarthome.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Durable, append-only history of what happened to devices: state and mode
+ * changes, commands, alerts and runtime property images ({@link RuntimeImage}),
+ * as fixed-size records in memory-mapped segment files ({@link JournalSegment})
+ * outside the relational database.
+ *
+ * Appending copies one record into the active segment's mapping under a short
+ * lock and assigns the next sequence number; the record is readable at once.
+ * Durability is group-committed: a background flush, or a caller of
+ * {@link #sync}, forces the segment to disk once for everything appended so
+ * far, and concurrent callers waiting for the same force share it. A segment
+ * is rolled when it is full or older than {@code segment-max-age}, and closed
+ * segments are deleted oldest first once the journal exceeds
+ * {@code retention-size} or they fall out of {@code retention-age}.
+ */
+@Component
+public class DeviceEventJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceEventJournal.class);
+    private static final long RETENTION_CHECK_MILLIS = 1_000;
+
+    /** Stored by position; add new types at the end */
+    public enum Type { STATE_CHANGE, MODE_CHANGE, COMMAND, ALERT, RUNTIME }
+
+    public record Event(long sequence, Instant at, Type type, String deviceId, String detail) {}
+
+    public record Stats(String directory, int segments, long bytes, long firstSequence, long lastSequence,
+                        long durableSequence, long syncs, double eventsPerSync, long rolledSegments,
+                        long deletedSegments) {}
+
+    private record SegmentInfo(Path path, long createdAt, long bytes) {}
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long segmentMaxAgeMillis;
+    private final long retentionBytes;
+    private final long retentionAgeMillis;
+    private final boolean deleteOnClose;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private final ConcurrentSkipListMap<Long, SegmentInfo> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong durableSequence = new AtomicLong();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "event-journal-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder rolled = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    private JournalSegment active;
+    private volatile long lastSequence;
+    private volatile boolean closed;
+    private long lastRetentionCheck;
+
+    public DeviceEventJournal(@Value("${smarthome.journal.dir:data/journal}") String directory,
+                              @Value("${smarthome.journal.segment-size:64MB}") DataSize segmentSize,
+                              @Value("${smarthome.journal.segment-max-age:PT1H}") Duration segmentMaxAge,
+                              @Value("${smarthome.journal.retention-size:1GB}") DataSize retentionSize,
+                              @Value("${smarthome.journal.retention-age:P7D}") Duration retentionAge,
+                              @Value("${smarthome.journal.flush-interval:PT0.01S}") Duration flushInterval,
+                              @Value("${smarthome.journal.delete-on-close:false}") boolean deleteOnClose) {
+        long records = segmentSize.toBytes() / JournalSegment.RECORD_SIZE - 1;
+        if (records < 1 || records > Integer.MAX_VALUE / JournalSegment.RECORD_SIZE) {
+            throw new IllegalArgumentException("segment-size must hold between 1 record and 2GB");
+        }
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.recordsPerSegment = (int) records;
+        this.segmentMaxAgeMillis = segmentMaxAge.toMillis();
+        this.retentionBytes = retentionSize.toBytes();
+        this.retentionAgeMillis = retentionAge.toMillis();
+        this.deleteOnClose = deleteOnClose;
+        try {
+            Files.createDirectories(this.directory);
+            this.lockChannel = FileChannel.open(this.directory.resolve("journal.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.tryLock();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open device event journal in " + this.directory, e);
+        }
+        if (lock == null) throw new IllegalStateException("Device event journal " + this.directory + " is in use by another process");
+        recover();
+
+        long period = Math.max(1, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append an event; it is readable immediately and durable after the next {@link #sync}
+     *
+     * @return the event's sequence number
+     */
+    public long append(Type type, String deviceId, String detail) {
+        byte[] device = JournalSegment.utf8(deviceId, JournalSegment.MAX_DEVICE_BYTES);
+        byte[] text = JournalSegment.utf8(detail, JournalSegment.MAX_DETAIL_BYTES);
+        long now = System.currentTimeMillis();
+        synchronized (appendLock) {
+            if (closed) throw new IllegalStateException("Device event journal is closed");
+            if (active.isFull() || now - active.createdAt() >= segmentMaxAgeMillis) roll(now);
+            long sequence = lastSequence + 1;
+            active.append(sequence, now, type.ordinal() + 1, device, text);
+            lastSequence = sequence;
+            return sequence;
+        }
+    }
+
+    /**
+     * Append an event and wait until it is on disk
+     */
+    public long appendDurably(Type type, String deviceId, String detail) {
+        long sequence = append(type, deviceId, detail);
+        sync(sequence);
+        return sequence;
+    }
+
+    /**
+     * Wait until every event up to {@code sequence} is on disk; one force covers
+     * all callers waiting at the time
+     */
+    public void sync(long sequence) {
+        if (sequence <= durableSequence.get()) return;
+        synchronized (syncLock) {
+            if (sequence <= durableSequence.get()) return;
+            long target;
+            JournalSegment segment;
+            synchronized (appendLock) {
+                target = lastSequence;
+                segment = active;
+            }
+            segment.force();
+            syncs.increment();
+            durableSequence.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    /**
+     * Hand the retained events with sequences in [{@code from}, {@code to}] to
+     * {@code sink} in order, reading segment files sequentially
+     *
+     * @return the number of events read
+     */
+    public long replay(long from, long to, Consumer<Event> sink) {
+        long upTo = Math.min(to, lastSequence);
+        long read = 0;
+        Long start = segments.floorKey(Math.max(from, 1));
+        if (start == null) start = segments.isEmpty() ? null : segments.firstKey();
+        if (start == null) return 0;
+        Type[] types = Type.values();
+        for (Map.Entry<Long, SegmentInfo> segment : segments.tailMap(start, true).entrySet()) {
+            if (segment.getKey() > upTo) break;
+            try {
+                read += JournalSegment.read(segment.getValue().path(), from, upTo, raw -> sink.accept(
+                        new Event(raw.sequence(), Instant.ofEpochMilli(raw.timestamp()), types[raw.type() - 1],
+                                raw.deviceId(), raw.detail())));
+            } catch (NoSuchFileException e) {
+                // expired while reading; later segments are still there
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Up to {@code limit} events from {@code from} on, or from the oldest
+     * retained event if {@code from} has expired
+     */
+    public List<Event> read(long from, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        Long oldest = segments.isEmpty() ? null : segments.firstKey();
+        long start = oldest == null ? from : Math.max(from, oldest);
+        List<Event> events = new ArrayList<>(Math.min(limit, 1024));
+        replay(start, start + limit - 1, events::add);
+        return events;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public Stats stats() {
+        long bytes = segments.values().stream().mapToLong(SegmentInfo::bytes).sum();
+        long first = segments.isEmpty() ? 0 : segments.firstKey();
+        long durable = durableSequence.get();
+        long forces = syncs.sum();
+        return new Stats(directory.toString(), segments.size(), bytes, first, lastSequence, durable, forces,
+                forces == 0 ? 0 : (double) durable / forces, rolled.sum(), deleted.sum());
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdown();
+        synchronized (appendLock) {
+            if (closed) return;
+            closed = true;
+            active.force();
+            active.close();
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+            if (deleteOnClose) {
+                for (SegmentInfo segment : segments.values()) Files.deleteIfExists(segment.path());
+                Files.deleteIfExists(directory.resolve("journal.lock"));
+                Files.deleteIfExists(directory);
+            }
+        } catch (IOException e) {
+            log.warn("Could not clean up device event journal {}: {}", directory, e.getMessage());
+        }
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private void recover() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().forEach(p -> {
+                long first = Long.parseLong(p.getFileName().toString().replace(".seg", ""));
+                segments.put(first, new SegmentInfo(p, JournalSegment.createdAt(p), sizeOf(p)));
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list device event journal " + directory, e);
+        }
+        long now = System.currentTimeMillis();
+        if (segments.isEmpty()) {
+            active = JournalSegment.create(directory, 1, now, recordsPerSegment);
+            segments.put(1L, info(active));
+        } else {
+            active = JournalSegment.recover(segments.lastEntry().getValue().path());
+        }
+        lastSequence = active.lastSequence();
+        durableSequence.set(lastSequence);
+        log.info("Device event journal at {}: {} segments, last sequence {}", directory, segments.size(), lastSequence);
+    }
+
+    /** Called with the append lock held */
+    private void roll(long now) {
+        active.force();
+        active.close();
+        durableSequence.accumulateAndGet(lastSequence, Math::max);
+        active = JournalSegment.create(directory, lastSequence + 1, now, recordsPerSegment);
+        segments.put(active.firstSequence(), info(active));
+        rolled.increment();
+    }
+
+    private void flushSafely() {
+        try {
+            if (closed) return;
+            sync(lastSequence);
+            long now = System.currentTimeMillis();
+            if (now - lastRetentionCheck >= RETENTION_CHECK_MILLIS) {
+                lastRetentionCheck = now;
+                enforceRetention(now);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Device event journal flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Delete closed segments, oldest first, while the journal is too large or
+     * the segment's newest event is past the retention age
+     */
+    private void enforceRetention(long now) {
+        long total = segments.values().stream().mapToLong(SegmentInfo::bytes).sum();
+        List<Map.Entry<Long, SegmentInfo>> ordered = new ArrayList<>(segments.entrySet());
+        for (int i = 0; i < ordered.size() - 1; i++) { // never the active segment
+            SegmentInfo segment = ordered.get(i).getValue();
+            long endedAt = ordered.get(i + 1).getValue().createdAt();
+            if (total <= retentionBytes && now - endedAt <= retentionAgeMillis) break;
+            try {
+                Files.deleteIfExists(segment.path());
+            } catch (IOException e) {
+                log.warn("Could not delete journal segment {}: {}", segment.path(), e.getMessage());
+                break;
+            }
+            segments.remove(ordered.get(i).getKey());
+            total -= segment.bytes();
+            deleted.increment();
+        }
+    }
+
+    private static SegmentInfo info(JournalSegment segment) {
+        return new SegmentInfo(segment.path(), segment.createdAt(), segment.sizeBytes());
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.smarthome.service;
+
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.pattern.creational.abstractfactory.SmartThingsSensor;
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.factory.SmartCamera;
+import com.smarthome.pattern.creational.factory.SmartLight;
+import com.smarthome.pattern.creational.factory.SmartLock;
+import com.smarthome.pattern.creational.factory.SmartThermostat;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import com.smarthome.repository.DeviceRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Builds the runtime device registry from the device table.
+ *
+ * EAGER (the default) streams the rows through a scrolling query in chunks,
+ * builds the runtime devices of each chunk on a worker pool while the next
+ * chunk is read, and registers everything with one bulk call, so observers see
+ * a single DEVICES_REGISTERED event. The persistence context is cleared after
+ * every chunk, so memory does not grow with the table. LAZY skips startup
+ * hydration; each device is then built the first time a service touches it.
+ * Pattern demos that work on the registry snapshot only see devices that were
+ * touched so far in that mode.
+ */
+@Service
+public class DeviceHydrator {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceHydrator.class);
+
+    public enum Mode { EAGER, LAZY }
+
+    public record Stats(String mode, long devices, int chunks, long elapsedMillis, long devicesPerSecond,
+                        long lazilyHydrated, Instant completedAt) {}
+
+    private record Row(String id, DeviceType type, String name, String location, boolean on) {}
+
+    private final DeviceRepository deviceRepository;
+    private final TransactionTemplate readOnly;
+    private final Mode mode;
+    private final int chunkSize;
+    private final int workers;
+    private final HomeController homeController = HomeController.INSTANCE;
+    private final LongAdder lazilyHydrated = new LongAdder();
+    private volatile Stats lastRun;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DeviceHydrator(DeviceRepository deviceRepository,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${smarthome.hydration.mode:EAGER}") Mode mode,
+                          @Value("${smarthome.hydration.chunk-size:1000}") int chunkSize,
+                          @Value("${smarthome.hydration.workers:4}") int workers) {
+        if (chunkSize <= 0 || workers <= 0) throw new IllegalArgumentException("chunk-size and workers must be positive");
+        this.deviceRepository = deviceRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+        this.workers = workers;
+    }
+
+    /**
+     * The runtime counterpart of a stored device, switched to its stored state
+     */
+    public static Device newRuntimeDevice(DeviceEntity entity) {
+        return newRuntimeDevice(entity.getType(), entity.getName(), entity.getLocation(), entity.isOn());
+    }
+
+    private static Device newRuntimeDevice(DeviceType type, String name, String location, boolean on) {
+        Device created = switch (Optional.ofNullable(type).orElse(DeviceType.LIGHT)) {
+            case LIGHT -> new SmartLight(name, location);
+            case THERMOSTAT -> new SmartThermostat(name, location);
+            case CAMERA -> new SmartCamera(name, location);
+            case LOCK -> new SmartLock(name, location);
+            case SENSOR -> new SmartThingsSensor(name, location);
+        };
+        if (on) created.turnOn(); else created.turnOff();
+        return created;
+    }
+
+    /**
+     * The registered runtime device for {@code entity}, built and registered on first access
+     */
+    public Device ensureRegistered(DeviceEntity entity) {
+        Device existing = homeController.getDevice(entity.getId());
+        if (existing != null) return existing;
+        Device created = newRuntimeDevice(entity);
+        Device registered = homeController.registerIfAbsent(entity.getId(), created);
+        if (registered == created) lazilyHydrated.increment();
+        return registered;
+    }
+
+    /**
+     * Hydrate according to the configured mode
+     */
+    public Stats hydrateOnStartup() {
+        if (mode == Mode.LAZY) {
+            lastRun = new Stats(mode.name(), 0, 0, 0, 0, lazilyHydrated.sum(), Instant.now());
+            log.info("Lazy device hydration: runtime devices are built on first access");
+            return lastRun;
+        }
+        return hydrate();
+    }
+
+    /**
+     * Build and register runtime devices for every stored device; devices
+     * already registered keep their runtime instance and state
+     */
+    public Stats hydrate() {
+        long start = System.nanoTime();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "device-hydrate-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<CompletableFuture<Map<String, Device>>> chunks = readOnly.execute(s -> readInChunks(pool));
+            Map<String, Device> built = new HashMap<>();
+            chunks.forEach(chunk -> built.putAll(chunk.join()));
+            int added = homeController.registerDevices(built);
+
+            long elapsedNanos = System.nanoTime() - start;
+            long perSecond = elapsedNanos == 0 ? built.size() : built.size() * 1_000_000_000L / elapsedNanos;
+            lastRun = new Stats(Mode.EAGER.name(), built.size(), chunks.size(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), perSecond, lazilyHydrated.sum(), Instant.now());
+            log.info("Hydrated {} devices in {} ms ({} devices/s, {} chunks, {} newly registered)",
+                    built.size(), lastRun.elapsedMillis(), perSecond, chunks.size(), added);
+            return lastRun;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public Stats stats() {
+        Stats run = lastRun;
+        if (run == null) return new Stats(mode.name(), 0, 0, 0, 0, lazilyHydrated.sum(), null);
+        return new Stats(run.mode(), run.devices(), run.chunks(), run.elapsedMillis(), run.devicesPerSecond(),
+                lazilyHydrated.sum(), run.completedAt());
+    }
+
+    private List<CompletableFuture<Map<String, Device>>> readInChunks(ExecutorService pool) {
+        List<CompletableFuture<Map<String, Device>>> chunks = new ArrayList<>();
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        try (Stream<DeviceEntity> rows = deviceRepository.streamAllBy()) {
+            Iterator<DeviceEntity> it = rows.iterator();
+            while (it.hasNext()) {
+                DeviceEntity e = it.next();
+                if (e.getId() == null || e.getId().isBlank()) continue;
+                chunk.add(new Row(e.getId(), e.getType(), e.getName(), e.getLocation(), e.isOn()));
+                if (chunk.size() == chunkSize) {
+                    chunks.add(build(chunk, pool));
+                    chunk = new ArrayList<>(chunkSize);
+                    entityManager.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) chunks.add(build(chunk, pool));
+        return chunks;
+    }
+
+    private static CompletableFuture<Map<String, Device>> build(List<Row> chunk, ExecutorService pool) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, Device> devices = new HashMap<>(chunk.size() * 2);
+            for (Row row : chunk) {
+                devices.put(row.id(), newRuntimeDevice(row.type(), row.name(), row.location(), row.on()));
+            }
+            return devices;
+        }, pool);
+    }
+}
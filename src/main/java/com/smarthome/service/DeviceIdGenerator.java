@@ -0,0 +1,17 @@
+package com.smarthome.service;
+
+import java.util.List;
+
+/**
+ * Source of device ids of the form {@code <prefix>-<suffix>}
+ */
+public interface DeviceIdGenerator {
+
+    String next(String prefix);
+
+    /**
+     * {@code count} suffixes claimed in one call, ascending; callers join each
+     * with its prefix as {@code prefix + "-" + suffix}
+     */
+    List<String> reserve(int count);
+}
@@ -0,0 +1,310 @@
+package com.smarthome.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk device onboarding from a streamed NDJSON or CSV body.
+ *
+ * Rows are parsed one at a time and validated; valid rows get generated ids
+ * and are inserted in JDBC batches of {@code batch-size}, each batch in its own
+ * transaction, and the batch's runtime devices are registered with one
+ * {@link HomeController#registerDevices} call once it has committed. A row
+ * that fails validation, or a batch the database rejects, is reported with its
+ * row number and the import carries on with the next one.
+ *
+ * NDJSON rows are objects {@code {type, name, location, on, ratedPowerWatts,
+ * ecosystem}}; CSV starts with a header line naming the same columns. Only
+ * type, name and location are required: power defaults to off, the rating to
+ * the type's default and the ecosystem to LOCAL.
+ */
+@Service
+public class DeviceImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceImportService.class);
+
+    private static final int MAX_TEXT = 255;
+    private static final int MAX_RATED_POWER_WATTS = 100_000;
+
+    public record RowError(long row, String message) {}
+
+    public record ImportResult(long rows, long imported, long rejected, int batches, long elapsedMillis,
+                               long devicesPerSecond, List<RowError> errors, boolean errorsTruncated) {}
+
+    public record Stats(long imports, long imported, long rejected, long batches, long peakDevicesPerSecond) {}
+
+    private final DeviceBatchWriter writer;
+    private final TransactionTemplate transactions;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxErrors;
+
+    private final LongAdder imports = new LongAdder();
+    private final LongAdder imported = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile long peakDevicesPerSecond;
+
+    public DeviceImportService(DeviceBatchWriter writer,
+                               PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper,
+                               @Value("${smarthome.import.batch-size:1000}") int batchSize,
+                               @Value("${smarthome.import.max-errors:100}") int maxErrors) {
+        if (batchSize <= 0) throw new IllegalArgumentException("import batch-size must be positive");
+        this.writer = writer;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxErrors = Math.max(0, maxErrors);
+    }
+
+    /**
+     * Import every row of {@code body}
+     *
+     * @throws IllegalArgumentException if a CSV body has no usable header
+     */
+    public ImportResult importDevices(ExportService.Format format, InputStream body) {
+        long start = System.nanoTime();
+        Run run = new Run();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16)) {
+            if (format == ExportService.Format.CSV) readCsv(reader, run); else readNdjson(reader, run);
+            run.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        long rate = run.imported * 1_000_000_000L / elapsedNanos;
+        imports.increment();
+        imported.add(run.imported);
+        rejected.add(run.rejected);
+        batches.add(run.batches);
+        if (run.imported >= 1_000 && rate > peakDevicesPerSecond) peakDevicesPerSecond = rate;
+        log.info("Imported {} of {} devices in {} batches ({} devices/s, {} rejected)",
+                run.imported, run.rows, run.batches, rate, run.rejected);
+        return new ImportResult(run.rows, run.imported, run.rejected, run.batches,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rate, run.errors, run.rejected > run.errors.size());
+    }
+
+    public Stats stats() {
+        return new Stats(imports.sum(), imported.sum(), rejected.sum(), batches.sum(), peakDevicesPerSecond);
+    }
+
+    // ── Parsing ──────────────────────────────────────────────
+
+    /** One object per line; blank lines are skipped but still counted for row numbers */
+    private void readNdjson(BufferedReader reader, Run run) throws IOException {
+        long line = 0;
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            line++;
+            if (text.isBlank()) continue;
+            run.rows++;
+            Map<String, String> fields;
+            try {
+                fields = parseObject(text);
+            } catch (IllegalArgumentException e) {
+                run.reject(line, e.getMessage());
+                continue;
+            }
+            run.accept(line, fields);
+        }
+    }
+
+    private Map<String, String> parseObject(String text) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(text)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) throw new IllegalArgumentException("expected a JSON object");
+            for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value.isStructStart()) throw new IllegalArgumentException(name + " must be a scalar");
+                fields.put(name, value == JsonToken.VALUE_NULL ? null : parser.getText());
+            }
+            if (parser.nextToken() != null) throw new IllegalArgumentException("expected one object per line");
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("malformed JSON: " + e.getOriginalMessage());
+        }
+        return fields;
+    }
+
+    private void readCsv(BufferedReader reader, Run run) throws IOException {
+        String header = reader.readLine();
+        if (header == null) return;
+        List<String> columns = splitCsv(header).stream().map(String::trim).toList();
+        for (String required : List.of("type", "name", "location")) {
+            if (!columns.contains(required)) throw new IllegalArgumentException("CSV header must name a '" + required + "' column");
+        }
+        long line = 1;
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            line++;
+            if (text.isBlank()) continue;
+            run.rows++;
+            List<String> values = splitCsv(text);
+            if (values.size() != columns.size()) {
+                run.reject(line, "expected " + columns.size() + " fields, got " + values.size());
+                continue;
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < columns.size(); i++) fields.put(columns.get(i), values.get(i).isEmpty() ? null : values.get(i));
+            run.accept(line, fields);
+        }
+    }
+
+    /** RFC 4180 fields of one line: quoted fields may hold commas and doubled quotes, not line breaks */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private static DeviceEntity validate(Map<String, String> fields) {
+        String typeName = fields.get("type");
+        if (typeName == null || typeName.isBlank()) throw new IllegalArgumentException("type is required");
+        DeviceType type;
+        try {
+            type = DeviceType.valueOf(typeName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown device type: " + typeName);
+        }
+        String name = text(fields, "name", true);
+        String location = text(fields, "location", true);
+        String on = fields.get("on");
+        if (on != null && !on.equalsIgnoreCase("true") && !on.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("on must be true or false");
+        }
+        int watts = type.getDefaultRatedPowerWatts();
+        String rating = fields.get("ratedPowerWatts");
+        if (rating != null) {
+            try {
+                watts = Integer.parseInt(rating.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("ratedPowerWatts must be a whole number");
+            }
+            if (watts < 0 || watts > MAX_RATED_POWER_WATTS) {
+                throw new IllegalArgumentException("ratedPowerWatts must be between 0 and " + MAX_RATED_POWER_WATTS);
+            }
+        }
+        String ecosystem = text(fields, "ecosystem", false);
+        return new DeviceEntity(null, name, type, location, Boolean.parseBoolean(on), watts,
+                ecosystem == null ? "LOCAL" : ecosystem.toUpperCase(Locale.ROOT));
+    }
+
+    private static String text(Map<String, String> fields, String name, boolean required) {
+        String value = ServiceUtils.blankToNull(fields.get(name));
+        if (value == null) {
+            if (required) throw new IllegalArgumentException(name + " is required");
+            return null;
+        }
+        value = value.trim();
+        if (value.length() > MAX_TEXT) throw new IllegalArgumentException(name + " is longer than " + MAX_TEXT + " characters");
+        return value;
+    }
+
+    private record Pending(long row, DeviceEntity entity) {}
+
+    /** State of one import: the batch being filled and what has been counted so far */
+    private final class Run {
+        final List<Pending> batch = new ArrayList<>(batchSize);
+        final List<RowError> errors = new ArrayList<>();
+        long rows;
+        long imported;
+        long rejected;
+        int batches;
+
+        void accept(long row, Map<String, String> fields) {
+            try {
+                batch.add(new Pending(row, validate(fields)));
+            } catch (IllegalArgumentException e) {
+                reject(row, e.getMessage());
+                return;
+            }
+            if (batch.size() == batchSize) flush();
+        }
+
+        void reject(long row, String message) {
+            rejected++;
+            if (errors.size() < maxErrors) errors.add(new RowError(row, message));
+        }
+
+        /** Insert the batch; if the database rejects it, retry its rows one by one to find the bad ones */
+        void flush() {
+            if (batch.isEmpty()) return;
+            List<DeviceEntity> entities = writer.withIds(batch.stream().map(Pending::entity).toList());
+            batches++;
+            try {
+                insert(entities);
+                registered(entities);
+            } catch (DataAccessException e) {
+                log.warn("Import batch of {} rows failed, retrying row by row: {}", entities.size(), e.getMessage());
+                for (int i = 0; i < entities.size(); i++) {
+                    try {
+                        insert(List.of(entities.get(i)));
+                        registered(List.of(entities.get(i)));
+                    } catch (DataAccessException rowFailure) {
+                        reject(batch.get(i).row(), "rejected by the database: " + rowFailure.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+            batch.clear();
+        }
+
+        private void registered(List<DeviceEntity> entities) {
+            writer.register(entities, DeviceHydrator::newRuntimeDevice);
+            imported += entities.size();
+        }
+    }
+
+    private void insert(List<DeviceEntity> entities) {
+        transactions.executeWithoutResult(status -> writer.insert(entities));
+    }
+}
@@ -0,0 +1,173 @@
+package com.smarthome.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * One mailbox per device: mutations of a device run one at a time in arrival
+ * order, while different devices run in parallel on a shared worker pool.
+ *
+ * A device has a mailbox only while it has work; the first task schedules a
+ * drain, and the drain removes the mailbox once it is empty, so idle devices
+ * cost nothing. A drain handles a bounded number of tasks before yielding its
+ * worker, so one busy device cannot starve the others. A task that mutates
+ * the device it is already running for executes inline instead of deadlocking
+ * on its own mailbox.
+ */
+@Component
+public class DeviceMailboxes {
+
+    private static final int TASKS_PER_DRAIN = 32;
+    private static final ThreadLocal<String> CURRENT_DEVICE = new ThreadLocal<>();
+
+    public record MailboxDepth(String deviceId, int depth) {}
+
+    public record Stats(int workers, int activeMailboxes, int queuedTasks, int peakDepth,
+                        long processed, long inlined, List<MailboxDepth> deepest) {}
+
+    private static final class Mailbox {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        volatile int depth;
+    }
+
+    private final int workers;
+    private final ExecutorService executor;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger peakDepth = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder inlined = new LongAdder();
+
+    public DeviceMailboxes(@Value("${smarthome.mailbox.workers:8}") int workers) {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be positive");
+        this.workers = workers;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "device-mailbox-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue {@code task} behind earlier tasks for the same device
+     */
+    public <T> CompletableFuture<T> submit(String deviceId, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (deviceId.equals(CURRENT_DEVICE.get())) {
+            inlined.increment();
+            complete(result, task);
+            return result;
+        }
+        Runnable run = () -> complete(result, task);
+        boolean[] schedule = {false};
+        mailboxes.compute(deviceId, (id, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+                schedule[0] = true;
+            }
+            mailbox.tasks.addLast(run);
+            mailbox.depth = mailbox.tasks.size();
+            peakDepth.accumulateAndGet(mailbox.depth, Math::max);
+            return mailbox;
+        });
+        if (schedule[0]) {
+            executor.execute(() -> drain(deviceId));
+        }
+        return result;
+    }
+
+    /**
+     * Run {@code task} in the device's mailbox and wait for it
+     */
+    public <T> T call(String deviceId, Supplier<T> task) {
+        return await(deviceId, submit(deviceId, task));
+    }
+
+    /**
+     * Wait for a task submitted to {@code deviceId}'s mailbox, rethrowing its failure
+     */
+    public <T> T await(String deviceId, CompletableFuture<T> result) {
+        try {
+            return result.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error error) throw error;
+            throw new IllegalStateException("Mutation of " + deviceId + " failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Mutation of " + deviceId + " did not complete within 30s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + deviceId);
+        }
+    }
+
+    public int depth(String deviceId) {
+        Mailbox mailbox = mailboxes.get(deviceId);
+        return mailbox == null ? 0 : mailbox.depth;
+    }
+
+    public Stats stats() {
+        List<MailboxDepth> depths = mailboxes.entrySet().stream()
+                .map(e -> new MailboxDepth(e.getKey(), e.getValue().depth))
+                .sorted(Comparator.comparingInt(MailboxDepth::depth).reversed())
+                .toList();
+        return new Stats(workers, depths.size(), depths.stream().mapToInt(MailboxDepth::depth).sum(),
+                peakDepth.get(), processed.sum(), inlined.sum(), depths.stream().limit(10).toList());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void drain(String deviceId) {
+        CURRENT_DEVICE.set(deviceId);
+        try {
+            for (int i = 0; i < TASKS_PER_DRAIN; i++) {
+                Runnable[] next = {null};
+                mailboxes.computeIfPresent(deviceId, (id, mailbox) -> {
+                    next[0] = mailbox.tasks.pollFirst();
+                    mailbox.depth = mailbox.tasks.size();
+                    return mailbox;
+                });
+                if (next[0] == null) break;
+                processed.increment(); // before running, so it is visible once the task's future completes
+                next[0].run();
+            }
+        } finally {
+            CURRENT_DEVICE.remove();
+        }
+        boolean[] more = {false};
+        mailboxes.computeIfPresent(deviceId, (id, mailbox) -> {
+            more[0] = !mailbox.tasks.isEmpty();
+            return more[0] ? mailbox : null;
+        });
+        if (more[0]) {
+            executor.execute(() -> drain(deviceId));
+        }
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, Supplier<T> task) {
+        try {
+            result.complete(task.get());
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+}
@@ -6,9 +6,10 @@ import com.smarthome.domain.HomeMode;
 import com.smarthome.pattern.creational.abstractfactory.HomeKitFactory;
 import com.smarthome.pattern.creational.abstractfactory.SmartDeviceAbstractFactory;
 import com.smarthome.pattern.creational.abstractfactory.SmartThingsFactory;
-import com.smarthome.pattern.creational.abstractfactory.SmartThingsSensor;
 import com.smarthome.pattern.creational.factory.*;
 import com.smarthome.pattern.creational.singleton.HomeController;
+import com.smarthome.pattern.structural.decorator.DeviceMetrics;
+import com.smarthome.pattern.structural.decorator.LatencyHistogram;
 import com.smarthome.repository.DeviceRepository;
 import com.smarthome.web.viewmodel.DeviceView;
 import com.smarthome.web.viewmodel.StatusView;
@@ -16,11 +17,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
 /**
  * Manages device CRUD, runtime state, and home mode.
@@ -35,11 +43,38 @@ public class DeviceService {
     private final SimpMessagingTemplate messagingTemplate;
     private final HomeController homeController = HomeController.INSTANCE;
     private final AtomicReference<HomeMode> homeMode = new AtomicReference<>(HomeMode.NORMAL);
+    private final CommandRateLimiter rateLimiter;
+    private final TransactionTemplate transactions;
+    private final DeviceMailboxes mailboxes;
+    private final OptimisticRetry retry;
+    private final DeviceHydrator hydrator;
+    private final DeviceIdGenerator idGenerator;
+    private final EnergyAccountant energy;
+    private final DeviceEventJournal events;
+    /** turnOn/turnOff histograms per device type, at {@code ordinal * 2} and {@code ordinal * 2 + 1} */
+    private final AtomicReferenceArray<LatencyHistogram> switchLatency =
+            new AtomicReferenceArray<>(DeviceType.values().length * 2);
 
     public DeviceService(DeviceRepository deviceRepository,
-                         SimpMessagingTemplate messagingTemplate) {
+                         SimpMessagingTemplate messagingTemplate,
+                         CommandRateLimiter rateLimiter,
+                         PlatformTransactionManager transactionManager,
+                         DeviceMailboxes mailboxes,
+                         OptimisticRetry retry,
+                         DeviceHydrator hydrator,
+                         DeviceIdGenerator idGenerator,
+                         EnergyAccountant energy,
+                         DeviceEventJournal events) {
         this.deviceRepository = deviceRepository;
         this.messagingTemplate = messagingTemplate;
+        this.rateLimiter = rateLimiter;
+        this.mailboxes = mailboxes;
+        this.retry = retry;
+        this.hydrator = hydrator;
+        this.idGenerator = idGenerator;
+        this.energy = energy;
+        this.events = events;
+        this.transactions = new TransactionTemplate(transactionManager);
     }
 
     // ── Queries ───────────────────────────────────────────────
@@ -77,37 +112,206 @@ public class DeviceService {
 
     // ── Commands ──────────────────────────────────────────────
 
-    @Transactional
+    /**
+     * Switch a device; runs in the device's mailbox, so concurrent mutations of
+     * the same device apply one at a time and entity and runtime stay in step
+     */
     public DeviceView controlDevice(String id, boolean turnOn) {
-        DeviceEntity device = findOrThrow(id);
-        device.setOn(turnOn);
-        deviceRepository.save(device);
+        return mailboxes.call(id, () -> applyPower(id, turnOn));
+    }
 
-        Device runtime = ensureRuntimeDevice(device);
-        if (turnOn) runtime.turnOn(); else runtime.turnOff();
+    /**
+     * Flip a device's current state; the read and the write happen in one mailbox turn
+     */
+    public DeviceView toggleDevice(String id) {
+        return mailboxes.call(id, () -> applyPower(id, null));
+    }
 
-        DeviceView view = toView(device);
-        broadcast("device", view);
-        return view;
+    /**
+     * Control a device on behalf of an external client, subject to the per-device
+     * and per-client rate limits. A coalesced command is applied later; the current
+     * state is returned meanwhile.
+     */
+    public DeviceView requestControl(String id, boolean turnOn, String clientId) {
+        DeviceView current = getDevice(id);
+        AtomicReference<DeviceView> applied = new AtomicReference<>(current);
+        rateLimiter.submit(id, clientId, () -> applied.set(controlDevice(id, turnOn)));
+        return applied.get();
+    }
+
+    public Map<String, Object> getRateLimitStats() {
+        return Map.of("rateLimits", rateLimiter.stats());
     }
 
-    @Transactional
     public List<DeviceView> controlRoom(String room, boolean turnOn) {
-        List<DeviceEntity> devices = deviceRepository.findByLocationIgnoreCase(room);
-        for (DeviceEntity d : devices) {
-            d.setOn(turnOn);
-            Device rt = ensureRuntimeDevice(d);
-            if (turnOn) rt.turnOn(); else rt.turnOff();
+        List<String> ids = transactions.execute(s -> deviceRepository.findByLocationIgnoreCase(room).stream()
+                .map(DeviceEntity::getId).toList());
+        Map<String, Boolean> targets = new LinkedHashMap<>();
+        ids.forEach(id -> targets.put(id, turnOn));
+        return controlDevices(targets);
+    }
+
+    /**
+     * Apply target states, each in its device's mailbox; different devices switch
+     * in parallel. A null target toggles the device.
+     */
+    public List<DeviceView> controlDevices(Map<String, Boolean> targets) {
+        Map<String, CompletableFuture<DeviceView>> pending = new LinkedHashMap<>();
+        targets.forEach((id, turnOn) -> pending.put(id, mailboxes.submit(id, () -> applyPower(id, turnOn))));
+        List<DeviceView> views = new ArrayList<>(pending.size());
+        pending.forEach((id, result) -> views.add(mailboxes.await(id, result)));
+        return views;
+    }
+
+    /**
+     * Run {@code action} in the device's mailbox and wait for it, without persisting
+     * anything; for callers that persist in batches of their own
+     */
+    public void runExclusive(String id, Runnable action) {
+        mailboxes.call(id, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run {@code action} against a device's runtime object in its mailbox, then
+     * persist the power state it left behind. The action runs exactly once; only
+     * the entity write is retried on conflicts. Devices that exist only at runtime
+     * are not persisted.
+     */
+    public <T> CompletableFuture<T> mutateRuntime(String id, Function<Device, T> action) {
+        return mailboxes.submit(id, () -> {
+            DeviceEntity entity = deviceRepository.findById(id).orElse(null);
+            Device runtime = entity != null ? ensureRuntimeDevice(entity) : homeController.getDevice(id);
+            if (runtime == null) throw new IllegalArgumentException("Device not found: " + id);
+            T result = action.apply(runtime);
+            boolean on = runtime.isOn();
+            DeviceView switched = entity == null ? null : retry.inTransaction("update " + id, () -> {
+                DeviceEntity current = deviceRepository.findById(id).orElse(null);
+                if (current == null || current.isOn() == on) return null;
+                current.setOn(on);
+                deviceRepository.save(current);
+                return toView(current);
+            });
+            String image = RuntimeImage.of(runtime);
+            afterCommit(() -> {
+                if (switched != null) {
+                    recordSwitch(id, on);
+                    broadcast("device", switched);
+                }
+                events.append(DeviceEventJournal.Type.RUNTIME, id, image);
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Bring devices to target states in bulk: each runtime device switches in its
+     * own mailbox, then the states reached are written with one conditional UPDATE
+     * per target state instead of one transaction per device. Devices that do not
+     * exist are skipped.
+     */
+    public List<DeviceView> switchDevices(Map<String, Boolean> targets) {
+        List<DeviceEntity> entities = new ArrayList<>();
+        deviceRepository.findAllById(targets.keySet()).forEach(entities::add);
+        Map<String, CompletableFuture<Boolean>> pending = new LinkedHashMap<>();
+        for (DeviceEntity entity : entities) {
+            boolean next = targets.get(entity.getId());
+            Device runtime = ensureRuntimeDevice(entity);
+            pending.put(entity.getId(), mailboxes.submit(entity.getId(), () -> {
+                if (runtime.isOn() != next) {
+                    long start = System.nanoTime();
+                    if (next) runtime.turnOn(); else runtime.turnOff();
+                    switchLatency(entity.getType(), next).record(System.nanoTime() - start);
+                }
+                return runtime.isOn();
+            }));
+        }
+        // Persist whatever was reached even if some mailbox failed, so entities follow their runtime devices
+        Map<String, Boolean> reached = new LinkedHashMap<>();
+        RuntimeException failure = null;
+        for (Map.Entry<String, CompletableFuture<Boolean>> p : pending.entrySet()) {
+            try {
+                reached.put(p.getKey(), mailboxes.await(p.getKey(), p.getValue()));
+            } catch (RuntimeException e) {
+                if (failure == null) failure = e; else failure.addSuppressed(e);
+            }
         }
-        deviceRepository.saveAll(devices);
-        List<DeviceView> views = devices.stream().map(this::toView).toList();
-        views.forEach(v -> broadcast("device", v));
+        transactions.executeWithoutResult(status -> persistPowerStates(reached));
+        List<DeviceView> views = entities.stream()
+                .filter(e -> reached.containsKey(e.getId()))
+                .map(e -> toView(e, reached.get(e.getId())))
+                .toList();
+        afterCommit(() -> views.forEach(v -> broadcast("device", v)));
+        if (failure != null) throw failure;
         return views;
     }
 
+    public Map<String, Object> getMailboxStats() {
+        return Map.of("mailboxes", mailboxes.stats());
+    }
+
+    public Map<String, Object> getHydrationStats() {
+        return Map.of("hydration", hydrator.stats());
+    }
+
+    public Map<String, Object> getOptimisticRetryStats() {
+        return Map.of("optimisticRetry", retry.stats());
+    }
+
+    /**
+     * Body of every power mutation; callers run it inside the device's mailbox.
+     * The runtime device switches only once the entity write has committed, so
+     * a failed or exhausted write leaves both sides as they were.
+     */
+    private DeviceView applyPower(String id, Boolean turnOn) {
+        DeviceEntity device = retry.inTransaction("switch " + id, () -> {
+            DeviceEntity current = findOrThrow(id);
+            current.setOn(turnOn != null ? turnOn : !current.isOn());
+            return deviceRepository.save(current);
+        });
+        DeviceView view = toView(device);
+        afterCommit(() -> {
+            Device runtime = ensureRuntimeDevice(device);
+            long start = System.nanoTime();
+            if (view.isOn()) runtime.turnOn(); else runtime.turnOff();
+            switchLatency(device.getType(), view.isOn()).record(System.nanoTime() - start);
+            recordSwitch(id, view.isOn());
+            broadcast("device", view);
+        });
+        return view;
+    }
+
+    // ── Metrics ───────────────────────────────────────────────
+
+    public Map<String, Object> getLatencyMetrics() {
+        return Map.of("unit", "ns", "operations", DeviceMetrics.shared().snapshot());
+    }
+
+    public Map<String, Object> resetLatencyMetrics() {
+        DeviceMetrics.shared().reset();
+        return Map.of("reset", true);
+    }
+
+    /**
+     * Same histogram a {@code MetricsDecorator} for the type records into, resolved
+     * once per type so the switch path neither wraps the device nor hits the registry
+     */
+    private LatencyHistogram switchLatency(DeviceType type, boolean on) {
+        int slot = type.ordinal() * 2 + (on ? 0 : 1);
+        LatencyHistogram histogram = switchLatency.get(slot);
+        if (histogram == null) {
+            histogram = DeviceMetrics.shared().histogram(type.name(), on ? "turnOn" : "turnOff");
+            switchLatency.lazySet(slot, histogram);
+        }
+        return histogram;
+    }
+
     public HomeMode setHomeMode(HomeMode mode) {
-        homeMode.set(mode);
+        HomeMode previous = homeMode.getAndSet(mode);
         homeController.setHomeMode(mode);
+        if (previous != mode) events.append(DeviceEventJournal.Type.MODE_CHANGE, "home", previous + " -> " + mode);
         return mode;
     }
 
@@ -127,6 +331,7 @@ public class DeviceService {
                 created.isOn(), type.getDefaultRatedPowerWatts(), "LOCAL");
         deviceRepository.save(entity);
         homeController.registerDevice(id, created);
+        energy.track(entity);
         return toView(entity);
     }
 
@@ -144,8 +349,9 @@ public class DeviceService {
         );
 
         List<DeviceEntity> entities = new ArrayList<>();
+        Iterator<String> suffixes = idGenerator.reserve(seeds.size()).iterator();
         for (Seed s : seeds) {
-            String id = generateId(s.type);
+            String id = idPrefix(s.type) + "-" + suffixes.next();
             DeviceEntity entity = new DeviceEntity(id, s.displayName, s.type, location,
                     s.device.isOn(), s.type.getDefaultRatedPowerWatts(),
                     ecosystem.toUpperCase(Locale.ROOT));
@@ -153,6 +359,7 @@ public class DeviceService {
             homeController.registerDevice(id, s.device);
         }
         deviceRepository.saveAll(entities);
+        entities.forEach(energy::track);
         return entities.stream().map(this::toView).toList();
     }
 
@@ -164,38 +371,70 @@ public class DeviceService {
     }
 
     public Device ensureRuntimeDevice(DeviceEntity entity) {
-        Device existing = homeController.getDevice(entity.getId());
-        if (existing != null) return existing;
-
-        Device created = switch (entity.getType()) {
-            case LIGHT -> new SmartLight(entity.getName(), entity.getLocation());
-            case THERMOSTAT -> new SmartThermostat(entity.getName(), entity.getLocation());
-            case CAMERA -> new SmartCamera(entity.getName(), entity.getLocation());
-            case LOCK -> new SmartLock(entity.getName(), entity.getLocation());
-            case SENSOR -> new SmartThingsSensor(entity.getName(), entity.getLocation());
-        };
-        if (entity.isOn()) created.turnOn(); else created.turnOff();
-        homeController.registerDevice(entity.getId(), created);
-        return created;
+        return hydrator.ensureRegistered(entity);
     }
 
     public Map<String, Boolean> syncDatabaseFromRuntime() {
         Map<String, Boolean> changes = new LinkedHashMap<>();
-        List<DeviceEntity> all = deviceRepository.findAll();
-        for (DeviceEntity e : all) {
+        for (DeviceEntity e : deviceRepository.findAll()) {
             Device d = homeController.getDevice(e.getId());
             if (d != null && e.isOn() != d.isOn()) {
-                e.setOn(d.isOn());
                 changes.put(e.getId(), d.isOn());
             }
         }
-        deviceRepository.saveAll(all);
+        persistPowerStates(changes);
         return changes;
     }
 
+    /**
+     * Write power states with one conditional UPDATE per target state; rows
+     * already in the target state are not touched. Energy accounting and the
+     * event journal follow once the surrounding transaction commits. Returns
+     * the rows changed.
+     */
+    public int persistPowerStates(Map<String, Boolean> states) {
+        List<String> on = new ArrayList<>();
+        List<String> off = new ArrayList<>();
+        states.forEach((id, isOn) -> (isOn ? on : off).add(id));
+        int changed = 0;
+        if (!on.isEmpty()) changed += deviceRepository.switchWhereDifferent(on, true);
+        if (!off.isEmpty()) changed += deviceRepository.switchWhereDifferent(off, false);
+        Map<String, Boolean> committed = Map.copyOf(states);
+        afterCommit(() -> committed.forEach(this::recordSwitch));
+        return changed;
+    }
+
+    /**
+     * Run {@code action} once the current transaction commits, or right away
+     * outside a transaction; nothing runs on rollback
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Account for a committed power state and journal it if it is a change
+     */
+    private void recordSwitch(String id, boolean on) {
+        if (energy.record(id, on)) events.append(DeviceEventJournal.Type.STATE_CHANGE, id, on ? "ON" : "OFF");
+    }
+
     public DeviceView toView(DeviceEntity d) {
+        return toView(d, d.isOn());
+    }
+
+    private static DeviceView toView(DeviceEntity d, boolean on) {
         return new DeviceView(d.getId(), d.getInfo(), d.getType(), d.getLocation(),
-                d.isOn(), d.isOn() ? d.getRatedPowerWatts() : 0);
+                on, on ? d.getRatedPowerWatts() : 0);
     }
 
     public void broadcast(String topic, Object payload) {
@@ -224,7 +463,11 @@ public class DeviceService {
     }
 
     private String generateId(DeviceType type) {
-        return type.name().toLowerCase(Locale.ROOT) + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return idGenerator.next(idPrefix(type));
+    }
+
+    private static String idPrefix(DeviceType type) {
+        return type.name().toLowerCase(Locale.ROOT);
     }
 }
 
@@ -0,0 +1,307 @@
+package com.smarthome.service;
+
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.domain.EnergyCheckpointEntity;
+import com.smarthome.repository.DeviceRepository;
+import com.smarthome.repository.EnergyCheckpointRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Energy drawn over time: rated power integrated across every on-interval,
+ * kept as running kWh totals per device, room, type and for the whole home.
+ *
+ * Services report power transitions after they commit; a report that does not
+ * change a device's state is ignored, so repeated or retried reports are
+ * harmless. Each transition updates four {@link EnergyCounter}s and each
+ * reading is a single counter lookup, so "today" and "this month" cost the
+ * same however long the history is. Counters are checkpointed on a schedule
+ * and restored at startup; energy drawn between the last checkpoint and a
+ * restart is not counted. Nothing is checkpointed before {@link #resume()}
+ * has restored the saved counters, so a fresh start never overwrites them.
+ */
+@Service
+public class EnergyAccountant {
+
+    private static final Logger log = LoggerFactory.getLogger(EnergyAccountant.class);
+    private static final String HOME = "home";
+
+    public record Reading(String scope, double todayKwh, double monthKwh, double totalKwh, long drawWatts) {}
+
+    public record Summary(Reading home, List<Reading> rooms, List<Reading> types) {}
+
+    public record Stats(int meteredDevices, int counters, long transitions, long checkpoints, Instant lastCheckpointAt,
+                        String zone) {}
+
+    /** What the accountant knows about one device */
+    private static final class Meter {
+        String room;
+        final DeviceType type;
+        final long watts;
+        boolean on;
+        long since;
+
+        Meter(String room, DeviceType type, long watts) {
+            this.room = room;
+            this.type = type;
+            this.watts = watts;
+        }
+    }
+
+    private final DeviceRepository deviceRepository;
+    private final EnergyCheckpointRepository checkpointRepository;
+    private final Clock clock;
+
+    private final Map<String, Meter> meters = new HashMap<>();
+    private final Map<String, EnergyCounter> counters = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "energy-checkpoint");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private long dayStart = Long.MIN_VALUE;
+    private long nextDayStart = Long.MIN_VALUE;
+    private long monthStart;
+    private long transitions;
+    private long checkpoints;
+    private Instant lastCheckpointAt;
+    private boolean resumed;
+
+    public EnergyAccountant(DeviceRepository deviceRepository,
+                            EnergyCheckpointRepository checkpointRepository,
+                            @Value("${smarthome.energy.zone:}") String zone,
+                            @Value("${smarthome.energy.checkpoint-interval:PT1M}") Duration checkpointInterval) {
+        this.deviceRepository = deviceRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.clock = Clock.system(zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone));
+
+        long period = checkpointInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::checkpointSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rebuild the counters from the last checkpoint and start metering the devices that are on
+     */
+    public synchronized void resume() {
+        meters.clear();
+        counters.clear();
+        long now = clock.millis();
+        rollPeriods(now);
+        for (EnergyCheckpointEntity saved : checkpointRepository.findAll()) {
+            counter(saved.getScope()).restore(saved.getDayStart(), saved.getDayWh(),
+                    saved.getMonthStart(), saved.getMonthWh(), saved.getLifetimeWh());
+        }
+        for (DeviceEntity device : deviceRepository.findAll()) {
+            track(device, now);
+        }
+        resumed = true;
+        log.info("Energy accounting resumed for {} devices from {} checkpointed counters", meters.size(), counters.size());
+    }
+
+    /**
+     * Start metering a device in its stored state; a device already metered keeps its meter
+     */
+    public synchronized void track(DeviceEntity device) {
+        long now = clock.millis();
+        rollPeriods(now);
+        track(device, now);
+    }
+
+    /**
+     * Start metering many devices, as {@link #track(DeviceEntity)} does, under one lock
+     */
+    public synchronized void trackAll(Collection<DeviceEntity> devices) {
+        long now = clock.millis();
+        rollPeriods(now);
+        for (DeviceEntity device : devices) track(device, now);
+    }
+
+    /**
+     * A device is now on or off
+     *
+     * @return whether this changed the state the accountant knew
+     */
+    public synchronized boolean record(String deviceId, boolean on) {
+        long now = clock.millis();
+        rollPeriods(now);
+        Meter meter = meters.computeIfAbsent(deviceId, id -> deviceRepository.findById(id)
+                .map(d -> new Meter(d.getLocation(), d.getType(), d.getRatedPowerWatts()))
+                .orElse(null));
+        if (meter == null || meter.on == on) return false;
+        transitions++;
+        if (on) {
+            meter.on = true;
+            meter.since = now;
+            scopesOf(deviceId, meter).forEach(c -> c.start(meter.watts, now));
+        } else {
+            meter.on = false;
+            scopesOf(deviceId, meter).forEach(c -> c.stop(meter.watts, meter.since, now));
+        }
+        return true;
+    }
+
+    /**
+     * A device moved to another room; energy drawn from now on is credited to the new room
+     */
+    public synchronized void relocate(String deviceId, String room) {
+        Meter meter = meters.get(deviceId);
+        if (meter == null || roomKey(room).equals(roomKey(meter.room))) return;
+        long now = clock.millis();
+        rollPeriods(now);
+        if (meter.on) {
+            // split the running interval at the move, so each room is credited its own share
+            scopesOf(deviceId, meter).forEach(c -> c.stop(meter.watts, meter.since, now));
+            meter.room = room;
+            meter.since = now;
+            scopesOf(deviceId, meter).forEach(c -> c.start(meter.watts, now));
+        } else {
+            meter.room = room;
+        }
+    }
+
+    public synchronized Reading home() {
+        return reading(HOME);
+    }
+
+    public synchronized Reading device(String deviceId) {
+        if (!meters.containsKey(deviceId) && !deviceRepository.existsById(deviceId)) {
+            throw new IllegalArgumentException("Device not found: " + deviceId);
+        }
+        return reading("device:" + deviceId);
+    }
+
+    public synchronized Reading room(String room) {
+        return reading(roomKey(room));
+    }
+
+    public synchronized Reading type(DeviceType type) {
+        return reading("type:" + type.name());
+    }
+
+    public synchronized Summary summary() {
+        List<Reading> rooms = new ArrayList<>();
+        List<Reading> types = new ArrayList<>();
+        for (String scope : counters.keySet()) {
+            if (scope.startsWith("room:")) rooms.add(reading(scope));
+            else if (scope.startsWith("type:")) types.add(reading(scope));
+        }
+        rooms.sort((a, b) -> a.scope().compareTo(b.scope()));
+        types.sort((a, b) -> a.scope().compareTo(b.scope()));
+        return new Summary(reading(HOME), rooms, types);
+    }
+
+    /**
+     * Persist every counter as it stands now; a no-op until {@link #resume()} has completed
+     */
+    public void checkpoint() {
+        List<EnergyCheckpointEntity> rows = new ArrayList<>();
+        Instant at;
+        synchronized (this) {
+            if (!resumed) return;
+            long now = clock.millis();
+            rollPeriods(now);
+            at = Instant.ofEpochMilli(now);
+            counters.forEach((scope, c) -> rows.add(new EnergyCheckpointEntity(scope, c.dayStart(), c.todayWh(now),
+                    c.monthStart(), c.monthWh(now), c.lifetimeWh(now), at)));
+        }
+        checkpointRepository.saveAll(rows);
+        synchronized (this) {
+            checkpoints++;
+            lastCheckpointAt = at;
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(meters.size(), counters.size(), transitions, checkpoints, lastCheckpointAt,
+                clock.getZone().getId());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+        checkpointSafely();
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private void track(DeviceEntity device, long now) {
+        if (meters.containsKey(device.getId())) return;
+        Meter meter = new Meter(device.getLocation(), device.getType(), device.getRatedPowerWatts());
+        meters.put(device.getId(), meter);
+        List<EnergyCounter> scopes = scopesOf(device.getId(), meter); // counters exist from the first sighting on
+        if (device.isOn()) {
+            meter.on = true;
+            meter.since = now;
+            scopes.forEach(c -> c.start(meter.watts, now));
+        }
+    }
+
+    private List<EnergyCounter> scopesOf(String deviceId, Meter meter) {
+        return List.of(counter(HOME), counter(roomKey(meter.room)),
+                counter("type:" + meter.type.name()), counter("device:" + deviceId));
+    }
+
+    private EnergyCounter counter(String scope) {
+        return counters.computeIfAbsent(scope, k -> {
+            EnergyCounter created = new EnergyCounter();
+            created.roll(dayStart, monthStart);
+            return created;
+        });
+    }
+
+    private Reading reading(String scope) {
+        long now = clock.millis();
+        rollPeriods(now);
+        EnergyCounter c = counters.get(scope);
+        if (c == null) return new Reading(scope, 0, 0, 0, 0);
+        return new Reading(scope, c.todayWh(now) / 1000, c.monthWh(now) / 1000, c.lifetimeWh(now) / 1000,
+                c.activeWatts());
+    }
+
+    /**
+     * Advance every counter when a day boundary was crossed; a no-op comparison otherwise
+     */
+    private void rollPeriods(long now) {
+        if (now < nextDayStart) return;
+        ZoneId zone = clock.getZone();
+        LocalDate today = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+        ZonedDateTime start = today.atStartOfDay(zone);
+        dayStart = start.toInstant().toEpochMilli();
+        nextDayStart = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        monthStart = today.withDayOfMonth(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        counters.values().forEach(c -> c.roll(dayStart, monthStart));
+    }
+
+    private static String roomKey(String room) {
+        return "room:" + (room == null || room.isBlank() ? "unassigned" : room.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private void checkpointSafely() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            log.warn("Energy checkpoint failed, retrying next interval: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.smarthome.service;
+
+/**
+ * Running energy totals of one scope (a device, room, type or the home) for
+ * the current day, the current month and all time.
+ *
+ * Closed on-intervals are added to the totals when a device switches off.
+ * Devices that are still on are folded in when read: the counter keeps their
+ * summed wattage and their summed watts-times-start-offset, so the energy of
+ * every running device is one multiply and one subtract, however many there
+ * are. Offsets are measured from the start of the current day, which keeps
+ * them small and lets day and month boundaries be crossed by rebasing instead
+ * of visiting devices.
+ *
+ * Not thread-safe; callers must {@link #roll} to the current periods before
+ * every other call.
+ */
+public final class EnergyCounter {
+
+    private static final double WATT_MILLIS_PER_WH = 3_600_000.0;
+
+    private long dayStart = Long.MIN_VALUE;
+    private long monthStart = Long.MIN_VALUE;
+    private long activeWatts;
+    private long openWattMillis; // sum of watts * (max(since, dayStart) - dayStart) over running devices
+    private double dayWh;
+    private double monthWh;
+    private double lifetimeWh;
+
+    /**
+     * Move to the day and month containing now; energy of running devices up
+     * to the new day start is credited to the periods it was drawn in
+     */
+    public void roll(long dayStart, long monthStart) {
+        if (dayStart == this.dayStart) return;
+        if (this.dayStart != Long.MIN_VALUE) {
+            double carried = openWh(dayStart);
+            lifetimeWh += carried;
+            if (monthStart == this.monthStart) {
+                monthWh += carried;
+            } else {
+                // nothing switched since the last roll, so every running device predates the new month
+                monthWh = activeWatts * (dayStart - monthStart) / WATT_MILLIS_PER_WH;
+            }
+        }
+        this.dayStart = dayStart;
+        this.monthStart = monthStart;
+        this.openWattMillis = 0;
+        this.dayWh = 0;
+    }
+
+    /**
+     * Seed the totals from a checkpoint; a day or month total only counts if that period is still current
+     */
+    public void restore(long dayStart, double dayWh, long monthStart, double monthWh, double lifetimeWh) {
+        if (dayStart == this.dayStart) this.dayWh += dayWh;
+        if (monthStart == this.monthStart) this.monthWh += monthWh;
+        this.lifetimeWh += lifetimeWh;
+    }
+
+    public void start(long watts, long now) {
+        activeWatts += watts;
+        openWattMillis += watts * (now - dayStart);
+    }
+
+    public void stop(long watts, long since, long now) {
+        long from = Math.max(since, dayStart);
+        double wh = watts * (now - from) / WATT_MILLIS_PER_WH;
+        dayWh += wh;
+        monthWh += wh;
+        lifetimeWh += wh;
+        activeWatts -= watts;
+        openWattMillis -= watts * (from - dayStart);
+    }
+
+    public double todayWh(long now) {
+        return dayWh + openWh(now);
+    }
+
+    public double monthWh(long now) {
+        return monthWh + openWh(now);
+    }
+
+    public double lifetimeWh(long now) {
+        return lifetimeWh + openWh(now);
+    }
+
+    public long activeWatts() {
+        return activeWatts;
+    }
+
+    public long dayStart() {
+        return dayStart;
+    }
+
+    public long monthStart() {
+        return monthStart;
+    }
+
+    private double openWh(long now) {
+        return (activeWatts * (now - dayStart) - openWattMillis) / WATT_MILLIS_PER_WH;
+    }
+}
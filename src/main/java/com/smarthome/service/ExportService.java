@@ -0,0 +1,356 @@
+package com.smarthome.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.domain.AutomationRuleEntity;
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.SceneEntity;
+import com.smarthome.repository.AutomationRuleRepository;
+import com.smarthome.repository.DeviceRepository;
+import com.smarthome.repository.RoomRepository;
+import com.smarthome.repository.SceneRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Streaming exports of devices, rooms, scenes, rules and the event history as
+ * NDJSON or CSV.
+ *
+ * Rows are read through forward-only scrolling queries (the event history
+ * sequentially from the journal) and written one at a time, so memory does not
+ * grow with the number of rows: the persistence context is cleared every
+ * {@code chunk-size} rows and nothing is collected. Rooms and scenes nest a
+ * list per row in NDJSON; in CSV they are flattened to one line per room
+ * device and per scene device state.
+ */
+@Service
+public class ExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return valueOf(ServiceUtils.requireText(value, "format is required").trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + value + " (ndjson or csv)");
+            }
+        }
+    }
+
+    public record Stats(long exports, long rows, long failed) {}
+
+    private final DeviceRepository deviceRepository;
+    private final RoomRepository roomRepository;
+    private final SceneRepository sceneRepository;
+    private final AutomationRuleRepository ruleRepository;
+    private final DeviceEventJournal journal;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnly;
+    private final int chunkSize;
+
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public ExportService(DeviceRepository deviceRepository,
+                         RoomRepository roomRepository,
+                         SceneRepository sceneRepository,
+                         AutomationRuleRepository ruleRepository,
+                         DeviceEventJournal journal,
+                         ObjectMapper objectMapper,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${smarthome.export.chunk-size:1000}") int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("export chunk-size must be positive");
+        this.deviceRepository = deviceRepository;
+        this.roomRepository = roomRepository;
+        this.sceneRepository = sceneRepository;
+        this.ruleRepository = ruleRepository;
+        this.journal = journal;
+        this.objectMapper = objectMapper;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Write every device to {@code out}; returns the rows written
+     */
+    public long devices(Format format, OutputStream out) {
+        return export(format, out, new String[]{"id", "name", "type", "location", "on", "ratedPowerWatts", "ecosystem"},
+                sink -> scroll(deviceRepository.streamAllBy(), (DeviceEntity d) -> sink.row(d.getId(), d.getName(),
+                        d.getType(), d.getLocation(), d.isOn(), d.getRatedPowerWatts(), d.getEcosystem())));
+    }
+
+    /**
+     * Write every room with the ids of its devices
+     */
+    public long rooms(Format format, OutputStream out) {
+        String[] columns = format == Format.CSV
+                ? new String[]{"id", "name", "floor", "roomType", "deviceId"}
+                : new String[]{"id", "name", "floor", "roomType", "deviceIds"};
+        return export(format, out, columns, sink -> {
+            Object[] room = null;
+            List<String> deviceIds = new ArrayList<>();
+            try (Stream<Object[]> joined = roomRepository.streamRoomDevices()) {
+                Iterator<Object[]> it = joined.iterator();
+                while (it.hasNext()) {
+                    Object[] row = it.next();
+                    if (format == Format.CSV) {
+                        sink.row(row[0], row[1], row[2], row[3], row[4]);
+                        continue;
+                    }
+                    if (room != null && !Objects.equals(room[0], row[0])) {
+                        sink.row(room[0], room[1], room[2], room[3], deviceIds);
+                        deviceIds.clear();
+                    }
+                    room = row;
+                    if (row[4] != null) deviceIds.add((String) row[4]);
+                }
+            }
+            if (room != null) sink.row(room[0], room[1], room[2], room[3], deviceIds);
+        });
+    }
+
+    /**
+     * Write every scene with its device states
+     */
+    public long scenes(Format format, OutputStream out) {
+        String[] columns = format == Format.CSV
+                ? new String[]{"sceneId", "sceneName", "favorite", "deviceId", "on"}
+                : new String[]{"id", "name", "description", "favorite", "createdAt", "deviceStates"};
+        return export(format, out, columns, sink -> scroll(sceneRepository.streamAllByOrderById(), (SceneEntity s) -> {
+            JsonNode states = deviceStates(s);
+            if (format == Format.NDJSON) {
+                sink.row(s.getId(), s.getName(), s.getDescription(), s.getIsFavorite(), s.getCreatedAt(), states);
+                return;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = states.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> state = fields.next();
+                sink.row(s.getId(), s.getName(), s.getIsFavorite(), state.getKey(), state.getValue().asBoolean());
+            }
+        }));
+    }
+
+    /**
+     * Write every automation rule
+     */
+    public long rules(Format format, OutputStream out) {
+        return export(format, out, new String[]{"id", "name", "description", "triggerCondition", "actionScript",
+                        "enabled", "priority", "createdAt", "lastTriggered"},
+                sink -> scroll(ruleRepository.streamAllByOrderById(), (AutomationRuleEntity r) -> sink.row(r.getId(),
+                        r.getName(), r.getDescription(), r.getTriggerCondition(), r.getActionScript(), r.getIsEnabled(),
+                        r.getPriority(), r.getCreatedAt(), r.getLastTriggered())));
+    }
+
+    /**
+     * Write the retained journal events with sequences in [{@code from}, {@code to}]
+     */
+    public long events(Format format, long from, long to, OutputStream out) {
+        return export(format, out, new String[]{"sequence", "at", "type", "deviceId", "detail"},
+                sink -> journal.replay(from, to, e -> sink.row(e.sequence(), e.at(), e.type(), e.deviceId(), e.detail())));
+    }
+
+    public Stats stats() {
+        return new Stats(exports.sum(), rows.sum(), failed.sum());
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private interface RowAction<T> {
+        void accept(T row);
+    }
+
+    private long export(Format format, OutputStream out, String[] columns, RowAction<Sink> body) {
+        exports.increment();
+        Sink sink = format == Format.CSV ? new CsvSink(out, columns) : new NdjsonSink(out, columns);
+        try {
+            readOnly.executeWithoutResult(status -> body.accept(sink));
+            sink.finish();
+            return sink.rows;
+        } catch (RuntimeException e) {
+            failed.increment(); // typically the client going away mid-stream
+            throw e;
+        } finally {
+            rows.add(sink.rows);
+        }
+    }
+
+    /**
+     * Hand each entity of a scroll to {@code action}, detaching them every chunk
+     */
+    private <T> void scroll(Stream<T> entities, RowAction<T> action) {
+        try (entities) {
+            Iterator<T> it = entities.iterator();
+            int inChunk = 0;
+            while (it.hasNext()) {
+                action.accept(it.next());
+                if (++inChunk == chunkSize) {
+                    entityManager.clear();
+                    inChunk = 0;
+                }
+            }
+        }
+    }
+
+    private JsonNode deviceStates(SceneEntity scene) {
+        try {
+            JsonNode states = scene.getDeviceStates() == null ? null : objectMapper.readTree(scene.getDeviceStates());
+            return states != null && states.isObject() ? states : objectMapper.createObjectNode();
+        } catch (IOException e) {
+            return objectMapper.createObjectNode();
+        }
+    }
+
+    /** Row writer of one export; I/O errors are rethrown unchecked so they end the scroll */
+    private abstract static class Sink {
+        final String[] columns;
+        long rows;
+
+        Sink(String[] columns) {
+            this.columns = columns;
+        }
+
+        final void row(Object... values) {
+            try {
+                write(values);
+                rows++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        abstract void write(Object[] values) throws IOException;
+
+        abstract void finish();
+    }
+
+    private final class NdjsonSink extends Sink {
+        private final JsonGenerator json;
+
+        NdjsonSink(OutputStream out, String[] columns) {
+            super(columns);
+            try {
+                json = objectMapper.getFactory().createGenerator(out)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                json.setRootValueSeparator(null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void write(Object[] values) throws IOException {
+            json.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                json.writeFieldName(columns[i]);
+                Object value = values[i];
+                if (value instanceof JsonNode || value instanceof List<?> || value instanceof Number
+                        || value instanceof Boolean || value == null) {
+                    json.writeObject(value);
+                } else {
+                    json.writeString(value.toString());
+                }
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        void finish() {
+            try {
+                json.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class CsvSink extends Sink {
+        private final Writer csv;
+
+        CsvSink(OutputStream out, String[] columns) {
+            super(columns);
+            this.csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+            try {
+                line(columns);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void write(Object[] values) throws IOException {
+            line(values);
+        }
+
+        @Override
+        void finish() {
+            try {
+                csv.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void line(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) csv.write(',');
+                if (values[i] != null) csv.write(escape(values[i].toString()));
+            }
+            csv.write('\n');
+        }
+
+        /** RFC 4180 quoting: fields with a comma, quote or line break are quoted, quotes doubled */
+        private static String escape(String field) {
+            boolean quote = false;
+            for (int i = 0; i < field.length() && !quote; i++) {
+                char c = field.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            return quote ? '"' + field.replace("\"", "\"\"") + '"' : field;
+        }
+    }
+}
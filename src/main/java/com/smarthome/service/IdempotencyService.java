@@ -0,0 +1,99 @@
+package com.smarthome.service;
+
+import com.smarthome.pattern.structural.decorator.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Response store behind the {@code Idempotency-Key} header.
+ *
+ * The first request with a key runs and its response is kept for {@code ttl};
+ * later requests with the same key get that response back without running
+ * again. Duplicates that arrive while the first is still running wait for it
+ * (single-flight) instead of executing in parallel. A key reused for a different
+ * request is a conflict. Only successes and deterministic validation errors
+ * (2xx, 400, 422) are stored; anything a retry may change, such as a 409
+ * conflict, a 429 or a 5xx, or an async response, is not, so a retry with the
+ * same key executes normally.
+ */
+@Service
+public class IdempotencyService {
+
+    public record StoredResponse(int status, String contentType, byte[] body) {}
+
+    public record Outcome(StoredResponse response, boolean replayed) {}
+
+    public record Stats(long keyedRequests, long executed, long replayed, long conflicts, double duplicateRatio,
+                        BoundedCache.CacheStats store) {}
+
+    private record Stored(String fingerprint, StoredResponse response) {}
+
+    /**
+     * The key was first used for a different request
+     */
+    public static class KeyReusedException extends IllegalStateException {
+        public KeyReusedException(String message) {
+            super(message);
+        }
+    }
+
+    private final BoundedCache<String, Stored> responses;
+    private final LongAdder keyedRequests = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    public IdempotencyService(@Value("${smarthome.idempotency.max-entries:10000}") long maxEntries,
+                              @Value("${smarthome.idempotency.ttl:PT24H}") Duration ttl) {
+        this.responses = BoundedCache.builder("idempotency-responses")
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Run {@code action} once per key, or replay its stored response.
+     *
+     * @param fingerprint identifies the request (method, path, parameters) the key was first used for
+     * @param action      executes the request; returns null if the response must not be stored
+     * @throws KeyReusedException if the key was already used for a different request
+     */
+    public Outcome execute(String key, String fingerprint, Supplier<StoredResponse> action) {
+        keyedRequests.increment();
+        boolean[] ran = {false};
+        Stored stored = responses.get(key, k -> {
+            ran[0] = true;
+            StoredResponse response = action.get();
+            return response == null || !storable(response.status()) ? null : new Stored(fingerprint, response);
+        });
+        if (ran[0]) {
+            executed.increment();
+            return new Outcome(stored == null ? null : stored.response(), false);
+        }
+        if (stored == null) {
+            // The request we waited for left nothing to replay, so this retry runs for real
+            executed.increment();
+            return new Outcome(action.get(), false);
+        }
+        if (!stored.fingerprint().equals(fingerprint)) {
+            conflicts.increment();
+            throw new KeyReusedException("Idempotency-Key '" + key + "' was already used for " + stored.fingerprint());
+        }
+        replayed.increment();
+        return new Outcome(stored.response(), true);
+    }
+
+    public Stats stats() {
+        long keyed = keyedRequests.sum();
+        return new Stats(keyed, executed.sum(), replayed.sum(), conflicts.sum(),
+                keyed == 0 ? 0.0 : (double) replayed.sum() / keyed, responses.stats());
+    }
+
+    private static boolean storable(int status) {
+        return (status >= 200 && status < 300) || status == 400 || status == 422;
+    }
+}
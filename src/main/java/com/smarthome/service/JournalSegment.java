@@ -0,0 +1,236 @@
+package com.smarthome.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped file of the device event journal: a header slot followed
+ * by fixed-size 128-byte records, so the record of a sequence number sits at
+ * a computed offset.
+ *
+ * Record layout: sequence (8), epoch millis (8), type (1), device id length
+ * (1), detail length (1), padding (1), CRC-32C of the record with this field
+ * zeroed (4), device id (40 bytes of UTF-8), detail (64 bytes of UTF-8).
+ * Longer strings are truncated. A slot whose sequence or checksum does not
+ * match ends the readable part of a segment, which is how a torn write after a
+ * crash is detected. Not thread-safe; the journal serializes writers.
+ */
+final class JournalSegment {
+
+    static final int RECORD_SIZE = 128;
+    static final int MAX_DEVICE_BYTES = 40;
+    static final int MAX_DETAIL_BYTES = 64;
+    private static final long MAGIC = 0x534d_484a_524e_4c31L; // "SMHJRNL1"
+    private static final int VERSION = 1;
+    private static final int CRC_OFFSET = 20;
+    private static final int DEVICE_OFFSET = 24;
+    private static final int DETAIL_OFFSET = DEVICE_OFFSET + MAX_DEVICE_BYTES;
+
+    /** A decoded record; type is the stored code, 1-based */
+    record Raw(long sequence, long timestamp, int type, String deviceId, String detail) {}
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long firstSequence;
+    private final long createdAt;
+    private final int capacity;
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final CRC32C crc = new CRC32C();
+    private int count;
+
+    private JournalSegment(Path path, FileChannel channel, MappedByteBuffer buffer,
+                           long firstSequence, long createdAt, int capacity) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.firstSequence = firstSequence;
+        this.createdAt = createdAt;
+        this.capacity = capacity;
+    }
+
+    static String fileName(long firstSequence) {
+        return String.format("%020d.seg", firstSequence);
+    }
+
+    /**
+     * A new, empty segment of {@code capacity} records starting at {@code firstSequence}
+     */
+    static JournalSegment create(Path dir, long firstSequence, long createdAt, int capacity) {
+        Path path = dir.resolve(fileName(firstSequence));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) (capacity + 1) * RECORD_SIZE);
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, VERSION);
+            buffer.putInt(12, RECORD_SIZE);
+            buffer.putLong(16, firstSequence);
+            buffer.putLong(24, createdAt);
+            buffer.putInt(32, capacity);
+            return new JournalSegment(path, channel, buffer, firstSequence, createdAt, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal segment " + path, e);
+        }
+    }
+
+    /**
+     * Reopen a segment for appending after the last intact record; anything
+     * after it is a torn write from a crash and is cleared
+     */
+    static JournalSegment recover(Path path) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            checkHeader(buffer, path);
+            JournalSegment segment = new JournalSegment(path, channel, buffer,
+                    buffer.getLong(16), buffer.getLong(24), buffer.getInt(32));
+            while (segment.count < segment.capacity
+                    && segment.decode(buffer, segment.count + 1, segment.firstSequence + segment.count) != null) {
+                segment.count++;
+            }
+            for (int slot = segment.count + 1; slot <= segment.capacity && buffer.getLong(slot * RECORD_SIZE) != 0; slot++) {
+                buffer.put(slot * RECORD_SIZE, new byte[RECORD_SIZE]);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover journal segment " + path, e);
+        }
+    }
+
+    /**
+     * Creation time recorded in a segment's header
+     */
+    static long createdAt(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE);
+            channel.read(header, 0);
+            checkHeader(header, path);
+            return header.getLong(24);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read journal segment " + path, e);
+        }
+    }
+
+    /**
+     * Hand the intact records of a segment file with sequences in
+     * [{@code from}, {@code to}] to {@code sink}, in order
+     *
+     * @return the number of records read
+     */
+    static long read(Path path, long from, long to, Consumer<Raw> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            checkHeader(buffer, path);
+            JournalSegment view = new JournalSegment(path, null, null, buffer.getLong(16), buffer.getLong(24), buffer.getInt(32));
+            long sequence = Math.max(from, view.firstSequence);
+            long read = 0;
+            for (int slot = (int) (sequence - view.firstSequence) + 1; slot <= view.capacity && sequence <= to; slot++, sequence++) {
+                Raw raw = view.decode(buffer, slot, sequence);
+                if (raw == null) break;
+                sink.accept(raw);
+                read++;
+            }
+            return read;
+        }
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    void append(long sequence, long timestamp, int type, byte[] deviceId, byte[] detail) {
+        byte[] r = scratch;
+        Arrays.fill(r, (byte) 0);
+        ByteBuffer record = ByteBuffer.wrap(r);
+        record.putLong(0, sequence);
+        record.putLong(8, timestamp);
+        r[16] = (byte) type;
+        r[17] = (byte) deviceId.length;
+        r[18] = (byte) detail.length;
+        System.arraycopy(deviceId, 0, r, DEVICE_OFFSET, deviceId.length);
+        System.arraycopy(detail, 0, r, DETAIL_OFFSET, detail.length);
+        crc.reset();
+        crc.update(r, 0, RECORD_SIZE);
+        record.putInt(CRC_OFFSET, (int) crc.getValue());
+        count++;
+        buffer.put(count * RECORD_SIZE, r);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long firstSequence() {
+        return firstSequence;
+    }
+
+    long lastSequence() {
+        return firstSequence + count - 1;
+    }
+
+    long createdAt() {
+        return createdAt;
+    }
+
+    long sizeBytes() {
+        return (long) (capacity + 1) * RECORD_SIZE;
+    }
+
+    /**
+     * UTF-8 bytes of {@code s}, cut at a character boundary to at most {@code max} bytes
+     */
+    static byte[] utf8(String s, int max) {
+        byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= max) return bytes;
+        int n = max;
+        while (n > 0 && (bytes[n] & 0xC0) == 0x80) n--;
+        return Arrays.copyOf(bytes, n);
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private Raw decode(ByteBuffer buffer, int slot, long expectedSequence) {
+        int base = slot * RECORD_SIZE;
+        if (buffer.getLong(base) != expectedSequence) return null;
+        byte[] r = new byte[RECORD_SIZE];
+        buffer.get(base, r);
+        int stored = ByteBuffer.wrap(r).getInt(CRC_OFFSET);
+        ByteBuffer.wrap(r).putInt(CRC_OFFSET, 0);
+        CRC32C check = new CRC32C();
+        check.update(r, 0, RECORD_SIZE);
+        if ((int) check.getValue() != stored) return null;
+        int deviceLength = Math.min(r[17] & 0xFF, MAX_DEVICE_BYTES);
+        int detailLength = Math.min(r[18] & 0xFF, MAX_DETAIL_BYTES);
+        return new Raw(expectedSequence, ByteBuffer.wrap(r).getLong(8), r[16],
+                new String(r, DEVICE_OFFSET, deviceLength, StandardCharsets.UTF_8),
+                new String(r, DETAIL_OFFSET, detailLength, StandardCharsets.UTF_8));
+    }
+
+    private static void checkHeader(ByteBuffer header, Path path) {
+        if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION || header.getInt(12) != RECORD_SIZE) {
+            throw new IllegalStateException("Not a device event journal segment: " + path);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.smarthome.service;
+
+import com.smarthome.domain.CommandJournalEntity;
+import com.smarthome.pattern.behavioral.command.CommandJournal;
+import com.smarthome.repository.CommandJournalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Database log behind {@link CommandJournal}: one row per step for every record,
+ * undo and redo, only ever appended. A user's undo stack is read back as the
+ * entries whose latest action is a record or redo. Every 1024th entry the log is
+ * truncated to the newest {@code retention-entries} entries, oldest first.
+ */
+@Component
+public class JpaCommandJournalStore implements CommandJournal.Store {
+    private static final Logger log = LoggerFactory.getLogger(JpaCommandJournalStore.class);
+    private static final int PURGE_EVERY = 1024;
+
+    private final CommandJournalRepository repository;
+    private final long retentionEntries;
+
+    public JpaCommandJournalStore(CommandJournalRepository repository,
+                                  @Value("${smarthome.command-journal.retention-entries:100000}") long retentionEntries) {
+        if (retentionEntries <= 0) throw new IllegalArgumentException("smarthome.command-journal.retention-entries must be positive");
+        this.repository = repository;
+        this.retentionEntries = retentionEntries;
+    }
+
+    @Override
+    @Transactional
+    public void append(CommandJournal.Entry entry, CommandJournal.Action action) {
+        Instant now = action == CommandJournal.Action.RECORD ? entry.executedAt() : Instant.now();
+        List<CommandJournalEntity> rows = new ArrayList<>(entry.steps().size());
+        for (int i = 0; i < entry.steps().size(); i++) {
+            CommandJournal.Step s = entry.steps().get(i);
+            rows.add(new CommandJournalEntity(entry.sequence(), entry.userId(), action.name(), entry.label(), i,
+                    s.deviceId(), s.command(), s.inverse(), now));
+        }
+        repository.saveAll(rows);
+        if (action == CommandJournal.Action.RECORD && entry.sequence() % PURGE_EVERY == 0
+                && entry.sequence() > retentionEntries) {
+            int removed = repository.deleteThroughSequence(entry.sequence() - retentionEntries);
+            log.debug("Truncated the command log through sequence {} ({} rows)", entry.sequence() - retentionEntries, removed);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<CommandJournal.Entry> stack(String userId, int limit) {
+        List<CommandJournal.Entry> out = new ArrayList<>();
+        for (CommandJournalEntity top : repository.findUndoStack(userId, PageRequest.of(0, Math.max(1, limit)))) {
+            List<CommandJournalEntity> recorded = repository.findBySequenceAndActionOrderByStepNo(
+                    top.getSequence(), CommandJournal.Action.RECORD.name());
+            if (recorded.isEmpty()) continue; // truncated away
+            List<CommandJournal.Step> steps = recorded.stream().map(JpaCommandJournalStore::toStep).toList();
+            CommandJournalEntity first = recorded.get(0);
+            out.add(new CommandJournal.Entry(first.getSequence(), first.getUserId(), first.getLabel(), steps, first.getLoggedAt()));
+        }
+        return out;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<CommandJournal.Logged> device(String deviceId, int limit) {
+        return repository.findByDeviceIdOrderByIdDesc(deviceId, PageRequest.of(0, Math.max(1, limit))).stream()
+                .map(e -> new CommandJournal.Logged(e.getSequence(), e.getUserId(), CommandJournal.Action.valueOf(e.getAction()),
+                        e.getLabel(), toStep(e), e.getLoggedAt()))
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long lastSequence() {
+        return repository.findLastSequence();
+    }
+
+    private static CommandJournal.Step toStep(CommandJournalEntity e) {
+        return new CommandJournal.Step(e.getDeviceId(), e.getCommand(), e.getInverse());
+    }
+}
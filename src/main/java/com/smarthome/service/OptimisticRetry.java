@@ -0,0 +1,94 @@
+package com.smarthome.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs a unit of work in its own transaction and retries it when a versioned
+ * entity it wrote was changed by someone else first.
+ *
+ * Each attempt starts a fresh transaction, so the retry re-reads current state.
+ * Attempts back off exponentially with full jitter, so writers that collided
+ * do not collide again in lockstep. When called inside an existing transaction
+ * the work joins it and a conflict propagates unretried, since only the
+ * outermost transaction can be restarted.
+ */
+@Component
+public class OptimisticRetry {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticRetry.class);
+
+    public record Stats(int maxAttempts, long runs, long conflicts, long retried, long exhausted) {}
+
+    private final TransactionTemplate transactions;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public OptimisticRetry(PlatformTransactionManager transactionManager,
+                           @Value("${smarthome.optimistic-retry.max-attempts:5}") int maxAttempts,
+                           @Value("${smarthome.optimistic-retry.backoff:PT0.005S}") Duration backoff) {
+        if (maxAttempts <= 0) throw new IllegalArgumentException("maxAttempts must be positive");
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = backoff.toNanos();
+    }
+
+    /**
+     * Run {@code work} transactionally, retrying on optimistic lock conflicts
+     *
+     * @throws OptimisticLockingFailureException when every attempt conflicted
+     */
+    public <T> T inTransaction(String what, Supplier<T> work) {
+        runs.increment();
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transactions.execute(s -> work.get());
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactions.execute(s -> work.get());
+            } catch (OptimisticLockingFailureException e) {
+                conflicts.increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    log.warn("Giving up on {} after {} conflicting attempts", what, attempt);
+                    throw e;
+                }
+                retried.increment();
+                log.debug("Concurrent update while trying to {}, retrying (attempt {})", what, attempt + 1);
+                backoff(attempt);
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(maxAttempts, runs.sum(), conflicts.sum(), retried.sum(), exhausted.sum());
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = baseBackoffNanos << Math.min(attempt - 1, 10);
+        if (ceiling <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off from a concurrent update");
+        }
+    }
+}
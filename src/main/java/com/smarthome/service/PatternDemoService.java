@@ -4,7 +4,10 @@ import com.smarthome.domain.DeviceEntity;
 import com.smarthome.domain.DeviceType;
 import com.smarthome.domain.HomeMode;
 import com.smarthome.pattern.behavioral.chain.ChainDemo;
+import com.smarthome.pattern.behavioral.command.Command;
 import com.smarthome.pattern.behavioral.command.CommandDemo;
+import com.smarthome.pattern.behavioral.command.CommandJournal;
+import com.smarthome.pattern.behavioral.command.CommandPipeline;
 import com.smarthome.pattern.behavioral.interpreter.InterpreterDemo;
 import com.smarthome.pattern.behavioral.iterator.IteratorDemo;
 import com.smarthome.pattern.behavioral.mediator.MediatorDemo;
@@ -12,29 +15,45 @@ import com.smarthome.pattern.behavioral.memento.MementoDemo;
 import com.smarthome.pattern.creational.factory.*;
 import com.smarthome.pattern.creational.prototype.ConfigurationPrototypeRegistry;
 import com.smarthome.pattern.creational.prototype.DeviceConfiguration;
+import com.smarthome.pattern.creational.prototype.PrototypeDemo;
 import com.smarthome.pattern.creational.singleton.HomeController;
 import com.smarthome.pattern.structural.adapter.LegacyThermostat;
 import com.smarthome.pattern.structural.adapter.LegacyThermostatAdapter;
 import com.smarthome.pattern.structural.bridge.*;
 import com.smarthome.pattern.structural.composite.DeviceGroup;
+import com.smarthome.pattern.structural.composite.GroupOperationReport;
 import com.smarthome.pattern.structural.composite.SingleDevice;
+import com.smarthome.pattern.structural.decorator.CacheRegistry;
 import com.smarthome.pattern.structural.decorator.CachingDecorator;
 import com.smarthome.pattern.structural.decorator.LoggingDecorator;
+import com.smarthome.pattern.structural.decorator.MetricsDecorator;
 import com.smarthome.pattern.structural.decorator.SecurityDecorator;
 import com.smarthome.pattern.structural.facade.SmartHomeFacade;
 import com.smarthome.pattern.structural.flyweight.FlyweightDemo;
+import com.smarthome.pattern.structural.proxy.CircuitBreaker;
 import com.smarthome.pattern.structural.proxy.DeviceProxy;
+import com.smarthome.pattern.structural.proxy.RemoteCallGuard;
+import com.smarthome.pattern.structural.proxy.RemoteIo;
+import com.smarthome.pattern.structural.proxy.RemoteStatusCache;
 import com.smarthome.repository.DeviceRepository;
 import com.smarthome.repository.RoomRepository;
 import com.smarthome.web.viewmodel.DeviceView;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * Encapsulates all 23 GoF pattern demonstrations.
@@ -43,22 +62,44 @@ import java.util.concurrent.atomic.AtomicReference;
 @Service
 public class PatternDemoService {
 
+    /** Templates of the clone demo, built once; clones share their settings until they change them */
+    private static final Map<String, DeviceConfiguration> CLONE_DEMO_TEMPLATES = cloneDemoTemplates();
+
     private final DeviceRepository deviceRepository;
     private final RoomRepository roomRepository;
     private final DeviceService deviceService;
     private final HomeController homeController = HomeController.INSTANCE;
 
     // ── Thread-safe demo state ────────────────────────────────
-    private final Map<String, String> lastCommandByDevice = new ConcurrentHashMap<>();
     private final Map<String, Set<String>> observersByDevice = new ConcurrentHashMap<>();
     private final AtomicReference<String> playerState = new AtomicReference<>("STOPPED");
 
+    private final TransactionTemplate transactions;
+    private final CommandPipeline commandPipeline;
+    private final CommandJournal commandJournal;
+    private final DeviceIdGenerator idGenerator;
+    private final DeviceEventJournal events;
+
     public PatternDemoService(DeviceRepository deviceRepository,
                               RoomRepository roomRepository,
-                              DeviceService deviceService) {
+                              DeviceService deviceService,
+                              PlatformTransactionManager transactionManager,
+                              CommandJournal.Store journalStore,
+                              DeviceIdGenerator idGenerator,
+                              DeviceEventJournal events) {
         this.deviceRepository = deviceRepository;
         this.roomRepository = roomRepository;
         this.deviceService = deviceService;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.commandPipeline = new CommandPipeline(4, 256, this::persistCommandBatch, deviceService::runExclusive);
+        this.commandJournal = new CommandJournal(50, 1_000, journalStore);
+        this.idGenerator = idGenerator;
+        this.events = events;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        commandPipeline.close();
     }
 
     // ═══════════════════════════════════════════════════════════
@@ -86,25 +127,29 @@ public class PatternDemoService {
     }
 
     public Map<String, Object> prototypeClone(String template) {
-        var registry = new ConfigurationPrototypeRegistry();
-        var a = new DeviceConfiguration("ambient-light"); a.setProperty("brightness", 70); a.setProperty("colorTemp", 2700); a.setProperty("schedule", "sunset");
-        registry.registerPrototype("ambient-light", a);
-        var s = new DeviceConfiguration("security-camera"); s.setProperty("resolution", "4K"); s.setProperty("nightVision", true); s.setProperty("motionAlerts", true);
-        registry.registerPrototype("security-camera", s);
-        var e = new DeviceConfiguration("eco-thermostat"); e.setProperty("mode", "eco"); e.setProperty("dayTemp", 21); e.setProperty("nightTemp", 18);
-        registry.registerPrototype("eco-thermostat", e);
-
         String key = template != null ? template.toLowerCase(Locale.ROOT) : "ambient-light";
-        DeviceConfiguration cloned = registry.getClone(key);
-        if (cloned == null) return Map.of("pattern", "Prototype", "error", "Template not found: " + key,
-                "availableTemplates", List.of("ambient-light", "security-camera", "eco-thermostat"));
+        DeviceConfiguration prototype = CLONE_DEMO_TEMPLATES.get(key);
+        if (prototype == null) return Map.of("pattern", "Prototype", "error", "Template not found: " + key,
+                "availableTemplates", List.copyOf(CLONE_DEMO_TEMPLATES.keySet()));
+        DeviceConfiguration cloned = prototype.clone();
 
-        String cloneId = key + "-clone-" + UUID.randomUUID().toString().substring(0, 8);
+        String cloneId = idGenerator.next(key + "-clone");
         cloned.setProperty("cloneId", cloneId); cloned.setProperty("clonedAt", Instant.now().toString());
         return Map.of("pattern", "Prototype", "action", "clone", "sourceTemplate", key,
                 "cloneId", cloneId, "properties", cloned.getAllProperties(), "timestamp", Instant.now().toString());
     }
 
+    private static Map<String, DeviceConfiguration> cloneDemoTemplates() {
+        var a = new DeviceConfiguration("ambient-light"); a.setProperty("brightness", 70); a.setProperty("colorTemp", 2700); a.setProperty("schedule", "sunset");
+        var s = new DeviceConfiguration("security-camera"); s.setProperty("resolution", "4K"); s.setProperty("nightVision", true); s.setProperty("motionAlerts", true);
+        var e = new DeviceConfiguration("eco-thermostat"); e.setProperty("mode", "eco"); e.setProperty("dayTemp", 21); e.setProperty("nightTemp", 18);
+        Map<String, DeviceConfiguration> templates = new LinkedHashMap<>();
+        templates.put("ambient-light", a);
+        templates.put("security-camera", s);
+        templates.put("eco-thermostat", e);
+        return Collections.unmodifiableMap(templates);
+    }
+
     // ═══════════════════════════════════════════════════════════
     //  STRUCTURAL
     // ═══════════════════════════════════════════════════════════
@@ -162,35 +207,50 @@ public class PatternDemoService {
                 "estimatedPower", home.getPowerConsumption(), "status", home.getStatus());
     }
 
-    @Transactional
     public Map<String, Object> compositeControl(String target, String action) {
         String t = ServiceUtils.requireText(target, "target is required");
-        String act = action == null ? "toggle" : action.trim().toLowerCase(Locale.ROOT);
-        List<DeviceEntity> devices;
-        if ("house".equalsIgnoreCase(t)) { devices = deviceRepository.findAll(); }
-        else {
-            String roomName = ServiceUtils.toTitleCase(t.replace('-', ' '));
-            devices = deviceRepository.findByLocationIgnoreCase(roomName);
-            if (devices.isEmpty()) {
-                String prefix = t.toLowerCase(Locale.ROOT);
-                devices = deviceRepository.findAll().stream().filter(d -> d.getId() != null && d.getId().toLowerCase(Locale.ROOT).startsWith(prefix)).toList();
-            }
-        }
+        Boolean turnOn = switchTarget(action == null ? "toggle" : action);
+        List<DeviceEntity> devices = resolveCompositeTarget(t);
         if (devices.isEmpty()) return Map.of("pattern", "Composite", "target", t, "affectedDevices", 0, "message", "No matching devices");
-        boolean turnOn = switch (act) { case "on", "true" -> true; case "off", "false" -> false; default -> true; };
-        for (DeviceEntity d : devices) {
-            boolean next = act.equals("toggle") ? !d.isOn() : turnOn;
-            d.setOn(next);
-            Device rt = deviceService.ensureRuntimeDevice(d);
-            if (next) rt.turnOn(); else rt.turnOff();
-        }
-        deviceRepository.saveAll(devices);
-        List<DeviceView> views = devices.stream().map(deviceService::toView).toList();
-        views.forEach(v -> deviceService.broadcast("device", v));
-        return Map.of("pattern", "Composite", "target", t, "action", act,
+        Map<String, Boolean> targets = new LinkedHashMap<>();
+        devices.forEach(d -> targets.put(d.getId(), turnOn));
+        List<DeviceView> views = deviceService.controlDevices(targets);
+        return Map.of("pattern", "Composite", "target", t, "action", switchLabel(turnOn).toLowerCase(Locale.ROOT),
                 "affectedDevices", views.size(), "devices", views, "timestamp", Instant.now().toString());
     }
 
+    /**
+     * Switch every device of a target concurrently within a deadline. Each leaf
+     * switches its device through the device's mailbox, which persists and
+     * broadcasts the new state; no transaction is held across the fan-out.
+     * A leaf still waiting on its mailbox at the deadline is reported pending:
+     * its queued switch is not withdrawn and still runs.
+     */
+    public Map<String, Object> compositeFanOut(String target, String action, Integer maxConcurrency, Long deadlineMs) {
+        String t = ServiceUtils.requireText(target, "target is required");
+        int limit = maxConcurrency == null ? 8 : maxConcurrency;
+        long deadline = deadlineMs == null ? 5_000 : deadlineMs;
+        if (limit <= 0) throw new IllegalArgumentException("maxConcurrency must be positive");
+        if (deadline <= 0) throw new IllegalArgumentException("deadlineMs must be positive");
+        Boolean turnOn = switchTarget(action == null ? "on" : action);
+
+        List<DeviceEntity> devices = resolveCompositeTarget(t);
+        if (devices.isEmpty()) return Map.of("pattern", "Composite", "target", t, "affectedDevices", 0, "message", "No matching devices");
+        DeviceGroup group = new DeviceGroup(t);
+        devices.forEach(d -> group.add(new SingleDevice(d.getId(), deviceService.ensureRuntimeDevice(d))));
+        GroupOperationReport report = group.fanOut(switchLabel(turnOn).toLowerCase(Locale.ROOT), leaf -> {
+            if (turnOn == null) deviceService.toggleDevice(leaf.getName());
+            else deviceService.controlDevice(leaf.getName(), turnOn);
+        }, limit, Duration.ofMillis(deadline));
+
+        long switched = report.outcomes().stream()
+                .filter(o -> o.status() == GroupOperationReport.Status.SUCCEEDED)
+                .count();
+        return Map.of("pattern", "Composite", "target", t, "action", switchLabel(turnOn),
+                "affectedDevices", switched, "failedDevices", report.failed(), "pendingDevices", report.pending(),
+                "report", report, "timestamp", Instant.now().toString());
+    }
+
     public Map<String, Object> compositeAction(String group, String action) {
         boolean turnOn = action == null || action.equalsIgnoreCase("on");
         List<DeviceView> affected = deviceService.controlRoom(group, turnOn);
@@ -207,6 +267,7 @@ public class PatternDemoService {
         for (String d : decs) { switch (d) {
             case "LOGGING" -> decorated = new LoggingDecorator(decorated);
             case "SECURITY" -> { sec = new SecurityDecorator(decorated); sec.authenticate("demo-user", "pass1234"); decorated = sec; }
+            case "METRICS" -> decorated = new MetricsDecorator(decorated, entity.getType().name());
             case "CACHING" -> { cache = new CachingDecorator(decorated, Duration.ofSeconds(15)); decorated = cache; }
             default -> {} } }
         String s1 = decorated.getStatus(); String s2 = decorated.getStatus();
@@ -218,6 +279,10 @@ public class PatternDemoService {
         return out;
     }
 
+    public Map<String, Object> decoratorCaches() {
+        return Map.of("pattern", "Decorator", "caches", CacheRegistry.stats());
+    }
+
     @Transactional
     public Map<String, Object> activateScene(String sceneName) {
         SmartHomeFacade facade = new SmartHomeFacade();
@@ -250,8 +315,12 @@ public class PatternDemoService {
         return FlyweightDemo.stats(instances != null && instances > 0 ? instances : 10_000);
     }
 
+    public Map<String, Object> prototypeStats(Integer instances) {
+        return PrototypeDemo.stats(instances != null && instances > 0 ? instances : 10_000);
+    }
+
     public Map<String, Object> proxyRemote(String name, String address) {
-        String id = "proxy-" + UUID.randomUUID().toString().substring(0, 8);
+        String id = idGenerator.next("proxy");
         DeviceProxy proxy = new DeviceProxy(id, name, address);
         boolean b1 = proxy.isInitialized(); String s1 = proxy.getStatus(); boolean b2 = proxy.isInitialized();
         proxy.setAccess("demo-admin", DeviceProxy.AccessLevel.ADMIN); proxy.turnOn();
@@ -261,39 +330,178 @@ public class PatternDemoService {
                 "status1", s1, "status2", s2, "status3", s3, "connected", proxy.isConnected());
     }
 
+    public Map<String, Object> proxyCacheStats() {
+        RemoteStatusCache.Policy defaults = RemoteStatusCache.shared().policyFor("");
+        return Map.of("pattern", "Proxy", "cache", RemoteStatusCache.shared().stats(),
+                "defaultTtlMs", defaults.ttl().toMillis(),
+                "defaultStaleWhileRevalidateMs", defaults.staleWhileRevalidate().toMillis());
+    }
+
+    public Map<String, Object> proxyCircuits() {
+        RemoteCallGuard guard = RemoteCallGuard.shared();
+        List<RemoteCallGuard.CircuitView> circuits = guard.circuits();
+        RemoteCallGuard.Policy defaults = guard.defaultPolicy();
+        Map<String, Object> policy = new LinkedHashMap<>();
+        policy.put("callTimeoutMs", defaults.callTimeout().toMillis());
+        policy.put("failureThreshold", defaults.failureThreshold());
+        policy.put("openDurationMs", defaults.openDuration().toMillis());
+        policy.put("maxConcurrentCalls", defaults.maxConcurrentCalls());
+        policy.put("hedgeDelayMs", defaults.hedgeDelay() == null ? null : defaults.hedgeDelay().toMillis());
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("pattern", "Proxy");
+        out.put("defaultPolicy", policy);
+        out.put("open", circuits.stream().filter(c -> c.state() != CircuitBreaker.State.CLOSED).count());
+        out.put("circuits", circuits);
+        return out;
+    }
+
+    public CompletableFuture<Map<String, Object>> proxyRemoteAsync(String name, String address, Integer count) {
+        int n = count == null ? 1 : count;
+        if (n <= 0 || n > 1000) throw new IllegalArgumentException("count must be between 1 and 1000");
+        String base = ServiceUtils.requireText(name, "name is required");
+        long start = System.nanoTime();
+        List<DeviceProxy> proxies = new ArrayList<>(n);
+        List<String> suffixes = idGenerator.reserve(n);
+        for (int i = 0; i < n; i++) {
+            String id = "proxy-" + suffixes.get(i);
+            DeviceProxy proxy = new DeviceProxy(id, n == 1 ? base : base + " " + (i + 1), address);
+            proxy.setAccess("demo-admin", DeviceProxy.AccessLevel.ADMIN);
+            proxies.add(proxy);
+        }
+        List<CompletableFuture<String>> statuses = proxies.stream()
+                .map(p -> p.turnOnAsync().thenCompose(v -> p.statusAsync()))
+                .toList();
+        return CompletableFuture.allOf(statuses.toArray(CompletableFuture[]::new)).thenApply(v -> {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("pattern", "Proxy"); out.put("mode", "async"); out.put("address", address);
+            out.put("devices", n); out.put("connected", proxies.stream().filter(DeviceProxy::isConnected).count());
+            out.put("statuses", statuses.stream().limit(10).map(CompletableFuture::join).toList());
+            out.put("ioThreads", RemoteIo.poolSize());
+            out.put("elapsedMs", Duration.ofNanos(System.nanoTime() - start).toMillis());
+            return out;
+        });
+    }
+
     // ═══════════════════════════════════════════════════════════
     //  BEHAVIORAL
     // ═══════════════════════════════════════════════════════════
 
     public Map<String, Object> chainAlert(String deviceId, String level, String message) {
-        return ChainDemo.process(deviceId, level, message);
+        Map<String, Object> handled = ChainDemo.process(deviceId, level, message);
+        events.append(DeviceEventJournal.Type.ALERT, deviceId, handled.get("level") + ": " + message);
+        return handled;
     }
 
-    @Transactional
-    public Map<String, Object> commandExecute(String deviceId, String command) {
-        DeviceEntity entity = deviceService.findOrThrow(deviceId);
-        Device runtime = deviceService.ensureRuntimeDevice(entity);
+    public Map<String, Object> commandExecute(String userId, String deviceId, String command) {
+        Device runtime = deviceService.ensureRuntimeDevice(deviceService.findOrThrow(deviceId));
         String effective = normalizeCommand(runtime, command);
-        Map<String, Object> result = new LinkedHashMap<>(CommandDemo.execute(runtime, effective));
-        result.put("requestedCommand", command); result.put("effectiveCommand", effective);
-        entity.setOn(runtime.isOn()); deviceRepository.save(entity);
-        lastCommandByDevice.put(deviceId, effective);
+        CommandJournal.requireStorable(effective, List.of(new CommandJournal.Step(deviceId, effective, effective)));
+        JournaledCommand journaled = new JournaledCommand(userId, deviceId, runtime, effective);
+        CommandPipeline.Result r = awaitCommand(commandPipeline.submit(deviceId, journaled));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pattern", "Command"); result.put("device", runtime.getDeviceInfo());
+        result.put("command", r.command()); result.put("requestedCommand", command); result.put("effectiveCommand", effective);
+        result.put("before", journaled.before); result.put("after", runtime.getStatus());
+        result.put("coalesced", r.coalesced()); result.put("flushBatchSize", r.batchSize());
+        result.put("elapsedMicros", r.elapsedMicros());
         return result;
     }
 
-    public Map<String, Object> commandUndo() {
-        if (lastCommandByDevice.isEmpty()) return Map.of("pattern", "Command", "message", "Nothing to undo");
-        var entry = lastCommandByDevice.entrySet().iterator().next();
-        String undo = reverseCommand(entry.getValue());
-        var exec = commandExecute(entry.getKey(), undo);
-        return Map.of("pattern", "Command", "action", "undo", "deviceId", entry.getKey(), "undoCommand", undo, "result", exec);
+    /**
+     * Submit several commands for one device without waiting for each; queued
+     * commands superseded by a later one (e.g. ON then OFF) are coalesced.
+     * The batch is journaled as one entry, so a single undo reverts all of it.
+     */
+    public CompletableFuture<Map<String, Object>> commandBatch(String userId, String deviceId, List<String> commands) {
+        if (commands == null || commands.isEmpty()) throw new IllegalArgumentException("commands are required");
+        Device runtime = deviceService.ensureRuntimeDevice(deviceService.findOrThrow(deviceId));
+        List<CommandJournal.Step> steps = new ArrayList<>();
+        for (String c : commands) {
+            String effective = normalizeCommand(runtime, c);
+            steps.add(new CommandJournal.Step(deviceId, effective, CommandDemo.inverseOf(runtime, effective)));
+        }
+        CommandJournal.requireStorable("batch(" + steps.size() + ")", steps);
+        List<CompletableFuture<CommandPipeline.Result>> results = new ArrayList<>();
+        for (CommandJournal.Step step : steps) {
+            results.add(commandPipeline.submit(deviceId, CommandDemo.toCommand(runtime, step.command())));
+        }
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).thenApply(v -> {
+            List<CommandPipeline.Result> done = results.stream().map(CompletableFuture::join).toList();
+            commandJournal.record(userId, "batch(" + steps.size() + ")", steps);
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("pattern", "Command"); out.put("deviceId", deviceId);
+            out.put("submitted", done.size());
+            out.put("coalesced", done.stream().filter(CommandPipeline.Result::coalesced).count());
+            out.put("results", done);
+            out.put("finalStatus", runtime.getStatus());
+            return out;
+        });
+    }
+
+    /**
+     * Run a macro of {@code deviceId:COMMAND} steps and journal it as one undoable entry
+     */
+    public Map<String, Object> commandMacro(String userId, String name, List<String> steps) {
+        if (steps == null || steps.isEmpty()) throw new IllegalArgumentException("steps are required");
+        String label = ServiceUtils.requireText(name, "name is required");
+        List<CommandJournal.Step> journaled = new ArrayList<>();
+        List<Device> runtimes = new ArrayList<>();
+        for (String step : steps) {
+            int colon = step.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Macro step must be deviceId:COMMAND, got " + step);
+            String deviceId = step.substring(0, colon).trim();
+            Device runtime = deviceService.ensureRuntimeDevice(deviceService.findOrThrow(deviceId));
+            String effective = normalizeCommand(runtime, step.substring(colon + 1));
+            journaled.add(new CommandJournal.Step(deviceId, effective, CommandDemo.inverseOf(runtime, effective)));
+            runtimes.add(runtime);
+        }
+        // Nothing runs unless the whole macro can be journaled
+        CommandJournal.requireStorable(label, journaled);
+        List<CompletableFuture<CommandPipeline.Result>> results = new ArrayList<>();
+        for (int i = 0; i < journaled.size(); i++) {
+            CommandJournal.Step step = journaled.get(i);
+            results.add(commandPipeline.submit(step.deviceId(), CommandDemo.toCommand(runtimes.get(i), step.command())));
+        }
+        List<CommandPipeline.Result> done = results.stream().map(PatternDemoService::awaitCommand).toList();
+        CommandJournal.Entry entry = commandJournal.record(userId, label, journaled);
+        return Map.of("pattern", "Command", "action", "macro", "macro", entry.label(), "sequence", entry.sequence(), "results", done);
+    }
+
+    /**
+     * Undo the user's latest journaled entry; a macro or batch is reverted as a whole
+     */
+    public Map<String, Object> commandUndo(String userId) {
+        Optional<CommandJournal.Entry> entry = commandJournal.undo(userId);
+        if (entry.isEmpty()) return Map.of("pattern", "Command", "message", "Nothing to undo");
+        List<CommandJournal.Step> steps = new ArrayList<>(entry.get().steps());
+        Collections.reverse(steps);
+        return Map.of("pattern", "Command", "action", "undo", "entry", entry.get(),
+                "results", replay(steps, CommandJournal.Step::inverse));
+    }
+
+    public Map<String, Object> commandRedo(String userId) {
+        Optional<CommandJournal.Entry> entry = commandJournal.redo(userId);
+        if (entry.isEmpty()) return Map.of("pattern", "Command", "message", "Nothing to redo");
+        return Map.of("pattern", "Command", "action", "redo", "entry", entry.get(),
+                "results", replay(entry.get().steps(), CommandJournal.Step::command));
     }
 
-    public Map<String, Object> commandRedo() {
-        if (lastCommandByDevice.isEmpty()) return Map.of("pattern", "Command", "message", "Nothing to redo");
-        var entry = lastCommandByDevice.entrySet().iterator().next();
-        var exec = commandExecute(entry.getKey(), entry.getValue());
-        return Map.of("pattern", "Command", "action", "redo", "deviceId", entry.getKey(), "command", entry.getValue(), "result", exec);
+    public Map<String, Object> commandHistory(String userId, String deviceId, Integer limit) {
+        int n = limit == null ? 20 : Math.max(1, Math.min(limit, 500));
+        return Map.of("pattern", "Command", "userId", userId, "entries", commandJournal.history(userId, deviceId, n));
+    }
+
+    /**
+     * The device's own journal: every record, undo and redo of a step on it, by any user
+     */
+    public Map<String, Object> commandDeviceHistory(String deviceId, Integer limit) {
+        deviceService.findOrThrow(deviceId);
+        int n = limit == null ? 20 : Math.max(1, Math.min(limit, 500));
+        return Map.of("pattern", "Command", "deviceId", deviceId, "entries", commandJournal.deviceHistory(deviceId, n));
+    }
+
+    public Map<String, Object> commandPipelineStats() {
+        return Map.of("pattern", "Command", "pipeline", commandPipeline.stats(), "journal", commandJournal.stats());
     }
 
     public Map<String, Object> interpreterEvaluate(String rule, Map<String, Object> variables) {
@@ -368,11 +576,18 @@ public class PatternDemoService {
     }
 
     public Map<String, Object> applyEnergyStrategy(String strategy) {
-        List<Device> devices = new ArrayList<>(homeController.getDevicesSnapshot().values());
-        List<String> before = devices.stream().map(Device::getStatus).toList();
-        Map<String, Object> result = com.smarthome.pattern.behavioral.strategy.StrategyDemo.apply(strategy, devices);
-        List<String> after = devices.stream().map(Device::getStatus).toList();
-        deviceService.syncDatabaseFromRuntime();
+        Map<String, Device> devices = homeController.getDevicesSnapshot();
+        List<String> before = devices.values().stream().map(Device::getStatus).toList();
+        // The strategies treat devices independently, so each device is handled in its own mailbox
+        Map<String, CompletableFuture<Map<String, Object>>> applied = new LinkedHashMap<>();
+        devices.keySet().forEach(id -> applied.put(id, deviceService.mutateRuntime(id,
+                device -> com.smarthome.pattern.behavioral.strategy.StrategyDemo.apply(strategy, List.of(device)))));
+        List<Map<String, Object>> perDevice = applied.values().stream().map(CompletableFuture::join).toList();
+        Map<String, Object> result = new LinkedHashMap<>(perDevice.isEmpty()
+                ? com.smarthome.pattern.behavioral.strategy.StrategyDemo.apply(strategy, List.of())
+                : perDevice.get(0));
+        result.put("deviceCount", devices.size());
+        List<String> after = devices.values().stream().map(Device::getStatus).toList();
         return Map.of("pattern", "Strategy", "before", before, "after", after, "result", result);
     }
 
@@ -391,6 +606,31 @@ public class PatternDemoService {
 
     // ── helpers ──────────────────────────────────────────────
 
+    private List<DeviceEntity> resolveCompositeTarget(String target) {
+        if ("house".equalsIgnoreCase(target)) return deviceRepository.findAll();
+        String roomName = ServiceUtils.toTitleCase(target.replace('-', ' '));
+        List<DeviceEntity> devices = deviceRepository.findByLocationIgnoreCase(roomName);
+        if (!devices.isEmpty()) return devices;
+        String prefix = target.toLowerCase(Locale.ROOT);
+        return deviceRepository.findAll().stream().filter(d -> d.getId() != null && d.getId().toLowerCase(Locale.ROOT).startsWith(prefix)).toList();
+    }
+
+    /**
+     * Target state of a composite action: true for on, false for off, null to toggle
+     */
+    private static Boolean switchTarget(String action) {
+        return switch (action.trim().toLowerCase(Locale.ROOT)) {
+            case "on", "true" -> true;
+            case "off", "false" -> false;
+            case "toggle" -> null;
+            default -> throw new IllegalArgumentException("Unknown action: " + action + " (expected on, off or toggle)");
+        };
+    }
+
+    private static String switchLabel(Boolean turnOn) {
+        return turnOn == null ? "TOGGLE" : turnOn ? "ON" : "OFF";
+    }
+
     private static String normalizeCommand(Device device, String command) {
         String n = command == null ? "ON" : command.trim().toUpperCase(Locale.ROOT);
         if (n.equals("DIM") && device instanceof SmartLight) return "BRIGHTNESS:50";
@@ -399,10 +639,89 @@ public class PatternDemoService {
         return n;
     }
 
-    private static String reverseCommand(String command) {
-        String c = command == null ? "" : command.trim().toUpperCase(Locale.ROOT);
-        if (c.equals("ON")) return "OFF"; if (c.equals("OFF")) return "ON";
-        return "OFF";
+    private void persistCommandBatch(List<CommandPipeline.Executed> batch) {
+        Set<String> ids = new LinkedHashSet<>();
+        batch.forEach(e -> {
+            ids.add(e.deviceId());
+            events.append(DeviceEventJournal.Type.COMMAND, e.deviceId(), e.command().getDescription());
+        });
+        transactions.executeWithoutResult(status -> {
+            Map<String, Boolean> states = new LinkedHashMap<>();
+            deviceRepository.findAllById(ids).forEach(e -> states.put(e.getId(), deviceService.ensureRuntimeDevice(e).isOn()));
+            deviceService.persistPowerStates(states);
+        });
+        for (String id : ids) {
+            Device runtime = homeController.getDevice(id);
+            if (runtime != null) events.append(DeviceEventJournal.Type.RUNTIME, id, RuntimeImage.of(runtime));
+        }
+    }
+
+    /**
+     * A command that reads its device's prior state and inverse, runs, and is
+     * journaled all inside the one mailbox task, so no other writer of the device
+     * can slip in between; a command coalesced away never runs and is not journaled
+     */
+    private final class JournaledCommand implements Command {
+        private final String userId;
+        private final String deviceId;
+        private final Device device;
+        private final String command;
+        private final Command delegate;
+        private volatile String before;
+
+        JournaledCommand(String userId, String deviceId, Device device, String command) {
+            this.userId = userId;
+            this.deviceId = deviceId;
+            this.device = device;
+            this.command = command;
+            this.delegate = CommandDemo.toCommand(device, command);
+        }
+
+        @Override
+        public void execute() {
+            before = device.getStatus();
+            String inverse = CommandDemo.inverseOf(device, command);
+            delegate.execute();
+            commandJournal.record(userId, command, List.of(new CommandJournal.Step(deviceId, command, inverse)));
+        }
+
+        @Override
+        public void undo() {
+            delegate.undo();
+        }
+
+        @Override
+        public String getDescription() {
+            return delegate.getDescription();
+        }
+
+        @Override
+        public String coalesceKey() {
+            return delegate.coalesceKey();
+        }
+    }
+
+    private static CommandPipeline.Result awaitCommand(CompletableFuture<CommandPipeline.Result> pending) {
+        try {
+            return pending.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException("Command failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Command did not complete within 10s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for command");
+        }
+    }
+
+    private List<CommandPipeline.Result> replay(List<CommandJournal.Step> steps, Function<CommandJournal.Step, String> command) {
+        List<CompletableFuture<CommandPipeline.Result>> results = new ArrayList<>();
+        for (CommandJournal.Step step : steps) {
+            Device runtime = deviceService.ensureRuntimeDevice(deviceService.findOrThrow(step.deviceId()));
+            results.add(commandPipeline.submit(step.deviceId(), CommandDemo.toCommand(runtime, command.apply(step))));
+        }
+        return results.stream().map(PatternDemoService::awaitCommand).toList();
     }
 }
 
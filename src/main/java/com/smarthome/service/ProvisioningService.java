@@ -0,0 +1,307 @@
+package com.smarthome.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.domain.DeviceConfigurationEntity;
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.factory.SmartCamera;
+import com.smarthome.pattern.creational.factory.SmartLight;
+import com.smarthome.pattern.creational.factory.SmartThermostat;
+import com.smarthome.pattern.creational.prototype.ConfigurationPrototypeRegistry;
+import com.smarthome.pattern.creational.prototype.DeviceConfiguration;
+import com.smarthome.repository.DeviceConfigurationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provisions many devices from one prototype template in a single request.
+ *
+ * The template is cloned once per device. Clones are copy-on-write, so a
+ * device without a settings override keeps sharing the template's settings,
+ * which are also serialized only once. Per-device overrides of name, location
+ * and settings are keyed by the device number {@code n}, which fills the
+ * {@code {n}} placeholder of the name and location patterns.
+ *
+ * Devices and their configurations are inserted as JDBC batches of
+ * {@code batch-size} rows, all in one transaction, so a request provisions
+ * all of its devices or none. Runtime devices are registered, metered and
+ * journaled once it has committed.
+ */
+@Service
+public class ProvisioningService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProvisioningService.class);
+
+    private static final String INSERT_CONFIGURATION = "insert into device_configurations "
+            + "(device_id, template, settings, schedules, provisioned_at) values (?, ?, ?, ?, ?)";
+    private static final int MAX_TEXT = 255;
+    private static final int MAX_JSON = 2000;
+
+    public record DeviceOverride(String name, String location, Map<String, Object> settings) {}
+
+    public record Request(String template, int count, Integer startAt, String namePattern, String locationPattern,
+                          Boolean on, Map<String, Object> settings, Map<Integer, DeviceOverride> overrides) {}
+
+    public record Result(String template, DeviceType type, int provisioned, int sharingTemplateSettings, int batches,
+                         long elapsedMillis, long devicesPerSecond, String firstDeviceId, String lastDeviceId) {}
+
+    public record Configuration(String deviceId, String template, Map<String, Object> settings,
+                                Map<String, String> schedules, Instant provisionedAt) {}
+
+    public record Stats(long requests, long devices, long sharingTemplateSettings, long peakDevicesPerSecond) {}
+
+    private final DeviceBatchWriter writer;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactions;
+    private final DeviceConfigurationRepository configurationRepository;
+    private final DeviceEventJournal events;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxDevices;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder devices = new LongAdder();
+    private final LongAdder sharing = new LongAdder();
+    private volatile long peakDevicesPerSecond;
+
+    public ProvisioningService(DeviceBatchWriter writer,
+                               JdbcTemplate jdbc,
+                               PlatformTransactionManager transactionManager,
+                               DeviceConfigurationRepository configurationRepository,
+                               DeviceEventJournal events,
+                               ObjectMapper objectMapper,
+                               @Value("${smarthome.provision.batch-size:500}") int batchSize,
+                               @Value("${smarthome.provision.max-devices:10000}") int maxDevices) {
+        if (batchSize <= 0) throw new IllegalArgumentException("provision batch-size must be positive");
+        this.writer = writer;
+        this.jdbc = jdbc;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.configurationRepository = configurationRepository;
+        this.events = events;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxDevices = maxDevices;
+    }
+
+    /**
+     * Provision {@code request.count()} devices from a template
+     *
+     * @throws IllegalArgumentException if the template is unknown or the request is invalid;
+     *                                  nothing is written then
+     */
+    public Result provision(Request request) {
+        long start = System.nanoTime();
+        String key = ServiceUtils.requireText(request.template(), "template is required").trim().toLowerCase(Locale.ROOT);
+        DeviceConfiguration template = ConfigurationPrototypeRegistry.getClone(key);
+        DeviceType type = typeOf(template);
+        int count = request.count();
+        if (count < 1 || count > maxDevices) throw new IllegalArgumentException("count must be between 1 and " + maxDevices);
+        int first = request.startAt() == null ? 1 : request.startAt();
+        if (first < 0) throw new IllegalArgumentException("startAt must not be negative");
+        int last = Math.addExact(first, count - 1);
+        String namePattern = ServiceUtils.blankToNull(request.namePattern()) == null
+                ? template.getName() + " {n}" : request.namePattern().trim();
+        String locationPattern = ServiceUtils.requireText(request.locationPattern(), "locationPattern is required").trim();
+        checkText(fill(namePattern, last), "name");
+        checkText(fill(locationPattern, last), "location");
+        boolean on = Boolean.TRUE.equals(request.on());
+
+        Map<String, Object> common = request.settings() == null ? Map.of() : request.settings();
+        checkSettings(type, common);
+        common.forEach(template::addSetting);
+        template.intern();
+        Map<Integer, DeviceOverride> overrides = request.overrides() == null ? Map.of() : request.overrides();
+        overrides.forEach((n, o) -> checkOverride(type, n, first, last, o));
+
+        // Interned configurations with equal settings hold the same map, so each distinct map is serialized once
+        Map<Map<String, Object>, String> settingsJson = new IdentityHashMap<>();
+        settingsJson.put(template.getSettings(), json(template.getSettings()));
+        String sharedSchedules = json(template.getSchedules());
+        OffsetDateTime provisionedAt = OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+
+        List<DeviceEntity> provisioned = new ArrayList<>(count);
+        Map<String, DeviceConfiguration> configurations = new HashMap<>(count * 2);
+        int[] shared = {0};
+        int batches = (count + batchSize - 1) / batchSize;
+        transactions.executeWithoutResult(status -> {
+            for (int from = first; from <= last; from += batchSize) {
+                int to = Math.min(last, from + batchSize - 1);
+                List<DeviceEntity> batch = new ArrayList<>(to - from + 1);
+                List<DeviceConfiguration> batchConfigurations = new ArrayList<>(to - from + 1);
+                for (int n = from; n <= to; n++) {
+                    DeviceConfiguration configuration = template.clone();
+                    DeviceOverride override = overrides.get(n);
+                    String name = fill(namePattern, n);
+                    String location = fill(locationPattern, n);
+                    if (override != null) {
+                        if (override.name() != null) name = override.name().trim();
+                        if (override.location() != null) location = override.location().trim();
+                        if (override.settings() != null) override.settings().forEach(configuration::addSetting);
+                    }
+                    configuration.setName(name);
+                    configuration.intern();
+                    batch.add(new DeviceEntity(null, name, type, location, on, type.getDefaultRatedPowerWatts(), "LOCAL"));
+                    batchConfigurations.add(configuration);
+                }
+                List<DeviceEntity> identified = writer.withIds(batch);
+                writer.insert(identified);
+                List<Object[]> rows = new ArrayList<>(identified.size());
+                for (int i = 0; i < identified.size(); i++) {
+                    DeviceConfiguration configuration = batchConfigurations.get(i);
+                    boolean sharesTemplate = configuration.sharesSettingsWith(template);
+                    if (sharesTemplate) shared[0]++;
+                    rows.add(new Object[]{identified.get(i).getId(), key,
+                            settingsJson.computeIfAbsent(configuration.getSettings(), this::json), sharedSchedules,
+                            provisionedAt});
+                    configurations.put(identified.get(i).getId(), configuration);
+                }
+                jdbc.batchUpdate(INSERT_CONFIGURATION, rows);
+                provisioned.addAll(identified);
+            }
+        });
+
+        Map<String, Device> registered = writer.register(provisioned, entity -> {
+            Device device = DeviceHydrator.newRuntimeDevice(entity);
+            applySettings(device, configurations.get(entity.getId()).getSettings());
+            return device;
+        });
+        registered.forEach((id, device) -> events.append(DeviceEventJournal.Type.RUNTIME, id, RuntimeImage.of(device)));
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        long rate = count * 1_000_000_000L / elapsedNanos;
+        requests.increment();
+        devices.add(count);
+        sharing.add(shared[0]);
+        if (count >= 1_000 && rate > peakDevicesPerSecond) peakDevicesPerSecond = rate;
+        log.info("Provisioned {} {} devices from template '{}' in {} ms ({} sharing its settings)",
+                count, type, key, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), shared[0]);
+        return new Result(key, type, count, shared[0], batches, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rate,
+                provisioned.get(0).getId(), provisioned.get(count - 1).getId());
+    }
+
+    /**
+     * The configuration a device was provisioned with
+     *
+     * @throws IllegalArgumentException if the device was not provisioned from a template
+     */
+    public Configuration configuration(String deviceId) {
+        DeviceConfigurationEntity saved = configurationRepository.findById(deviceId)
+                .orElseThrow(() -> new IllegalArgumentException("No provisioned configuration for device: " + deviceId));
+        try {
+            return new Configuration(saved.getDeviceId(), saved.getTemplate(),
+                    objectMapper.readValue(saved.getSettings(), new TypeReference<Map<String, Object>>() {}),
+                    objectMapper.readValue(saved.getSchedules(), new TypeReference<Map<String, String>>() {}),
+                    saved.getProvisionedAt());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored configuration of " + deviceId + " is not valid JSON", e);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), devices.sum(), sharing.sum(), peakDevicesPerSecond);
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private static DeviceType typeOf(DeviceConfiguration template) {
+        try {
+            return DeviceType.valueOf(template.getDeviceType());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Template '" + template.getName() + "' configures "
+                    + template.getDeviceType() + " devices, which cannot be provisioned");
+        }
+    }
+
+    private static String fill(String pattern, int n) {
+        return pattern.replace("{n}", Integer.toString(n));
+    }
+
+    private static void checkText(String value, String field) {
+        if (value.isBlank()) throw new IllegalArgumentException(field + " must not be blank");
+        if (value.length() > MAX_TEXT) throw new IllegalArgumentException(field + " is longer than " + MAX_TEXT + " characters");
+    }
+
+    private void checkOverride(DeviceType type, Integer n, int first, int last, DeviceOverride override) {
+        if (n == null || n < first || n > last) {
+            throw new IllegalArgumentException("override for device " + n + " is outside " + first + ".." + last);
+        }
+        if (override == null) return;
+        if (override.name() != null) checkText(override.name().trim(), "name");
+        if (override.location() != null) checkText(override.location().trim(), "location");
+        if (override.settings() != null) checkSettings(type, override.settings());
+    }
+
+    /** Apply the settings to a scratch device, so a bad value fails the request before anything is written */
+    private void checkSettings(DeviceType type, Map<String, Object> settings) {
+        if (settings.isEmpty()) return;
+        json(settings);
+        applySettings(DeviceHydrator.newRuntimeDevice(new DeviceEntity("check", "check", type, "check", true, 0, "LOCAL")),
+                settings);
+    }
+
+    /**
+     * Bring the runtime properties a template can set to the configured values;
+     * other settings (transition time, fan speed, ...) are stored only. An off
+     * thermostat keeps its OFF mode.
+     */
+    private static void applySettings(Device device, Map<String, Object> settings) {
+        if (device instanceof SmartLight l) {
+            if (settings.containsKey("brightness")) l.setBrightness((int) number(settings, "brightness"));
+            if (settings.containsKey("color")) l.setColor(String.valueOf(settings.get("color")));
+        } else if (device instanceof SmartThermostat t) {
+            if (settings.containsKey("targetTemperature")) t.setTargetTemperature(number(settings, "targetTemperature"));
+            if (settings.containsKey("mode") && t.isOn()) t.setMode(String.valueOf(settings.get("mode")));
+        } else if (device instanceof SmartCamera c) {
+            if (settings.containsKey("resolution")) c.setResolution(String.valueOf(settings.get("resolution")));
+            if (settings.containsKey("motionDetection")) c.setMotionDetection(flag(settings, "motionDetection"));
+        }
+    }
+
+    private static double number(Map<String, Object> settings, String key) {
+        Object value = settings.get(key);
+        if (value instanceof Number number) return number.doubleValue();
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number, got " + value);
+        }
+    }
+
+    private static boolean flag(Map<String, Object> settings, String key) {
+        Object value = settings.get(key);
+        if (value instanceof Boolean b) return b;
+        if ("true".equalsIgnoreCase(String.valueOf(value))) return true;
+        if ("false".equalsIgnoreCase(String.valueOf(value))) return false;
+        throw new IllegalArgumentException(key + " must be true or false, got " + value);
+    }
+
+    private String json(Map<String, ?> value) {
+        try {
+            String json = objectMapper.writeValueAsString(value);
+            if (json.length() > MAX_JSON) throw new IllegalArgumentException("settings are longer than " + MAX_JSON + " characters as JSON");
+            return json;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("settings cannot be written as JSON: " + e.getOriginalMessage());
+        }
+    }
+}
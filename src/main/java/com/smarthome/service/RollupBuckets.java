@@ -0,0 +1,207 @@
+package com.smarthome.service;
+
+import com.smarthome.domain.RollupTier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The latest {@code capacity} min/max/sum/count buckets of one series at one
+ * {@link RollupTier}, in parallel primitive arrays.
+ *
+ * A bucket lives in the slot its start time maps to, so adding a sample is a
+ * divide and four array writes. A sample for a newer bucket recycles the slot;
+ * one for a bucket that was already recycled or flushed, or that is older than
+ * the ring reaches, is dropped and counted as late.
+ *
+ * Recycling a slot whose bucket was not flushed yet, as a backfill spanning more
+ * than the ring does, spills that bucket aside for the next {@link #flush}. At
+ * most {@code capacity} buckets are spilled between flushes; the samples of any
+ * bucket beyond that are counted as late.
+ *
+ * A flush is provisional until the caller stored the buckets: {@link #confirm}
+ * forgets them, {@link #restore} puts them back to be flushed again.
+ */
+public final class RollupBuckets {
+
+    /** Buckets of a range query, oldest first */
+    public record Window(long[] starts, double[] min, double[] max, double[] sum, long[] count) {
+        public int size() {
+            return starts.length;
+        }
+    }
+
+    /** Receives closed buckets during a flush */
+    @FunctionalInterface
+    public interface Sink {
+        void accept(long start, double min, double max, double sum, long count);
+    }
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private record Spilled(long start, double min, double max, double sum, long count) {}
+
+    private final RollupTier tier;
+    private final long[] starts;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private final long[] count;
+    private final boolean[] flushed;
+    private final ArrayDeque<Spilled> spilled = new ArrayDeque<>();
+    private final List<Spilled> inFlight = new ArrayList<>();
+    private long newest = EMPTY;
+    private long late;
+
+    public RollupBuckets(RollupTier tier, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.tier = tier;
+        this.starts = new long[capacity];
+        this.min = new double[capacity];
+        this.max = new double[capacity];
+        this.sum = new double[capacity];
+        this.count = new long[capacity];
+        this.flushed = new boolean[capacity];
+        Arrays.fill(starts, EMPTY);
+    }
+
+    public synchronized void add(long timestamp, double value) {
+        long start = tier.bucketStart(timestamp);
+        int slot = slotOf(start);
+        if (starts[slot] != start) {
+            if (start < starts[slot] || (newest != EMPTY && newest - start >= starts.length * tier.widthMillis())) {
+                late++;
+                return;
+            }
+            if (starts[slot] != EMPTY && !flushed[slot]) spill(slot);
+            starts[slot] = start;
+            flushed[slot] = false;
+            if (start > newest) newest = start;
+            min[slot] = value;
+            max[slot] = value;
+            sum[slot] = value;
+            count[slot] = 1;
+            return;
+        }
+        if (flushed[slot]) {
+            late++;
+            return;
+        }
+        if (value < min[slot]) min[slot] = value;
+        if (value > max[slot]) max[slot] = value;
+        sum[slot] += value;
+        count[slot]++;
+    }
+
+    /**
+     * Buckets starting within [from, to), at most the newest {@code limit}
+     */
+    public synchronized Window range(long from, long to, int limit) {
+        int[] slots = new int[Math.min(starts.length, limit)];
+        int n = 0;
+        // Every held bucket is within capacity widths of the newest; walk back from it so the limit keeps the latest
+        for (int i = 0; i < starts.length && n < slots.length && newest != EMPTY; i++) {
+            long start = newest - i * tier.widthMillis();
+            if (start < from) break;
+            int slot = slotOf(start);
+            if (starts[slot] == start && start < to) slots[n++] = slot;
+        }
+        Window window = new Window(new long[n], new double[n], new double[n], new double[n], new long[n]);
+        for (int i = 0; i < n; i++) {
+            int slot = slots[n - 1 - i];
+            window.starts()[i] = starts[slot];
+            window.min()[i] = min[slot];
+            window.max()[i] = max[slot];
+            window.sum()[i] = sum[slot];
+            window.count()[i] = count[slot];
+        }
+        return window;
+    }
+
+    /**
+     * Hand every spilled bucket, and every bucket that closed by
+     * {@code closedBefore} and was not flushed yet, to {@code sink}; later
+     * samples for those buckets count as late. The buckets stay in flight
+     * until {@link #confirm} or {@link #restore}.
+     *
+     * @return the number of buckets flushed
+     */
+    public synchronized int flush(long closedBefore, Sink sink) {
+        long openFrom = tier.bucketStart(closedBefore);
+        int written = 0;
+        for (Spilled s; (s = spilled.pollFirst()) != null; written++) {
+            sink.accept(s.start(), s.min(), s.max(), s.sum(), s.count());
+            inFlight.add(s);
+        }
+        for (int slot = 0; slot < starts.length; slot++) {
+            long start = starts[slot];
+            if (start != EMPTY && !flushed[slot] && start < openFrom) {
+                sink.accept(start, min[slot], max[slot], sum[slot], count[slot]);
+                flushed[slot] = true;
+                inFlight.add(new Spilled(start, min[slot], max[slot], sum[slot], count[slot]));
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * The buckets of the last flush were stored
+     */
+    public synchronized void confirm() {
+        inFlight.clear();
+    }
+
+    /**
+     * The buckets of the last flush were not stored: flush them again next time.
+     * A bucket still in its slot takes samples again; one recycled meanwhile is
+     * spilled, within the usual spill bound.
+     */
+    public synchronized void restore() {
+        for (int i = inFlight.size() - 1; i >= 0; i--) {
+            Spilled s = inFlight.get(i);
+            int slot = slotOf(s.start());
+            if (starts[slot] == s.start()) {
+                flushed[slot] = false;
+            } else if (spilled.size() >= starts.length) {
+                late += s.count();
+            } else {
+                spilled.addFirst(s);
+            }
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Start of the oldest bucket still held, or {@link Long#MAX_VALUE} when empty
+     */
+    public synchronized long oldestStart() {
+        long oldest = Long.MAX_VALUE;
+        for (long start : starts) {
+            if (start != EMPTY && start < oldest) oldest = start;
+        }
+        return oldest;
+    }
+
+    public synchronized long late() {
+        return late;
+    }
+
+    public RollupTier tier() {
+        return tier;
+    }
+
+    private void spill(int slot) {
+        if (spilled.size() >= starts.length) {
+            late += count[slot];
+            return;
+        }
+        spilled.addLast(new Spilled(starts[slot], min[slot], max[slot], sum[slot], count[slot]));
+    }
+
+    private int slotOf(long start) {
+        return (int) Math.floorMod(Math.floorDiv(start, tier.widthMillis()), (long) starts.length);
+    }
+}
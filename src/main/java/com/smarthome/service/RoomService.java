@@ -13,6 +13,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Manages Room CRUD and device-to-room assignment.
@@ -23,13 +24,19 @@ public class RoomService {
     private final RoomRepository roomRepository;
     private final DeviceRepository deviceRepository;
     private final DeviceService deviceService;
+    private final OptimisticRetry retry;
+    private final EnergyAccountant energy;
 
     public RoomService(RoomRepository roomRepository,
                        DeviceRepository deviceRepository,
-                       DeviceService deviceService) {
+                       DeviceService deviceService,
+                       OptimisticRetry retry,
+                       EnergyAccountant energy) {
         this.roomRepository = roomRepository;
         this.deviceRepository = deviceRepository;
         this.deviceService = deviceService;
+        this.retry = retry;
+        this.energy = energy;
     }
 
     @Transactional(readOnly = true)
@@ -68,39 +75,49 @@ public class RoomService {
         return toView(room);
     }
 
-    @Transactional
+    /**
+     * Move a device into a room; retried if the device changed concurrently
+     */
     public RoomView assignDeviceToRoom(Long roomId, String deviceId) {
         if (roomId == null) throw new IllegalArgumentException("Room id is required");
         String dId = ServiceUtils.requireText(deviceId, "Device id is required");
 
-        RoomEntity room = roomRepository.findById(roomId)
-                .orElseThrow(() -> new IllegalArgumentException("Room not found: " + roomId));
-        DeviceEntity device = deviceService.findOrThrow(dId);
-        device.setLocation(room.getName());
-        deviceRepository.save(device);
+        RoomView view = retry.inTransaction("assign " + dId + " to room " + roomId, () -> {
+            RoomEntity room = roomRepository.findById(roomId)
+                    .orElseThrow(() -> new IllegalArgumentException("Room not found: " + roomId));
+            DeviceEntity device = deviceService.findOrThrow(dId);
+            device.setLocation(room.getName());
+            deviceRepository.save(device);
 
-        boolean already = room.getDevices().stream().anyMatch(d -> dId.equals(d.getId()));
-        if (!already) room.getDevices().add(device);
-        roomRepository.save(room);
-        return toView(room);
+            boolean already = room.getDevices().stream().anyMatch(d -> dId.equals(d.getId()));
+            if (!already) room.getDevices().add(device);
+            roomRepository.save(room);
+            return toView(room);
+        });
+        energy.relocate(dId, view.name());
+        return view;
     }
 
-    @Transactional
     public RoomView unassignDeviceFromRoom(Long roomId, String deviceId) {
         if (roomId == null) throw new IllegalArgumentException("Room id is required");
         String dId = ServiceUtils.requireText(deviceId, "Device id is required");
 
-        RoomEntity room = roomRepository.findById(roomId)
-                .orElseThrow(() -> new IllegalArgumentException("Room not found: " + roomId));
-
-        boolean removed = room.getDevices().removeIf(d -> dId.equals(d.getId()));
-        if (removed) {
-            DeviceEntity device = deviceService.findOrThrow(dId);
-            device.setLocation("Unassigned");
-            deviceRepository.save(device);
-            roomRepository.save(room);
-        }
-        return toView(room);
+        AtomicBoolean removed = new AtomicBoolean();
+        RoomView view = retry.inTransaction("unassign " + dId + " from room " + roomId, () -> {
+            RoomEntity room = roomRepository.findById(roomId)
+                    .orElseThrow(() -> new IllegalArgumentException("Room not found: " + roomId));
+
+            removed.set(room.getDevices().removeIf(d -> dId.equals(d.getId())));
+            if (removed.get()) {
+                DeviceEntity device = deviceService.findOrThrow(dId);
+                device.setLocation("Unassigned");
+                deviceRepository.save(device);
+                roomRepository.save(room);
+            }
+            return toView(room);
+        });
+        if (removed.get()) energy.relocate(dId, "Unassigned");
+        return view;
     }
 
     private RoomView toView(RoomEntity room) {
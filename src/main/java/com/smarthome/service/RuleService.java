@@ -1,7 +1,6 @@
 package com.smarthome.service;
 
 import com.smarthome.domain.AutomationRuleEntity;
-import com.smarthome.domain.DeviceEntity;
 import com.smarthome.domain.HomeMode;
 import com.smarthome.domain.SceneEntity;
 import com.smarthome.pattern.behavioral.interpreter.InterpreterDemo;
@@ -152,11 +151,7 @@ public class RuleService {
                 switch (fn) {
                     case "turn_on", "on" -> { result.put("status", "ok"); result.put("device", deviceService.controlDevice(arg, true)); }
                     case "turn_off", "off" -> { result.put("status", "ok"); result.put("device", deviceService.controlDevice(arg, false)); }
-                    case "toggle" -> {
-                        DeviceEntity de = deviceService.findOrThrow(arg);
-                        result.put("status", "ok");
-                        result.put("device", deviceService.controlDevice(arg, !de.isOn()));
-                    }
+                    case "toggle" -> { result.put("status", "ok"); result.put("device", deviceService.toggleDevice(arg)); }
                     case "room_on" -> { result.put("status", "ok"); result.put("devices", deviceService.controlRoom(arg, true)); }
                     case "room_off" -> { result.put("status", "ok"); result.put("devices", deviceService.controlRoom(arg, false)); }
                     case "mode", "set_mode" -> {
@@ -0,0 +1,122 @@
+package com.smarthome.service;
+
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.factory.SmartCamera;
+import com.smarthome.pattern.creational.factory.SmartLight;
+import com.smarthome.pattern.creational.factory.SmartLock;
+import com.smarthome.pattern.creational.factory.SmartThermostat;
+
+/**
+ * The full runtime state of one device as a short string, e.g.
+ * {@code L1;80;#FFE4B5} for a light that is on at 80% brightness.
+ *
+ * The first character names the kind (L light, T thermostat, C camera, K lock,
+ * D anything else), the second is the power state, and the remaining fields
+ * are the kind's properties separated by ';'. Free-text fields are cut to 16
+ * characters, so an image always fits a journal record. Applying an image is
+ * idempotent, which is what lets a snapshot taken while devices change be
+ * corrected by replaying the images journaled after it.
+ */
+final class RuntimeImage {
+
+    private static final int MAX_TEXT = 16;
+
+    private RuntimeImage() {}
+
+    static String of(Device device) {
+        String power = device.isOn() ? "1" : "0";
+        if (device instanceof SmartLight l) {
+            return "L" + power + ";" + l.getBrightness() + ";" + text(l.getColor());
+        }
+        if (device instanceof SmartThermostat t) {
+            return "T" + power + ";" + round(t.getTargetTemperature()) + ";" + round(t.getCurrentTemperature())
+                    + ";" + text(t.getMode());
+        }
+        if (device instanceof SmartCamera c) {
+            return "C" + power + ";" + flag(c.isRecording()) + ";" + flag(c.isMotionDetectionEnabled())
+                    + ";" + text(c.getResolution());
+        }
+        if (device instanceof SmartLock k) {
+            return "K" + power + ";" + flag(k.isLocked()) + ";" + flag(k.isAutoLockEnabled()) + ";" + k.getAutoLockDelay();
+        }
+        return "D" + power;
+    }
+
+    /**
+     * Bring {@code device} to the state in {@code image}, calling only the
+     * setters whose value differs
+     *
+     * @return false if the image is malformed or of another kind of device
+     */
+    static boolean apply(Device device, String image) {
+        if (image == null || image.length() < 2) return false;
+        String[] f = image.length() > 3 ? image.substring(3).split(";", -1) : new String[0];
+        try {
+            switch (image.charAt(0)) {
+                case 'L' -> {
+                    if (!(device instanceof SmartLight l) || f.length != 2) return false;
+                    power(device, image);
+                    int brightness = Integer.parseInt(f[0]);
+                    if (l.getBrightness() != brightness) l.setBrightness(brightness);
+                    if (!f[1].equals(l.getColor())) l.setColor(f[1]);
+                }
+                case 'T' -> {
+                    if (!(device instanceof SmartThermostat t) || f.length != 3) return false;
+                    power(device, image);
+                    double target = Double.parseDouble(f[0]);
+                    double current = Double.parseDouble(f[1]);
+                    if (t.getTargetTemperature() != target) t.setTargetTemperature(target);
+                    if (t.getCurrentTemperature() != current) t.updateCurrentTemperature(current);
+                    if (!f[2].equals(t.getMode())) t.setMode(f[2]);
+                }
+                case 'C' -> {
+                    if (!(device instanceof SmartCamera c) || f.length != 3) return false;
+                    power(device, image);
+                    if (c.isRecording() != f[0].equals("1")) c.setRecording(f[0].equals("1"));
+                    if (c.isMotionDetectionEnabled() != f[1].equals("1")) c.setMotionDetection(f[1].equals("1"));
+                    if (!f[2].equals(c.getResolution())) c.setResolution(f[2]);
+                }
+                case 'K' -> {
+                    if (!(device instanceof SmartLock k) || f.length != 3) return false;
+                    power(device, image);
+                    if (k.isLocked() != f[0].equals("1")) {
+                        if (f[0].equals("1")) k.lock(); else k.unlock();
+                    }
+                    if (k.isAutoLockEnabled() != f[1].equals("1")) k.setAutoLock(f[1].equals("1"));
+                    int delay = Integer.parseInt(f[2]);
+                    if (k.getAutoLockDelay() != delay) k.setAutoLockDelay(delay);
+                }
+                case 'D' -> power(device, image);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    /** Power first: switching resets some properties (a thermostat's mode, a camera's recording) */
+    private static void power(Device device, String image) {
+        boolean on = image.charAt(1) == '1';
+        if (device.isOn() == on) return;
+        if (on) device.turnOn(); else device.turnOff();
+    }
+
+    private static String text(String value) {
+        if (value == null) return "";
+        String cleaned = value.replace(';', ',');
+        return cleaned.length() <= MAX_TEXT ? cleaned : cleaned.substring(0, MAX_TEXT);
+    }
+
+    private static String flag(boolean value) {
+        return value ? "1" : "0";
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,315 @@
+package com.smarthome.service;
+
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Runtime-only device state (brightness, target temperature, recording, lock
+ * settings) across restarts: periodic binary snapshots of the runtime
+ * registry plus the {@link DeviceEventJournal} events appended after them.
+ *
+ * A snapshot records the journal's last sequence before it reads any device,
+ * then one {@link RuntimeImage} per device; it is written to a temporary file,
+ * synced and renamed, and carries a CRC-32C trailer. Devices may change while
+ * it is written, but every change after that sequence is journaled and images
+ * are idempotent, so recovery loads the newest intact snapshot and replays the
+ * journal tail on top. Power state stays owned by the device table: a device
+ * whose replayed power disagrees with what hydration loaded is switched back.
+ * Only devices already in the registry are restored, so in LAZY hydration
+ * mode runtime properties start from their defaults. {@link RuntimeStartup}
+ * recovers after hydration in every profile; scheduled snapshots are skipped
+ * until then.
+ */
+@Service
+public class RuntimeRecovery {
+
+    private static final Logger log = LoggerFactory.getLogger(RuntimeRecovery.class);
+    private static final long MAGIC = 0x534d_4853_4e41_5031L; // "SMHSNAP1"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".snap";
+
+    public record Snapshot(String file, long journalSequence, int devices, long bytes, long elapsedMillis,
+                           Instant takenAt) {}
+
+    public record Recovery(String snapshot, long snapshotSequence, int devicesRestored, int devicesSkipped,
+                           long eventsReplayed, long lastSequence, int powerCorrected, long elapsedMillis,
+                           long eventsPerSecond, Instant completedAt) {}
+
+    public record Stats(String directory, int keep, long snapshotsTaken, Snapshot lastSnapshot,
+                        Recovery lastRecovery) {}
+
+    private record Loaded(Path file, long sequence, String[] ids, String[] images) {}
+
+    private final DeviceEventJournal journal;
+    private final Path directory;
+    private final int keep;
+    private final boolean deleteOnClose;
+    private final HomeController homeController = HomeController.INSTANCE;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "runtime-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder snapshotsTaken = new LongAdder();
+    private volatile boolean recovered;
+    private volatile Snapshot lastSnapshot;
+    private volatile Recovery lastRecovery;
+
+    public RuntimeRecovery(DeviceEventJournal journal,
+                           @Value("${smarthome.snapshot.dir:data/snapshots}") String directory,
+                           @Value("${smarthome.snapshot.interval:PT5M}") Duration interval,
+                           @Value("${smarthome.snapshot.keep:2}") int keep,
+                           @Value("${smarthome.snapshot.delete-on-close:false}") boolean deleteOnClose) {
+        if (keep <= 0) throw new IllegalArgumentException("snapshot keep must be positive");
+        this.journal = journal;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.keep = keep;
+        this.deleteOnClose = deleteOnClose;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create snapshot directory " + this.directory, e);
+        }
+
+        long period = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshotSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restore the runtime registry after hydration
+     */
+    public Recovery recover() {
+        return recover(homeController.getDevicesSnapshot());
+    }
+
+    /**
+     * Restore {@code devices} from the newest intact snapshot and the journal
+     * events after it; snapshots are taken from then on
+     */
+    public synchronized Recovery recover(Map<String, Device> devices) {
+        long start = System.nanoTime();
+        Map<String, Boolean> storedPower = new HashMap<>();
+        Loaded snapshot = newestIntactSnapshot();
+        int restored = 0;
+        int skipped = 0;
+        if (snapshot != null) {
+            for (int i = 0; i < snapshot.ids().length; i++) {
+                Device device = devices.get(snapshot.ids()[i]);
+                if (device == null) {
+                    skipped++;
+                    continue;
+                }
+                storedPower.putIfAbsent(snapshot.ids()[i], device.isOn());
+                if (RuntimeImage.apply(device, snapshot.images()[i])) restored++; else skipped++;
+            }
+        }
+
+        long from = snapshot == null ? 1 : snapshot.sequence() + 1;
+        long oldest = journal.stats().firstSequence();
+        if (oldest > from && snapshot != null) {
+            log.warn("Event journal starts at {} but snapshot {} ends at {}; runtime changes in between are lost",
+                    oldest, snapshot.file().getFileName(), snapshot.sequence());
+        }
+        long replayStart = System.nanoTime();
+        long replayed = journal.replay(from, Long.MAX_VALUE, event -> replay(event, devices, storedPower));
+        long replayNanos = System.nanoTime() - replayStart;
+
+        int corrected = 0;
+        for (Map.Entry<String, Boolean> stored : storedPower.entrySet()) {
+            Device device = devices.get(stored.getKey());
+            if (device.isOn() == stored.getValue()) continue;
+            if (stored.getValue()) device.turnOn(); else device.turnOff();
+            corrected++;
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long perSecond = replayNanos == 0 ? replayed : replayed * 1_000_000_000L / replayNanos;
+        Recovery result = new Recovery(snapshot == null ? null : snapshot.file().getFileName().toString(),
+                snapshot == null ? 0 : snapshot.sequence(), restored, skipped, replayed, journal.lastSequence(),
+                corrected, elapsedMillis, perSecond, Instant.now());
+        lastRecovery = result;
+        recovered = true;
+        log.info("Recovered runtime state of {} devices from {} and replayed {} journal events in {} ms ({} events/s)",
+                restored, snapshot == null ? "no snapshot" : "snapshot at sequence " + snapshot.sequence(),
+                replayed, elapsedMillis, perSecond);
+        return result;
+    }
+
+    /**
+     * Snapshot the runtime registry now
+     */
+    public Snapshot snapshot() {
+        return snapshot(homeController.getDevicesSnapshot());
+    }
+
+    /**
+     * Write a snapshot of {@code devices} and delete all but the newest {@code keep} snapshots
+     */
+    public synchronized Snapshot snapshot(Map<String, Device> devices) {
+        long start = System.nanoTime();
+        long sequence = journal.lastSequence(); // before reading devices: later changes are replayed on top
+        Path target = directory.resolve(fileName(sequence));
+        Path temp = directory.resolve(fileName(sequence) + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+                CRC32C crc = new CRC32C();
+                DataOutputStream out = new DataOutputStream(
+                        new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sequence);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(devices.size());
+                for (Map.Entry<String, Device> device : devices.entrySet()) {
+                    out.writeUTF(device.getKey());
+                    out.writeUTF(RuntimeImage.of(device.getValue()));
+                }
+                out.writeLong(crc.getValue());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            List<Path> existing = snapshotFiles();
+            for (Path old : existing.subList(Math.min(keep, existing.size()), existing.size())) {
+                Files.deleteIfExists(old);
+            }
+            Snapshot taken = new Snapshot(target.getFileName().toString(), sequence, devices.size(), Files.size(target),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Instant.now());
+            lastSnapshot = taken;
+            snapshotsTaken.increment();
+            log.debug("Snapshot of {} runtime devices at journal sequence {} in {} ms",
+                    taken.devices(), sequence, taken.elapsedMillis());
+            return taken;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write runtime snapshot " + target, e);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(directory.toString(), keep, snapshotsTaken.sum(), lastSnapshot, lastRecovery);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+        snapshotSafely();
+        if (!deleteOnClose) return;
+        try {
+            for (Path file : snapshotFiles()) Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("Could not clean up snapshot directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private static void replay(DeviceEventJournal.Event event, Map<String, Device> devices,
+                               Map<String, Boolean> storedPower) {
+        if (event.type() != DeviceEventJournal.Type.STATE_CHANGE && event.type() != DeviceEventJournal.Type.RUNTIME) {
+            return;
+        }
+        Device device = devices.get(event.deviceId());
+        if (device == null) return;
+        storedPower.putIfAbsent(event.deviceId(), device.isOn());
+        if (event.type() == DeviceEventJournal.Type.RUNTIME) {
+            RuntimeImage.apply(device, event.detail());
+        } else if ("ON".equals(event.detail()) != device.isOn()) {
+            if (device.isOn()) device.turnOff(); else device.turnOn();
+        }
+    }
+
+    /**
+     * The newest snapshot that reads back completely with a matching checksum
+     */
+    private Loaded newestIntactSnapshot() {
+        for (Path file : snapshotFiles()) {
+            try {
+                return read(file);
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Skipping unreadable runtime snapshot {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static Loaded read(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("not a runtime snapshot");
+            }
+            long sequence = in.readLong();
+            in.readLong(); // taken at
+            int count = in.readInt();
+            if (count < 0 || count > Files.size(file) / 4) throw new IllegalStateException("bad device count " + count);
+            String[] ids = new String[count];
+            String[] images = new String[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readUTF();
+                images[i] = in.readUTF();
+            }
+            long computed = crc.getValue();
+            if (in.readLong() != computed) throw new IllegalStateException("checksum mismatch");
+            return new Loaded(file, sequence, ids, images);
+        }
+    }
+
+    /** Snapshot files, newest first */
+    private List<Path> snapshotFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list snapshot directory " + directory, e);
+        }
+    }
+
+    private static String fileName(long sequence) {
+        return String.format("snapshot-%020d%s", sequence, SUFFIX);
+    }
+
+    private void snapshotSafely() {
+        if (!recovered) return; // an unrestored registry would overwrite the state it should be restored to
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.warn("Runtime snapshot failed, retrying next interval: {}", e.getMessage());
+        }
+    }
+}
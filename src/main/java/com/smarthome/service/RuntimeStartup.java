@@ -0,0 +1,35 @@
+package com.smarthome.service;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Brings the runtime side up from the database once the application is ready,
+ * in every profile: hydrate the device registry, restore runtime state from
+ * snapshots and the event journal, then resume energy accounting. It runs after
+ * all runners, so profile-specific seeding such as the demo data is already
+ * stored.
+ */
+@Component
+public class RuntimeStartup {
+
+    private final DeviceHydrator deviceHydrator;
+    private final RuntimeRecovery runtimeRecovery;
+    private final EnergyAccountant energyAccountant;
+
+    public RuntimeStartup(DeviceHydrator deviceHydrator,
+                          RuntimeRecovery runtimeRecovery,
+                          EnergyAccountant energyAccountant) {
+        this.deviceHydrator = deviceHydrator;
+        this.runtimeRecovery = runtimeRecovery;
+        this.energyAccountant = energyAccountant;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        deviceHydrator.hydrateOnStartup();
+        runtimeRecovery.recover();
+        energyAccountant.resume();
+    }
+}
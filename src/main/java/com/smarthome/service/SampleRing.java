@@ -0,0 +1,67 @@
+package com.smarthome.service;
+
+/**
+ * The latest {@code capacity} samples of one time series, kept in two parallel
+ * primitive arrays; appending overwrites the oldest sample and allocates nothing.
+ */
+public final class SampleRing {
+
+    /** Samples of a range query, oldest first */
+    public record Window(long[] timestamps, double[] values) {
+        public int size() {
+            return timestamps.length;
+        }
+    }
+
+    private final long[] timestamps;
+    private final double[] values;
+    private long written;
+
+    public SampleRing(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public synchronized void add(long timestamp, double value) {
+        int slot = (int) (written % timestamps.length);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        written++;
+    }
+
+    /**
+     * The newest {@code limit} retained samples with {@code from <= timestamp < to}
+     */
+    public synchronized Window range(long from, long to, int limit) {
+        int retained = (int) Math.min(written, timestamps.length);
+        long[] ts = new long[Math.min(retained, limit)];
+        double[] vs = new double[ts.length];
+        int n = 0;
+        // Walk newest to oldest so the limit keeps the most recent samples
+        for (int i = 0; i < retained && n < ts.length; i++) {
+            int slot = (int) ((written - 1 - i) % timestamps.length);
+            long t = timestamps[slot];
+            if (t >= from && t < to) {
+                ts[n] = t;
+                vs[n] = values[slot];
+                n++;
+            }
+        }
+        long[] outTs = new long[n];
+        double[] outVs = new double[n];
+        for (int i = 0; i < n; i++) {
+            outTs[i] = ts[n - 1 - i];
+            outVs[i] = vs[n - 1 - i];
+        }
+        return new Window(outTs, outVs);
+    }
+
+    public synchronized long written() {
+        return written;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+}
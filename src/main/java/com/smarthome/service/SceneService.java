@@ -94,21 +94,13 @@ public class SceneService {
                         (a, b) -> a, LinkedHashMap::new));
 
         List<String> missing = new ArrayList<>();
-        List<DeviceEntity> updated = new ArrayList<>();
-        for (var entry : targetStates.entrySet()) {
-            var maybe = deviceRepository.findById(entry.getKey());
-            if (maybe.isEmpty()) { missing.add(entry.getKey()); continue; }
-            DeviceEntity entity = maybe.get();
-            entity.setOn(entry.getValue());
-            var rt = deviceService.ensureRuntimeDevice(entity);
-            if (entry.getValue()) rt.turnOn(); else rt.turnOff();
-            updated.add(entity);
-        }
-        deviceRepository.saveAll(updated);
-
-        Map<String, Boolean> after = deviceRepository.findAll().stream()
-                .collect(Collectors.toMap(DeviceEntity::getId, DeviceEntity::isOn,
-                        (a, b) -> a, LinkedHashMap::new));
+        Map<String, Boolean> present = new LinkedHashMap<>();
+        targetStates.forEach((id, on) -> {
+            if (before.containsKey(id)) present.put(id, on); else missing.add(id);
+        });
+        // Runtime devices switch in their mailboxes, the entities follow in one bulk write
+        Map<String, Boolean> after = new LinkedHashMap<>(before);
+        deviceService.switchDevices(present).forEach(v -> after.put(v.id(), v.isOn()));
 
         Map<String, Map<String, Boolean>> diffs = new LinkedHashMap<>();
         for (var e : after.entrySet()) {
@@ -2,11 +2,14 @@ package com.smarthome.service;
 
 import com.smarthome.domain.DeviceType;
 import com.smarthome.domain.HomeMode;
+import com.smarthome.domain.RollupTier;
 import com.smarthome.pattern.creational.builder.AutomationRule;
 import com.smarthome.web.viewmodel.*;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Thin facade that delegates to focused services.
@@ -26,29 +29,99 @@ public class SmartHomeService {
     private final SceneService sceneService;
     private final RuleService ruleService;
     private final PatternDemoService patternDemoService;
+    private final IdempotencyService idempotencyService;
+    private final TelemetryService telemetryService;
+    private final TelemetryRollupService telemetryRollupService;
+    private final EnergyAccountant energyAccountant;
+    private final DeviceEventJournal eventJournal;
+    private final RuntimeRecovery runtimeRecovery;
+    private final ExportService exportService;
+    private final DeviceImportService deviceImportService;
+    private final ProvisioningService provisioningService;
 
     public SmartHomeService(DeviceService deviceService,
                             RoomService roomService,
                             SceneService sceneService,
                             RuleService ruleService,
-                            PatternDemoService patternDemoService) {
+                            PatternDemoService patternDemoService,
+                            IdempotencyService idempotencyService,
+                            TelemetryService telemetryService,
+                            TelemetryRollupService telemetryRollupService,
+                            EnergyAccountant energyAccountant,
+                            DeviceEventJournal eventJournal,
+                            RuntimeRecovery runtimeRecovery,
+                            ExportService exportService,
+                            DeviceImportService deviceImportService,
+                            ProvisioningService provisioningService) {
         this.deviceService = deviceService;
         this.roomService = roomService;
         this.sceneService = sceneService;
         this.ruleService = ruleService;
         this.patternDemoService = patternDemoService;
+        this.idempotencyService = idempotencyService;
+        this.telemetryService = telemetryService;
+        this.telemetryRollupService = telemetryRollupService;
+        this.energyAccountant = energyAccountant;
+        this.eventJournal = eventJournal;
+        this.runtimeRecovery = runtimeRecovery;
+        this.exportService = exportService;
+        this.deviceImportService = deviceImportService;
+        this.provisioningService = provisioningService;
     }
 
     // ═══ Device ══════════════════════════════════════════════
     public List<DeviceView> getDevices() { return deviceService.getDevices(); }
     public DeviceView getDevice(String id) { return deviceService.getDevice(id); }
     public DeviceView controlDevice(String id, boolean turnOn) { return deviceService.controlDevice(id, turnOn); }
+    public DeviceView requestControl(String id, boolean turnOn, String clientId) { return deviceService.requestControl(id, turnOn, clientId); }
     public List<DeviceView> controlRoom(String room, boolean turnOn) { return deviceService.controlRoom(room, turnOn); }
     public StatusView getStatus() { return deviceService.getStatus(); }
     public HomeMode setHomeMode(HomeMode mode) { return deviceService.setHomeMode(mode); }
+    public Map<String, Object> getLatencyMetrics() { return deviceService.getLatencyMetrics(); }
+    public Map<String, Object> resetLatencyMetrics() { return deviceService.resetLatencyMetrics(); }
+    public Map<String, Object> getRateLimitStats() { return deviceService.getRateLimitStats(); }
+    public Map<String, Object> getMailboxStats() { return deviceService.getMailboxStats(); }
+    public Map<String, Object> getOptimisticRetryStats() { return deviceService.getOptimisticRetryStats(); }
+    public Map<String, Object> getHydrationStats() { return deviceService.getHydrationStats(); }
+    public Map<String, Object> getIdempotencyStats() { return Map.of("idempotency", idempotencyService.stats()); }
+    public Map<String, Object> getRecoveryStats() { return Map.of("recovery", runtimeRecovery.stats()); }
+
+    // ═══ Telemetry ═══════════════════════════════════════════
+    public TelemetryService.IngestResult ingestTelemetry(java.io.InputStream body) { return telemetryService.ingest(body); }
+    public List<TelemetryService.Series> getDeviceTelemetry(String id, String metric, long from, long to, int limit) { return telemetryService.deviceSeries(id, metric, from, to, limit); }
+    public List<TelemetryService.Series> getRoomTelemetry(String room, String metric, long from, long to, int limit) { return telemetryService.roomSeries(room, metric, from, to, limit); }
+    public List<TelemetryService.Series> getTypeTelemetry(DeviceType type, String metric, long from, long to, int limit) { return telemetryService.typeSeries(type, metric, from, to, limit); }
+    public List<TelemetryRollupService.BucketSeries> getDeviceTelemetryRollups(String id, String metric, RollupTier tier, long from, long to, int limit) { return telemetryService.deviceRollups(id, metric, tier, from, to, limit); }
+    public List<TelemetryRollupService.BucketSeries> getRoomTelemetryRollups(String room, String metric, RollupTier tier, long from, long to, int limit) { return telemetryService.roomRollups(room, metric, tier, from, to, limit); }
+    public List<TelemetryRollupService.BucketSeries> getTypeTelemetryRollups(DeviceType type, String metric, RollupTier tier, long from, long to, int limit) { return telemetryService.typeRollups(type, metric, tier, from, to, limit); }
+    public Map<String, Object> getTelemetryStats() { return Map.of("telemetry", telemetryService.stats(), "rollups", telemetryRollupService.stats()); }
+
+    // ═══ Energy ══════════════════════════════════════════════
+    public EnergyAccountant.Summary getEnergySummary() { return energyAccountant.summary(); }
+    public EnergyAccountant.Reading getDeviceEnergy(String id) { return energyAccountant.device(id); }
+    public EnergyAccountant.Reading getRoomEnergy(String room) { return energyAccountant.room(room); }
+    public EnergyAccountant.Reading getTypeEnergy(DeviceType type) { return energyAccountant.type(type); }
+    public Map<String, Object> getEnergyStats() { return Map.of("energy", energyAccountant.stats()); }
+
+    // ═══ Event Journal ═════════════════════════════════════
+    public List<DeviceEventJournal.Event> getEvents(long from, int limit) { return eventJournal.read(from, limit); }
+    public Map<String, Object> getEventJournalStats() { return Map.of("journal", eventJournal.stats()); }
+
+    // ═══ Export ══════════════════════════════════════════════
+    public long exportDevices(ExportService.Format format, OutputStream out) { return exportService.devices(format, out); }
+    public long exportRooms(ExportService.Format format, OutputStream out) { return exportService.rooms(format, out); }
+    public long exportScenes(ExportService.Format format, OutputStream out) { return exportService.scenes(format, out); }
+    public long exportRules(ExportService.Format format, OutputStream out) { return exportService.rules(format, out); }
+    public long exportEvents(ExportService.Format format, long from, long to, OutputStream out) { return exportService.events(format, from, to, out); }
+    public Map<String, Object> getExportStats() { return Map.of("export", exportService.stats()); }
 
     // ═══ Factory / Abstract Factory ══════════════════════════
     public DeviceView createDeviceViaFactory(DeviceType type, String name, String location) { return deviceService.createDeviceViaFactory(type, name, location); }
+    public DeviceImportService.ImportResult importDevices(ExportService.Format format, java.io.InputStream body) { return deviceImportService.importDevices(format, body); }
+    public Map<String, Object> getImportStats() { return Map.of("import", deviceImportService.stats()); }
+    public ProvisioningService.Result provisionDevices(ProvisioningService.Request request) { return provisioningService.provision(request); }
+    public ProvisioningService.Configuration getDeviceConfiguration(String id) { return provisioningService.configuration(id); }
+    public Map<String, Object> getProvisioningStats() { return Map.of("provisioning", provisioningService.stats()); }
     public List<DeviceView> createDevicesViaAbstractFactory(String eco, String loc) { return deviceService.createDevicesViaAbstractFactory(eco, loc); }
 
     // ═══ Room ════════════════════════════════════════════════
@@ -77,6 +150,7 @@ public class SmartHomeService {
     public Map<String, Object> listPatterns() { return patternDemoService.listPatterns(); }
     public List<Map<String, Object>> listPrototypeTemplates() { return patternDemoService.listPrototypeTemplates(); }
     public Map<String, Object> prototypeClone(String t) { return patternDemoService.prototypeClone(t); }
+    public Map<String, Object> prototypeStats(Integer i) { return patternDemoService.prototypeStats(i); }
     public Map<String, Object> adapterDemo(String n, String l) { return patternDemoService.adapterDemo(n, l); }
     public Map<String, Object> bridgeDemo() { return patternDemoService.bridgeDemo(); }
     public Map<String, Object> bridgeControl(String r, String d, String a) { return patternDemoService.bridgeControl(r, d, a); }
@@ -84,15 +158,25 @@ public class SmartHomeService {
     public Map<String, Object> roomsComposite() { return patternDemoService.roomsComposite(); }
     public Map<String, Object> compositeControl(String t, String a) { return patternDemoService.compositeControl(t, a); }
     public Map<String, Object> compositeAction(String g, String a) { return patternDemoService.compositeAction(g, a); }
+    public Map<String, Object> compositeFanOut(String t, String a, Integer c, Long d) { return patternDemoService.compositeFanOut(t, a, c, d); }
     public Map<String, Object> decoratorWrap(String id, String d) { return patternDemoService.decoratorWrap(id, d); }
+    public Map<String, Object> decoratorCaches() { return patternDemoService.decoratorCaches(); }
     public Map<String, Object> activateScene(String n) { return patternDemoService.activateScene(n); }
     public Map<String, Object> flyweightDemo(Integer c) { return patternDemoService.flyweightDemo(c); }
     public Map<String, Object> flyweightStats(Integer i) { return patternDemoService.flyweightStats(i); }
     public Map<String, Object> proxyRemote(String n, String a) { return patternDemoService.proxyRemote(n, a); }
+    public Map<String, Object> proxyCacheStats() { return patternDemoService.proxyCacheStats(); }
+    public Map<String, Object> proxyCircuits() { return patternDemoService.proxyCircuits(); }
+    public CompletableFuture<Map<String, Object>> proxyRemoteAsync(String n, String a, Integer c) { return patternDemoService.proxyRemoteAsync(n, a, c); }
     public Map<String, Object> chainAlert(String d, String l, String m) { return patternDemoService.chainAlert(d, l, m); }
-    public Map<String, Object> commandExecute(String d, String c) { return patternDemoService.commandExecute(d, c); }
-    public Map<String, Object> commandUndo() { return patternDemoService.commandUndo(); }
-    public Map<String, Object> commandRedo() { return patternDemoService.commandRedo(); }
+    public Map<String, Object> commandExecute(String u, String d, String c) { return patternDemoService.commandExecute(u, d, c); }
+    public Map<String, Object> commandUndo(String u) { return patternDemoService.commandUndo(u); }
+    public Map<String, Object> commandRedo(String u) { return patternDemoService.commandRedo(u); }
+    public CompletableFuture<Map<String, Object>> commandBatch(String u, String d, List<String> c) { return patternDemoService.commandBatch(u, d, c); }
+    public Map<String, Object> commandMacro(String u, String n, List<String> s) { return patternDemoService.commandMacro(u, n, s); }
+    public Map<String, Object> commandHistory(String u, String d, Integer l) { return patternDemoService.commandHistory(u, d, l); }
+    public Map<String, Object> commandDeviceHistory(String d, Integer l) { return patternDemoService.commandDeviceHistory(d, l); }
+    public Map<String, Object> commandPipelineStats() { return patternDemoService.commandPipelineStats(); }
     public Map<String, Object> interpreterEvaluate(String r, Map<String, Object> v) { return patternDemoService.interpreterEvaluate(r, v); }
     public Map<String, Object> interpreterEvaluate(String r) { return patternDemoService.interpreterEvaluate(r); }
     public Map<String, Object> iteratorIterate(String t, String f) { return patternDemoService.iteratorIterate(t, f); }
@@ -0,0 +1,98 @@
+package com.smarthome.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered 64-bit ids: 42 bits of milliseconds since 2024-01-01, 10 bits of
+ * node id and a 12-bit sequence, written as 13 lowercase Crockford base32
+ * characters so string order equals numeric order.
+ *
+ * The time and sequence share one AtomicLong that only moves forward, so ids
+ * are claimed with a single CAS and never repeat on this node, even when the
+ * clock steps back; a burst of more than 4096 ids in a millisecond borrows
+ * from the next one instead of waiting. New ids sort after older ones, which
+ * keeps inserts at the right edge of the primary key index.
+ */
+@Component
+public class SnowflakeIdGenerator implements DeviceIdGenerator {
+
+    private static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final char[] ALPHABET = "0123456789abcdefghjkmnpqrstvwxyz".toCharArray();
+
+    private final long node;
+    private final AtomicLong lastClaimed = new AtomicLong();
+
+    /**
+     * @param node id of this process among those writing to the same table; a
+     *             negative value derives one from the process id
+     */
+    public SnowflakeIdGenerator(@Value("${smarthome.id.node:-1}") long node) {
+        if (node > MAX_NODE) throw new IllegalArgumentException("node must be at most " + MAX_NODE);
+        this.node = node >= 0 ? node : ProcessHandle.current().pid() & MAX_NODE;
+    }
+
+    @Override
+    public String next(String prefix) {
+        return prefix + "-" + encode(claim(1));
+    }
+
+    @Override
+    public List<String> reserve(int count) {
+        if (count <= 0) throw new IllegalArgumentException("count must be positive");
+        long first = claim(count);
+        List<String> suffixes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            suffixes.add(encode(first + i));
+        }
+        return suffixes;
+    }
+
+    /**
+     * The moment an id was generated, to the millisecond
+     */
+    public static Instant timestampOf(String id) {
+        String suffix = id.substring(id.lastIndexOf('-') + 1);
+        long value = 0;
+        for (char c : suffix.toCharArray()) {
+            value = (value << 5) | decode(c);
+        }
+        return Instant.ofEpochMilli((value >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS);
+    }
+
+    /**
+     * Claim {@code count} consecutive (time, sequence) slots; returns the first
+     */
+    private long claim(int count) {
+        long floor = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        return lastClaimed.updateAndGet(last -> Math.max(last + 1, floor) + count - 1) - count + 1;
+    }
+
+    private String encode(long slot) {
+        long millis = slot >>> SEQUENCE_BITS;
+        long sequence = slot & ((1L << SEQUENCE_BITS) - 1);
+        long id = (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+
+        char[] out = new char[13];
+        for (int i = 12; i >= 0; i--) {
+            out[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(out);
+    }
+
+    private static int decode(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) return i;
+        }
+        throw new IllegalArgumentException("Not a generated id: unexpected '" + c + "'");
+    }
+}
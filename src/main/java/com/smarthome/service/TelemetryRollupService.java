@@ -0,0 +1,237 @@
+package com.smarthome.service;
+
+import com.smarthome.domain.RollupTier;
+import com.smarthome.domain.TelemetryRollupEntity;
+import com.smarthome.repository.TelemetryRollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downsampled telemetry: every accepted sample also lands in 1-minute, 1-hour
+ * and 1-day min/max/sum/count buckets of its series ({@link RollupBuckets}).
+ *
+ * A background job writes buckets to {@code telemetry_rollup} once they closed
+ * (plus a grace period for late samples) and then expires each tier by its own
+ * retention, dropping whole days of that tier at once. Queries read the recent
+ * buckets from memory and older ones from the table, so a coarse view of a
+ * series outlives its raw ring by far.
+ */
+@Service
+public class TelemetryRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryRollupService.class);
+    private static final long MILLIS_PER_DAY = Duration.ofDays(1).toMillis();
+
+    public record BucketSeries(String deviceId, String metric, RollupTier tier, int count, long[] bucketStarts,
+                               double[] min, double[] max, double[] avg, long[] counts) {}
+
+    public record Stats(int series, Map<RollupTier, Integer> bucketsPerSeries, Map<RollupTier, Duration> retention,
+                        long flushes, long bucketsFlushed, long rowsExpired, long lateSamples, Instant lastFlushAt) {}
+
+    /**
+     * The rollups of one series, one bucket ring per tier
+     */
+    public final class SeriesRollups {
+        private final RollupBuckets[] tiers = new RollupBuckets[RollupTier.values().length];
+
+        private SeriesRollups() {
+            for (RollupTier tier : RollupTier.values()) {
+                tiers[tier.ordinal()] = new RollupBuckets(tier, capacity.get(tier));
+            }
+        }
+
+        public void add(long timestamp, double value) {
+            for (RollupBuckets buckets : tiers) {
+                buckets.add(timestamp, value);
+            }
+        }
+
+        RollupBuckets of(RollupTier tier) {
+            return tiers[tier.ordinal()];
+        }
+    }
+
+    private final TelemetryRollupRepository repository;
+    private final Map<RollupTier, Integer> capacity = new EnumMap<>(RollupTier.class);
+    private final Map<RollupTier, Duration> retention = new EnumMap<>(RollupTier.class);
+    private final long graceMillis;
+
+    private final Map<String, Map<String, SeriesRollups>> rollups = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "telemetry-rollup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder bucketsFlushed = new LongAdder();
+    private final LongAdder rowsExpired = new LongAdder();
+    private volatile Instant lastFlushAt;
+
+    public TelemetryRollupService(TelemetryRollupRepository repository,
+                                  @Value("${smarthome.telemetry.rollup.interval:PT10S}") Duration interval,
+                                  @Value("${smarthome.telemetry.rollup.grace:PT1M}") Duration grace,
+                                  @Value("${smarthome.telemetry.rollup.minute.buckets:180}") int minuteBuckets,
+                                  @Value("${smarthome.telemetry.rollup.minute.retention:P7D}") Duration minuteRetention,
+                                  @Value("${smarthome.telemetry.rollup.hour.buckets:72}") int hourBuckets,
+                                  @Value("${smarthome.telemetry.rollup.hour.retention:P90D}") Duration hourRetention,
+                                  @Value("${smarthome.telemetry.rollup.day.buckets:31}") int dayBuckets,
+                                  @Value("${smarthome.telemetry.rollup.day.retention:P3650D}") Duration dayRetention) {
+        if (minuteBuckets <= 0 || hourBuckets <= 0 || dayBuckets <= 0) {
+            throw new IllegalArgumentException("rollup bucket counts must be positive");
+        }
+        this.repository = repository;
+        this.graceMillis = grace.toMillis();
+        capacity.put(RollupTier.MINUTE, minuteBuckets);
+        capacity.put(RollupTier.HOUR, hourBuckets);
+        capacity.put(RollupTier.DAY, dayBuckets);
+        retention.put(RollupTier.MINUTE, minuteRetention);
+        retention.put(RollupTier.HOUR, hourRetention);
+        retention.put(RollupTier.DAY, dayRetention);
+
+        long period = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The rollups of a series, created on first use; the caller has already accepted the series
+     */
+    public SeriesRollups rollupsFor(String deviceId, String metric) {
+        return rollups.computeIfAbsent(deviceId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(metric, k -> new SeriesRollups());
+    }
+
+    /**
+     * Buckets of one device at {@code tier}, per metric ({@code metric} null for all)
+     */
+    public List<BucketSeries> deviceBuckets(String deviceId, String metric, RollupTier tier,
+                                            long from, long to, int limit) {
+        Map<String, SeriesRollups> byMetric = rollups.get(deviceId);
+        if (byMetric == null) return List.of();
+        List<BucketSeries> out = new ArrayList<>();
+        byMetric.forEach((m, series) -> {
+            if (metric == null || metric.equals(m)) out.add(buckets(deviceId, m, series.of(tier), from, to, limit));
+        });
+        return out;
+    }
+
+    /**
+     * Write closed buckets of every series and expire rows past each tier's retention.
+     * When the write fails the buckets are put back and written by a later flush.
+     */
+    public synchronized int flush(long now) {
+        long closedBefore = now - graceMillis;
+        List<TelemetryRollupEntity> rows = new ArrayList<>();
+        List<RollupBuckets> flushedFrom = new ArrayList<>();
+        rollups.forEach((deviceId, byMetric) -> byMetric.forEach((metric, series) -> {
+            for (RollupBuckets buckets : series.tiers) {
+                int n = buckets.flush(closedBefore, (start, min, max, sum, count) -> rows.add(
+                        new TelemetryRollupEntity(buckets.tier(), deviceId, metric, start, min, max, sum, count)));
+                if (n > 0) flushedFrom.add(buckets);
+            }
+        }));
+        try {
+            if (!rows.isEmpty()) repository.saveAll(rows);
+        } catch (RuntimeException e) {
+            flushedFrom.forEach(RollupBuckets::restore);
+            throw e;
+        }
+        flushedFrom.forEach(RollupBuckets::confirm);
+
+        int expired = 0;
+        for (RollupTier tier : RollupTier.values()) {
+            long keepFromDay = Math.floorDiv(now - retention.get(tier).toMillis(), MILLIS_PER_DAY);
+            expired += repository.dropPartitionsBefore(tier, keepFromDay);
+        }
+
+        flushes.increment();
+        bucketsFlushed.add(rows.size());
+        rowsExpired.add(expired);
+        lastFlushAt = Instant.ofEpochMilli(now);
+        if (!rows.isEmpty() || expired > 0) {
+            log.debug("Flushed {} rollup buckets, expired {} rows", rows.size(), expired);
+        }
+        return rows.size();
+    }
+
+    public Stats stats() {
+        long late = 0;
+        int series = 0;
+        for (Map<String, SeriesRollups> byMetric : rollups.values()) {
+            for (SeriesRollups s : byMetric.values()) {
+                series++;
+                for (RollupBuckets buckets : s.tiers) late += buckets.late();
+            }
+        }
+        return new Stats(series, new EnumMap<>(capacity), new EnumMap<>(retention), flushes.sum(), bucketsFlushed.sum(),
+                rowsExpired.sum(), late, lastFlushAt);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    private void flushSafely() {
+        try {
+            flush(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("Telemetry rollup flush failed, retrying next interval", e);
+        }
+    }
+
+    /**
+     * Buckets still in memory, preceded by flushed ones that were recycled out of it
+     */
+    private BucketSeries buckets(String deviceId, String metric, RollupBuckets buckets,
+                                 long from, long to, int limit) {
+        RollupBuckets.Window recent = buckets.range(from, to, limit);
+        long inMemoryFrom = Math.min(buckets.oldestStart(), to);
+        List<TelemetryRollupEntity> older = recent.size() < limit && from < inMemoryFrom
+                ? repository.findByDeviceIdAndMetricAndTierAndBucketStartBetweenOrderByBucketStart(
+                        deviceId, metric, buckets.tier(), from, inMemoryFrom - 1)
+                : List.of();
+
+        int fromDb = Math.min(older.size(), limit - recent.size());
+        int size = fromDb + recent.size();
+        long[] starts = new long[size];
+        double[] min = new double[size];
+        double[] max = new double[size];
+        double[] avg = new double[size];
+        long[] counts = new long[size];
+        for (int i = 0; i < fromDb; i++) {
+            TelemetryRollupEntity row = older.get(older.size() - fromDb + i);
+            starts[i] = row.getBucketStart();
+            min[i] = row.getMin();
+            max[i] = row.getMax();
+            avg[i] = row.getSum() / row.getCount();
+            counts[i] = row.getCount();
+        }
+        for (int i = 0; i < recent.size(); i++) {
+            int j = fromDb + i;
+            starts[j] = recent.starts()[i];
+            min[j] = recent.min()[i];
+            max[j] = recent.max()[i];
+            avg[j] = recent.sum()[i] / recent.count()[i];
+            counts[j] = recent.count()[i];
+        }
+        return new BucketSeries(deviceId, metric, buckets.tier(), size, starts, min, max, avg, counts);
+    }
+}
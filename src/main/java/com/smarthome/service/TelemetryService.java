@@ -0,0 +1,343 @@
+package com.smarthome.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.domain.RollupTier;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import com.smarthome.repository.DeviceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory device telemetry: the latest samples of every (device, metric)
+ * series in a {@link SampleRing}.
+ *
+ * Batches are parsed with the streaming JSON parser straight into the rings,
+ * so a sample is never materialized as an object or retained as one. Two formats are accepted on the same
+ * endpoint: newline-delimited objects
+ * {@code {"deviceId":"x","metric":"power","ts":1700000000000,"value":12.5}}
+ * and a compact array of {@code ["x","power",1700000000000,12.5]} rows. The
+ * timestamp is epoch milliseconds and may be omitted or null to mean now.
+ * Samples for unknown devices, new series beyond {@code max-series}, and
+ * samples with a bad field (a timestamp that is not an integer, a row without
+ * exactly four elements) are counted as rejected rather than failing the
+ * batch. Only invalid JSON stops parsing: with nothing accepted yet the batch
+ * fails with 400, otherwise the result reports what was kept and the parse
+ * error, since samples are written as they are read. Accepted samples are also
+ * folded into the series' downsampled rollups ({@link TelemetryRollupService}).
+ */
+@Service
+public class TelemetryService {
+
+    /**
+     * @param error why parsing stopped early, after {@code accepted} samples were kept; null when the whole body was read
+     */
+    public record IngestResult(int accepted, int rejected, long elapsedMicros, String error) {}
+
+    public record Series(String deviceId, String metric, int count, long[] timestamps, double[] values) {}
+
+    public record Stats(int series, int maxSeries, int capacityPerSeries, long batches,
+                        long accepted, long rejected, long peakSamplesPerSecond) {}
+
+    private final DeviceRepository deviceRepository;
+    private final TelemetryRollupService rollupService;
+    private final ObjectMapper objectMapper;
+    private final int capacity;
+    private final int maxSeries;
+    private final HomeController homeController = HomeController.INSTANCE;
+
+    private final Map<String, Map<String, SampleRing>> rings = new ConcurrentHashMap<>();
+    private final Set<String> knownDevices = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger seriesCount = new AtomicInteger();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile long peakSamplesPerSecond;
+
+    public TelemetryService(DeviceRepository deviceRepository,
+                            TelemetryRollupService rollupService,
+                            ObjectMapper objectMapper,
+                            @Value("${smarthome.telemetry.capacity-per-series:1024}") int capacity,
+                            @Value("${smarthome.telemetry.max-series:10000}") int maxSeries) {
+        if (capacity <= 0 || maxSeries <= 0) throw new IllegalArgumentException("capacity and max-series must be positive");
+        this.deviceRepository = deviceRepository;
+        this.rollupService = rollupService;
+        this.objectMapper = objectMapper;
+        this.capacity = capacity;
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * Parse a batch and append its samples
+     *
+     * @throws IllegalArgumentException if the body is not valid JSON before any sample was accepted
+     */
+    public IngestResult ingest(InputStream body) {
+        long start = System.nanoTime();
+        Batch batch = new Batch();
+        String error = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token == JsonToken.START_OBJECT) {
+                    readObject(parser, batch);
+                } else if (token == JsonToken.START_ARRAY) {
+                    for (JsonToken row = parser.nextToken(); row != JsonToken.END_ARRAY; row = parser.nextToken()) {
+                        if (row == null) throw malformed("unterminated array of rows");
+                        if (row == JsonToken.START_ARRAY) {
+                            readRow(parser, batch);
+                        } else {
+                            skipStructured(parser, row); // not a [deviceId, metric, timestamp, value] row
+                            batch.rejected++;
+                        }
+                    }
+                } else {
+                    batch.rejected++; // a bare value is not a sample
+                }
+            }
+        } catch (JsonProcessingException e) {
+            if (batch.accepted == 0) throw malformed(e.getOriginalMessage());
+            error = "Malformed telemetry: " + e.getOriginalMessage() + "; nothing after it was read";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        batches.increment();
+        accepted.add(batch.accepted);
+        rejected.add(batch.rejected);
+        if (batch.accepted >= 1_000) {
+            long rate = batch.accepted * 1_000_000_000L / elapsedNanos;
+            if (rate > peakSamplesPerSecond) peakSamplesPerSecond = rate;
+        }
+        return new IngestResult(batch.accepted, batch.rejected, TimeUnit.NANOSECONDS.toMicros(elapsedNanos), error);
+    }
+
+    /**
+     * Retained samples of one device, per metric ({@code metric} null for all)
+     */
+    public List<Series> deviceSeries(String deviceId, String metric, long from, long to, int limit) {
+        Map<String, SampleRing> byMetric = rings.get(deviceId);
+        if (byMetric == null) return List.of();
+        List<Series> out = new ArrayList<>();
+        byMetric.forEach((m, ring) -> {
+            if (metric == null || metric.equals(m)) out.add(series(deviceId, m, ring, from, to, limit));
+        });
+        return out;
+    }
+
+    public List<Series> roomSeries(String room, String metric, long from, long to, int limit) {
+        return seriesOf(deviceRepository.findByLocationIgnoreCase(room), metric, from, to, limit);
+    }
+
+    public List<Series> typeSeries(DeviceType type, String metric, long from, long to, int limit) {
+        return seriesOf(deviceRepository.findByType(type), metric, from, to, limit);
+    }
+
+    /**
+     * Rollup buckets of one device at {@code tier}, per metric ({@code metric} null for all)
+     */
+    public List<TelemetryRollupService.BucketSeries> deviceRollups(String deviceId, String metric, RollupTier tier,
+                                                                  long from, long to, int limit) {
+        return rollupService.deviceBuckets(deviceId, metric, tier, from, to, limit);
+    }
+
+    public List<TelemetryRollupService.BucketSeries> roomRollups(String room, String metric, RollupTier tier,
+                                                                long from, long to, int limit) {
+        return rollupsOf(deviceRepository.findByLocationIgnoreCase(room), metric, tier, from, to, limit);
+    }
+
+    public List<TelemetryRollupService.BucketSeries> typeRollups(DeviceType type, String metric, RollupTier tier,
+                                                                long from, long to, int limit) {
+        return rollupsOf(deviceRepository.findByType(type), metric, tier, from, to, limit);
+    }
+
+    public Stats stats() {
+        return new Stats(seriesCount.get(), maxSeries, capacity, batches.sum(), accepted.sum(), rejected.sum(),
+                peakSamplesPerSecond);
+    }
+
+    // ── Internals ────────────────────────────────────────────
+
+    /**
+     * Per-request state; caches the last series so runs of samples for one series skip the map lookups
+     */
+    private final class Batch {
+        int accepted;
+        int rejected;
+        final Map<String, Boolean> unknown = new HashMap<>();
+        String lastDevice;
+        String lastMetric;
+        SampleRing lastRing;
+        TelemetryRollupService.SeriesRollups lastRollups;
+
+        void add(String deviceId, String metric, long timestamp, double value) {
+            if (deviceId == null || metric == null || Double.isNaN(value)) {
+                rejected++;
+                return;
+            }
+            SampleRing ring;
+            if (deviceId.equals(lastDevice) && metric.equals(lastMetric)) {
+                ring = lastRing;
+            } else {
+                ring = unknown.containsKey(deviceId) ? null : ringFor(deviceId, metric);
+                if (ring == null) {
+                    if (!knownDevices.contains(deviceId)) unknown.put(deviceId, Boolean.TRUE);
+                    rejected++;
+                    return;
+                }
+                lastDevice = deviceId;
+                lastMetric = metric;
+                lastRing = ring;
+                lastRollups = rollupService.rollupsFor(deviceId, metric);
+            }
+            ring.add(timestamp, value);
+            lastRollups.add(timestamp, value);
+            accepted++;
+        }
+    }
+
+    private SampleRing ringFor(String deviceId, String metric) {
+        Map<String, SampleRing> byMetric = rings.get(deviceId);
+        SampleRing ring = byMetric == null ? null : byMetric.get(metric);
+        if (ring != null) return ring;
+        if (!isKnownDevice(deviceId)) return null;
+        return rings.computeIfAbsent(deviceId, k -> new ConcurrentHashMap<>()).computeIfAbsent(metric, k -> {
+            if (seriesCount.incrementAndGet() > maxSeries) {
+                seriesCount.decrementAndGet();
+                return null;
+            }
+            return new SampleRing(capacity);
+        });
+    }
+
+    private boolean isKnownDevice(String deviceId) {
+        if (knownDevices.contains(deviceId)) return true;
+        if (homeController.getDevice(deviceId) != null || deviceRepository.existsById(deviceId)) {
+            knownDevices.add(deviceId);
+            return true;
+        }
+        return false;
+    }
+
+    private void readObject(JsonParser parser, Batch batch) throws IOException {
+        String deviceId = null;
+        String metric = null;
+        long timestamp = System.currentTimeMillis();
+        double value = Double.NaN;
+        boolean invalid = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token.isStructStart()) {
+                // A nested object or array is never a valid sample field; skip it whole and reject the sample
+                parser.skipChildren();
+                invalid |= switch (field) {
+                    case "deviceId", "metric", "ts", "timestamp", "value" -> true;
+                    default -> false;
+                };
+                continue;
+            }
+            switch (field) {
+                case "deviceId" -> deviceId = parser.getValueAsString();
+                case "metric" -> metric = parser.getValueAsString();
+                case "ts", "timestamp" -> {
+                    Long ts = timestampOf(parser, token);
+                    if (ts == null) invalid = true; else timestamp = ts;
+                }
+                case "value" -> value = token.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+                default -> { }
+            }
+        }
+        batch.add(invalid ? null : deviceId, metric, timestamp, value);
+    }
+
+    private void readRow(JsonParser parser, Batch batch) throws IOException {
+        String deviceId = null;
+        String metric = null;
+        long timestamp = System.currentTimeMillis();
+        double value = Double.NaN;
+        boolean invalid = false;
+        int elements = 0;
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token == null) throw malformed("unterminated row");
+            if (skipStructured(parser, token)) {
+                invalid = true;
+                elements++;
+                continue;
+            }
+            switch (elements++) {
+                case 0 -> deviceId = parser.getValueAsString();
+                case 1 -> metric = parser.getValueAsString();
+                case 2 -> {
+                    Long ts = timestampOf(parser, token);
+                    if (ts == null) invalid = true; else timestamp = ts;
+                }
+                case 3 -> value = token.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+                default -> invalid = true;
+            }
+        }
+        batch.add(invalid || elements != 4 ? null : deviceId, metric, timestamp, value);
+    }
+
+    /**
+     * Epoch millis of a timestamp field, now for null, or null when it is not a long integer
+     */
+    private static Long timestampOf(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) return System.currentTimeMillis();
+        if (token != JsonToken.VALUE_NUMBER_INT) return null;
+        JsonParser.NumberType type = parser.getNumberType();
+        return type == JsonParser.NumberType.INT || type == JsonParser.NumberType.LONG ? parser.getLongValue() : null;
+    }
+
+    /**
+     * Skip a nested object or array at the current token, leaving the parser on its end token
+     */
+    private static boolean skipStructured(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null || !token.isStructStart()) return false;
+        parser.skipChildren();
+        return true;
+    }
+
+    private List<Series> seriesOf(List<DeviceEntity> devices, String metric, long from, long to, int limit) {
+        List<Series> out = new ArrayList<>();
+        for (DeviceEntity device : devices) {
+            out.addAll(deviceSeries(device.getId(), metric, from, to, limit));
+        }
+        return out;
+    }
+
+    private List<TelemetryRollupService.BucketSeries> rollupsOf(List<DeviceEntity> devices, String metric,
+                                                               RollupTier tier, long from, long to, int limit) {
+        List<TelemetryRollupService.BucketSeries> out = new ArrayList<>();
+        for (DeviceEntity device : devices) {
+            out.addAll(deviceRollups(device.getId(), metric, tier, from, to, limit));
+        }
+        return out;
+    }
+
+    private static Series series(String deviceId, String metric, SampleRing ring, long from, long to, int limit) {
+        SampleRing.Window window = ring.range(from, to, limit);
+        return new Series(deviceId, metric, window.size(), window.timestamps(), window.values());
+    }
+
+    private static IllegalArgumentException malformed(String detail) {
+        return new IllegalArgumentException("Malformed telemetry: " + detail);
+    }
+}
@@ -0,0 +1,175 @@
+package com.smarthome;
+
+import com.smarthome.pattern.behavioral.command.CommandJournal;
+import com.smarthome.pattern.behavioral.command.CommandJournal.Action;
+import com.smarthome.pattern.behavioral.command.CommandJournal.Entry;
+import com.smarthome.pattern.behavioral.command.CommandJournal.Logged;
+import com.smarthome.pattern.behavioral.command.CommandJournal.Step;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bounded undo/redo journal over its append-only log.
+ */
+class CommandJournalTest {
+
+    private final InMemoryLog store = new InMemoryLog();
+
+    @Test
+    void memoryStaysBoundedAndUndoReachesIntoOverflow() {
+        CommandJournal journal = new CommandJournal(3, 10, store);
+        for (int i = 1; i <= 10; i++) {
+            journal.record("alice", "ON#" + i, List.of(new Step("light", "ON", "OFF")));
+        }
+        assertEquals(3, journal.stats().inMemoryEntries());
+        assertEquals(7, journal.stats().spilled());
+        assertEquals(10, store.rows.size(), "the log keeps what memory dropped");
+
+        for (int i = 10; i >= 1; i--) {
+            assertEquals("ON#" + i, journal.undo("alice").orElseThrow().label());
+        }
+        assertTrue(journal.undo("alice").isEmpty());
+        assertEquals(7, journal.stats().restored());
+        assertTrue(journal.stats().inMemoryEntries() <= 3, "redo window is bounded too");
+    }
+
+    @Test
+    void redoReplaysUndoneEntriesUntilANewCommandArrives() {
+        CommandJournal journal = new CommandJournal(10, 10, store);
+        journal.record("bob", "first", List.of(new Step("light", "ON", "OFF")));
+        journal.record("bob", "second", List.of(new Step("light", "BRIGHTNESS:20", "BRIGHTNESS:80")));
+
+        assertEquals("second", journal.undo("bob").orElseThrow().label());
+        assertEquals("first", journal.undo("bob").orElseThrow().label());
+        assertEquals("first", journal.redo("bob").orElseThrow().label());
+
+        journal.record("bob", "third", List.of(new Step("light", "OFF", "ON")));
+        assertTrue(journal.redo("bob").isEmpty(), "a new command discards the redo history");
+        assertEquals(List.of("third", "first"), journal.history("bob", null, 10).stream().map(Entry::label).toList());
+    }
+
+    @Test
+    void macroIsOneEntryAndHistoryFiltersByDevice() {
+        CommandJournal journal = new CommandJournal(10, 10, store);
+        journal.record("carol", "evening", List.of(
+                new Step("hall-light", "ON", "OFF"),
+                new Step("thermostat", "TEMPERATURE:21.0", "TEMPERATURE:19.0")));
+        journal.record("carol", "ON", List.of(new Step("hall-light", "OFF", "ON")));
+
+        assertEquals(1, journal.history("carol", "thermostat", 10).size());
+        assertEquals(2, journal.history("carol", "hall-light", 10).size());
+
+        journal.undo("carol");
+        Entry macro = journal.undo("carol").orElseThrow();
+        assertEquals("evening", macro.label());
+        assertEquals(2, macro.steps().size());
+    }
+
+    @Test
+    void leastRecentlyUsedUsersAreSpilledAndKeepTheirHistory() {
+        CommandJournal journal = new CommandJournal(5, 2, store);
+        journal.record("u1", "a", List.of(new Step("d", "ON", "OFF")));
+        journal.record("u1", "b", List.of(new Step("d", "OFF", "ON")));
+        journal.record("u2", "c", List.of(new Step("d", "ON", "OFF")));
+        journal.record("u3", "d", List.of(new Step("d", "ON", "OFF")));
+
+        assertEquals(2, journal.stats().users());
+        assertEquals(2, journal.stats().spilled(), "u1's window was dropped, its log remains");
+        assertEquals("b", journal.undo("u1").orElseThrow().label());
+        assertEquals("a", journal.undo("u1").orElseThrow().label());
+        assertTrue(journal.undo("u1").isEmpty());
+    }
+
+    @Test
+    void sequencesContinueAcrossRestartsAndUndoReachesEarlierSessions() {
+        CommandJournal first = new CommandJournal(5, 10, store);
+        Entry old = first.record("dave", "old", List.of(new Step("d", "ON", "OFF")));
+
+        CommandJournal restarted = new CommandJournal(5, 10, store);
+        Entry fresh = restarted.record("dave", "fresh", List.of(new Step("d", "OFF", "ON")));
+        assertTrue(fresh.sequence() > old.sequence(), "a restart must not reuse sequence numbers");
+
+        assertEquals("fresh", restarted.undo("dave").orElseThrow().label());
+        assertEquals("old", restarted.undo("dave").orElseThrow().label());
+        assertTrue(restarted.undo("dave").isEmpty());
+    }
+
+    @Test
+    void theLogIsOnlyAppendedAndKeepsAPerDeviceJournal() {
+        CommandJournal journal = new CommandJournal(1, 10, store);
+        journal.record("erin", "scene", List.of(new Step("lamp", "ON", "OFF"), new Step("fan", "ON", "OFF")));
+        journal.record("frank", "ON", List.of(new Step("lamp", "BRIGHTNESS:10", "BRIGHTNESS:100")));
+        journal.undo("erin");
+        journal.redo("erin");
+
+        assertEquals(4, store.rows.size(), "undo and redo append, nothing is removed");
+        List<Logged> lamp = journal.deviceHistory("lamp", 10);
+        assertEquals(List.of(Action.REDO, Action.UNDO, Action.RECORD, Action.RECORD), lamp.stream().map(Logged::action).toList());
+        assertEquals(List.of("erin", "erin", "frank", "erin"), lamp.stream().map(Logged::userId).toList());
+        assertEquals(3, journal.deviceHistory("fan", 10).size());
+    }
+
+    @Test
+    void entriesTheLogCannotKeepAreRejectedUpFront() {
+        String tooLong = "x".repeat(CommandJournal.MAX_TEXT + 1);
+        List<Step> steps = List.of(new Step("d", "ON", "OFF"));
+        assertThrows(IllegalArgumentException.class, () -> CommandJournal.requireStorable(tooLong, steps));
+        assertThrows(IllegalArgumentException.class,
+                () -> CommandJournal.requireStorable("ok", List.of(new Step("d", tooLong, "OFF"))));
+        CommandJournal journal = new CommandJournal(5, 10, store);
+        assertThrows(IllegalArgumentException.class, () -> journal.record("gina", tooLong, steps));
+        assertTrue(store.rows.isEmpty());
+    }
+
+    /**
+     * Stand-in for the database log
+     */
+    private static final class InMemoryLog implements CommandJournal.Store {
+        private record Row(Entry entry, Action action, Instant at) {}
+
+        final List<Row> rows = new ArrayList<>();
+
+        @Override
+        public synchronized void append(Entry entry, Action action) {
+            rows.add(new Row(entry, action, Instant.now()));
+        }
+
+        @Override
+        public synchronized List<Entry> stack(String userId, int limit) {
+            List<Entry> out = new ArrayList<>();
+            Set<Long> seen = new HashSet<>();
+            for (int i = rows.size() - 1; i >= 0 && out.size() < limit; i--) {
+                Row row = rows.get(i);
+                if (!seen.add(row.entry().sequence())) continue; // only the latest action counts
+                if (row.entry().userId().equals(userId) && row.action() != Action.UNDO) out.add(row.entry());
+            }
+            return out;
+        }
+
+        @Override
+        public synchronized List<Logged> device(String deviceId, int limit) {
+            List<Logged> out = new ArrayList<>();
+            for (int i = rows.size() - 1; i >= 0 && out.size() < limit; i--) {
+                Row row = rows.get(i);
+                for (Step step : row.entry().steps()) {
+                    if (step.deviceId().equals(deviceId)) {
+                        out.add(new Logged(row.entry().sequence(), row.entry().userId(), row.action(), row.entry().label(), step, row.at()));
+                    }
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public synchronized long lastSequence() {
+            return rows.stream().mapToLong(r -> r.entry().sequence()).max().orElse(0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.smarthome;
+
+import com.smarthome.service.DeviceEventJournal;
+import com.smarthome.service.DeviceEventJournal.Event;
+import com.smarthome.service.DeviceEventJournal.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Memory-mapped device event journal: recovery, segment rolling, retention and group commit.
+ */
+class DeviceEventJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<DeviceEventJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() {
+        opened.forEach(DeviceEventJournal::close);
+    }
+
+    @Test
+    void appendedEventsReadBackInOrder() {
+        DeviceEventJournal journal = open(DataSize.ofMegabytes(1), DataSize.ofGigabytes(1));
+        assertEquals(1, journal.append(Type.STATE_CHANGE, "kitchen-light", "ON"));
+        assertEquals(2, journal.append(Type.MODE_CHANGE, "home", "NORMAL -> AWAY"));
+        assertEquals(3, journal.append(Type.ALERT, "front-camera", "CRITICAL: " + "x".repeat(200)));
+
+        List<Event> events = journal.read(1, 10);
+        assertEquals(3, events.size());
+        assertEquals(Type.STATE_CHANGE, events.get(0).type());
+        assertEquals("kitchen-light", events.get(0).deviceId());
+        assertEquals("NORMAL -> AWAY", events.get(1).detail());
+        assertEquals(64, events.get(2).detail().length(), "long details are truncated to the record");
+        assertEquals(List.of(2L), journal.read(2, 1).stream().map(Event::sequence).toList());
+    }
+
+    @Test
+    void reopeningContinuesAfterTheLastIntactEvent() {
+        DeviceEventJournal journal = open(DataSize.ofMegabytes(1), DataSize.ofGigabytes(1));
+        for (int i = 0; i < 10; i++) journal.append(Type.COMMAND, "bed-light", "Turn ON #" + i);
+        journal.close();
+
+        assertThrows(IllegalStateException.class, () -> journal.append(Type.COMMAND, "bed-light", "late"));
+        DeviceEventJournal reopened = open(DataSize.ofMegabytes(1), DataSize.ofGigabytes(1));
+        assertEquals(10, reopened.lastSequence());
+        assertEquals(11, reopened.append(Type.COMMAND, "bed-light", "Turn OFF"));
+        assertEquals("Turn ON #9", reopened.read(10, 1).get(0).detail());
+    }
+
+    @Test
+    void segmentsRollAndReplayStartsMidJournal() {
+        DeviceEventJournal journal = open(DataSize.ofKilobytes(4), DataSize.ofGigabytes(1)); // 31 records per segment
+        for (int i = 1; i <= 100; i++) journal.append(Type.STATE_CHANGE, "dev-" + i, i % 2 == 0 ? "ON" : "OFF");
+
+        DeviceEventJournal.Stats stats = journal.stats();
+        assertEquals(4, stats.segments());
+        assertEquals(3, stats.rolledSegments());
+
+        List<Long> sequences = new ArrayList<>();
+        assertEquals(51, journal.replay(40, 90, e -> sequences.add(e.sequence())));
+        assertEquals(40L, sequences.get(0));
+        assertEquals(90L, sequences.get(sequences.size() - 1));
+        assertEquals("dev-77", journal.read(77, 1).get(0).deviceId());
+        assertTrue(journal.read(101, 10).isEmpty());
+    }
+
+    @Test
+    void retentionDeletesTheOldestClosedSegments() throws Exception {
+        DeviceEventJournal journal = open(DataSize.ofKilobytes(4), DataSize.ofKilobytes(8));
+        for (int i = 1; i <= 200; i++) journal.append(Type.COMMAND, "garage-light", "cmd " + i);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (journal.stats().segments() > 2 && System.currentTimeMillis() < deadline) Thread.sleep(50);
+
+        DeviceEventJournal.Stats stats = journal.stats();
+        assertEquals(2, stats.segments());
+        assertEquals(5, stats.deletedSegments());
+        assertEquals(stats.firstSequence(), journal.read(1, 1).get(0).sequence(), "reads start at the oldest kept event");
+        List<Event> kept = journal.read(stats.firstSequence(), 1000);
+        assertEquals(200, kept.get(kept.size() - 1).sequence());
+    }
+
+    @Test
+    void concurrentDurableAppendsShareForces() throws Exception {
+        DeviceEventJournal journal = open(DataSize.ofMegabytes(8), DataSize.ofGigabytes(1));
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) journal.appendDurably(Type.STATE_CHANGE, "dev-" + id, "ON");
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        DeviceEventJournal.Stats stats = journal.stats();
+        assertEquals(threads * perThread, stats.durableSequence());
+        assertTrue(stats.syncs() < threads * perThread,
+                "group commit: " + stats.syncs() + " forces for " + threads * perThread + " events");
+    }
+
+    @Test
+    void appendsSustainWellOverOneHundredThousandPerSecond() {
+        DeviceEventJournal journal = open(DataSize.ofMegabytes(16), DataSize.ofGigabytes(1));
+        int events = 500_000;
+        for (int i = 0; i < 50_000; i++) journal.append(Type.STATE_CHANGE, "warmup", "ON");
+
+        long started = System.nanoTime();
+        for (int i = 0; i < events; i++) journal.append(Type.STATE_CHANGE, "living-light-1", (i & 1) == 0 ? "ON" : "OFF");
+        journal.sync(journal.lastSequence());
+        double perSecond = events / ((System.nanoTime() - started) / 1e9);
+
+        assertTrue(perSecond > 100_000, "only " + perSecond + " events/s");
+        assertEquals(550_000, journal.replay(1, Long.MAX_VALUE, e -> {}));
+    }
+
+    // ── Helpers ──────────────────────────────────────────────
+
+    private DeviceEventJournal open(DataSize segmentSize, DataSize retentionSize) {
+        DeviceEventJournal journal = new DeviceEventJournal(dir.toString(), segmentSize, Duration.ofHours(1),
+                retentionSize, Duration.ofDays(7), Duration.ofMillis(10), false);
+        opened.add(journal);
+        return journal;
+    }
+}
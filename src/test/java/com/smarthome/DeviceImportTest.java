@@ -0,0 +1,156 @@
+package com.smarthome;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import com.smarthome.service.DeviceBatchWriter;
+import com.smarthome.service.DeviceImportService;
+import com.smarthome.service.DeviceImportService.ImportResult;
+import com.smarthome.service.EnergyAccountant;
+import com.smarthome.service.ExportService.Format;
+import com.smarthome.service.SnowflakeIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bulk device import against a private in-memory database, so the imported
+ * devices stay out of the shared application contexts.
+ */
+class DeviceImportTest {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private List<String> imported = List.of();
+
+    @BeforeEach
+    void createSchema() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:import-" + UUID.randomUUID(), "sa", "", true);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table devices (id varchar(255) primary key, name varchar(255), type varchar(255), "
+                + "location varchar(255), is_on boolean not null, rated_power_watts int not null, ecosystem varchar(255), "
+                + "version bigint not null, room_id bigint)");
+    }
+
+    @AfterEach
+    void dropDevices() {
+        HomeController.INSTANCE.unregisterDevices(imported);
+        dataSource.destroy();
+    }
+
+    @Test
+    void validRowsAreInsertedAndRegisteredAndBadRowsReported() {
+        String body = """
+                {"type":"LIGHT","name":"Lobby Light","location":"Lobby","on":true}
+                {"type":"TOASTER","name":"Toaster","location":"Kitchen"}
+
+                {"type":"LOCK","location":"Lobby"}
+                {"type":"CAMERA","name":"Half a row
+                {"type":"SENSOR","name":"Lobby Sensor","location":"Lobby","ratedPowerWatts":3,"ecosystem":"homekit"}
+                """;
+        ImportResult result = newImporter(2).importDevices(Format.NDJSON, utf8(body));
+        imported = ids();
+
+        assertEquals(5, result.rows());
+        assertEquals(2, result.imported());
+        assertEquals(3, result.rejected());
+        assertEquals(List.of(2L, 4L, 5L), result.errors().stream().map(DeviceImportService.RowError::row).toList());
+        assertEquals("unknown device type: TOASTER", result.errors().get(0).message());
+        assertEquals("name is required", result.errors().get(1).message());
+
+        Map<String, Object> sensor = jdbc.queryForMap("select * from devices where name = 'Lobby Sensor'");
+        assertEquals("HOMEKIT", sensor.get("ECOSYSTEM"));
+        assertEquals(3, sensor.get("RATED_POWER_WATTS"));
+        assertTrue(((String) sensor.get("ID")).startsWith("sensor-"));
+        String light = jdbc.queryForObject("select id from devices where type = ?", String.class, DeviceType.LIGHT.name());
+        assertTrue(HomeController.INSTANCE.getDevice(light).isOn(), "runtime device follows the row");
+    }
+
+    @Test
+    void csvHeaderPicksTheColumnsAndQuotedFieldsKeepCommas() {
+        String body = """
+                location,type,name,on
+                Hall,LIGHT,"Hall Light, ""North\""",false
+                Hall,LOCK,Hall Lock
+                """;
+        ImportResult result = newImporter(100).importDevices(Format.CSV, utf8(body));
+        imported = ids();
+
+        assertEquals(1, result.imported());
+        assertEquals("expected 4 fields, got 3", result.errors().get(0).message());
+        assertEquals("Hall Light, \"North\"", jdbc.queryForObject("select name from devices", String.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> newImporter(100).importDevices(Format.CSV, utf8("name,location\nLamp,Den\n")));
+    }
+
+    @Test
+    void aRowTheDatabaseRejectsFailsAloneNotItsBatch() {
+        jdbc.execute("alter table devices add constraint no_basement check (location <> 'Basement')");
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= 10; i++) {
+            body.append("{\"type\":\"LIGHT\",\"name\":\"L").append(i).append("\",\"location\":\"")
+                    .append(i == 7 ? "Basement" : "Attic").append("\"}\n");
+        }
+        ImportResult result = newImporter(5).importDevices(Format.NDJSON, utf8(body.toString()));
+        imported = ids();
+
+        assertEquals(9, result.imported());
+        assertEquals(List.of(7L), result.errors().stream().map(DeviceImportService.RowError::row).toList());
+        assertEquals(9, jdbc.queryForObject("select count(*) from devices", Integer.class));
+    }
+
+    @Test
+    void importsOneHundredThousandDevicesInBatches() {
+        ch.qos.logback.classic.Logger devices = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.smarthome.pattern");
+        Level level = devices.getLevel();
+        devices.setLevel(Level.WARN); // each new runtime device logs its power state
+        try {
+            int rows = 100_000;
+            StringBuilder body = new StringBuilder(rows * 80);
+            for (int i = 0; i < rows; i++) {
+                body.append("{\"type\":\"").append(DeviceType.values()[i % 5]).append("\",\"name\":\"Unit ").append(i)
+                        .append("\",\"location\":\"Floor ").append(i % 40).append("\",\"on\":").append(i % 4 == 0).append("}\n");
+            }
+            ImportResult result = newImporter(1000).importDevices(Format.NDJSON, utf8(body.toString()));
+            imported = ids();
+
+            assertEquals(rows, result.imported());
+            assertEquals(100, result.batches());
+            assertEquals(rows, jdbc.queryForObject("select count(*) from devices", Integer.class));
+            assertEquals(rows, imported.stream().filter(id -> HomeController.INSTANCE.getDevice(id) != null).count());
+        } finally {
+            devices.setLevel(level);
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────
+
+    private DeviceImportService newImporter(int batchSize) {
+        // track() only touches the accountant's counters; the hourly checkpoint never runs here
+        EnergyAccountant energy = new EnergyAccountant(null, null, "", Duration.ofHours(1));
+        DeviceBatchWriter writer = new DeviceBatchWriter(jdbc, new SnowflakeIdGenerator(1), energy);
+        return new DeviceImportService(writer, new DataSourceTransactionManager(dataSource), new ObjectMapper(), batchSize, 10);
+    }
+
+    private List<String> ids() {
+        return jdbc.queryForList("select id from devices", String.class);
+    }
+
+    private static ByteArrayInputStream utf8(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
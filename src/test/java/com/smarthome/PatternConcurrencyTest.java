@@ -0,0 +1,1085 @@
+package com.smarthome;
+
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.domain.RollupTier;
+import com.smarthome.domain.StringPool;
+import com.smarthome.domain.TelemetryRollupEntity;
+import com.smarthome.pattern.behavioral.command.Command;
+import com.smarthome.pattern.behavioral.command.CommandDemo;
+import com.smarthome.pattern.behavioral.command.CommandPipeline;
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.factory.SmartLight;
+import com.smarthome.pattern.structural.composite.DeviceGroup;
+import com.smarthome.pattern.structural.composite.GroupOperationReport;
+import com.smarthome.pattern.structural.composite.SingleDevice;
+import com.smarthome.pattern.structural.decorator.BoundedCache;
+import com.smarthome.pattern.structural.decorator.CachingDecorator;
+import com.smarthome.pattern.structural.decorator.DeviceDecorator;
+import com.smarthome.pattern.structural.decorator.DeviceMetrics;
+import com.smarthome.pattern.structural.decorator.LatencyHistogram;
+import com.smarthome.pattern.structural.decorator.MetricsDecorator;
+import com.smarthome.pattern.structural.decorator.RateLimitExceededException;
+import com.smarthome.pattern.structural.decorator.RateLimitingDecorator;
+import com.smarthome.pattern.structural.decorator.TokenBucket;
+import com.smarthome.pattern.structural.proxy.CircuitBreaker;
+import com.smarthome.pattern.structural.proxy.DeviceProxy;
+import com.smarthome.pattern.structural.proxy.RemoteCallGuard;
+import com.smarthome.pattern.structural.proxy.RemoteDeviceUnavailableException;
+import com.smarthome.pattern.structural.proxy.RemoteIo;
+import com.smarthome.pattern.structural.proxy.RemoteStatusCache;
+import com.smarthome.repository.TelemetryRollupRepository;
+import com.smarthome.service.CommandRateLimiter;
+import com.smarthome.service.DeviceMailboxes;
+import com.smarthome.service.EnergyCounter;
+import com.smarthome.service.IdempotencyService;
+import com.smarthome.service.RollupBuckets;
+import com.smarthome.service.SampleRing;
+import com.smarthome.service.SnowflakeIdGenerator;
+import com.smarthome.service.TelemetryRollupService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the concurrent building blocks behind the structural and behavioral patterns.
+ */
+class PatternConcurrencyTest {
+
+    // ── Composite fan-out ────────────────────────────────────
+
+    @Test
+    void compositeFanOutRunsLeavesConcurrently() {
+        DeviceGroup floor = new DeviceGroup("Floor 1");
+        for (int i = 0; i < 20; i++) {
+            floor.add(new SingleDevice("remote-" + i, adminProxy("remote-" + i)));
+        }
+
+        GroupOperationReport report = floor.turnOnAll(10, Duration.ofSeconds(5));
+
+        assertEquals(20, report.outcomes().size());
+        assertTrue(report.allSucceeded(), "every leaf should be switched: " + report.outcomes());
+        assertFalse(report.deadlineExceeded());
+        // Each remote leaf costs ~200ms; sequentially this would take ~4s.
+        assertTrue(report.elapsedMillis() < 2_000, "fan-out took " + report.elapsedMillis() + "ms");
+    }
+
+    @Test
+    void compositeFanOutReportsLeavesMissingTheDeadline() {
+        DeviceGroup group = new DeviceGroup("Slow");
+        for (int i = 0; i < 6; i++) {
+            group.add(new SingleDevice("slow-" + i, adminProxy("slow-" + i)));
+        }
+
+        GroupOperationReport report = group.turnOffAll(2, Duration.ofMillis(50));
+
+        assertTrue(report.deadlineExceeded());
+        assertEquals(6, report.outcomes().size());
+        assertEquals(0, report.succeeded());
+        assertTrue(report.pending() > 0, "leaves in progress at the deadline are pending, not failed");
+        assertTrue(report.count(GroupOperationReport.Status.NOT_STARTED) > 0);
+        assertEquals(6, report.pending() + report.failed());
+        assertFalse(report.allSucceeded());
+    }
+
+    @Test
+    void compositeFanOutFlattensNestedGroupsAndCapturesFailures() {
+        DeviceGroup house = new DeviceGroup("House");
+        DeviceGroup room = new DeviceGroup("Room");
+        room.add(new SingleDevice("ok", adminProxy("ok")));
+        house.add(room);
+        house.add(new SingleDevice("guest-only", new DeviceProxy("guest-only", "Guest", "10.0.0.2")));
+
+        GroupOperationReport report = house.fanOut("operate", leaf -> {
+            if (leaf.getName().startsWith("guest")) throw new IllegalStateException("denied");
+            leaf.turnOn();
+        }, 4, Duration.ofSeconds(5));
+
+        assertEquals(2, report.outcomes().size());
+        assertEquals(1, report.succeeded());
+        assertEquals("denied", report.outcomes().get(1).error());
+    }
+
+    // ── Async proxy ──────────────────────────────────────────
+
+    @Test
+    void asyncProxyKeepsManyCallsInFlightOnSmallPool() {
+        List<DeviceProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            proxies.add(adminProxy("async-" + i));
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> statuses = proxies.stream()
+                .map(p -> p.turnOnAsync().thenCompose(v -> p.statusAsync()))
+                .toList();
+        // Three round trips each: had submitting waited on any of them, the last call would be done by now
+        assertFalse(statuses.get(statuses.size() - 1).isDone(), "submitting must not block");
+        CompletableFuture.allOf(statuses.toArray(CompletableFuture[]::new)).join();
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // connect + turnOn + status = 3 round trips; 200 sequential calls would take a minute.
+        assertTrue(totalMillis < 3_000, "200 remote calls took " + totalMillis + "ms");
+        assertTrue(RemoteIo.poolSize() <= 4);
+        assertTrue(proxies.stream().allMatch(DeviceProxy::isConnected));
+        assertTrue(statuses.get(0).join().contains("ON"));
+    }
+
+    @Test
+    void asyncProxyFailsFastWithoutControlAccess() {
+        DeviceProxy guest = new DeviceProxy("guest", "Guest Cam", "10.0.0.9");
+
+        CompletableFuture<Void> denied = guest.turnOnAsync();
+
+        assertTrue(denied.isCompletedExceptionally());
+        assertFalse(guest.isInitialized());
+    }
+
+    @Test
+    void asyncCallsRacingTheFirstConnectAllComplete() throws Exception {
+        List<DeviceProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) proxies.add(adminProxy("racing-" + i));
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Void>> callers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            callers.add(CompletableFuture.runAsync(() -> {
+                awaitQuietly(start);
+                // Joining inside the caller, so a connect that finishes mid-race is re-checked by the next call
+                proxies.forEach(p -> p.turnOnAsync().join());
+            }));
+        }
+        start.countDown();
+        for (CompletableFuture<Void> caller : callers) caller.get(20, TimeUnit.SECONDS);
+        assertTrue(proxies.stream().allMatch(DeviceProxy::isConnected));
+    }
+
+    // ── Remote status cache ──────────────────────────────────
+
+    @Test
+    void statusCacheCoalescesConcurrentMisses() {
+        RemoteStatusCache cache = new RemoteStatusCache(Duration.ofSeconds(5), Duration.ofSeconds(5));
+        AtomicInteger remoteCalls = new AtomicInteger();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+
+        List<CompletableFuture<RemoteStatusCache.CachedStatus>> callers = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            callers.add(cache.get("cam-1", () -> {
+                remoteCalls.incrementAndGet();
+                return remote;
+            }));
+        }
+        remote.complete("Remote Device cam-1: ON");
+
+        callers.forEach(c -> assertEquals("Remote Device cam-1: ON", c.join().value()));
+        assertEquals(1, remoteCalls.get());
+        assertEquals(1, cache.stats().misses());
+        assertEquals(49, cache.stats().coalesced());
+        assertEquals(RemoteStatusCache.Source.HIT, cache.get("cam-1", () -> remote).join().source());
+    }
+
+    @Test
+    void statusCacheServesStaleWhileRefreshing() throws InterruptedException {
+        RemoteStatusCache cache = new RemoteStatusCache(Duration.ofSeconds(5), Duration.ofSeconds(5));
+        cache.configure("lamp", Duration.ofMillis(20), Duration.ofSeconds(5));
+        cache.get("lamp", () -> CompletableFuture.completedFuture("OFF")).join();
+        Thread.sleep(40);
+
+        CompletableFuture<String> refresh = new CompletableFuture<>();
+        RemoteStatusCache.CachedStatus stale = cache.get("lamp", () -> refresh).join();
+        assertEquals(RemoteStatusCache.Source.STALE, stale.source());
+        assertEquals("OFF", stale.value());
+        assertEquals(1, cache.stats().refreshes());
+
+        refresh.complete("ON");
+        assertEquals("ON", cache.get("lamp", () -> CompletableFuture.completedFuture("unused")).join().value());
+    }
+
+    @Test
+    void statusCacheDoesNotStoreLoadsRacingAnInvalidation() {
+        RemoteStatusCache cache = new RemoteStatusCache(Duration.ofSeconds(5), Duration.ofSeconds(5));
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CompletableFuture<RemoteStatusCache.CachedStatus> before = cache.get("lock", () -> slow);
+
+        cache.invalidate("lock");
+        slow.complete("UNLOCKED");
+
+        assertEquals("UNLOCKED", before.join().value());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void proxyStatusReadsShareOneRemoteCall() {
+        RemoteStatusCache cache = new RemoteStatusCache(Duration.ofSeconds(5), Duration.ofSeconds(5));
+        DeviceProxy proxy = new DeviceProxy("shared-cam", "Shared Cam", "10.0.0.7", cache);
+
+        List<CompletableFuture<String>> reads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            reads.add(CompletableFuture.supplyAsync(proxy::getStatus));
+        }
+        reads.forEach(CompletableFuture::join);
+
+        assertEquals(1, cache.stats().misses());
+        assertEquals(19, cache.stats().coalesced() + cache.stats().hits());
+    }
+
+    // ── Remote call guard ────────────────────────────────────
+
+    @Test
+    void slowDeviceTripsCircuitAndCallersFailFast() {
+        RemoteCallGuard guard = new RemoteCallGuard(
+                new RemoteCallGuard.Policy(Duration.ofMillis(30), 3, Duration.ofSeconds(30), 8, null));
+        DeviceProxy proxy = new DeviceProxy("slow-cam", "Slow Cam", "10.0.0.9",
+                new RemoteStatusCache(Duration.ofSeconds(5), Duration.ZERO), guard);
+        proxy.setAccess("admin", DeviceProxy.AccessLevel.ADMIN);
+
+        for (int i = 0; i < 3; i++) {
+            // Each remote round trip takes longer than the 30ms call timeout
+            long t0 = System.nanoTime();
+            RemoteDeviceUnavailableException e = assertThrows(RemoteDeviceUnavailableException.class, proxy::turnOn);
+            assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 1_000);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, proxy.getCircuitState());
+
+        RemoteDeviceUnavailableException open = assertThrows(RemoteDeviceUnavailableException.class, proxy::getStatus);
+        assertTrue(open.getMessage().contains("circuit open"), open.getMessage());
+        assertTrue(open.getRetryAfterMillis() > 0);
+
+        // An open circuit answers before any remote call is started, so nothing can wait on one
+        AtomicInteger remoteCalls = new AtomicInteger();
+        CompletableFuture<String> rejected = guard.call("slow-cam", "probe", () -> {
+            remoteCalls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        assertTrue(rejected.isCompletedExceptionally(), "open circuit should not wait");
+        assertEquals(0, remoteCalls.get());
+    }
+
+    @Test
+    void halfOpenCircuitLetsOneProbeThrough() throws InterruptedException {
+        RemoteCallGuard guard = new RemoteCallGuard(
+                new RemoteCallGuard.Policy(Duration.ofSeconds(2), 2, Duration.ofMillis(50), 8, null));
+        for (int i = 0; i < 2; i++) {
+            guard.call("hub", "status", () -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, guard.stateOf("hub"));
+        Thread.sleep(80);
+
+        CompletableFuture<String> probeReply = new CompletableFuture<>();
+        CompletableFuture<String> probe = guard.call("hub", "status", () -> probeReply);
+        CompletableFuture<String> second = guard.call("hub", "status", () -> CompletableFuture.completedFuture("x"));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, guard.stateOf("hub"));
+        assertTrue(second.isCompletedExceptionally(), "only one probe may run while half-open");
+
+        probeReply.complete("ONLINE");
+        assertEquals("ONLINE", probe.join());
+        assertEquals(CircuitBreaker.State.CLOSED, guard.stateOf("hub"));
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondDeviceLimit() {
+        RemoteCallGuard guard = new RemoteCallGuard(
+                new RemoteCallGuard.Policy(Duration.ofSeconds(2), 5, Duration.ofSeconds(10), 2, null));
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        guard.call("lock", "status", () -> pending);
+        guard.call("lock", "status", () -> pending);
+
+        CompletableFuture<String> third = guard.call("lock", "status", () -> CompletableFuture.completedFuture("x"));
+        CompletionException e = assertThrows(CompletionException.class, third::join);
+        assertInstanceOf(RemoteDeviceUnavailableException.class, e.getCause());
+        assertEquals(1, guard.circuits().get(0).bulkheadRejections());
+
+        pending.complete("LOCKED");
+        assertEquals("x", guard.call("lock", "status", () -> CompletableFuture.completedFuture("x")).join());
+        // Rejections are load shedding, not device failures
+        assertEquals(CircuitBreaker.State.CLOSED, guard.stateOf("lock"));
+    }
+
+    @Test
+    void hedgedReadReturnsFirstSuccessfulReply() {
+        RemoteCallGuard guard = new RemoteCallGuard(
+                new RemoteCallGuard.Policy(Duration.ofSeconds(2), 5, Duration.ofSeconds(10), 8, Duration.ofMillis(20)));
+        AtomicInteger attempts = new AtomicInteger();
+
+        long t0 = System.nanoTime();
+        String status = guard.read("thermo", "status", () -> attempts.incrementAndGet() == 1
+                ? new CompletableFuture<>()                      // first replica never answers
+                : CompletableFuture.completedFuture("21.5C")).join();
+
+        assertEquals("21.5C", status);
+        assertEquals(2, attempts.get());
+        assertEquals(1, guard.circuits().get(0).hedges());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 1_000);
+    }
+
+    // ── Bounded cache ────────────────────────────────────────
+
+    @Test
+    void boundedCacheEvictsLeastRecentlyUsed() {
+        BoundedCache<String, String> cache = BoundedCache.builder("lru").maximumSize(3).segments(1).build();
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.getIfPresent("a");
+        cache.put("d", "4");
+
+        assertTrue(cache.getIfPresent("b").isEmpty(), "b was least recently used");
+        assertTrue(cache.getIfPresent("a").isPresent());
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void boundedCacheHonoursPerEntryTtl() throws InterruptedException {
+        BoundedCache<String, String> cache = BoundedCache.builder("ttl").expireAfterWrite(Duration.ofMinutes(1)).build();
+        cache.put("short", "x", Duration.ofMillis(20));
+        cache.put("long", "y");
+        Thread.sleep(40);
+
+        assertTrue(cache.getIfPresent("short").isEmpty());
+        assertEquals("y", cache.getIfPresent("long").orElseThrow());
+        assertEquals(1, cache.stats().expirations());
+    }
+
+    @Test
+    void boundedCacheLoadsEachKeyOnceUnderConcurrentMisses() throws Exception {
+        BoundedCache<String, String> cache = BoundedCache.builder("single-flight").build();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<String>> readers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            readers.add(CompletableFuture.supplyAsync(() -> cache.get("thermo", k -> {
+                loads.incrementAndGet();
+                awaitQuietly(release);
+                return "21C";
+            })));
+        }
+        Thread.sleep(50);
+        release.countDown();
+
+        readers.forEach(r -> assertEquals("21C", r.join()));
+        assertEquals(1, loads.get());
+        assertTrue(cache.stats().averageLoadMillis() >= 0);
+    }
+
+    @Test
+    void boundedCacheRefreshesStaleEntriesInBackground() throws InterruptedException {
+        BoundedCache<String, Integer> cache = BoundedCache.builder("refresh")
+                .refreshAfterWrite(Duration.ofMillis(20))
+                .build();
+        AtomicInteger version = new AtomicInteger();
+        assertEquals(1, cache.get("hub", k -> version.incrementAndGet()));
+        Thread.sleep(40);
+
+        assertEquals(1, cache.get("hub", k -> version.incrementAndGet()), "old value served during refresh");
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (cache.getIfPresent("hub").orElse(0) != 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, cache.getIfPresent("hub").orElseThrow());
+        assertEquals(1, cache.stats().refreshes());
+    }
+
+    @Test
+    void cachingDecoratorsShareEntriesPerDevice() {
+        AtomicInteger reads = new AtomicInteger();
+        Device light = new DeviceDecorator(new SmartLight("Shared Light", "Hall")) {
+            @Override
+            public String getStatus() {
+                reads.incrementAndGet();
+                return super.getStatus();
+            }
+        };
+        CachingDecorator first = new CachingDecorator(light);
+        CachingDecorator second = new CachingDecorator(light);
+
+        String status = first.getStatus();
+        assertEquals(status, second.getStatus());
+        assertEquals(1, reads.get());
+
+        second.turnOn();
+        assertNotEquals(status, first.getStatus());
+        assertEquals(2, reads.get());
+    }
+
+    // ── Latency metrics ──────────────────────────────────────
+
+    @Test
+    void latencyHistogramQuantilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            histogram.record(v * 1_000);
+        }
+        LatencyHistogram.Snapshot s = histogram.snapshot();
+
+        assertEquals(100_000, s.count());
+        assertEquals(50_000_000, s.p50Nanos(), 50_000_000 * 0.035);
+        assertEquals(99_000_000, s.p99Nanos(), 99_000_000 * 0.035);
+        assertEquals(99_900_000, s.p999Nanos(), 99_900_000 * 0.035);
+        assertEquals(100_000_000, s.maxNanos());
+        assertEquals(50_000_500, s.meanNanos(), 50_000_500 * 0.035);
+    }
+
+    @Test
+    void latencyHistogramCountsEveryConcurrentRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            writers.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 50_000; i++) histogram.record(i);
+            }));
+        }
+        writers.forEach(CompletableFuture::join);
+        assertEquals(400_000, histogram.snapshot().count());
+    }
+
+    @Test
+    @Tag("performance")
+    void metricsDecoratorOverheadBenchmark() {
+        Device raw = new NoopDevice();
+        DeviceMetrics metrics = new DeviceMetrics();
+        Device timed = new MetricsDecorator(raw, "NOOP", metrics);
+        int calls = 200_000;
+        int rounds = 60;
+        long sink = 0;
+        long rawNanos = Long.MAX_VALUE;
+        long timedNanos = Long.MAX_VALUE;
+        // Many short rounds, best of each: first rounds double as JIT warm-up, later ones dodge scheduler noise
+        for (int round = 0; round < rounds; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < calls; i++) sink += raw.getStatus().length();
+            long t1 = System.nanoTime();
+            for (int i = 0; i < calls; i++) sink += timed.getStatus().length();
+            long t2 = System.nanoTime();
+            rawNanos = Math.min(rawNanos, t1 - t0);
+            timedNanos = Math.min(timedNanos, t2 - t1);
+        }
+        double overhead = (double) (timedNanos - rawNanos) / calls;
+
+        assertEquals((long) rounds * calls, metrics.snapshot().get(0).latency().count());
+        assertTrue(sink != 0);
+        // The whole per-call cost, clock reads included, must stay below the 100ns budget
+        assertTrue(overhead < 100, "the decorator costs " + overhead + "ns per call");
+    }
+
+    @Test
+    void tokenBucketAllowsBurstThenRefillsAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(t0), "burst permit " + i);
+        }
+        assertFalse(bucket.tryAcquire(t0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.nanosUntilAvailable(t0), 1_000);
+        assertTrue(bucket.tryAcquire(t0 + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertFalse(bucket.tryAcquire(t0 + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(bucket.isIdle(t0 + TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    void tokenBucketNeverGrantsMoreThanBurstUnderContention() throws Exception {
+        TokenBucket bucket = new TokenBucket(0.001, 100);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < 1_000; i++) {
+                    if (bucket.tryAcquire()) granted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+        assertEquals(100, granted.get());
+    }
+
+    @Test
+    void tokenBucketReservationQueuesWithinMaxWait() {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        long t0 = System.nanoTime();
+        long fiftyMs = TimeUnit.MILLISECONDS.toNanos(50);
+        assertEquals(0, bucket.reserve(fiftyMs, t0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), bucket.reserve(fiftyMs, t0), 1_000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), bucket.reserve(fiftyMs, t0), 1_000);
+        assertEquals(-1, bucket.reserve(TimeUnit.MILLISECONDS.toNanos(15), t0), "wait beyond the limit is refused");
+    }
+
+    @Test
+    void rateLimitingDecoratorRejectsExcessCommands() {
+        SmartLight light = new SmartLight("Limited Light", "Hall");
+        RateLimitingDecorator limited = new RateLimitingDecorator(light, new TokenBucket(0.01, 2),
+                RateLimitingDecorator.Policy.REJECT);
+        limited.turnOn();
+        limited.turnOff();
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class, limited::turnOn);
+        assertTrue(e.getRetryAfterMillis() > 0);
+        assertFalse(light.isOn());
+    }
+
+    @Test
+    void rateLimitingDecoratorCoalescesToLatestIntent() throws Exception {
+        SmartLight light = new SmartLight("Coalesced Light", "Hall");
+        RateLimitingDecorator limited = new RateLimitingDecorator(light, new TokenBucket(20, 1),
+                RateLimitingDecorator.Policy.COALESCE);
+        limited.turnOff();
+        limited.turnOn();
+        limited.turnOff();
+        limited.turnOn();
+        assertTrue(limited.hasPendingIntent());
+        for (int i = 0; i < 100 && limited.hasPendingIntent(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(limited.hasPendingIntent());
+        assertTrue(light.isOn(), "only the final intent is applied");
+    }
+
+    @Test
+    void commandRateLimiterLimitsPerClientAndEvictsIdleBuckets() throws Exception {
+        CommandRateLimiter limiter = new CommandRateLimiter(RateLimitingDecorator.Policy.REJECT,
+                1_000, 1_000, 0.01, 3, Duration.ofMillis(100), Duration.ofMillis(20));
+        AtomicInteger executed = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.submit("device-" + i, "client-a", executed::incrementAndGet));
+        }
+        assertThrows(RateLimitExceededException.class, () -> limiter.submit("device-0", "client-a", executed::incrementAndGet));
+        assertTrue(limiter.submit("device-0", "client-b", executed::incrementAndGet), "clients are limited independently");
+        assertEquals(4, executed.get());
+
+        CommandRateLimiter.Stats stats = limiter.stats();
+        assertEquals(4, stats.allowed());
+        assertEquals(1, stats.rejected());
+        assertEquals(3, stats.activeDevices());
+
+        Thread.sleep(120);
+        // Device buckets refill within milliseconds; the slow client buckets are still in use
+        assertEquals(3, limiter.evictIdle());
+        assertEquals(0, limiter.stats().activeDevices());
+        assertEquals(2, limiter.stats().activeClients());
+    }
+
+    @Test
+    void commandPipelineKeepsPerDeviceOrderAndBatchesFlushes() {
+        List<List<CommandPipeline.Executed>> flushed = Collections.synchronizedList(new ArrayList<>());
+        Map<String, List<Integer>> order = new ConcurrentHashMap<>();
+        List<CompletableFuture<CommandPipeline.Result>> results = new ArrayList<>();
+        try (CommandPipeline pipeline = new CommandPipeline(4, 64, flushed::add)) {
+            for (int i = 0; i < 500; i++) {
+                String device = "device-" + (i % 10);
+                int seq = i;
+                results.add(pipeline.submit(device, new RecordingCommand(() ->
+                        order.computeIfAbsent(device, k -> Collections.synchronizedList(new ArrayList<>())).add(seq))));
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+
+            order.values().forEach(seqs -> assertEquals(seqs.stream().sorted().toList(), seqs, "per-device order"));
+            assertEquals(500, flushed.stream().mapToInt(List::size).sum());
+            assertTrue(flushed.size() < 500, "flushes were batched: " + flushed.size());
+            CommandPipeline.Stats stats = pipeline.stats();
+            assertEquals(500, stats.executed());
+            assertEquals(0, stats.coalesced());
+        }
+    }
+
+    @Test
+    void commandPipelineCoalescesSupersededCommands() throws Exception {
+        SmartLight light = new SmartLight("Pipeline Light", "Hall");
+        CountDownLatch blocker = new CountDownLatch(1);
+        try (CommandPipeline pipeline = new CommandPipeline(2, 16, batch -> {})) {
+            // Hold the device's worker so that the following commands queue up behind it
+            CompletableFuture<CommandPipeline.Result> first = pipeline.submit("light", new RecordingCommand(() -> awaitQuietly(blocker)));
+            CompletableFuture<CommandPipeline.Result> on = pipeline.submit("light", CommandDemo.toCommand(light, "ON"));
+            CompletableFuture<CommandPipeline.Result> off = pipeline.submit("light", CommandDemo.toCommand(light, "OFF"));
+            CompletableFuture<CommandPipeline.Result> dim = pipeline.submit("light", CommandDemo.toCommand(light, "BRIGHTNESS:30"));
+            blocker.countDown();
+
+            assertFalse(first.get(5, TimeUnit.SECONDS).coalesced());
+            CommandPipeline.Result superseded = on.get(5, TimeUnit.SECONDS);
+            assertTrue(superseded.coalesced());
+            assertTrue(superseded.command().startsWith("Turn OFF"), superseded.command());
+            assertFalse(off.get(5, TimeUnit.SECONDS).coalesced());
+            assertFalse(dim.get(5, TimeUnit.SECONDS).coalesced(), "different keys do not coalesce");
+            assertFalse(light.isOn());
+            assertEquals(30, light.getBrightness());
+            assertEquals(1, pipeline.stats().coalesced());
+            assertEquals(3, pipeline.stats().executed());
+        }
+    }
+
+    @Test
+    void commandPipelineFailsFuturesWhenFlushFails() {
+        try (CommandPipeline pipeline = new CommandPipeline(1, 8, batch -> { throw new IllegalStateException("db down"); })) {
+            CompletableFuture<CommandPipeline.Result> result = pipeline.submit("d", new RecordingCommand(() -> {}));
+            CompletionException e = assertThrows(CompletionException.class, result::join);
+            assertEquals("db down", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void commandPipelineExecutesThroughTheDeviceRunner() {
+        Map<String, AtomicInteger> ran = new ConcurrentHashMap<>();
+        CommandPipeline.DeviceRunner runner = (deviceId, command) -> {
+            ran.computeIfAbsent(deviceId, k -> new AtomicInteger()).incrementAndGet();
+            if (deviceId.equals("locked")) throw new IllegalStateException("mailbox busy");
+            command.run();
+        };
+        try (CommandPipeline pipeline = new CommandPipeline(2, 8, batch -> {}, runner)) {
+            AtomicInteger executions = new AtomicInteger();
+            pipeline.submit("a", new RecordingCommand(executions::incrementAndGet)).join();
+            pipeline.submit("b", new RecordingCommand(executions::incrementAndGet)).join();
+            CompletionException e = assertThrows(CompletionException.class,
+                    pipeline.submit("locked", new RecordingCommand(executions::incrementAndGet))::join);
+
+            assertEquals("mailbox busy", e.getCause().getMessage());
+            assertEquals(2, executions.get());
+            assertEquals(Set.of("a", "b", "locked"), ran.keySet());
+            assertEquals(1, pipeline.stats().failed());
+        }
+    }
+
+    @Test
+    void commandPipelineCloseCompletesEveryFuture() {
+        List<CommandPipeline.Executed> flushed = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<CommandPipeline.Result>> results = new ArrayList<>();
+        CommandPipeline pipeline = new CommandPipeline(2, 4, batch -> {
+            sleepQuietly(20); // slow sink, so executed commands pile up waiting for the flusher
+            flushed.addAll(batch);
+        });
+        for (int i = 0; i < 200; i++) {
+            results.add(pipeline.submit("device-" + (i % 20), new RecordingCommand(() -> {})));
+        }
+        pipeline.close();
+
+        assertTrue(results.stream().allMatch(CompletableFuture::isDone), "no future is left pending after close");
+        long succeeded = results.stream().filter(f -> !f.isCompletedExceptionally()).count();
+        assertEquals(flushed.size(), succeeded, "exactly the flushed commands succeed");
+        results.stream().filter(CompletableFuture::isCompletedExceptionally).forEach(f -> {
+            CompletionException e = assertThrows(CompletionException.class, f::join);
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        });
+        assertTrue(pipeline.submit("late", new RecordingCommand(() -> {})).isCompletedExceptionally());
+    }
+
+    @Test
+    void idempotentDuplicatesRunOnceEvenWhenConcurrent() throws Exception {
+        IdempotencyService idempotency = new IdempotencyService(100, Duration.ofMinutes(1));
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<IdempotencyService.Outcome>> outcomes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            outcomes.add(CompletableFuture.supplyAsync(() -> {
+                awaitQuietly(start);
+                return idempotency.execute("key-1", "POST /api/devices/x/control?action=on", () -> {
+                    executions.incrementAndGet();
+                    sleepQuietly(50);
+                    return new IdempotencyService.StoredResponse(200, "application/json", "{}".getBytes());
+                });
+            }));
+        }
+        start.countDown();
+        CompletableFuture.allOf(outcomes.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, executions.get());
+        assertEquals(7, outcomes.stream().filter(o -> o.join().replayed()).count());
+        assertEquals(7, idempotency.stats().replayed());
+
+        // A server error is not stored, so the retry executes again
+        idempotency.execute("key-2", "fp", () -> new IdempotencyService.StoredResponse(503, null, new byte[0]));
+        assertFalse(idempotency.execute("key-2", "fp", () -> new IdempotencyService.StoredResponse(200, null, new byte[0])).replayed());
+        // Nor is a conflict a retry may resolve, while a validation error is final
+        idempotency.execute("key-3", "fp", () -> new IdempotencyService.StoredResponse(409, null, new byte[0]));
+        assertFalse(idempotency.execute("key-3", "fp", () -> new IdempotencyService.StoredResponse(200, null, new byte[0])).replayed());
+        idempotency.execute("key-4", "fp", () -> new IdempotencyService.StoredResponse(400, null, new byte[0]));
+        assertTrue(idempotency.execute("key-4", "fp", () -> new IdempotencyService.StoredResponse(200, null, new byte[0])).replayed());
+        assertThrows(IdempotencyService.KeyReusedException.class,
+                () -> idempotency.execute("key-1", "other", () -> null));
+    }
+
+    // ── Device mailboxes ─────────────────────────────────────
+
+    @Test
+    void deviceMailboxKeepsPerDeviceOrderUnderConcurrentSubmitters() throws Exception {
+        DeviceMailboxes mailboxes = new DeviceMailboxes(4);
+        Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        try {
+            for (int producer = 0; producer < 4; producer++) {
+                String device = "device-" + producer;
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    CompletableFuture<Integer> last = null;
+                    for (int seq = 0; seq < 200; seq++) {
+                        int n = seq;
+                        last = mailboxes.submit(device, () -> {
+                            if (running.computeIfAbsent(device, k -> new AtomicInteger()).incrementAndGet() > 1) overlaps.incrementAndGet();
+                            applied.computeIfAbsent(device, k -> Collections.synchronizedList(new ArrayList<>())).add(n);
+                            running.get(device).decrementAndGet();
+                            return n;
+                        });
+                    }
+                    return mailboxes.await(device, last);
+                }));
+            }
+            for (CompletableFuture<Integer> r : results) assertEquals(199, r.get(5, TimeUnit.SECONDS));
+
+            assertEquals(0, overlaps.get(), "a device never runs two mutations at once");
+            for (List<Integer> sequence : applied.values()) {
+                assertEquals(200, sequence.size());
+                for (int i = 0; i < sequence.size(); i++) assertEquals(i, sequence.get(i));
+            }
+            assertEquals(800, mailboxes.stats().processed());
+            assertEquals(0, mailboxes.stats().activeMailboxes(), "drained mailboxes are removed");
+        } finally {
+            mailboxes.shutdown();
+        }
+    }
+
+    @Test
+    void deviceMailboxesRunDevicesInParallelAndReportDepth() throws Exception {
+        DeviceMailboxes mailboxes = new DeviceMailboxes(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        try {
+            List<CompletableFuture<String>> blocked = new ArrayList<>();
+            for (String device : List.of("a", "b")) {
+                blocked.add(mailboxes.submit(device, () -> {
+                    bothStarted.countDown();
+                    awaitQuietly(release);
+                    return device;
+                }));
+            }
+            assertTrue(bothStarted.await(2, TimeUnit.SECONDS), "different devices proceed in parallel");
+
+            for (int i = 0; i < 5; i++) mailboxes.submit("a", () -> "queued");
+            assertEquals(5, mailboxes.depth("a"));
+            DeviceMailboxes.Stats stats = mailboxes.stats();
+            assertEquals("a", stats.deepest().get(0).deviceId());
+            assertEquals(5, stats.queuedTasks());
+
+            // Re-entrant mutation of the device being processed runs inline instead of deadlocking
+            assertEquals("inner", mailboxes.call("c", () -> mailboxes.call("c", () -> "inner")));
+            assertEquals(1, mailboxes.stats().inlined());
+
+            release.countDown();
+            assertEquals(List.of("a", "b"), blocked.stream().map(CompletableFuture::join).toList());
+            assertThrows(IllegalArgumentException.class,
+                    () -> mailboxes.call("a", () -> { throw new IllegalArgumentException("Device not found: a"); }));
+            assertEquals(0, mailboxes.depth("a"));
+            assertTrue(mailboxes.stats().peakDepth() >= 5);
+        } finally {
+            release.countDown();
+            mailboxes.shutdown();
+        }
+    }
+
+    // ── Telemetry rings ──────────────────────────────────────
+
+    @Test
+    void sampleRingKeepsTheNewestSamplesAndFiltersByTime() {
+        SampleRing ring = new SampleRing(4);
+        for (int i = 1; i <= 10; i++) ring.add(i * 1_000L, i);
+
+        SampleRing.Window all = ring.range(Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertArrayEquals(new long[] {7_000, 8_000, 9_000, 10_000}, all.timestamps());
+        assertArrayEquals(new double[] {7, 8, 9, 10}, all.values());
+
+        SampleRing.Window window = ring.range(8_000, 10_000, 100);
+        assertArrayEquals(new double[] {8, 9}, window.values(), "from is inclusive, to exclusive");
+        assertArrayEquals(new double[] {9, 10}, ring.range(0, Long.MAX_VALUE, 2).values(), "limit keeps the newest");
+        assertEquals(10, ring.written());
+    }
+
+    @Test
+    void rollupBucketsAggregatePerBucketAndNeverFlushABucketTwice() {
+        long minute = 60_000;
+        RollupBuckets buckets = new RollupBuckets(RollupTier.MINUTE, 3);
+        for (int m = 0; m < 5; m++) {
+            for (int s = 0; s < 3; s++) buckets.add(m * minute + s * 1_000L, m * 10 + s);
+        }
+
+        RollupBuckets.Window all = buckets.range(Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertArrayEquals(new long[] {2 * minute, 3 * minute, 4 * minute}, all.starts(), "only the newest three buckets are held");
+        assertArrayEquals(new double[] {20, 30, 40}, all.min());
+        assertArrayEquals(new double[] {22, 32, 42}, all.max());
+        assertArrayEquals(new double[] {63, 93, 123}, all.sum());
+        assertArrayEquals(new long[] {3, 3, 3}, all.count());
+        assertArrayEquals(new long[] {3 * minute, 4 * minute}, buckets.range(Long.MIN_VALUE, Long.MAX_VALUE, 2).starts());
+
+        buckets.add(0, 1);
+        assertEquals(1, buckets.late(), "a recycled bucket takes no more samples");
+
+        List<Long> flushed = new ArrayList<>();
+        assertEquals(4, buckets.flush(4 * minute + 30_000, (start, min, max, sum, count) -> flushed.add(start)));
+        assertEquals(List.of(0L, minute, 2 * minute, 3 * minute), flushed.stream().sorted().toList(),
+                "recycled buckets were spilled, the open bucket stays");
+        buckets.add(3 * minute + 5, 99);
+        assertEquals(2, buckets.late(), "a flushed bucket takes no more samples");
+        assertEquals(0, buckets.flush(4 * minute + 30_000, (start, min, max, sum, count) -> flushed.add(start)));
+
+        assertNull(RollupTier.coarsestFor(1_000));
+        assertEquals(RollupTier.MINUTE, RollupTier.coarsestFor(5 * minute));
+        assertEquals(RollupTier.HOUR, RollupTier.coarsestFor(Duration.ofHours(6).toMillis()));
+        assertEquals(RollupTier.DAY, RollupTier.coarsestFor(Duration.ofDays(7).toMillis()));
+    }
+
+    @Test
+    void rollupBackfillLongerThanTheRingLosesNoBucket() {
+        long minute = 60_000;
+        RollupBuckets buckets = new RollupBuckets(RollupTier.MINUTE, 180);
+        Map<Long, Long> flushed = new java.util.TreeMap<>();
+        // Four hours of history arrive in one go, before any flush
+        for (int m = 0; m < 240; m++) {
+            for (int s = 0; s < 2; s++) buckets.add(m * minute + s * 1_000L, m);
+        }
+        buckets.flush(240 * minute, (start, min, max, sum, count) -> flushed.merge(start, count, Long::sum));
+
+        assertEquals(240, flushed.size());
+        assertTrue(flushed.values().stream().allMatch(c -> c == 2), "each bucket flushed once with all its samples");
+        assertEquals(0, buckets.late());
+
+        // Overflowing the spill area is counted rather than silently lost
+        RollupBuckets small = new RollupBuckets(RollupTier.MINUTE, 2);
+        for (int m = 0; m < 6; m++) small.add(m * minute, m);
+        assertEquals(2, small.late(), "two spilled buckets are kept, the samples of the third are counted");
+        assertEquals(4, small.flush(6 * minute, (start, min, max, sum, count) -> {}));
+    }
+
+    @Test
+    void rollupFlushThatFailsToStoreKeepsItsBuckets() {
+        long minute = 60_000;
+        AtomicInteger attempts = new AtomicInteger();
+        List<TelemetryRollupEntity> stored = new ArrayList<>();
+        TelemetryRollupRepository repository = (TelemetryRollupRepository) java.lang.reflect.Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {TelemetryRollupRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "saveAll" -> {
+                            if (attempts.incrementAndGet() == 1) throw new IllegalStateException("database down");
+                            ((Iterable<?>) args[0]).forEach(row -> stored.add((TelemetryRollupEntity) row));
+                            return List.of();
+                        }
+                        case "dropPartitionsBefore" -> {
+                            return 0;
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        TelemetryRollupService service = new TelemetryRollupService(repository, Duration.ofHours(1), Duration.ZERO,
+                3, Duration.ofDays(7), 3, Duration.ofDays(90), 3, Duration.ofDays(3650));
+        TelemetryRollupService.SeriesRollups series = service.rollupsFor("failing-flush", "temp");
+        for (int m = 0; m < 5; m++) series.add(m * minute, m); // two minute buckets spill out of the ring
+
+        assertThrows(IllegalStateException.class, () -> service.flush(10 * minute));
+        series.add(4 * minute + 1, 40);
+        assertEquals(0, service.stats().lateSamples(), "buckets of a failed flush still take samples");
+
+        service.flush(10 * minute);
+        Map<Long, Long> minutes = new java.util.TreeMap<>();
+        stored.stream().filter(r -> r.getTier() == RollupTier.MINUTE)
+                .forEach(r -> minutes.merge(r.getBucketStart(), r.getCount(), Long::sum));
+        assertEquals(Map.of(0L, 1L, minute, 1L, 2 * minute, 1L, 3 * minute, 1L, 4 * minute, 2L), minutes,
+                "every bucket is written once, after the failure");
+        assertEquals(0, service.flush(10 * minute));
+    }
+
+    // ── Energy counters ──────────────────────────────────────
+
+    @Test
+    void energyCounterIntegratesRunningDevicesAcrossDayAndMonthBoundaries() {
+        long hour = Duration.ofHours(1).toMillis();
+        long day = Duration.ofDays(1).toMillis();
+        long month = 0;
+        long day1 = 10 * day;
+        EnergyCounter counter = new EnergyCounter();
+        counter.roll(day1, month);
+
+        counter.start(1_000, day1 + hour);
+        counter.start(500, day1 + 2 * hour);
+        assertEquals(2_500, counter.todayWh(day1 + 3 * hour), 1e-6);
+        assertEquals(1_500, counter.activeWatts());
+        counter.stop(1_000, day1 + hour, day1 + 3 * hour);
+        assertEquals(3_000, counter.todayWh(day1 + 4 * hour), 1e-6);
+
+        long day2 = day1 + day;
+        counter.roll(day2, month);
+        assertEquals(500, counter.todayWh(day2 + hour), 1e-6, "the running device starts the new day at zero");
+        assertEquals(13_500, counter.monthWh(day2 + hour), 1e-6);
+
+        long month2 = day2 + 2 * day;
+        long day3 = month2 + day; // nothing happened for three days
+        counter.roll(day3, month2);
+        assertEquals(1_000, counter.todayWh(day3 + 2 * hour), 1e-6);
+        assertEquals(12_000 + 1_000, counter.monthWh(day3 + 2 * hour), 1e-6, "only the new month's share");
+        assertEquals(2_000 + 500 * 94 + 1_000, counter.lifetimeWh(day3 + 2 * hour), 1e-6);
+
+        EnergyCounter restored = new EnergyCounter();
+        restored.roll(day3, month2);
+        restored.restore(day3, 7, month2, 8, 9);
+        restored.restore(day2, 100, month, 100, 1);
+        assertEquals(7, restored.todayWh(day3), 1e-9, "a previous day's total is not restored");
+        assertEquals(8, restored.monthWh(day3), 1e-9);
+        assertEquals(10, restored.lifetimeWh(day3), 1e-9);
+    }
+
+    // ── Device ids ───────────────────────────────────────────
+
+    @Test
+    void snowflakeIdsAreUniqueAndOrderedPerThreadUnderContention() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        Map<String, Boolean> seen = new ConcurrentHashMap<>();
+        List<CompletableFuture<Boolean>> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(CompletableFuture.supplyAsync(() -> {
+                String previous = "";
+                boolean ordered = true;
+                for (int i = 0; i < 20_000; i++) {
+                    String id = generator.next("light");
+                    ordered &= id.compareTo(previous) > 0;
+                    previous = id;
+                    seen.put(id, Boolean.TRUE);
+                }
+                return ordered;
+            }));
+        }
+        for (CompletableFuture<Boolean> t : threads) assertTrue(t.get(10, TimeUnit.SECONDS), "ids increase within a thread");
+        assertEquals(160_000, seen.size(), "no collisions");
+
+        String id = generator.next("light");
+        assertTrue(id.matches("light-[0-9a-hjkmnp-tv-z]{13}"), id);
+        assertTrue(Math.abs(Duration.between(SnowflakeIdGenerator.timestampOf(id), java.time.Instant.now()).toSeconds()) <= 5);
+
+        List<String> range = generator.reserve(1_000);
+        assertEquals(1_000, new java.util.HashSet<>(range).size());
+        assertEquals(range.stream().sorted().toList(), range, "a reserved range is ascending");
+        assertTrue(("light-" + range.get(0)).compareTo(id) > 0, "ranges continue after earlier ids");
+    }
+
+    // ── Flyweight string pool ────────────────────────────────
+
+    @Test
+    void stringPoolHandsEveryThreadTheSameInstance() throws Exception {
+        List<CompletableFuture<List<String>>> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(CompletableFuture.supplyAsync(() -> {
+                List<String> pooled = new ArrayList<>();
+                // Fresh copies each time, the way a result set hands them back
+                for (int i = 0; i < 5_000; i++) pooled.add(StringPool.intern(new String("Pool Wing " + (i % 50))));
+                return pooled;
+            }));
+        }
+        List<String> first = threads.get(0).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<List<String>> t : threads) {
+            List<String> pooled = t.get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < pooled.size(); i++) assertSame(first.get(i % 50), pooled.get(i));
+        }
+        assertNull(StringPool.intern(null));
+
+        DeviceEntity entity = new DeviceEntity("light-pool", "Lamp", DeviceType.LIGHT, new String("Pool Wing 7"), false, 10, "LOCAL");
+        assertSame(first.get(7), entity.getLocation());
+        entity.setEcosystem(new String("Pool Wing 8"));
+        assertSame(first.get(8), entity.getEcosystem());
+    }
+
+    @Test
+    void pooledLocationsAndEcosystemsShrinkALargeInventory() {
+        int devices = 100_000;
+        List<UnpooledDevice> unpooled = new ArrayList<>(devices);
+        List<DeviceEntity> pooled = new ArrayList<>(devices);
+        for (int i = 0; i < devices; i++) {
+            unpooled.add(new UnpooledDevice("light-" + i, "Lamp " + i, DeviceType.LIGHT, location(i), true, 10, ecosystem(i), 0));
+            pooled.add(new DeviceEntity("light-" + i, "Lamp " + i, DeviceType.LIGHT, location(i), true, 10, ecosystem(i)));
+        }
+
+        // Count the string instances each inventory retains for the two repeated columns
+        Map<String, Boolean> unpooledStrings = new java.util.IdentityHashMap<>();
+        unpooled.forEach(d -> {
+            unpooledStrings.put(d.location(), Boolean.TRUE);
+            unpooledStrings.put(d.ecosystem(), Boolean.TRUE);
+        });
+        Map<String, Boolean> pooledStrings = new java.util.IdentityHashMap<>();
+        pooled.forEach(d -> {
+            pooledStrings.put(d.getLocation(), Boolean.TRUE);
+            pooledStrings.put(d.getEcosystem(), Boolean.TRUE);
+        });
+
+        assertEquals(2 * devices, unpooledStrings.size(), "every row holds its own copies");
+        assertEquals(200 + 3, pooledStrings.size(), "one instance per distinct location and ecosystem");
+        assertSame(pooled.get(0).getLocation(), pooled.get(200).getLocation());
+    }
+
+    /**
+     * Same fields as a device row, holding the strings exactly as they came in
+     */
+    private record UnpooledDevice(String id, String name, DeviceType type, String location, boolean on,
+                                  int ratedPowerWatts, String ecosystem, long version) {}
+
+    /**
+     * Command that only runs a callback, for ordering and blocking in pipeline tests
+     */
+    private record RecordingCommand(Runnable action) implements Command {
+        public void execute() { action.run(); }
+        public void undo() {}
+        public String getDescription() { return "record"; }
+    }
+
+    /**
+     * Device whose operations cost nothing, to isolate decorator overhead
+     */
+    private static final class NoopDevice implements Device {
+        public void turnOn() {}
+        public void turnOff() {}
+        public boolean isOn() { return false; }
+        public String getStatus() { return "OK"; }
+        public String getDeviceInfo() { return "noop"; }
+        public double getPowerConsumption() { return 0; }
+        public void operate(String command) {}
+    }
+
+    private static String location(int i) {
+        return "Floor " + (i % 40) + " Room " + (i % 25);
+    }
+
+    private static String ecosystem(int i) {
+        return "ECOSYSTEM_" + (i % 3);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DeviceProxy adminProxy(String id) {
+        DeviceProxy proxy = new DeviceProxy(id, id, "10.0.0.1");
+        proxy.setAccess("test-admin", DeviceProxy.AccessLevel.ADMIN);
+        return proxy;
+    }
+}
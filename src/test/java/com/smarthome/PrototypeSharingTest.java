@@ -0,0 +1,132 @@
+package com.smarthome;
+
+import com.smarthome.pattern.creational.prototype.ConfigurationInterner;
+import com.smarthome.pattern.creational.prototype.DeviceConfiguration;
+import com.smarthome.pattern.creational.prototype.PersistentMap;
+import com.smarthome.pattern.creational.prototype.PrototypeDemo;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Persistent, structurally shared configuration maps and the interning pool
+ * behind prototype clones.
+ */
+class PrototypeSharingTest {
+
+    @Test
+    void persistentMapAgreesWithHashMapAndNeverChangesOldVersions() {
+        Random random = new Random(49);
+        Map<Object, Integer> expected = new HashMap<>();
+        PersistentMap<Object, Integer> built = PersistentMap.empty();
+        for (int i = 0; i < 20_000; i++) {
+            // Collider keys share their hash in pairs, so collision nodes are exercised too
+            Object key = random.nextBoolean() ? "k" + random.nextInt(3_000) : new Collider(random.nextInt(400));
+            PersistentMap<Object, Integer> before = built;
+            int sizeBefore = before.size();
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                built = built.without(key);
+            } else {
+                expected.put(key, i);
+                built = built.with(key, i);
+            }
+            assertEquals(sizeBefore, before.size(), "old versions are immutable");
+        }
+        PersistentMap<Object, Integer> actual = built;
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.size(), actual.entrySet().stream().count());
+        expected.forEach((k, v) -> assertEquals(v, actual.get(k)));
+
+        Object someKey = expected.keySet().iterator().next();
+        assertSame(actual, actual.with(someKey, expected.get(someKey)), "an unchanged mapping returns the same map");
+
+        PersistentMap<Object, Integer> drained = actual;
+        for (Object key : expected.keySet()) drained = drained.without(key);
+        assertTrue(drained.isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> actual.put("k1", 1));
+    }
+
+    @Test
+    void clonesShareSettingsAndWritesNeverLeakBetweenThem() {
+        DeviceConfiguration template = DeviceConfiguration.createLightPreset("Reading", 60, "#FFFFFF");
+        DeviceConfiguration a = template.clone();
+        DeviceConfiguration b = template.clone();
+        assertTrue(a.sharesSettingsWith(template));
+        assertTrue(a.sharesSettingsWith(b));
+
+        a.addSetting("brightness", 20);
+        assertFalse(a.sharesSettingsWith(template));
+        assertEquals(20, a.getSetting("brightness"));
+        assertEquals(60, template.getSetting("brightness"), "the template is untouched");
+        assertEquals(60, b.getSetting("brightness"));
+
+        template.addSetting("color", "#000000");
+        assertEquals("#FFFFFF", b.getSetting("color"), "writing the template does not leak into clones");
+        assertThrows(UnsupportedOperationException.class, () -> b.getSettings().put("color", "#123456"));
+    }
+
+    @Test
+    void equalConfigurationsInternToOneMap() {
+        DeviceConfiguration template = DeviceConfiguration.createThermostatPreset("Interned", 19.5, "ECO");
+        DeviceConfiguration a = template.clone();
+        DeviceConfiguration b = template.clone();
+        a.addSetting("targetTemperature", 23.0);
+        b.addSetting("targetTemperature", 23.0);
+        assertFalse(a.sharesSettingsWith(b), "equal but derived separately");
+
+        long hits = ConfigurationInterner.stats().hits();
+        a.intern();
+        b.intern();
+        assertTrue(a.sharesSettingsWith(b));
+        assertTrue(ConfigurationInterner.stats().hits() > hits);
+        assertEquals(23.0, b.getSetting("targetTemperature"));
+    }
+
+    @Test
+    void internedClonesRetainOneSettingsMapPerVariantInsteadOfOnePerClone() {
+        DeviceConfiguration template = DeviceConfiguration.createLightPreset("Footprint Light", 80, "#FFFFFF").intern();
+        Map<Map<String, Object>, Boolean> shared = new IdentityHashMap<>();
+        Map<Map<String, Object>, Boolean> deepCopies = new IdentityHashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            DeviceConfiguration clone = template.clone();
+            Map<String, Object> deepCopy = new HashMap<>(template.getSettings()); // how clones were copied before
+            if (i % 10 == 0) {
+                int brightness = (i / 10) % 100;
+                clone.addSetting("brightness", brightness);
+                deepCopy.put("brightness", brightness);
+            }
+            shared.put(clone.intern().getSettings(), Boolean.TRUE);
+            deepCopies.put(deepCopy, Boolean.TRUE);
+        }
+
+        // 100 brightness variants, one of which equals the template's 80 and interns back to its map
+        assertEquals(100, shared.size());
+        assertTrue(shared.containsKey(template.getSettings()), "unchanged clones keep the template's map");
+        assertEquals(50_000, deepCopies.size());
+    }
+
+    @Test
+    void statsCountSharedSettingsMapsDeterministically() {
+        Map<String, Object> stats = PrototypeDemo.stats(1_000);
+        assertEquals(1_000, stats.get("instances"));
+        assertEquals(100, stats.get("distinctSettings"));
+        assertEquals(90, stats.get("memorySaved"));
+        assertTrue((Long) stats.get("internHits") > 0);
+        assertEquals(stats.get("distinctSettings"), PrototypeDemo.stats(1_000).get("distinctSettings"), "same input, same count");
+    }
+
+    private record Collider(int id) {
+        @Override
+        public int hashCode() {
+            return id / 2;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.smarthome;
+
+import com.smarthome.pattern.structural.proxy.CircuitBreaker;
+import com.smarthome.pattern.structural.proxy.DeviceProxy;
+import com.smarthome.pattern.structural.proxy.NetworkedRemoteDevice;
+import com.smarthome.pattern.structural.proxy.RemoteCallGuard;
+import com.smarthome.pattern.structural.proxy.RemoteDeviceClient;
+import com.smarthome.pattern.structural.proxy.RemoteDeviceSimulator;
+import com.smarthome.pattern.structural.proxy.RemoteDeviceUnavailableException;
+import com.smarthome.pattern.structural.proxy.RemoteStatusCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the remote proxy against the NIO device simulator over a loopback socket.
+ */
+class RemoteDeviceSimulatorTest {
+
+    private RemoteDeviceSimulator simulator;
+    private RemoteDeviceClient client;
+
+    @BeforeEach
+    void startSimulator() throws IOException {
+        simulator = new RemoteDeviceSimulator(5_000, new RemoteDeviceSimulator.Faults(5, 10, 0));
+        client = new RemoteDeviceClient(simulator.start(0), 4);
+    }
+
+    @AfterEach
+    void stopSimulator() {
+        client.close();
+        simulator.close();
+    }
+
+    @Test
+    void proxiesDriveThousandsOfSimulatedDevices() {
+        int devices = 2_000;
+        RemoteStatusCache cache = new RemoteStatusCache(Duration.ofSeconds(5), Duration.ZERO);
+        RemoteCallGuard guard = new RemoteCallGuard(RemoteCallGuard.Policy.defaults());
+        List<DeviceProxy> proxies = new ArrayList<>(devices);
+        for (int i = 0; i < devices; i++) {
+            proxies.add(networkedProxy(RemoteDeviceSimulator.deviceId(i), cache, guard));
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> statuses = proxies.stream()
+                .map(p -> p.turnOnAsync().thenCompose(v -> p.statusAsync()))
+                .toList();
+        CompletableFuture.allOf(statuses.toArray(CompletableFuture[]::new)).join();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (int i = 0; i < devices; i++) {
+            assertEquals("Remote Device " + RemoteDeviceSimulator.deviceId(i) + ": ON, Connected: true",
+                    statuses.get(i).join());
+        }
+        // 3 round trips per device (connect, on, status), all pipelined over 4 sockets
+        assertEquals(3L * devices, simulator.stats().requests());
+        assertTrue(simulator.stats().connections() <= 4);
+        assertEquals(0, client.pendingRequests());
+        assertTrue(elapsedMs < 10_000, "took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void pipelinedRepliesAreMatchedToTheirRequests() {
+        simulator.setFaults(new RemoteDeviceSimulator.Faults(0, 50, 0));
+        try (RemoteDeviceClient single = new RemoteDeviceClient(simulator.address(), 1)) {
+            single.send(RemoteDeviceSimulator.deviceId(7), "ON", null).join();
+
+            // Jitter reorders replies on the one shared socket
+            List<CompletableFuture<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                replies.add(single.send(RemoteDeviceSimulator.deviceId(i % 10), "ISON", null));
+            }
+            for (int i = 0; i < 200; i++) {
+                assertEquals(String.valueOf(i % 10 == 7), replies.get(i).join(), "reply " + i);
+            }
+        }
+    }
+
+    @Test
+    void injectedFailuresOpenTheCircuit() {
+        simulator.setFaults(new RemoteDeviceSimulator.Faults(0, 0, 1.0));
+        RemoteCallGuard guard = new RemoteCallGuard(
+                new RemoteCallGuard.Policy(Duration.ofSeconds(1), 3, Duration.ofSeconds(30), 8, null));
+        DeviceProxy proxy = networkedProxy(RemoteDeviceSimulator.deviceId(1),
+                new RemoteStatusCache(Duration.ofSeconds(5), Duration.ZERO), guard);
+
+        for (int i = 0; i < 3; i++) {
+            RemoteDeviceUnavailableException e = assertThrows(RemoteDeviceUnavailableException.class, proxy::turnOn);
+            assertTrue(e.getMessage().contains("injected failure"), e.getMessage());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, proxy.getCircuitState());
+        long requestsBefore = simulator.stats().requests();
+        assertThrows(RemoteDeviceUnavailableException.class, proxy::turnOn);
+        assertEquals(requestsBefore, simulator.stats().requests(), "open circuit must not reach the device");
+    }
+
+    @Test
+    void unresponsiveDeviceIsBoundedByCallTimeout() {
+        String deviceId = RemoteDeviceSimulator.deviceId(42);
+        simulator.setUnresponsive(deviceId, true);
+        RemoteCallGuard guard = new RemoteCallGuard(
+                new RemoteCallGuard.Policy(Duration.ofMillis(100), 5, Duration.ofSeconds(30), 8, null));
+        DeviceProxy proxy = networkedProxy(deviceId, new RemoteStatusCache(Duration.ofSeconds(5), Duration.ZERO), guard);
+
+        long start = System.nanoTime();
+        CompletionException e = assertThrows(CompletionException.class, () -> proxy.statusAsync().join());
+        assertInstanceOf(RemoteDeviceUnavailableException.class, e.getCause());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+        assertEquals(1, simulator.stats().dropped());
+    }
+
+    private DeviceProxy networkedProxy(String deviceId, RemoteStatusCache cache, RemoteCallGuard guard) {
+        DeviceProxy proxy = new DeviceProxy(deviceId, deviceId, simulator.address().toString(), cache, guard,
+                () -> new NetworkedRemoteDevice(deviceId, deviceId, client));
+        proxy.setAccess("bench", DeviceProxy.AccessLevel.ADMIN);
+        return proxy;
+    }
+}
@@ -1,8 +1,10 @@
 package com.smarthome;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import com.jayway.jsonpath.JsonPath;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +12,10 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Tests for the new REST DELETE endpoints and service layer decomposition.
@@ -112,6 +118,403 @@ class RestEndpointsTest {
                 .andExpect(jsonPath("$.affectedDevices").isNumber());
     }
 
+    @Test
+    void compositeFanOutReportsPerDevice() throws Exception {
+        mockMvc.perform(post("/api/patterns/composite/fanout")
+                        .param("target", "house")
+                        .param("action", "off")
+                        .param("maxConcurrency", "4")
+                        .param("deadlineMs", "5000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pattern").value("Composite"))
+                .andExpect(jsonPath("$.failedDevices").value(0))
+                .andExpect(jsonPath("$.report.outcomes").isArray())
+                .andExpect(jsonPath("$.report.outcomes[0].status").value("SUCCEEDED"));
+
+        mockMvc.perform(post("/api/patterns/composite/fanout")
+                        .param("target", "house")
+                        .param("maxConcurrency", "0"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/api/patterns/composite/fanout")
+                        .param("target", "house")
+                        .param("action", "dim"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void proxyRemoteAsyncReleasesRequestThread() throws Exception {
+        MvcResult pending = mockMvc.perform(post("/api/patterns/proxy/remote-async")
+                        .param("name", "Async Cam")
+                        .param("address", "10.0.0.5")
+                        .param("count", "25"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mode").value("async"))
+                .andExpect(jsonPath("$.devices").value(25))
+                .andExpect(jsonPath("$.connected").value(25));
+    }
+
+    @Test
+    void commandBatchRunsThroughPipelineAndPersists() throws Exception {
+        MvcResult pending = mockMvc.perform(post("/api/patterns/command/batch")
+                        .param("deviceId", "kitchen-light")
+                        .param("commands", "ON,OFF,ON,OFF"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.submitted").value(4))
+                .andExpect(jsonPath("$.results[3].coalesced").value(false))
+                .andExpect(jsonPath("$.results[3].command").value(Matchers.startsWith("Turn OFF")));
+
+        mockMvc.perform(get("/api/devices/kitchen-light"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.isOn").value(false));
+
+        mockMvc.perform(get("/api/patterns/command/pipeline"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pipeline.submitted").value(Matchers.greaterThanOrEqualTo(4)))
+                .andExpect(jsonPath("$.pipeline.flushes").value(Matchers.greaterThanOrEqualTo(1)));
+    }
+
+    @Test
+    void macroIsUndoneAndRedoneAsOneJournalEntry() throws Exception {
+        for (String device : new String[]{"bed-light", "living-tv"}) {
+            mockMvc.perform(post("/api/patterns/command/execute").header("X-User-Id", "macro-user")
+                            .param("deviceId", device).param("command", "OFF"))
+                    .andExpect(status().isOk());
+        }
+        mockMvc.perform(post("/api/patterns/command/macro").header("X-User-Id", "macro-user")
+                        .param("name", "movie-night")
+                        .param("steps", "bed-light:ON", "living-tv:ON"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results.length()").value(2));
+
+        mockMvc.perform(post("/api/patterns/command/undo").header("X-User-Id", "macro-user"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entry.label").value("movie-night"))
+                .andExpect(jsonPath("$.results.length()").value(2));
+        mockMvc.perform(get("/api/devices/bed-light")).andExpect(jsonPath("$.isOn").value(false));
+        mockMvc.perform(get("/api/devices/living-tv")).andExpect(jsonPath("$.isOn").value(false));
+
+        mockMvc.perform(post("/api/patterns/command/redo").header("X-User-Id", "macro-user"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.action").value("redo"));
+        mockMvc.perform(get("/api/devices/living-tv")).andExpect(jsonPath("$.isOn").value(true));
+
+        mockMvc.perform(get("/api/patterns/command/history").header("X-User-Id", "macro-user")
+                        .param("deviceId", "living-tv"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries[0].label").value("movie-night"))
+                .andExpect(jsonPath("$.entries.length()").value(2));
+        mockMvc.perform(get("/api/patterns/command/devices/living-tv/history"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries[0].action").value("REDO"))
+                .andExpect(jsonPath("$.entries[1].action").value("UNDO"))
+                .andExpect(jsonPath("$.entries[2].label").value("movie-night"));
+
+        mockMvc.perform(post("/api/patterns/command/macro").header("X-User-Id", "macro-user")
+                        .param("name", "x".repeat(300))
+                        .param("steps", "living-tv:OFF"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/devices/living-tv")).andExpect(jsonPath("$.isOn").value(true));
+    }
+
+    @Test
+    void idempotencyKeyReplaysTheFirstResponse() throws Exception {
+        String first = mockMvc.perform(post("/api/devices/front-camera/control")
+                        .header("Idempotency-Key", "retry-1").param("action", "on"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(post("/api/devices/front-camera/control").param("action", "off"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.isOn").value(false));
+
+        // The retry is answered from the store: same body, and the device is not switched back on
+        mockMvc.perform(post("/api/devices/front-camera/control")
+                        .header("Idempotency-Key", "retry-1").param("action", "on"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(content().json(first));
+        mockMvc.perform(get("/api/devices/front-camera"))
+                .andExpect(jsonPath("$.isOn").value(false));
+
+        mockMvc.perform(post("/api/devices/front-camera/control")
+                        .header("Idempotency-Key", "retry-1").param("action", "off"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.error").value("IDEMPOTENCY_KEY_REUSED"));
+
+        mockMvc.perform(get("/api/metrics/idempotency"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.idempotency.replayed").value(Matchers.greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.idempotency.conflicts").value(Matchers.greaterThanOrEqualTo(1)));
+    }
+
+    @Test
+    void idempotencyKeyIsBoundToTheBodyAndScopedToTheClient() throws Exception {
+        String body = "[[\"bed-thermo\",\"humidity\",1000,40]]";
+        mockMvc.perform(post("/api/telemetry").contentType("application/json").content(body)
+                        .header("Idempotency-Key", "upload-1").header("X-Client-Id", "hub-a"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andExpect(jsonPath("$.accepted").value(1));
+        mockMvc.perform(post("/api/telemetry").contentType("application/json").content(body)
+                        .header("Idempotency-Key", "upload-1").header("X-Client-Id", "hub-a"))
+                .andExpect(header().string("Idempotent-Replayed", "true"));
+
+        // Same key and path but a different body is a misuse of the key, not a retry
+        mockMvc.perform(post("/api/telemetry").contentType("application/json")
+                        .content("[[\"bed-thermo\",\"humidity\",2000,45]]")
+                        .header("Idempotency-Key", "upload-1").header("X-Client-Id", "hub-a"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.error").value("IDEMPOTENCY_KEY_REUSED"));
+
+        // Another client choosing the same key gets its own request executed
+        mockMvc.perform(post("/api/telemetry").contentType("application/json").content(body)
+                        .header("Idempotency-Key", "upload-1").header("X-Client-Id", "hub-b"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andExpect(jsonPath("$.accepted").value(1));
+    }
+
+    @Test
+    void idempotencyKeyedBodiesAreCapped() throws Exception {
+        byte[] oversized = new byte[1024 * 1024 + 1];
+        java.util.Arrays.fill(oversized, (byte) ' ');
+        mockMvc.perform(post("/api/telemetry").contentType("application/json").content(oversized)
+                        .header("Idempotency-Key", "huge-1"))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.error").value("IDEMPOTENT_BODY_TOO_LARGE"));
+    }
+
+    @Test
+    void concurrentControlsOfOneDeviceAreSerializedThroughItsMailbox() throws Exception {
+        java.util.List<java.util.concurrent.CompletableFuture<Integer>> calls = new java.util.ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String action = i % 2 == 0 ? "on" : "off";
+            calls.add(java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                try {
+                    return mockMvc.perform(post("/api/devices/kitchen-sensor/control").param("action", action))
+                            .andReturn().getResponse().getStatus();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        for (var call : calls) {
+            org.junit.jupiter.api.Assertions.assertEquals(200, call.get(10, java.util.concurrent.TimeUnit.SECONDS));
+        }
+
+        mockMvc.perform(get("/api/metrics/mailboxes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mailboxes.workers").value(8))
+                .andExpect(jsonPath("$.mailboxes.processed").value(Matchers.greaterThanOrEqualTo(20)));
+    }
+
+    @Test
+    void recoveryMetricsReportTheStartupReplay() throws Exception {
+        mockMvc.perform(get("/api/metrics/recovery"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.recovery.keep").value(2))
+                .andExpect(jsonPath("$.recovery.lastRecovery.eventsReplayed").isNumber())
+                .andExpect(jsonPath("$.recovery.lastRecovery.elapsedMillis").isNumber());
+    }
+
+    @Test
+    void telemetryAcceptsNdjsonAndCompactRowsAndAnswersRangeQueries() throws Exception {
+        String ndjson = """
+                {"deviceId":"bed-thermo","metric":"temperature","ts":1000,"value":20.5}
+                {"deviceId":"bed-thermo","metric":"temperature","ts":2000,"value":21.0}
+                {"deviceId":"no-such-device","metric":"temperature","ts":2000,"value":1}
+                """;
+        mockMvc.perform(post("/api/telemetry").contentType("application/x-ndjson").content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1));
+
+        mockMvc.perform(post("/api/telemetry").contentType("application/json")
+                        .content("[[\"bed-thermo\",\"temperature\",3000,21.5],[\"bed-light\",\"power\",3000,9.5]]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2));
+
+        mockMvc.perform(get("/api/telemetry/devices/bed-thermo").param("metric", "temperature").param("from", "2000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.series[0].timestamps[0]").value(2000))
+                .andExpect(jsonPath("$.series[0].values[1]").value(21.5));
+        mockMvc.perform(get("/api/telemetry/rooms/Bedroom").param("from", "0").param("to", "5000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.seriesCount").value(Matchers.greaterThanOrEqualTo(2)))
+                .andExpect(jsonPath("$.series[?(@.deviceId=='bed-light')].metric").value("power"));
+        mockMvc.perform(get("/api/telemetry/types/THERMOSTAT").param("metric", "temperature").param("to", "5000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.series[?(@.deviceId=='bed-thermo')].count").value(3));
+
+        mockMvc.perform(post("/api/telemetry").contentType("application/json").content("[[\"bed-thermo\",\"x\"]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void telemetryQueriesWithAStepUseTheCoarsestFittingRollupTier() throws Exception {
+        mockMvc.perform(post("/api/telemetry").contentType("application/json")
+                        .content("[[\"bed-thermo\",\"setpoint\",1000,20],[\"bed-thermo\",\"setpoint\",30000,22],"
+                                + "[\"bed-thermo\",\"setpoint\",90000,24]]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(3));
+
+        mockMvc.perform(get("/api/telemetry/devices/bed-thermo").param("metric", "setpoint").param("step", "300000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resolution").value("MINUTE"))
+                .andExpect(jsonPath("$.series[0].bucketStarts[0]").value(0))
+                .andExpect(jsonPath("$.series[0].min[0]").value(20.0))
+                .andExpect(jsonPath("$.series[0].max[0]").value(22.0))
+                .andExpect(jsonPath("$.series[0].avg[0]").value(21.0))
+                .andExpect(jsonPath("$.series[0].counts[1]").value(1));
+        mockMvc.perform(get("/api/telemetry/types/THERMOSTAT").param("metric", "setpoint").param("step", "86400000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resolution").value("DAY"))
+                .andExpect(jsonPath("$.series[?(@.deviceId=='bed-thermo')].counts[0]").value(3));
+        mockMvc.perform(get("/api/telemetry/devices/bed-thermo").param("metric", "setpoint").param("step", "500"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resolution").value("RAW"))
+                .andExpect(jsonPath("$.series[0].count").value(3));
+        mockMvc.perform(get("/api/telemetry/devices/bed-thermo").param("step", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void energyEndpointsReportKwhPerScope() throws Exception {
+        mockMvc.perform(get("/api/energy"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.home.scope").value("home"))
+                .andExpect(jsonPath("$.home.drawWatts").value(Matchers.greaterThan(0)))
+                .andExpect(jsonPath("$.rooms[?(@.scope=='room:bedroom')]").exists());
+        mockMvc.perform(get("/api/energy/types/THERMOSTAT"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.scope").value("type:THERMOSTAT"));
+        mockMvc.perform(get("/api/energy/devices/kitchen-sensor"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalKwh").isNumber());
+        mockMvc.perform(get("/api/energy/devices/no-such-device"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/energy/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.energy.meteredDevices").value(Matchers.greaterThan(0)));
+    }
+
+    @Test
+    void eventEndpointsReadTheJournalInOrder() throws Exception {
+        mockMvc.perform(post("/api/devices/living-tv/control").param("action", "off")).andExpect(status().isOk());
+        String stats = mockMvc.perform(get("/api/events/stats"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        long from = JsonPath.parse(stats).read("$.journal.lastSequence", Long.class) + 1;
+
+        mockMvc.perform(post("/api/devices/living-tv/control").param("action", "on")).andExpect(status().isOk());
+        mockMvc.perform(post("/api/devices/living-tv/control").param("action", "off")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/events").param("from", String.valueOf(from)).param("limit", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].sequence").value(from))
+                .andExpect(jsonPath("$[?(@.deviceId=='living-tv' && @.type=='STATE_CHANGE')].detail",
+                        Matchers.contains("ON", "OFF")));
+        mockMvc.perform(get("/api/events").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportEndpointsStreamNdjsonAndCsv() throws Exception {
+        MvcResult devices = mockMvc.perform(get("/api/export/devices")).andReturn();
+        String ndjson = mockMvc.perform(asyncDispatch(devices))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", Matchers.startsWith("application/x-ndjson")))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"devices.ndjson\""))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = ndjson.split("\n");
+        assertTrue(lines.length > 1);
+        assertTrue(Arrays.stream(lines).anyMatch(l -> "living-tv".equals(JsonPath.parse(l).read("$.id"))));
+
+        MvcResult csv = mockMvc.perform(get("/api/export/devices").param("format", "csv")).andReturn();
+        String body = mockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", Matchers.startsWith("text/csv")))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(body.startsWith("id,name,type,location,on,ratedPowerWatts,ecosystem\n"));
+        assertEquals(lines.length + 1, body.split("\n").length, "a header plus one line per device");
+
+        MvcResult rooms = mockMvc.perform(get("/api/export/rooms")).andReturn();
+        String roomRows = mockMvc.perform(asyncDispatch(rooms)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(roomRows.lines().allMatch(l -> JsonPath.parse(l).read("$.deviceIds") instanceof List<?>));
+
+        mockMvc.perform(post("/api/devices/living-tv/control").param("action", "on")).andExpect(status().isOk());
+        MvcResult events = mockMvc.perform(get("/api/export/events").param("format", "csv")).andReturn();
+        String history = mockMvc.perform(asyncDispatch(events)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(history.startsWith("sequence,at,type,deviceId,detail\n"));
+        assertTrue(history.contains(",STATE_CHANGE,living-tv,"));
+
+        mockMvc.perform(get("/api/export/scenes").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void importEndpointTakesCsvAndReportsBadRows() throws Exception {
+        String csv = """
+                type,name,location,on,ratedPowerWatts
+                LIGHT,"Porch Light, East",Porch,true,9
+                CAMERA,Gate Camera,Porch,false,
+                LIGHT,,Porch,false,9
+                LOCK,Porch Lock,Porch,maybe,2
+                """;
+        mockMvc.perform(post("/api/devices/import").param("format", "csv")
+                        .contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows").value(4))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.errors[0].row").value(4))
+                .andExpect(jsonPath("$.errors[0].message").value("name is required"))
+                .andExpect(jsonPath("$.errors[1].row").value(5));
+
+        mockMvc.perform(get("/api/devices"))
+                .andExpect(jsonPath("$[?(@.location=='Porch')].type", Matchers.containsInAnyOrder("LIGHT", "CAMERA")));
+        mockMvc.perform(post("/api/devices/import").param("format", "csv").content("name,location\nLamp,Den\n"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/metrics/import"))
+                .andExpect(jsonPath("$.import.imported").value(Matchers.greaterThanOrEqualTo(2)));
+    }
+
+    @Test
+    void provisionEndpointClonesATemplateIntoDevices() throws Exception {
+        String result = mockMvc.perform(post("/api/devices/provision").contentType("application/json").content("""
+                        {"template": "security-camera", "count": 3, "namePattern": "Gate {n} Camera",
+                         "locationPattern": "Gate {n}", "overrides": {"2": {"settings": {"resolution": "4K"}}}}
+                        """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.provisioned").value(3))
+                .andExpect(jsonPath("$.sharingTemplateSettings").value(2))
+                .andExpect(jsonPath("$.type").value("CAMERA"))
+                .andReturn().getResponse().getContentAsString();
+        String last = JsonPath.parse(result).read("$.lastDeviceId");
+
+        mockMvc.perform(get("/api/devices/" + last + "/configuration"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.template").value("security-camera"))
+                .andExpect(jsonPath("$.settings.resolution").value("1080p"));
+        mockMvc.perform(get("/api/devices/" + last))
+                .andExpect(jsonPath("$.location").value("Gate 3"));
+        mockMvc.perform(post("/api/devices/provision").contentType("application/json")
+                        .content("{\"template\": \"toaster\", \"count\": 1, \"locationPattern\": \"Kitchen\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void bridgeControlEndpoint() throws Exception {
         mockMvc.perform(post("/api/patterns/bridge/control")
@@ -0,0 +1,194 @@
+package com.smarthome;
+
+import ch.qos.logback.classic.Level;
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.factory.SmartCamera;
+import com.smarthome.pattern.creational.factory.SmartLight;
+import com.smarthome.pattern.creational.factory.SmartLock;
+import com.smarthome.pattern.creational.factory.SmartThermostat;
+import com.smarthome.service.DeviceEventJournal;
+import com.smarthome.service.DeviceEventJournal.Type;
+import com.smarthome.service.RuntimeRecovery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runtime snapshots plus event journal replay.
+ */
+class RuntimeRecoveryTest {
+
+    @TempDir
+    Path dir;
+
+    private DeviceEventJournal journal;
+
+    @AfterEach
+    void closeJournal() {
+        if (journal != null) journal.close();
+    }
+
+    @Test
+    void snapshotPlusJournalTailRestoresRuntimeProperties() {
+        journal = openJournal();
+        Map<String, Device> live = home();
+        ((SmartLight) live.get("light")).setBrightness(40);
+        ((SmartThermostat) live.get("thermo")).setTargetTemperature(24.5);
+        ((SmartLock) live.get("lock")).setAutoLockDelay(90);
+        newRecovery().snapshot(live);
+
+        // changes after the snapshot exist only in the journal
+        journal.append(Type.RUNTIME, "light", "L1;30;#FFE4B5");
+        journal.append(Type.RUNTIME, "camera", "C1;1;0;4K");
+        journal.append(Type.STATE_CHANGE, "thermo", "OFF");
+        journal.append(Type.STATE_CHANGE, "thermo", "ON");
+        journal.append(Type.COMMAND, "lock", "Unlock");
+
+        Map<String, Device> restarted = home();
+        RuntimeRecovery.Recovery recovery = newRecovery().recover(restarted);
+
+        SmartLight light = (SmartLight) restarted.get("light");
+        assertEquals(30, light.getBrightness());
+        assertEquals("#FFE4B5", light.getColor());
+        assertEquals(24.5, ((SmartThermostat) restarted.get("thermo")).getTargetTemperature());
+        assertEquals("AUTO", ((SmartThermostat) restarted.get("thermo")).getMode());
+        SmartCamera camera = (SmartCamera) restarted.get("camera");
+        assertTrue(camera.isRecording());
+        assertFalse(camera.isMotionDetectionEnabled());
+        assertEquals("4K", camera.getResolution());
+        assertEquals(90, ((SmartLock) restarted.get("lock")).getAutoLockDelay());
+
+        assertEquals(4, recovery.devicesRestored());
+        assertEquals(5, recovery.eventsReplayed());
+        assertEquals(0, recovery.snapshotSequence());
+    }
+
+    @Test
+    void powerFollowsTheDeviceTableWhenTheJournalDisagrees() {
+        journal = openJournal();
+        journal.append(Type.RUNTIME, "light", "L1;55;#FFFFFF");
+
+        Map<String, Device> restarted = home();
+        restarted.get("light").turnOff(); // hydrated from a row that was switched off after the last journal flush
+        RuntimeRecovery.Recovery recovery = newRecovery().recover(restarted);
+
+        assertFalse(restarted.get("light").isOn());
+        assertEquals(55, ((SmartLight) restarted.get("light")).getBrightness());
+        assertEquals(1, recovery.powerCorrected());
+    }
+
+    @Test
+    void corruptSnapshotFallsBackToTheOlderOne() throws Exception {
+        journal = openJournal();
+        Map<String, Device> live = home();
+        RuntimeRecovery recovery = newRecovery();
+        ((SmartLight) live.get("light")).setBrightness(20);
+        recovery.snapshot(live);
+        journal.append(Type.RUNTIME, "light", "L1;70;#FFFFFF");
+        RuntimeRecovery.Snapshot newest = recovery.snapshot(live);
+
+        Path file = snapshotsDir().resolve(newest.file());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(file, bytes);
+
+        Map<String, Device> restarted = home();
+        RuntimeRecovery.Recovery restored = newRecovery().recover(restarted);
+        assertEquals(0, restored.snapshotSequence());
+        assertEquals(1, restored.eventsReplayed());
+        assertEquals(70, ((SmartLight) restarted.get("light")).getBrightness());
+    }
+
+    @Test
+    void onlyTheNewestSnapshotsAreKept() throws Exception {
+        journal = openJournal();
+        RuntimeRecovery recovery = newRecovery();
+        for (int i = 0; i < 5; i++) {
+            journal.append(Type.RUNTIME, "light", "L1;" + (10 + i) + ";#FFFFFF");
+            recovery.snapshot(home());
+        }
+        try (Stream<Path> files = Files.list(snapshotsDir())) {
+            assertEquals(List.of("snapshot-00000000000000000004.snap", "snapshot-00000000000000000005.snap"),
+                    files.map(p -> p.getFileName().toString()).sorted().toList());
+        }
+        assertEquals(5, recovery.stats().snapshotsTaken());
+    }
+
+    @Test
+    void recoversOneHundredThousandDevicesInSeconds() {
+        ch.qos.logback.classic.Logger devices = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.smarthome.pattern");
+        Level level = devices.getLevel();
+        devices.setLevel(Level.WARN); // each setter logs; keep 200k lines out of the test output
+        try {
+            journal = new DeviceEventJournal(dir.resolve("journal").toString(), DataSize.ofMegabytes(64),
+                    Duration.ofHours(1), DataSize.ofGigabytes(1), Duration.ofDays(7), Duration.ofMillis(10), false);
+            int count = 100_000;
+            Map<String, Device> live = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                SmartThermostat t = new SmartThermostat("t" + i, "Floor " + (i % 20));
+                t.turnOn();
+                t.setTargetTemperature(15 + i % 15);
+                live.put("thermo-" + i, t);
+            }
+            newRecovery().snapshot(live);
+            for (int i = 0; i < count; i++) {
+                journal.append(Type.RUNTIME, "thermo-" + i, "T1;" + (16 + i % 15) + ".5;20.0;HEAT");
+            }
+
+            Map<String, Device> restarted = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                SmartThermostat t = new SmartThermostat("t" + i, "Floor " + (i % 20));
+                t.turnOn();
+                restarted.put("thermo-" + i, t);
+            }
+            RuntimeRecovery.Recovery recovery = newRecovery().recover(restarted);
+
+            assertEquals(count, recovery.devicesRestored());
+            assertEquals(count, recovery.eventsReplayed());
+            assertTrue(recovery.elapsedMillis() < 10_000, "took " + recovery.elapsedMillis() + " ms");
+            SmartThermostat last = (SmartThermostat) restarted.get("thermo-" + (count - 1));
+            assertEquals(16 + (count - 1) % 15 + 0.5, last.getTargetTemperature());
+            assertEquals("HEAT", last.getMode());
+        } finally {
+            devices.setLevel(level);
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────
+
+    private DeviceEventJournal openJournal() {
+        return new DeviceEventJournal(dir.resolve("journal").toString(), DataSize.ofMegabytes(1), Duration.ofHours(1),
+                DataSize.ofGigabytes(1), Duration.ofDays(7), Duration.ofMillis(10), false);
+    }
+
+    private RuntimeRecovery newRecovery() {
+        return new RuntimeRecovery(journal, snapshotsDir().toString(), Duration.ofHours(1), 2, false);
+    }
+
+    private Path snapshotsDir() {
+        return dir.resolve("snapshots");
+    }
+
+    /** A few devices as hydration would build them: defaults, switched on */
+    private static Map<String, Device> home() {
+        Map<String, Device> devices = new HashMap<>();
+        devices.put("light", new SmartLight("Light", "Kitchen"));
+        devices.put("thermo", new SmartThermostat("Thermostat", "Bedroom"));
+        devices.put("camera", new SmartCamera("Camera", "Yard"));
+        devices.put("lock", new SmartLock("Lock", "Hallway"));
+        devices.values().forEach(Device::turnOn);
+        return devices;
+    }
+}
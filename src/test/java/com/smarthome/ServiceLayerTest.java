@@ -1,14 +1,26 @@
 package com.smarthome;
 
+import com.smarthome.domain.DeviceEntity;
+import com.smarthome.domain.RollupTier;
+import com.smarthome.pattern.behavioral.command.CommandJournal;
+import com.smarthome.pattern.behavioral.observer.DeviceObserver;
+import com.smarthome.pattern.creational.factory.Device;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import com.smarthome.repository.DeviceRepository;
+import com.smarthome.repository.TelemetryRollupRepository;
 import com.smarthome.service.*;
 import com.smarthome.web.viewmodel.*;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,6 +36,18 @@ class ServiceLayerTest {
     @Autowired private SceneService sceneService;
     @Autowired private RuleService ruleService;
     @Autowired private PatternDemoService patternDemoService;
+    @Autowired private OptimisticRetry optimisticRetry;
+    @Autowired private DeviceRepository deviceRepository;
+    @Autowired private DeviceHydrator deviceHydrator;
+    @Autowired private TelemetryService telemetryService;
+    @Autowired private TelemetryRollupService telemetryRollupService;
+    @Autowired private TelemetryRollupRepository telemetryRollupRepository;
+    @Autowired private EnergyAccountant energyAccountant;
+    @Autowired private DeviceEventJournal eventJournal;
+    @Autowired private RuntimeRecovery runtimeRecovery;
+    @Autowired private ExportService exportService;
+    @Autowired private JpaCommandJournalStore commandJournalStore;
+    @Autowired private PlatformTransactionManager transactionManager;
 
     // ── DeviceService ────────────────────────────────────────
 
@@ -55,6 +79,310 @@ class ServiceLayerTest {
                 () -> deviceService.getDevice("nonexistent-device-xyz"));
     }
 
+    @Test
+    void staleDeviceWriteIsDetectedAndRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        long retriedBefore = optimisticRetry.stats().retried();
+
+        String location = optimisticRetry.inTransaction("relabel garden-sensor", () -> {
+            DeviceEntity device = deviceService.findOrThrow("garden-sensor");
+            if (attempts.incrementAndGet() == 1) {
+                // Another writer commits in between this read and the write below
+                CompletableFuture.runAsync(() -> deviceService.controlDevice("garden-sensor", !device.isOn())).join();
+            }
+            device.setLocation("Garden Shed");
+            return deviceRepository.save(device).getLocation();
+        });
+
+        assertEquals("Garden Shed", location);
+        assertEquals(2, attempts.get(), "the stale first attempt conflicts and is retried");
+        assertEquals(retriedBefore + 1, optimisticRetry.stats().retried());
+        optimisticRetry.inTransaction("restore garden-sensor", () -> {
+            deviceService.findOrThrow("garden-sensor").setLocation("Garden");
+            return null;
+        });
+    }
+
+    @Test
+    void bulkPowerWriteSkipsDevicesAlreadyInTargetState() {
+        deviceService.controlDevice("bed-thermo", true);
+        long version = deviceService.findOrThrow("bed-thermo").getVersion();
+
+        assertEquals(0, deviceService.persistPowerStates(Map.of("bed-thermo", true)));
+        assertEquals(version, deviceService.findOrThrow("bed-thermo").getVersion(), "no-op write is skipped");
+
+        assertEquals(1, deviceService.persistPowerStates(Map.of("bed-thermo", false)));
+        assertEquals(version + 1, deviceService.findOrThrow("bed-thermo").getVersion());
+        assertFalse(deviceService.getDevice("bed-thermo").isOn());
+        deviceService.controlDevice("bed-thermo", true);
+    }
+
+    @Test
+    void bulkPowerWriteIsAccountedOnlyOnceCommitted() {
+        deviceService.controlDevice("bed-thermo", true);
+        TransactionTemplate transactions = new TransactionTemplate(transactionManager);
+        long before = eventJournal.lastSequence();
+
+        transactions.executeWithoutResult(status -> {
+            deviceService.persistPowerStates(Map.of("bed-thermo", false));
+            assertFalse(journaledOff("bed-thermo", before), "nothing is journaled before the commit");
+            status.setRollbackOnly();
+        });
+        assertFalse(journaledOff("bed-thermo", before), "a rolled back write is never journaled");
+        assertTrue(deviceService.getDevice("bed-thermo").isOn());
+
+        transactions.executeWithoutResult(status -> deviceService.persistPowerStates(Map.of("bed-thermo", false)));
+        assertTrue(journaledOff("bed-thermo", before));
+        deviceService.controlDevice("bed-thermo", true);
+    }
+
+    private boolean journaledOff(String deviceId, long after) {
+        return eventJournal.read(after + 1, 1_000).stream().anyMatch(e -> e.type() == DeviceEventJournal.Type.STATE_CHANGE
+                && e.deviceId().equals(deviceId) && e.detail().equals("OFF"));
+    }
+
+    @Test
+    void hydrationRegistersAllDevicesWithOneNotification() {
+        List<String> events = new java.util.concurrent.CopyOnWriteArrayList<>();
+        DeviceObserver recorder = new DeviceObserver() {
+            public void onDeviceEvent(String eventType, String data) { events.add(eventType + ":" + data); }
+            public String getObserverName() { return "hydration-test"; }
+        };
+        Device live = HomeController.INSTANCE.getDevice("bed-light");
+        HomeController.INSTANCE.unregisterDevices(List.of("kitchen-light"));
+        HomeController.INSTANCE.addObserver(recorder);
+        try {
+            DeviceHydrator.Stats stats = deviceHydrator.hydrate();
+
+            long stored = deviceRepository.count();
+            assertEquals(stored, stats.devices());
+            assertEquals(List.of("DEVICES_REGISTERED:1"), events, "only the missing device is registered");
+            assertTrue(stats.chunks() >= 1);
+            assertTrue(HomeController.INSTANCE.getDevice("kitchen-light") != null);
+            assertSame(live, HomeController.INSTANCE.getDevice("bed-light"), "live devices keep their state");
+            assertEquals("EAGER", deviceHydrator.stats().mode());
+        } finally {
+            HomeController.INSTANCE.removeObserver(recorder);
+        }
+    }
+
+    @Test
+    void runtimeChangesAreJournaledAndSnapshotted() {
+        long before = eventJournal.lastSequence();
+        deviceService.mutateRuntime("bed-light", device -> {
+            ((com.smarthome.pattern.creational.factory.SmartLight) device).setBrightness(35);
+            return null;
+        }).join();
+
+        List<DeviceEventJournal.Event> events = eventJournal.read(before + 1, 100);
+        assertTrue(events.stream().anyMatch(e -> e.type() == DeviceEventJournal.Type.RUNTIME
+                && e.deviceId().equals("bed-light") && e.detail().contains(";35;")), events.toString());
+
+        RuntimeRecovery.Snapshot snapshot = runtimeRecovery.snapshot();
+        assertTrue(snapshot.journalSequence() >= events.get(events.size() - 1).sequence());
+        assertTrue(snapshot.devices() >= deviceRepository.count());
+        assertNotNull(runtimeRecovery.stats().lastRecovery(), "startup ran recovery after hydration");
+    }
+
+    @Test
+    void exportsStreamEveryRowWithoutCollectingThem() {
+        int appended = 200_000;
+        long from = eventJournal.lastSequence() + 1;
+        for (int i = 0; i < appended; i++) {
+            eventJournal.append(DeviceEventJournal.Type.STATE_CHANGE, "export-" + (i % 500), (i & 1) == 0 ? "ON" : "OFF");
+        }
+        CountingOutputStream out = new CountingOutputStream();
+        long rows = exportService.events(ExportService.Format.NDJSON, from, Long.MAX_VALUE, out);
+        assertEquals(appended, rows);
+        assertEquals(appended, out.lines, "one JSON object per line");
+
+        CountingOutputStream csv = new CountingOutputStream();
+        assertEquals(deviceRepository.count(), exportService.devices(ExportService.Format.CSV, csv));
+        assertEquals(deviceRepository.count() + 1, csv.lines, "a header plus one line per device");
+        long states = sceneService.getScenes().stream().mapToLong(SceneView::deviceCount).sum();
+        assertEquals(states, exportService.scenes(ExportService.Format.CSV, new CountingOutputStream()));
+        assertThrows(IllegalArgumentException.class, () -> ExportService.Format.parse("xlsx"));
+    }
+
+    @Test
+    void lazyHydrationBuildsADeviceOnFirstAccessOnly() {
+        HomeController.INSTANCE.unregisterDevice("sensor-1");
+        long before = deviceHydrator.stats().lazilyHydrated();
+
+        DeviceEntity entity = deviceService.findOrThrow("sensor-1");
+        Device first = deviceService.ensureRuntimeDevice(entity);
+        Device second = deviceService.ensureRuntimeDevice(entity);
+
+        assertSame(first, second);
+        assertEquals(entity.isOn(), first.isOn());
+        assertEquals(before + 1, deviceHydrator.stats().lazilyHydrated());
+    }
+
+    @Test
+    void telemetryIngestSustainsOneHundredThousandSamplesPerSecond() {
+        String[] devices = {"living-light-1", "kitchen-light", "bed-thermo", "front-camera", "garage-light", "garden-sensor"};
+        String[] metrics = {"power", "temperature", "humidity", "signal"};
+        StringBuilder ndjson = new StringBuilder();
+        long ts = 1_700_000_000_000L;
+        for (int i = 0; i < 200_000; i++) {
+            ndjson.append("{\"deviceId\":\"").append(devices[i % devices.length])
+                    .append("\",\"metric\":\"").append(metrics[(i / devices.length) % metrics.length])
+                    .append("\",\"ts\":").append(ts + i).append(",\"value\":").append(i % 500 / 10.0).append("}\n");
+        }
+        byte[] body = ndjson.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+        long bestPerSecond = 0;
+        for (int round = 0; round < 5; round++) { // the first rounds warm up the parser
+            long start = System.nanoTime();
+            TelemetryService.IngestResult result = telemetryService.ingest(new java.io.ByteArrayInputStream(body));
+            long nanos = System.nanoTime() - start;
+            assertEquals(200_000, result.accepted());
+            bestPerSecond = Math.max(bestPerSecond, 200_000L * 1_000_000_000L / nanos);
+        }
+        assertTrue(bestPerSecond >= 100_000, "ingested " + bestPerSecond + " samples/s");
+
+        List<TelemetryService.Series> power = telemetryService.deviceSeries("kitchen-light", "power", ts, Long.MAX_VALUE, 10);
+        assertEquals(1, power.size());
+        assertEquals(10, power.get(0).count());
+    }
+
+    @Test
+    void telemetryRejectsStructuredFieldsWithoutLosingItsPlace() {
+        String ndjson = """
+                {"deviceId":{"id":"bed-thermo"},"metric":"pressure","ts":1000,"value":1}
+                {"deviceId":"bed-thermo","metric":["pressure"],"ts":1000,"value":1}
+                {"deviceId":"bed-thermo","metric":"pressure","ts":1000,"value":{"deviceId":"bed-thermo","value":2}}
+                {"deviceId":"bed-thermo","metric":"pressure","ts":2000,"value":3}
+                """;
+        TelemetryService.IngestResult objects = telemetryService.ingest(
+                new java.io.ByteArrayInputStream(ndjson.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        assertEquals(1, objects.accepted());
+        assertEquals(3, objects.rejected());
+
+        String rows = "[[\"bed-thermo\",\"pressure\",{\"at\":3000},4],[\"bed-thermo\",\"pressure\",3000,[5]],"
+                + "[\"bed-thermo\",\"pressure\",4000,6]]";
+        TelemetryService.IngestResult compact = telemetryService.ingest(
+                new java.io.ByteArrayInputStream(rows.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        assertEquals(1, compact.accepted());
+        assertEquals(2, compact.rejected());
+
+        TelemetryService.Series pressure = telemetryService.deviceSeries("bed-thermo", "pressure", 0, Long.MAX_VALUE, 10).get(0);
+        assertArrayEquals(new double[]{3, 6}, pressure.values());
+    }
+
+    @Test
+    void telemetryRejectsBadFieldsPerRowInsteadOfFailingHalfWritten() {
+        String ndjson = """
+                {"deviceId":"bed-thermo","metric":"moisture","ts":1000,"value":40}
+                {"deviceId":"bed-thermo","metric":"moisture","ts":"yesterday","value":41}
+                {"deviceId":"bed-thermo","metric":"moisture","ts":1.5,"value":42}
+                {"deviceId":"bed-thermo","metric":"moisture","ts":3000,"value":43}
+                """;
+        TelemetryService.IngestResult objects = telemetryService.ingest(
+                new java.io.ByteArrayInputStream(ndjson.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        assertEquals(2, objects.accepted());
+        assertEquals(2, objects.rejected());
+        assertNull(objects.error());
+
+        String rows = "[[\"bed-thermo\",\"moisture\",\"4000\",44],[\"bed-thermo\",\"moisture\",5000],"
+                + "[\"bed-thermo\",\"moisture\",5000,45,0],\"stray\",[\"bed-thermo\",\"moisture\",6000,46]]";
+        TelemetryService.IngestResult compact = telemetryService.ingest(
+                new java.io.ByteArrayInputStream(rows.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        assertEquals(1, compact.accepted());
+        assertEquals(4, compact.rejected());
+
+        TelemetryService.Series moisture = telemetryService.deviceSeries("bed-thermo", "moisture", 0, Long.MAX_VALUE, 10).get(0);
+        assertArrayEquals(new double[]{40, 43, 46}, moisture.values());
+
+        // Invalid JSON: a 400 only while nothing was kept, otherwise the result says where reading stopped
+        assertThrows(IllegalArgumentException.class, () -> telemetryService.ingest(
+                new java.io.ByteArrayInputStream("{\"deviceId\":".getBytes(java.nio.charset.StandardCharsets.UTF_8))));
+        TelemetryService.IngestResult cut = telemetryService.ingest(new java.io.ByteArrayInputStream(
+                "[[\"bed-thermo\",\"moisture\",7000,47],[\"bed-thermo\",".getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        assertEquals(1, cut.accepted());
+        assertNotNull(cut.error());
+    }
+
+    @Test
+    void telemetryRollupsOutliveTheirMemoryAndExpirePerTier() {
+        long now = System.currentTimeMillis();
+        long day = java.time.Duration.ofDays(1).toMillis();
+        ingestDaily("rollup-daily", now, 40, 32);
+        ingestDaily("rollup-stale", now, 9, 9);
+        telemetryRollupService.flush(now);
+        ingestDaily("rollup-daily", now, 31, 1); // recycles the 9 oldest in-memory day buckets
+        telemetryRollupService.flush(now);
+
+        List<TelemetryRollupService.BucketSeries> daily = telemetryService.deviceRollups(
+                "garage-light", "rollup-daily", RollupTier.DAY, Long.MIN_VALUE, Long.MAX_VALUE, 1000);
+        assertEquals(1, daily.size());
+        TelemetryRollupService.BucketSeries series = daily.get(0);
+        assertEquals(40, series.count(), "recycled buckets are read back from the table");
+        assertEquals(RollupTier.DAY.bucketStart(now - 40 * day), series.bucketStarts()[0]);
+        assertEquals(4.0, series.avg()[0]);
+        assertEquals(2, series.counts()[0]);
+        assertEquals(10, telemetryService.deviceRollups("garage-light", "rollup-daily", RollupTier.DAY,
+                Long.MIN_VALUE, Long.MAX_VALUE, 10).get(0).count());
+
+        List<com.smarthome.domain.TelemetryRollupEntity> stale = telemetryRollupRepository
+                .findAll().stream().filter(r -> r.getMetric().equals("rollup-stale")).toList();
+        assertFalse(stale.stream().anyMatch(r -> r.getTier() == RollupTier.MINUTE), "minute rows expire after 7 days");
+        assertTrue(stale.stream().anyMatch(r -> r.getTier() == RollupTier.HOUR));
+        assertTrue(stale.stream().anyMatch(r -> r.getTier() == RollupTier.DAY));
+        assertTrue(telemetryRollupService.stats().rowsExpired() > 0);
+    }
+
+    /** Two samples (3 and 5) a day for each of {@code fromDaysAgo} down to {@code toDaysAgo} */
+    private void ingestDaily(String metric, long now, int fromDaysAgo, int toDaysAgo) {
+        StringBuilder rows = new StringBuilder("[");
+        for (int d = fromDaysAgo; d >= toDaysAgo; d--) {
+            long ts = now - d * java.time.Duration.ofDays(1).toMillis();
+            if (rows.length() > 1) rows.append(',');
+            rows.append("[\"garage-light\",\"").append(metric).append("\",").append(ts).append(",3],")
+                    .append("[\"garage-light\",\"").append(metric).append("\",").append(ts + 1).append(",5]");
+        }
+        byte[] body = rows.append(']').toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        TelemetryService.IngestResult result = telemetryService.ingest(new java.io.ByteArrayInputStream(body));
+        assertEquals(2 * (fromDaysAgo - toDaysAgo + 1), result.accepted());
+    }
+
+    @Test
+    void energyAccountantIntegratesTransitionsAndSurvivesACheckpointedRestart() throws Exception {
+        DeviceView device = deviceService.controlDevice("garage-light", false);
+        double before = energyAccountant.device("garage-light").totalKwh();
+
+        deviceService.controlDevice("garage-light", true);
+        Thread.sleep(50);
+        EnergyAccountant.Reading running = energyAccountant.device("garage-light");
+        assertTrue(running.totalKwh() > before);
+        assertTrue(running.todayKwh() > 0);
+        assertTrue(running.drawWatts() > 0);
+        assertTrue(energyAccountant.room(device.location()).todayKwh() >= running.todayKwh());
+        assertTrue(energyAccountant.home().drawWatts() >= running.drawWatts());
+
+        deviceService.controlDevice("garage-light", false);
+        EnergyAccountant.Reading stopped = energyAccountant.device("garage-light");
+        assertEquals(0, stopped.drawWatts());
+        Thread.sleep(20);
+        assertEquals(stopped.totalKwh(), energyAccountant.device("garage-light").totalKwh(), 1e-12, "an off device draws nothing");
+
+        energyAccountant.checkpoint();
+        energyAccountant.resume();
+        assertEquals(stopped.totalKwh(), energyAccountant.device("garage-light").totalKwh(), 1e-9, "restored from the checkpoint");
+        assertEquals(stopped.monthKwh(), energyAccountant.device("garage-light").monthKwh(), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> energyAccountant.device("no-such-device"));
+    }
+
+    @Test
+    void energyCheckpointsWaitForResume() {
+        // no checkpoint repository: any write before resume would fail
+        EnergyAccountant fresh = new EnergyAccountant(null, null, "", java.time.Duration.ofHours(1));
+        fresh.trackAll(List.of(new DeviceEntity("boot-light", "Boot Light", com.smarthome.domain.DeviceType.LIGHT,
+                "Kitchen", true, 12, "LOCAL")));
+        fresh.checkpoint();
+        assertEquals(0, fresh.stats().checkpoints(), "counters since boot must not overwrite the saved ones");
+    }
+
     // ── RoomService ──────────────────────────────────────────
 
     @Test
@@ -118,6 +446,83 @@ class ServiceLayerTest {
 
     // ── PatternDemoService ───────────────────────────────────
 
+    @Test
+    void fanOutReportsLeavesStillQueuedAtTheDeadlineAsPending() throws Exception {
+        deviceService.controlDevice("bed-light", false);
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        CompletableFuture<Void> blocker = deviceService.mutateRuntime("bed-light", device -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        Map<String, Object> result;
+        try {
+            result = patternDemoService.compositeFanOut("bed-light", "on", 1, 100L);
+        } finally {
+            release.countDown();
+        }
+        blocker.get(10, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertEquals(1, result.get("pendingDevices"));
+        assertEquals(0, result.get("failedDevices"));
+        // The switch queued behind the blocker was not withdrawn, so pending was the honest answer
+        assertTrue(deviceService.mutateRuntime("bed-light", Device::isOn).get(10, java.util.concurrent.TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executedCommandCapturesItsInverseInsideTheMailbox() throws Exception {
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        CompletableFuture<Void> writer = deviceService.mutateRuntime("bed-light", device -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ((com.smarthome.pattern.creational.factory.SmartLight) device).setBrightness(55);
+            return null;
+        });
+        long submitted = pipelineSubmitted();
+        CompletableFuture<Map<String, Object>> executed = CompletableFuture.supplyAsync(
+                () -> patternDemoService.commandExecute("inverse-user", "bed-light", "BRIGHTNESS:20"));
+        while (pipelineSubmitted() == submitted) Thread.onSpinWait();
+        release.countDown(); // the command is queued behind the writer
+
+        writer.get(10, java.util.concurrent.TimeUnit.SECONDS);
+        executed.get(10, java.util.concurrent.TimeUnit.SECONDS);
+        @SuppressWarnings("unchecked")
+        List<CommandJournal.Entry> entries = (List<CommandJournal.Entry>) patternDemoService
+                .commandHistory("inverse-user", "bed-light", 1).get("entries");
+        assertEquals("BRIGHTNESS:55", entries.get(0).steps().get(0).inverse(), "the inverse is what the command overwrote");
+    }
+
+    private long pipelineSubmitted() {
+        return ((com.smarthome.pattern.behavioral.command.CommandPipeline.Stats)
+                patternDemoService.commandPipelineStats().get("pipeline")).submitted();
+    }
+
+    @Test
+    void commandLogServesUndoBeyondMemoryAndAcrossRestarts() {
+        CommandJournal.Step step = new CommandJournal.Step("journal-lamp", "ON", "OFF");
+        CommandJournal first = new CommandJournal(1, 10, commandJournalStore);
+        CommandJournal.Entry a = first.record("log-user", "a", List.of(step));
+        first.record("log-user", "b", List.of(step));
+
+        CommandJournal restarted = new CommandJournal(1, 10, commandJournalStore);
+        CommandJournal.Entry c = restarted.record("log-user", "c", List.of(step));
+        assertTrue(c.sequence() > a.sequence() + 1, "sequences continue from the log");
+        assertEquals("c", restarted.undo("log-user").orElseThrow().label());
+        assertEquals("c", restarted.redo("log-user").orElseThrow().label());
+        assertEquals(List.of("c", "b", "a"), restarted.history("log-user", null, 10).stream().map(CommandJournal.Entry::label).toList());
+        assertEquals("c", restarted.undo("log-user").orElseThrow().label());
+        assertEquals("b", restarted.undo("log-user").orElseThrow().label(), "read back from the log");
+        assertEquals("a", restarted.undo("log-user").orElseThrow().label());
+        assertTrue(restarted.undo("log-user").isEmpty());
+        assertEquals(8, restarted.deviceHistory("journal-lamp", 50).size(), "three records, one redo, four undos");
+    }
+
     @Test
     void patternListPatterns() {
         Map<String, Object> patterns = patternDemoService.listPatterns();
@@ -210,5 +615,23 @@ class ServiceLayerTest {
         assertEquals("Kitchen", ServiceUtils.toTitleCase("kitchen"));
         assertEquals("", ServiceUtils.toTitleCase(""));
     }
+
+    /** Discards the export and counts bytes and lines */
+    private static final class CountingOutputStream extends java.io.OutputStream {
+        long bytes;
+        long lines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') lines++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            for (int i = off; i < off + len; i++) if (b[i] == '\n') lines++;
+        }
+    }
 }
 
@@ -1,16 +1,23 @@
 package com.smarthome;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.smarthome.config.ClientIdentityResolver;
+import java.util.List;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -73,6 +80,55 @@ class SmartHomeControllerTest {
                 .andExpect(jsonPath("$.isOn").value(false));
     }
 
+    @Test
+    void deviceLatencyMetricsArePerTypeAndOperation() throws Exception {
+        mockMvc.perform(post("/api/devices/living-light-1/control").param("action", "on"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/metrics/devices"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unit").value("ns"))
+                .andExpect(jsonPath("$.operations[?(@.deviceType == 'LIGHT' && @.operation == 'turnOn')].latency.count")
+                        .value(Matchers.everyItem(Matchers.greaterThanOrEqualTo(1))))
+                .andExpect(jsonPath("$.operations[0].latency.p999Nanos").isNumber());
+    }
+
+    @Test
+    void floodingOneDeviceIsRateLimitedWith429() throws Exception {
+        MockHttpServletResponse response = null;
+        for (int i = 0; i < 150 && (response == null || response.getStatus() == 200); i++) {
+            response = mockMvc.perform(post("/api/devices/garage-light/control")
+                            .param("action", i % 2 == 0 ? "on" : "off")
+                            .header("X-Client-Id", "flood-test"))
+                    .andReturn().getResponse();
+        }
+        assertEquals(429, response.getStatus());
+        assertNotNull(response.getHeader("Retry-After"));
+        assertTrue(response.getContentAsString().contains("RATE_LIMITED"));
+
+        mockMvc.perform(get("/api/metrics/rate-limits"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rateLimits.policy").value("REJECT"))
+                .andExpect(jsonPath("$.rateLimits.rejected").value(Matchers.greaterThanOrEqualTo(1)));
+    }
+
+    @Test
+    void rateLimitClientIdIsOnlyTakenFromTrustedProxies() {
+        ClientIdentityResolver resolver = new ClientIdentityResolver(List.of("10.0.0.1"));
+        MockHttpServletRequest direct = new MockHttpServletRequest();
+        direct.setRemoteAddr("203.0.113.7");
+        direct.addHeader("X-Client-Id", "spoofed");
+        assertEquals("addr:203.0.113.7", resolver.resolve(direct), "a caller cannot pick its own client id");
+
+        MockHttpServletRequest proxied = new MockHttpServletRequest();
+        proxied.setRemoteAddr("10.0.0.1");
+        proxied.addHeader("X-Client-Id", "hub-a");
+        assertEquals("client:hub-a", resolver.resolve(proxied));
+
+        direct.setUserPrincipal(() -> "alice");
+        assertEquals("user:alice", resolver.resolve(direct));
+    }
+
     @Test
     void setModeNormal() throws Exception {
         mockMvc.perform(post("/api/mode/NORMAL"))
@@ -169,6 +225,21 @@ class SmartHomeControllerTest {
                 .andExpect(jsonPath("$.pattern").value("Decorator"));
     }
 
+    @Test
+    void decoratorCachingReportsSharedCacheStats() throws Exception {
+        mockMvc.perform(post("/api/patterns/decorator/wrap")
+                        .param("deviceId", "living-light-1")
+                        .param("decorators", "CACHING"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cacheStats.name").value("device-status"))
+                .andExpect(jsonPath("$.cacheStats.hits").value(Matchers.greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.cacheStats.hitRatio").isNumber());
+
+        mockMvc.perform(get("/api/patterns/decorator/caches"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.caches[?(@.name == 'device-status')].maximumSize").value(Matchers.contains(10000)));
+    }
+
     @Test
     void facadeScene() throws Exception {
         mockMvc.perform(post("/api/patterns/facade/scene/morning"))
@@ -186,6 +257,37 @@ class SmartHomeControllerTest {
                 .andExpect(jsonPath("$.pattern").value("Proxy"));
     }
 
+    @Test
+    void proxyCacheStats() throws Exception {
+        mockMvc.perform(post("/api/patterns/proxy/remote")
+                        .param("name", "Cached Cam")
+                        .param("address", "192.168.1.51"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status3").value(Matchers.startsWith("[Cached]")));
+
+        mockMvc.perform(get("/api/patterns/proxy/cache"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cache.hits").value(Matchers.greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.cache.misses").isNumber())
+                .andExpect(jsonPath("$.cache.coalesced").isNumber())
+                .andExpect(jsonPath("$.defaultTtlMs").value(5000));
+    }
+
+    @Test
+    void proxyCircuits() throws Exception {
+        mockMvc.perform(post("/api/patterns/proxy/remote")
+                        .param("name", "Guarded Cam")
+                        .param("address", "192.168.1.52"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/patterns/proxy/circuits"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pattern").value("Proxy"))
+                .andExpect(jsonPath("$.defaultPolicy.callTimeoutMs").value(2000))
+                .andExpect(jsonPath("$.circuits").isArray())
+                .andExpect(jsonPath("$.circuits[0].state").exists());
+    }
+
     @Test
     void chainAlert() throws Exception {
         mockMvc.perform(post("/api/patterns/chain/alert")
@@ -0,0 +1,52 @@
+package com.smarthome;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.smarthome.config.DataSeeder;
+import com.smarthome.service.DeviceHydrator;
+import com.smarthome.service.RuntimeRecovery;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Boots the production profile, where the demo seeder is off, against an empty
+ * in-memory database: the runtime side must still come up.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:noseed;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "smarthome.journal.dir=${java.io.tmpdir}/smarthome-journal/${random.uuid}",
+        "smarthome.journal.delete-on-close=true",
+        "smarthome.snapshot.dir=${java.io.tmpdir}/smarthome-snapshots/${random.uuid}",
+        "smarthome.snapshot.delete-on-close=true",
+        "smarthome.snapshot.interval=PT0.05S"
+})
+@ActiveProfiles("postgres")
+class StartupWithoutSeederTest {
+
+    @Autowired private ApplicationContext context;
+    @Autowired private DeviceHydrator deviceHydrator;
+    @Autowired private RuntimeRecovery runtimeRecovery;
+
+    @Test
+    void runtimeStartsWithoutTheDemoSeeder() {
+        assertTrue(context.getBeansOfType(DataSeeder.class).isEmpty(), "the seeder is profile-gated");
+        assertNotNull(deviceHydrator.stats().completedAt(), "the registry was hydrated");
+        assertNotNull(runtimeRecovery.stats().lastRecovery(), "runtime state was recovered");
+    }
+
+    @Test
+    void scheduledSnapshotsRunOnceRecovered() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (runtimeRecovery.stats().snapshotsTaken() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(runtimeRecovery.stats().snapshotsTaken() > 0, "recovery enabled the scheduled snapshots");
+    }
+}
@@ -0,0 +1,144 @@
+package com.smarthome;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarthome.domain.DeviceType;
+import com.smarthome.pattern.creational.factory.SmartLight;
+import com.smarthome.pattern.creational.factory.SmartThermostat;
+import com.smarthome.pattern.creational.prototype.ConfigurationPrototypeRegistry;
+import com.smarthome.pattern.creational.singleton.HomeController;
+import com.smarthome.service.DeviceBatchWriter;
+import com.smarthome.service.DeviceEventJournal;
+import com.smarthome.service.EnergyAccountant;
+import com.smarthome.service.ProvisioningService;
+import com.smarthome.service.ProvisioningService.DeviceOverride;
+import com.smarthome.service.ProvisioningService.Request;
+import com.smarthome.service.ProvisioningService.Result;
+import com.smarthome.service.SnowflakeIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Template provisioning against a private in-memory database.
+ */
+class TemplateProvisioningTest {
+
+    @TempDir
+    Path dir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private DeviceEventJournal journal;
+    private List<String> provisioned = List.of();
+
+    @BeforeEach
+    void createSchema() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:provision-" + UUID.randomUUID(), "sa", "", true);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table devices (id varchar(255) primary key, name varchar(255), type varchar(255), "
+                + "location varchar(255), is_on boolean not null, rated_power_watts int not null, ecosystem varchar(255), "
+                + "version bigint not null, room_id bigint)");
+        jdbc.execute("create table device_configurations (device_id varchar(255) primary key, template varchar(255) not null, "
+                + "settings varchar(2000), schedules varchar(2000), provisioned_at timestamp(6) with time zone)");
+        journal = new DeviceEventJournal(dir.toString(), DataSize.ofMegabytes(4), Duration.ofHours(1),
+                DataSize.ofGigabytes(1), Duration.ofDays(7), Duration.ofMillis(10), false);
+    }
+
+    @AfterEach
+    void dropDevices() {
+        HomeController.INSTANCE.unregisterDevices(provisioned);
+        journal.close();
+        dataSource.destroy();
+    }
+
+    @Test
+    void overridesApplyToSingleDevicesAndTheRestShareTheTemplate() {
+        Result result = newProvisioner(4).provision(new Request("dim-light", 10, 101, "Room {n} Lamp", "Room {n}", true,
+                null, Map.of(105, new DeviceOverride("Suite Lamp", "Presidential Suite", Map.of("brightness", 80)))));
+        provisioned = ids();
+
+        assertEquals(10, result.provisioned());
+        assertEquals(9, result.sharingTemplateSettings());
+        assertEquals(2, jdbc.queryForObject("select count(distinct settings) from device_configurations", Integer.class));
+        assertEquals(3, result.batches());
+        assertEquals(DeviceType.LIGHT, result.type());
+        assertEquals(List.of("Room 101 Lamp", "Room 102 Lamp"),
+                jdbc.queryForList("select name from devices where location in ('Room 101', 'Room 102') order by name", String.class));
+
+        String suite = jdbc.queryForObject("select id from devices where name = 'Suite Lamp'", String.class);
+        assertEquals("Presidential Suite", jdbc.queryForObject("select location from devices where id = ?", String.class, suite));
+        assertTrue(jdbc.queryForObject("select settings from device_configurations where device_id = ?", String.class, suite)
+                .contains("\"brightness\":80"));
+        SmartLight lamp = (SmartLight) HomeController.INSTANCE.getDevice(suite);
+        assertEquals(80, lamp.getBrightness());
+        assertTrue(lamp.isOn());
+        assertEquals(30, ((SmartLight) HomeController.INSTANCE.getDevice(result.firstDeviceId())).getBrightness());
+        assertEquals(10, journal.replay(1, Long.MAX_VALUE, e -> assertEquals(DeviceEventJournal.Type.RUNTIME, e.type())));
+        assertEquals(30, ConfigurationPrototypeRegistry.getClone("dim-light").getSetting("brightness"), "registry untouched");
+    }
+
+    @Test
+    void anInvalidRequestWritesNothing() {
+        ProvisioningService provisioner = newProvisioner(100);
+        assertThrows(IllegalArgumentException.class, () -> provisioner.provision(
+                new Request("no-such-template", 5, null, null, "Lobby", null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> provisioner.provision(
+                new Request("eco-thermostat", 5, null, null, "Lobby", null, Map.of("targetTemperature", "warm"), null)));
+        assertThrows(IllegalArgumentException.class, () -> provisioner.provision(
+                new Request("eco-thermostat", 5, 1, null, "Lobby", null, null, Map.of(9, new DeviceOverride("x", null, null)))));
+        assertThrows(IllegalArgumentException.class, () -> provisioner.provision(
+                new Request("eco-thermostat", 0, null, null, "Lobby", null, null, null)));
+        assertEquals(0, jdbc.queryForObject("select count(*) from devices", Integer.class));
+    }
+
+    @Test
+    void provisionsAFiveThousandRoomHotelInSeconds() {
+        ch.qos.logback.classic.Logger devices = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.smarthome.pattern");
+        Level level = devices.getLevel();
+        devices.setLevel(Level.WARN); // each new runtime device logs its power state and settings
+        try {
+            int rooms = 5_000;
+            Result result = newProvisioner(500).provision(new Request("comfort-thermostat", rooms, 1, "Room {n} Thermostat",
+                    "Hotel Room {n}", true, Map.of("targetTemperature", 21.5), null));
+            provisioned = ids();
+
+            assertEquals(rooms, result.provisioned());
+            assertEquals(rooms, result.sharingTemplateSettings());
+            assertEquals(rooms, jdbc.queryForObject("select count(*) from device_configurations", Integer.class));
+            assertEquals(1, jdbc.queryForObject("select count(distinct settings) from device_configurations", Integer.class));
+            assertEquals(21.5, ((SmartThermostat) HomeController.INSTANCE.getDevice(result.lastDeviceId())).getTargetTemperature());
+            assertTrue(result.elapsedMillis() < 10_000, "took " + result.elapsedMillis() + " ms");
+        } finally {
+            devices.setLevel(level);
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────
+
+    private ProvisioningService newProvisioner(int batchSize) {
+        // track() only touches the accountant's counters; the hourly checkpoint never runs here
+        EnergyAccountant energy = new EnergyAccountant(null, null, "", Duration.ofHours(1));
+        DeviceBatchWriter writer = new DeviceBatchWriter(jdbc, new SnowflakeIdGenerator(2), energy);
+        return new ProvisioningService(writer, jdbc, new DataSourceTransactionManager(dataSource), null, journal,
+                new ObjectMapper(), batchSize, 10_000);
+    }
+
+    private List<String> ids() {
+        return jdbc.queryForList("select id from devices", String.class);
+    }
+}